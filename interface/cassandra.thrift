@@ -46,7 +46,7 @@ namespace rb CassandraThrift
 #           for every edit that doesn't result in a change to major/minor.
 #
 # See the Semantic Versioning Specification (SemVer) http://semver.org.
-const string VERSION = "19.24.0"
+const string VERSION = "19.25.0"
 
 
 #
@@ -449,11 +449,25 @@ struct CqlMetadata {
     4: required string default_value_type
 }
 
+/**
+ * Result of a CQL query.  Rows come back either as CqlRows in rows, or, once the connection has asked for the
+ * "packed" result format with set_cql_result_format, as a single packed_rows block.  The block avoids a Column
+ * per cell; it is laid out as (integers are big-endian):
+ *
+ *   i32: number of rows
+ *     for each row: i32 key length, key bytes, i32 number of columns
+ *       for each column: i32 index into the names below, i64 timestamp, i32 value length (-1 if absent), value bytes
+ *   i32: number of distinct column names
+ *     for each name: i32 length, name bytes
+ *
+ * Names and values are typed as described by schema, exactly as for CqlRows.
+ */
 struct CqlResult {
     1: required CqlResultType type,
     2: optional list<CqlRow> rows,
     3: optional i32 num,
-    4: optional CqlMetadata schema
+    4: optional CqlMetadata schema,
+    5: optional binary packed_rows
 }
 
 struct CqlPreparedResult {
@@ -705,6 +719,13 @@ service Cassandra {
             2:UnavailableException ue,
             3:TimedOutException te,
             4:SchemaDisagreementException sde)
+
+  /**
+   * Sets how CQL results on this connection return their rows: "rows" (the default) as a list of CqlRow,
+   * or "packed" as the packed_rows block described on CqlResult.
+   */
+  void set_cql_result_format(1:required string format)
+    throws (1:InvalidRequestException ire)
            
 
 }
@@ -42,6 +42,19 @@ import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Result of a CQL query.  Rows come back either as CqlRows in rows, or, once the connection has asked for the
+ * "packed" result format with set_cql_result_format, as a single packed_rows block.  The block avoids a Column
+ * per cell; it is laid out as (integers are big-endian):
+ * 
+ *   i32: number of rows
+ *     for each row: i32 key length, key bytes, i32 number of columns
+ *       for each column: i32 index into the names below, i64 timestamp, i32 value length (-1 if absent), value bytes
+ *   i32: number of distinct column names
+ *     for each name: i32 length, name bytes
+ * 
+ * Names and values are typed as described by schema, exactly as for CqlRows.
+ */
 public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._Fields>, java.io.Serializable, Cloneable {
   private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("CqlResult");
 
@@ -49,6 +62,7 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
   private static final org.apache.thrift.protocol.TField ROWS_FIELD_DESC = new org.apache.thrift.protocol.TField("rows", org.apache.thrift.protocol.TType.LIST, (short)2);
   private static final org.apache.thrift.protocol.TField NUM_FIELD_DESC = new org.apache.thrift.protocol.TField("num", org.apache.thrift.protocol.TType.I32, (short)3);
   private static final org.apache.thrift.protocol.TField SCHEMA_FIELD_DESC = new org.apache.thrift.protocol.TField("schema", org.apache.thrift.protocol.TType.STRUCT, (short)4);
+  private static final org.apache.thrift.protocol.TField PACKED_ROWS_FIELD_DESC = new org.apache.thrift.protocol.TField("packed_rows", org.apache.thrift.protocol.TType.STRING, (short)5);
 
   /**
    * 
@@ -58,6 +72,7 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
   public List<CqlRow> rows;
   public int num;
   public CqlMetadata schema;
+  public ByteBuffer packed_rows;
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
@@ -68,7 +83,8 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
     TYPE((short)1, "type"),
     ROWS((short)2, "rows"),
     NUM((short)3, "num"),
-    SCHEMA((short)4, "schema");
+    SCHEMA((short)4, "schema"),
+    PACKED_ROWS((short)5, "packed_rows");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -91,6 +107,8 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
           return NUM;
         case 4: // SCHEMA
           return SCHEMA;
+        case 5: // PACKED_ROWS
+          return PACKED_ROWS;
         default:
           return null;
       }
@@ -146,6 +164,8 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
     tmpMap.put(_Fields.SCHEMA, new org.apache.thrift.meta_data.FieldMetaData("schema", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, CqlMetadata.class)));
+    tmpMap.put(_Fields.PACKED_ROWS, new org.apache.thrift.meta_data.FieldMetaData("packed_rows", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING        , true)));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(CqlResult.class, metaDataMap);
   }
@@ -180,6 +200,10 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
     if (other.isSetSchema()) {
       this.schema = new CqlMetadata(other.schema);
     }
+    if (other.isSetPacked_rows()) {
+      this.packed_rows = org.apache.thrift.TBaseHelper.copyBinary(other.packed_rows);
+;
+    }
   }
 
   public CqlResult deepCopy() {
@@ -193,6 +217,7 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
     setNumIsSet(false);
     this.num = 0;
     this.schema = null;
+    this.packed_rows = null;
   }
 
   /**
@@ -313,6 +338,40 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
     }
   }
 
+  public byte[] getPacked_rows() {
+    setPacked_rows(org.apache.thrift.TBaseHelper.rightSize(packed_rows));
+    return packed_rows == null ? null : packed_rows.array();
+  }
+
+  public ByteBuffer bufferForPacked_rows() {
+    return packed_rows;
+  }
+
+  public CqlResult setPacked_rows(byte[] packed_rows) {
+    setPacked_rows(packed_rows == null ? (ByteBuffer)null : ByteBuffer.wrap(packed_rows));
+    return this;
+  }
+
+  public CqlResult setPacked_rows(ByteBuffer packed_rows) {
+    this.packed_rows = packed_rows;
+    return this;
+  }
+
+  public void unsetPacked_rows() {
+    this.packed_rows = null;
+  }
+
+  /** Returns true if field packed_rows is set (has been assigned a value) and false otherwise */
+  public boolean isSetPacked_rows() {
+    return this.packed_rows != null;
+  }
+
+  public void setPacked_rowsIsSet(boolean value) {
+    if (!value) {
+      this.packed_rows = null;
+    }
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case TYPE:
@@ -347,6 +406,14 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
       }
       break;
 
+    case PACKED_ROWS:
+      if (value == null) {
+        unsetPacked_rows();
+      } else {
+        setPacked_rows((ByteBuffer)value);
+      }
+      break;
+
     }
   }
 
@@ -364,6 +431,9 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
     case SCHEMA:
       return getSchema();
 
+    case PACKED_ROWS:
+      return getPacked_rows();
+
     }
     throw new IllegalStateException();
   }
@@ -383,6 +453,8 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
       return isSetNum();
     case SCHEMA:
       return isSetSchema();
+    case PACKED_ROWS:
+      return isSetPacked_rows();
     }
     throw new IllegalStateException();
   }
@@ -436,6 +508,15 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
         return false;
     }
 
+    boolean this_present_packed_rows = true && this.isSetPacked_rows();
+    boolean that_present_packed_rows = true && that.isSetPacked_rows();
+    if (this_present_packed_rows || that_present_packed_rows) {
+      if (!(this_present_packed_rows && that_present_packed_rows))
+        return false;
+      if (!this.packed_rows.equals(that.packed_rows))
+        return false;
+    }
+
     return true;
   }
 
@@ -463,6 +544,11 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
     if (present_schema)
       builder.append(schema);
 
+    boolean present_packed_rows = true && (isSetPacked_rows());
+    builder.append(present_packed_rows);
+    if (present_packed_rows)
+      builder.append(packed_rows);
+
     return builder.toHashCode();
   }
 
@@ -514,6 +600,16 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(isSetPacked_rows()).compareTo(typedOther.isSetPacked_rows());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetPacked_rows()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.packed_rows, typedOther.packed_rows);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -572,6 +668,13 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, field.type);
           }
           break;
+        case 5: // PACKED_ROWS
+          if (field.type == org.apache.thrift.protocol.TType.STRING) {
+            this.packed_rows = iprot.readBinary();
+          } else { 
+            org.apache.thrift.protocol.TProtocolUtil.skip(iprot, field.type);
+          }
+          break;
         default:
           org.apache.thrift.protocol.TProtocolUtil.skip(iprot, field.type);
       }
@@ -618,6 +721,13 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
         oprot.writeFieldEnd();
       }
     }
+    if (this.packed_rows != null) {
+      if (isSetPacked_rows()) {
+        oprot.writeFieldBegin(PACKED_ROWS_FIELD_DESC);
+        oprot.writeBinary(this.packed_rows);
+        oprot.writeFieldEnd();
+      }
+    }
     oprot.writeFieldStop();
     oprot.writeStructEnd();
   }
@@ -660,6 +770,16 @@ public class CqlResult implements org.apache.thrift.TBase<CqlResult, CqlResult._
       }
       first = false;
     }
+    if (isSetPacked_rows()) {
+      if (!first) sb.append(", ");
+      sb.append("packed_rows:");
+      if (this.packed_rows == null) {
+        sb.append("null");
+      } else {
+        org.apache.thrift.TBaseHelper.toString(this.packed_rows, sb);
+      }
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
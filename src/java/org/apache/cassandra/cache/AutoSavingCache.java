@@ -94,8 +94,32 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
 
     public Set<DecoratedKey> readSaved(String ksName, String cfName)
     {
-        File path = getCachePath(ksName, cfName);
         Set<DecoratedKey> keys = new TreeSet<DecoratedKey>();
+        for (ByteBuffer buffer : readSavedEntries(ksName, cfName))
+        {
+            DecoratedKey key;
+            try
+            {
+                key = StorageService.getPartitioner().decorateKey(buffer);
+            }
+            catch (Exception e)
+            {
+                logger.info(String.format("unable to read entry #%s from saved cache %s; skipping remaining entries",
+                        keys.size(), getCachePath(ksName, cfName).getAbsolutePath()), e);
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the keys saved for the given column family, as serialized by CacheKey.serializeForStorage
+     */
+    public List<ByteBuffer> readSavedEntries(String ksName, String cfName)
+    {
+        File path = getCachePath(ksName, cfName);
+        List<ByteBuffer> entries = new ArrayList<ByteBuffer>();
         if (path.exists())
         {
             DataInputStream in = null;
@@ -110,23 +134,11 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
                     int size = in.readInt();
                     byte[] bytes = new byte[size];
                     in.readFully(bytes);
-                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
-                    DecoratedKey key;
-                    try
-                    {
-                        key = StorageService.getPartitioner().decorateKey(buffer);
-                    }
-                    catch (Exception e)
-                    {
-                        logger.info(String.format("unable to read entry #%s from saved cache %s; skipping remaining entries",
-                                keys.size(), path.getAbsolutePath()), e);
-                        break;
-                    }
-                    keys.add(key);
+                    entries.add(ByteBuffer.wrap(bytes));
                 }
                 if (logger.isDebugEnabled())
                     logger.debug(String.format("completed reading (%d ms; %d keys) saved cache %s",
-                            System.currentTimeMillis() - start, keys.size(), path));
+                            System.currentTimeMillis() - start, entries.size(), path));
             }
             catch (Exception e)
             {
@@ -137,7 +149,7 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
                 FileUtils.closeQuietly(in);
             }
         }
-        return keys;
+        return entries;
     }
 
     public Future<?> submitWrite(int keysToSave)
@@ -190,6 +202,8 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
                 type = OperationType.KEY_CACHE_SAVE;
             else if (cacheType == CacheService.CacheType.ROW_CACHE)
                 type = OperationType.ROW_CACHE_SAVE;
+            else if (cacheType == CacheService.CacheType.COUNTER_CACHE)
+                type = OperationType.COUNTER_CACHE_SAVE;
             else
                 type = OperationType.UNKNOWN;
 
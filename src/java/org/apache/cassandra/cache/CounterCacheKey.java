@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.Pair;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+
+/**
+ * A counter column of a (non-super) counter column family: its row key and column name.
+ */
+public class CounterCacheKey implements CacheKey
+{
+    public final int cfId;
+    public final ByteBuffer key;
+    public final ByteBuffer name;
+
+    public CounterCacheKey(int cfId, ByteBuffer key, ByteBuffer name)
+    {
+        this.cfId = cfId;
+        this.key = key;
+        this.name = name;
+    }
+
+    /**
+     * @return the key serialized by serializeForStorage
+     */
+    public static CounterCacheKey deserialize(int cfId, ByteBuffer bytes)
+    {
+        ByteBuffer in = bytes.duplicate();
+        ByteBuffer key = readWithShortLength(in);
+        ByteBuffer name = readWithShortLength(in);
+        return new CounterCacheKey(cfId, key, name);
+    }
+
+    private static ByteBuffer readWithShortLength(ByteBuffer in)
+    {
+        int length = in.getShort() & 0xFFFF;
+        ByteBuffer bytes = in.slice();
+        bytes.limit(length);
+        in.position(in.position() + length);
+        return bytes;
+    }
+
+    public ByteBuffer serializeForStorage()
+    {
+        ByteBuffer bytes = ByteBuffer.allocate(serializedSize());
+
+        bytes.putShort((short) key.remaining());
+        bytes.put(key.slice());
+        bytes.putShort((short) name.remaining());
+        bytes.put(name.slice());
+        bytes.rewind();
+
+        return bytes;
+    }
+
+    public Pair<String, String> getPathInfo()
+    {
+        return Schema.instance.getCF(cfId);
+    }
+
+    public int serializedSize()
+    {
+        return 2 + key.remaining() + 2 + name.remaining();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder(131, 56337)
+                .append(cfId)
+                .append(key)
+                .append(name).toHashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+
+        CounterCacheKey otherKey = (CounterCacheKey) obj;
+
+        return cfId == otherKey.cfId && key.equals(otherKey.key) && name.equals(otherKey.name);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("CounterCacheKey(cfId:%d, key:%s, name:%s)", cfId, ByteBufferUtil.bytesToHex(key), ByteBufferUtil.bytesToHex(name));
+    }
+}
@@ -18,11 +18,13 @@
 package org.apache.cassandra.concurrent;
 
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Decorates {@link FutureTask}
  * </p>
@@ -32,14 +34,14 @@ import java.util.concurrent.TimeoutException;
  *
  * @param <V>
  */
-public class CreationTimeAwareFuture<V> implements Future<V> 
+public class CreationTimeAwareFuture<V> implements ListenableFuture<V>
 {
 
     private long creationTime = System.currentTimeMillis();
 
-    private Future<V> future;
+    private ListenableFuture<V> future;
 
-    public CreationTimeAwareFuture(Future<V> future) 
+    public CreationTimeAwareFuture(ListenableFuture<V> future)
     {
         this.future = future;
         creationTime = System.currentTimeMillis();
@@ -52,6 +54,11 @@ public class CreationTimeAwareFuture<V> implements Future<V>
         return future.get(overallTimeout, TimeUnit.MILLISECONDS);
     }
 
+    public void addListener(Runnable listener, Executor executor)
+    {
+        future.addListener(listener, executor);
+    }
+
     public boolean cancel(boolean mayInterruptIfRunning) 
     {
         return future.cancel(mayInterruptIfRunning);
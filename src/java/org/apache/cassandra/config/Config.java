@@ -38,6 +38,8 @@ public class Config
     public Boolean auto_bootstrap = true;
     public Boolean hinted_handoff_enabled = true;
     public Integer max_hint_window_in_ms = Integer.MAX_VALUE;
+    public Integer hinted_handoff_throttle_in_kb = 1024;
+    public Integer max_hints_delivery_threads = 2;
     
     public SeedProviderDef seed_provider;
     public DiskAccessMode disk_access_mode = DiskAccessMode.auto;
@@ -52,6 +54,10 @@ public class Config
     public String initial_token;
     
     public Long rpc_timeout_in_ms = new Long(2000);
+    public String speculative_retry = "NONE";
+    public Boolean inline_local_requests = false;
+    public Integer range_reply_size_in_kb = 4096;
+    public Integer counter_coalescing_window_in_ms = 0;
 
     public Integer phi_convict_threshold = 8;
     
@@ -72,6 +78,7 @@ public class Config
     public String rpc_address;
     public Integer rpc_port = 9160;
     public String rpc_server_type = "sync";
+    public Boolean rpc_async_writes = false;
     public Boolean rpc_keepalive = true;
     public Integer rpc_min_threads = null;
     public Integer rpc_max_threads = null;
@@ -80,21 +87,35 @@ public class Config
 
     public Integer thrift_max_message_length_in_mb = 16;
     public Integer thrift_framed_transport_size_in_mb = 15;
+    public Integer thrift_cursor_timeout_in_ms = 0;
+    public Integer thrift_max_cursors_per_connection = 8;
+    public Integer thrift_cursor_max_lifetime_in_ms = 600000;
+    public Integer thrift_max_cursors = 1024;
     public Boolean snapshot_before_compaction = false;
 
     /* if the size of columns or super-columns are more than this, indexing will kick in */
     public Integer column_index_size_in_kb = 64;
     public Integer in_memory_compaction_limit_in_mb = 256;
     public Integer concurrent_compactors = Runtime.getRuntime().availableProcessors();
+    public Integer concurrent_validations;
     public Integer compaction_throughput_mb_per_sec = 16;
+    public Boolean adaptive_compaction_throughput = false;
+    public Integer compaction_throughput_max_mb_per_sec = 64;
+    public Integer compaction_read_latency_target_in_ms = 50;
     public Boolean multithreaded_compaction = false;
+    public Integer compaction_slices = 1;
 
     public Integer stream_throughput_outbound_megabits_per_sec;
+    public Integer repair_row_level_max_rows = 0;
+    public Integer concurrent_repair_sessions = 1;
 
     public String[] data_file_directories;
 
     public String saved_caches_directory;
 
+    public String hints_directory;
+    public Integer hints_sync_period_in_ms = 10000;
+
     // Commit Log
     public String commitlog_directory;
     public Integer commitlog_total_space_in_mb = 4096;
@@ -134,6 +155,10 @@ public class Config
     public int row_cache_keys_to_save = Integer.MAX_VALUE;
     public String row_cache_provider = ConcurrentLinkedHashCacheProvider.class.getSimpleName();
 
+    public int counter_cache_size_in_mb = 16;
+    public int counter_cache_save_period = 7200;
+    public int counter_cache_keys_to_save = Integer.MAX_VALUE;
+
     public static enum CommitLogSync {
         periodic,
         batch
@@ -85,6 +85,8 @@ public class DatabaseDescriptor
 
     private static IRowCacheProvider rowCacheProvider;
 
+    private static SpeculativeRetry speculativeRetry = SpeculativeRetry.NONE;
+
     /**
      * Inspect the classpath to find storage configuration file
      */
@@ -306,6 +308,23 @@ public class DatabaseDescriptor
             if (conf.thrift_framed_transport_size_in_mb <= 0)
                 throw new ConfigurationException("thrift_framed_transport_size_in_mb must be positive");
 
+            if (conf.range_reply_size_in_kb == null || conf.range_reply_size_in_kb <= 0)
+                throw new ConfigurationException("range_reply_size_in_kb must be positive");
+
+            if (conf.counter_coalescing_window_in_ms == null || conf.counter_coalescing_window_in_ms < 0)
+                throw new ConfigurationException("counter_coalescing_window_in_ms must not be negative");
+            if (conf.counter_coalescing_window_in_ms >= conf.rpc_timeout_in_ms)
+                throw new ConfigurationException("counter_coalescing_window_in_ms must be lower than rpc_timeout_in_ms");
+
+            if (conf.thrift_cursor_timeout_in_ms == null || conf.thrift_cursor_timeout_in_ms < 0)
+                throw new ConfigurationException("thrift_cursor_timeout_in_ms must not be negative");
+            if (conf.thrift_max_cursors_per_connection == null || conf.thrift_max_cursors_per_connection <= 0)
+                throw new ConfigurationException("thrift_max_cursors_per_connection must be positive");
+            if (conf.thrift_cursor_max_lifetime_in_ms == null || conf.thrift_cursor_max_lifetime_in_ms <= 0)
+                throw new ConfigurationException("thrift_cursor_max_lifetime_in_ms must be positive");
+            if (conf.thrift_max_cursors == null || conf.thrift_max_cursors <= 0)
+                throw new ConfigurationException("thrift_max_cursors must be positive");
+
             if (conf.thrift_framed_transport_size_in_mb > 0 && conf.thrift_max_message_length_in_mb < conf.thrift_framed_transport_size_in_mb)
             {
                 throw new ConfigurationException("thrift_max_message_length_in_mb must be greater than thrift_framed_transport_size_in_mb when using TFramedTransport");
@@ -372,12 +391,43 @@ public class DatabaseDescriptor
             if (conf.concurrent_compactors <= 0)
                 throw new ConfigurationException("concurrent_compactors should be strictly greater than 0");
 
+            if (conf.concurrent_validations == null)
+                conf.concurrent_validations = conf.concurrent_compactors;
+
+            if (conf.concurrent_validations <= 0)
+                throw new ConfigurationException("concurrent_validations should be strictly greater than 0");
+
+            if (conf.concurrent_repair_sessions == null || conf.concurrent_repair_sessions <= 0)
+                throw new ConfigurationException("concurrent_repair_sessions should be strictly greater than 0");
+
+            if (conf.hinted_handoff_throttle_in_kb == null || conf.hinted_handoff_throttle_in_kb < 0)
+                throw new ConfigurationException("hinted_handoff_throttle_in_kb must not be negative");
+
+            if (conf.max_hints_delivery_threads == null || conf.max_hints_delivery_threads <= 0)
+                throw new ConfigurationException("max_hints_delivery_threads should be strictly greater than 0");
+
+            if (conf.hints_sync_period_in_ms == null || conf.hints_sync_period_in_ms <= 0)
+                throw new ConfigurationException("hints_sync_period_in_ms should be strictly greater than 0");
+
+            if (conf.compaction_slices == null || conf.compaction_slices <= 0)
+                throw new ConfigurationException("compaction_slices should be strictly greater than 0");
+
+            speculativeRetry = SpeculativeRetry.fromString(conf.speculative_retry);
+
             if (conf.compaction_throughput_mb_per_sec == null)
                 conf.compaction_throughput_mb_per_sec = 16;
 
+            if (conf.compaction_throughput_max_mb_per_sec == null || conf.compaction_throughput_max_mb_per_sec <= 0)
+                throw new ConfigurationException("compaction_throughput_max_mb_per_sec should be strictly greater than 0");
+            if (conf.compaction_read_latency_target_in_ms == null || conf.compaction_read_latency_target_in_ms <= 0)
+                throw new ConfigurationException("compaction_read_latency_target_in_ms should be strictly greater than 0");
+
             if (conf.stream_throughput_outbound_megabits_per_sec == null)
                 conf.stream_throughput_outbound_megabits_per_sec = 400;
 
+            if (conf.repair_row_level_max_rows == null || conf.repair_row_level_max_rows < 0)
+                throw new ConfigurationException("repair_row_level_max_rows must be positive, or 0 to disable");
+
             if (!CassandraDaemon.rpc_server_types.contains(conf.rpc_server_type.toLowerCase()))
                 throw new ConfigurationException("Unknown rpc_server_type: " + conf.rpc_server_type);
             if (conf.rpc_min_threads == null)
@@ -389,8 +439,12 @@ public class DatabaseDescriptor
                                      ? Runtime.getRuntime().availableProcessors() * 4
                                      : Integer.MAX_VALUE;
 
+            // hints default to a directory next to the saved caches, e.g. /var/lib/cassandra/hints
+            if (conf.hints_directory == null && conf.saved_caches_directory != null)
+                conf.hints_directory = new File(new File(conf.saved_caches_directory).getAbsoluteFile().getParentFile(), "hints").getPath();
+
             /* data file and commit log directories. they get created later, when they're needed. */
-            if (conf.commitlog_directory != null && conf.data_file_directories != null && conf.saved_caches_directory != null)
+            if (conf.commitlog_directory != null && conf.data_file_directories != null && conf.saved_caches_directory != null && conf.hints_directory != null)
             {
                 for (String datadir : conf.data_file_directories)
                 {
@@ -398,10 +452,14 @@ public class DatabaseDescriptor
                         throw new ConfigurationException("commitlog_directory must not be the same as any data_file_directories");
                     if (datadir.equals(conf.saved_caches_directory))
                         throw new ConfigurationException("saved_caches_directory must not be the same as any data_file_directories");
+                    if (datadir.equals(conf.hints_directory))
+                        throw new ConfigurationException("hints_directory must not be the same as any data_file_directories");
                 }
 
                 if (conf.commitlog_directory.equals(conf.saved_caches_directory))
                     throw new ConfigurationException("saved_caches_directory must not be the same as the commitlog_directory");
+                if (conf.hints_directory.equals(conf.commitlog_directory) || conf.hints_directory.equals(conf.saved_caches_directory))
+                    throw new ConfigurationException("hints_directory must not be the same as the commitlog_directory or saved_caches_directory");
             }
             else
             {
@@ -411,6 +469,8 @@ public class DatabaseDescriptor
                     throw new ConfigurationException("data_file_directories missing; at least one data directory must be specified");
                 if (conf.saved_caches_directory == null)
                     throw new ConfigurationException("saved_caches_directory missing");
+                if (conf.hints_directory == null)
+                    throw new ConfigurationException("hints_directory missing");
             }
 
             if (conf.initial_token != null)
@@ -550,6 +610,44 @@ public class DatabaseDescriptor
         return conf.thrift_framed_transport_size_in_mb * 1024 * 1024;
     }
 
+    /** @return how long a server-side cursor may stay idle before it is closed; 0 if cursors are disabled */
+    public static int getThriftCursorTimeout()
+    {
+        return conf.thrift_cursor_timeout_in_ms;
+    }
+
+    public static void setThriftCursorTimeout(int timeoutInMs)
+    {
+        conf.thrift_cursor_timeout_in_ms = timeoutInMs;
+    }
+
+    public static int getThriftMaxCursorsPerConnection()
+    {
+        return conf.thrift_max_cursors_per_connection;
+    }
+
+    /** @return how long a server-side cursor may stay open, used or not */
+    public static int getThriftCursorMaxLifetime()
+    {
+        return conf.thrift_cursor_max_lifetime_in_ms;
+    }
+
+    public static void setThriftCursorMaxLifetime(int lifetimeInMs)
+    {
+        conf.thrift_cursor_max_lifetime_in_ms = lifetimeInMs;
+    }
+
+    /** @return how many server-side cursors may be open at once, over all connections */
+    public static int getThriftMaxCursors()
+    {
+        return conf.thrift_max_cursors;
+    }
+
+    public static void setThriftMaxCursors(int maxCursors)
+    {
+        conf.thrift_max_cursors = maxCursors;
+    }
+
     /**
      * Creates all storage-related directories.
      * @throws IOException when a disk problem is encountered.
@@ -573,6 +671,11 @@ public class DatabaseDescriptor
                 throw new ConfigurationException("saved_caches_directory must be specified");
             }
             FileUtils.createDirectory(conf.saved_caches_directory);
+            if (conf.hints_directory == null)
+            {
+                throw new ConfigurationException("hints_directory must be specified");
+            }
+            FileUtils.createDirectory(conf.hints_directory);
         }
         catch (ConfigurationException ex) {
             logger.error("Fatal error: " + ex.getMessage());
@@ -706,6 +809,16 @@ public class DatabaseDescriptor
         return conf.concurrent_compactors;
     }
 
+    public static int getConcurrentValidations()
+    {
+        return conf.concurrent_validations;
+    }
+
+    public static int getCompactionSlices()
+    {
+        return conf.compaction_slices;
+    }
+
     public static boolean isMultithreadedCompaction()
     {
         return conf.multithreaded_compaction;
@@ -721,6 +834,21 @@ public class DatabaseDescriptor
         conf.compaction_throughput_mb_per_sec = value;
     }
 
+    public static boolean isAdaptiveCompactionThroughput()
+    {
+        return conf.adaptive_compaction_throughput;
+    }
+
+    public static int getCompactionThroughputMaxMbPerSec()
+    {
+        return conf.compaction_throughput_max_mb_per_sec;
+    }
+
+    public static int getCompactionReadLatencyTargetMillis()
+    {
+        return conf.compaction_read_latency_target_in_ms;
+    }
+
     public static int getStreamThroughputOutboundMegabitsPerSec()
     {
         return conf.stream_throughput_outbound_megabits_per_sec;
@@ -731,6 +859,21 @@ public class DatabaseDescriptor
         conf.stream_throughput_outbound_megabits_per_sec = value;
     }
 
+    public static int getRepairRowLevelMaxRows()
+    {
+        return conf.repair_row_level_max_rows;
+    }
+
+    public static void setRepairRowLevelMaxRows(int value)
+    {
+        conf.repair_row_level_max_rows = value;
+    }
+
+    public static int getConcurrentRepairSessions()
+    {
+        return conf.concurrent_repair_sessions;
+    }
+
     public static String[] getAllDataFileLocations()
     {
         return conf.data_file_directories;
@@ -771,6 +914,16 @@ public class DatabaseDescriptor
     {
         return conf.saved_caches_directory;
     }
+
+    public static String getHintsLocation()
+    {
+        return conf.hints_directory;
+    }
+
+    public static int getHintsSyncPeriod()
+    {
+        return conf.hints_sync_period_in_ms;
+    }
     
     public static Set<InetAddress> getSeeds()
     {
@@ -840,6 +993,11 @@ public class DatabaseDescriptor
         return conf.rpc_server_type;
     }
 
+    public static boolean getRpcAsyncWrites()
+    {
+        return conf.rpc_async_writes;
+    }
+
     public static boolean getRpcKeepAlive()
     {
         return conf.rpc_keepalive;
@@ -914,6 +1072,22 @@ public class DatabaseDescriptor
         return conf.hinted_handoff_enabled;
     }
 
+    public static boolean inlineLocalRequests()
+    {
+        return conf.inline_local_requests;
+    }
+
+    public static int getCounterCoalescingWindow()
+    {
+        return conf.counter_coalescing_window_in_ms;
+    }
+
+    /** @return the size in bytes past which a replica cuts a range slice or index scan reply short */
+    public static int getRangeReplySize()
+    {
+        return conf.range_reply_size_in_kb * 1024;
+    }
+
     public static int getMaxHintWindow()
     {
         return conf.max_hint_window_in_ms;
@@ -977,11 +1151,31 @@ public class DatabaseDescriptor
         return conf.reduce_cache_capacity_to;
     }
 
+    public static SpeculativeRetry getSpeculativeRetry()
+    {
+        return speculativeRetry;
+    }
+
     public static int getHintedHandoffThrottleDelay()
     {
         return conf.hinted_handoff_throttle_delay_in_ms;
     }
 
+    public static int getHintedHandoffThrottleInKB()
+    {
+        return conf.hinted_handoff_throttle_in_kb;
+    }
+
+    public static void setHintedHandoffThrottleInKB(int value)
+    {
+        conf.hinted_handoff_throttle_in_kb = value;
+    }
+
+    public static int getMaxHintsDeliveryThreads()
+    {
+        return conf.max_hints_delivery_threads;
+    }
+
     public static boolean getPreheatKeyCache()
     {
         return conf.compaction_preheat_key_cache;
@@ -1058,6 +1252,21 @@ public class DatabaseDescriptor
         return conf.row_cache_keys_to_save;
     }
 
+    public static int getCounterCacheSizeInMB()
+    {
+        return conf.counter_cache_size_in_mb;
+    }
+
+    public static int getCounterCacheSavePeriod()
+    {
+        return conf.counter_cache_save_period;
+    }
+
+    public static int getCounterCacheKeysToSave()
+    {
+        return conf.counter_cache_keys_to_save;
+    }
+
     public static IRowCacheProvider getRowCacheProvider()
     {
         return rowCacheProvider;
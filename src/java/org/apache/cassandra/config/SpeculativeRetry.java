@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.config;
+
+/**
+ * When the coordinator should send an extra data read to another replica because the one
+ * it picked has not answered yet.  Parsed from strings of the form:
+ *
+ *  - NONE: never
+ *  - ALWAYS: immediately, i.e. always read data from two replicas
+ *  - 99PERCENTILE: after the given percentile of the column family's recent read latency
+ *  - 50ms: after a fixed number of milliseconds
+ */
+public class SpeculativeRetry
+{
+    public enum Type
+    {
+        NONE, ALWAYS, PERCENTILE, CUSTOM
+    }
+
+    public static final SpeculativeRetry NONE = new SpeculativeRetry(Type.NONE, 0);
+    public static final SpeculativeRetry ALWAYS = new SpeculativeRetry(Type.ALWAYS, 0);
+
+    public final Type type;
+    /** the percentile (0-100) for PERCENTILE, milliseconds for CUSTOM */
+    public final double value;
+
+    private SpeculativeRetry(Type type, double value)
+    {
+        this.type = type;
+        this.value = value;
+    }
+
+    public static SpeculativeRetry fromString(String retry) throws ConfigurationException
+    {
+        String name = retry.trim().toUpperCase();
+        try
+        {
+            if (name.endsWith(Type.PERCENTILE.toString()))
+            {
+                double value = Double.parseDouble(name.substring(0, name.length() - Type.PERCENTILE.toString().length()));
+                if (value <= 0 || value >= 100)
+                    throw new ConfigurationException("Speculative retry percentile must be between 0 and 100: " + retry);
+                return new SpeculativeRetry(Type.PERCENTILE, value);
+            }
+            if (name.endsWith("MS"))
+            {
+                double value = Double.parseDouble(name.substring(0, name.length() - 2));
+                if (value < 0)
+                    throw new ConfigurationException("Speculative retry delay cannot be negative: " + retry);
+                return new SpeculativeRetry(Type.CUSTOM, value);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ConfigurationException("Invalid speculative retry value " + retry);
+        }
+
+        if (name.equals(Type.NONE.toString()))
+            return NONE;
+        if (name.equals(Type.ALWAYS.toString()))
+            return ALWAYS;
+        throw new ConfigurationException("Invalid speculative retry value " + retry + "; expected NONE, ALWAYS, <n>PERCENTILE or <n>ms");
+    }
+
+    @Override
+    public String toString()
+    {
+        switch (type)
+        {
+            case PERCENTILE:
+                return value + "PERCENTILE";
+            case CUSTOM:
+                return value + "ms";
+            default:
+                return type.toString();
+        }
+    }
+}
@@ -25,6 +25,8 @@ public class CQLStatement
     public StatementType type;
     public Object statement;
     public int boundTerms = 0;
+    // set for prepared statements
+    public String queryString;
     
     public CQLStatement(StatementType type, Object statement, int lastMarker)
     {
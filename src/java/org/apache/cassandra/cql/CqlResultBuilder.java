@@ -0,0 +1,215 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+package org.apache.cassandra.cql;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Collects the rows of a SELECT result, one column at a time, into either CqlRows or a packed_rows
+ * block (see CqlResult in cassandra.thrift), depending on what the client asked for.
+ */
+abstract class CqlResultBuilder
+{
+    public static CqlResultBuilder create(boolean packed)
+    {
+        return packed ? new Packed() : new Rows();
+    }
+
+    public abstract void newRow(ByteBuffer key);
+
+    /**
+     * Add a column to the current row.  @param value is null for a requested column the row does not have.
+     */
+    public abstract void add(ByteBuffer name, ByteBuffer value, long timestamp);
+
+    /**
+     * Add a column that has no timestamp, such as a count, to the current row.  The packed format gives it -1.
+     */
+    public abstract void add(ByteBuffer name, ByteBuffer value);
+
+    /**
+     * Finish the current row; if @param reversed, its columns are returned in the reverse order they were added.
+     */
+    public abstract void endRow(boolean reversed);
+
+    public abstract void build(CqlResult result);
+
+    private static class Rows extends CqlResultBuilder
+    {
+        private final List<CqlRow> rows = new ArrayList<CqlRow>();
+        private CqlRow current;
+
+        public void newRow(ByteBuffer key)
+        {
+            current = new CqlRow(key, new ArrayList<Column>());
+        }
+
+        public void add(ByteBuffer name, ByteBuffer value, long timestamp)
+        {
+            Column column = new Column(name);
+            if (value != null)
+                column.setValue(value).setTimestamp(timestamp);
+            current.columns.add(column);
+        }
+
+        public void add(ByteBuffer name, ByteBuffer value)
+        {
+            current.columns.add(new Column(name).setValue(value));
+        }
+
+        public void endRow(boolean reversed)
+        {
+            if (reversed)
+                Collections.reverse(current.columns);
+            rows.add(current);
+        }
+
+        public void build(CqlResult result)
+        {
+            result.rows = rows;
+        }
+    }
+
+    /**
+     * Writes each column straight into the result block, with its name replaced by an index into a
+     * table of the distinct names, so that a column costs a few bytes of overhead rather than a Column.
+     * The counts are patched in once known, and the name table goes last, so nothing is copied.
+     */
+    private static class Packed extends CqlResultBuilder
+    {
+        private final Map<ByteBuffer, Integer> names = new HashMap<ByteBuffer, Integer>();
+        private final List<ByteBuffer> nameList = new ArrayList<ByteBuffer>();
+        private final DataOutputBuffer out = new DataOutputBuffer();
+        private int rowCount;
+
+        // where the column count of the current row goes, and where each of its columns starts, so they can be reversed
+        private int countOffset;
+        private int[] offsets = new int[16];
+        private int columnCount;
+
+        Packed()
+        {
+            try
+            {
+                out.writeInt(0); // the row count, filled in by build
+            }
+            catch (IOException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+
+        public void newRow(ByteBuffer key)
+        {
+            try
+            {
+                ByteBufferUtil.writeWithLength(key, out);
+                countOffset = out.getLength();
+                out.writeInt(0); // the column count, filled in by endRow
+            }
+            catch (IOException e)
+            {
+                throw new AssertionError(e);
+            }
+            columnCount = 0;
+        }
+
+        public void add(ByteBuffer name, ByteBuffer value, long timestamp)
+        {
+            Integer index = names.get(name);
+            if (index == null)
+            {
+                index = nameList.size();
+                names.put(name, index);
+                nameList.add(name);
+            }
+
+            if (columnCount == offsets.length)
+                offsets = Arrays.copyOf(offsets, columnCount * 2);
+            offsets[columnCount++] = out.getLength();
+            try
+            {
+                out.writeInt(index);
+                out.writeLong(timestamp);
+                if (value == null)
+                    out.writeInt(-1);
+                else
+                    ByteBufferUtil.writeWithLength(value, out);
+            }
+            catch (IOException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+
+        public void add(ByteBuffer name, ByteBuffer value)
+        {
+            add(name, value, -1);
+        }
+
+        public void endRow(boolean reversed)
+        {
+            byte[] data = out.getData();
+            ByteBuffer.wrap(data).putInt(countOffset, columnCount);
+            if (reversed && columnCount > 1)
+            {
+                // only reversed rows are copied, and only their own columns
+                int start = offsets[0];
+                int end = out.getLength();
+                byte[] columns = Arrays.copyOfRange(data, start, end);
+                int position = start;
+                for (int i = columnCount - 1; i >= 0; i--)
+                {
+                    int length = end - offsets[i];
+                    System.arraycopy(columns, offsets[i] - start, data, position, length);
+                    position += length;
+                    end = offsets[i];
+                }
+            }
+            rowCount++;
+        }
+
+        public void build(CqlResult result)
+        {
+            try
+            {
+                out.writeInt(nameList.size());
+                for (ByteBuffer name : nameList)
+                    ByteBufferUtil.writeWithLength(name, out);
+            }
+            catch (IOException e)
+            {
+                throw new AssertionError(e);
+            }
+            byte[] data = out.getData();
+            ByteBuffer.wrap(data).putInt(0, rowCount);
+            result.packed_rows = ByteBuffer.wrap(data, 0, out.getLength());
+        }
+    }
+}
@@ -26,7 +26,6 @@ import java.util.List;
 
 import org.apache.cassandra.auth.Permission;
 import org.apache.cassandra.config.CFMetaData;
-import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.IMutation;
 import org.apache.cassandra.db.RowMutation;
 import org.apache.cassandra.db.filter.QueryPath;
@@ -72,26 +71,25 @@ public class DeleteStatement extends AbstractModification
     public List<IMutation> prepareRowMutations(String keyspace, ClientState clientState, Long timestamp, List<String> variables) throws InvalidRequestException
     {
         clientState.hasColumnFamilyAccess(columnFamily, Permission.WRITE);
-        AbstractType<?> keyType = Schema.instance.getCFMetaData(keyspace, columnFamily).getKeyValidator();
+        CFMetaData metadata = validateColumnFamily(keyspace, columnFamily);
+        QueryProcessor.validateKeyAlias(metadata, keyName);
+        AbstractType<?> keyType = metadata.getKeyValidator();
 
         List<IMutation> rowMutations = new ArrayList<IMutation>();
 
         for (Term key : keys)
         {
-            rowMutations.add(mutationForKey(key.getByteBuffer(keyType, variables), keyspace, timestamp, clientState,variables));
+            rowMutations.add(mutationForKey(key.getByteBuffer(keyType, variables), keyspace, metadata, timestamp, clientState, variables));
         }
 
         return rowMutations;
     }
 
-    public RowMutation mutationForKey(ByteBuffer key, String keyspace, Long timestamp, ClientState clientState, List<String> variables)
+    public RowMutation mutationForKey(ByteBuffer key, String keyspace, CFMetaData metadata, Long timestamp, ClientState clientState, List<String> variables)
     throws InvalidRequestException
     {
         RowMutation rm = new RowMutation(keyspace, key);
 
-        CFMetaData metadata = validateColumnFamily(keyspace, columnFamily);
-        QueryProcessor.validateKeyAlias(metadata, keyName);
-
         AbstractType<?> comparator = metadata.getComparatorFor(null);
 
         if (columns.size() < 1)
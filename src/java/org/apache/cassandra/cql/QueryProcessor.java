@@ -26,9 +26,12 @@ import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.cassandra.auth.Permission;
 import org.apache.cassandra.concurrent.Stage;
@@ -49,13 +52,14 @@ import org.apache.cassandra.service.ClientState;
 import org.apache.cassandra.service.StorageProxy;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.thrift.*;
-import org.apache.cassandra.thrift.Column;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
 
 import com.google.common.base.Predicates;
 import com.google.common.collect.Maps;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 import org.antlr.runtime.*;
 
 import org.slf4j.Logger;
@@ -73,6 +77,26 @@ public class QueryProcessor
 
     public static final String DEFAULT_KEY_NAME = bufferToString(CFMetaData.DEFAULT_KEY_NAME);
 
+    private static final int MAX_CACHE_PREPARED = 10000;    // Enough to keep buggy clients from OOM'ing us
+
+    // the id of each prepared query; ids are never reused, so a client holding the id of an evicted
+    // statement gets an error rather than whichever statement took its place
+    private static final AtomicInteger nextStatementId = new AtomicInteger();
+    private static final ConcurrentMap<String, Integer> preparedIds = new ConcurrentHashMap<String, Integer>();
+
+    // prepared statements of all clients, by id.  Statements are never modified by their execution
+    // (see WhereClause.extractKeysFromColumns), so any number of clients can execute one at once
+    private static final ConcurrentMap<Integer, CQLStatement> prepared = new ConcurrentLinkedHashMap.Builder<Integer, CQLStatement>()
+                                                                         .maximumWeightedCapacity(MAX_CACHE_PREPARED)
+                                                                         .listener(new EvictionListener<Integer, CQLStatement>()
+                                                                         {
+                                                                             public void onEviction(Integer statementId, CQLStatement statement)
+                                                                             {
+                                                                                 preparedIds.remove(statement.queryString, statementId);
+                                                                             }
+                                                                         })
+                                                                         .build();
+
     private static List<org.apache.cassandra.db.Row> getSlice(CFMetaData metadata, SelectStatement select, List<String> variables)
     throws InvalidRequestException, TimedOutException, UnavailableException
     {
@@ -96,7 +120,7 @@ public class QueryProcessor
         // ...a range (slice) of column names
         else
         {
-            AbstractType<?> comparator = select.getComparator(metadata.ksName);
+            AbstractType<?> comparator = metadata.comparator;
             ByteBuffer start = select.getColumnStart().getByteBuffer(comparator,variables);
             ByteBuffer finish = select.getColumnFinish().getByteBuffer(comparator,variables);
 
@@ -150,7 +174,7 @@ public class QueryProcessor
         List<org.apache.cassandra.db.Row> rows;
         IPartitioner<?> p = StorageService.getPartitioner();
 
-        AbstractType<?> keyType = Schema.instance.getCFMetaData(metadata.ksName, select.getColumnFamily()).getKeyValidator();
+        AbstractType<?> keyType = metadata.getKeyValidator();
 
         ByteBuffer startKeyBytes = (select.getKeyStart() != null)
                                    ? select.getKeyStart().getByteBuffer(keyType,variables)
@@ -231,14 +255,14 @@ public class QueryProcessor
         {
             // Left and right side of relational expression encoded according to comparator/validator.
             ByteBuffer entity = columnRelation.getEntity().getByteBuffer(metadata.comparator, variables);
-            ByteBuffer value = columnRelation.getValue().getByteBuffer(select.getValueValidator(metadata.ksName, entity), variables);
+            ByteBuffer value = columnRelation.getValue().getByteBuffer(metadata.getValueValidator(entity), variables);
             
             expressions.add(new IndexExpression(entity,
                                                 IndexOperator.valueOf(columnRelation.operator().toString()),
                                                 value));
         }
 
-        AbstractType<?> keyType = Schema.instance.getCFMetaData(metadata.ksName, select.getColumnFamily()).getKeyValidator();
+        AbstractType<?> keyType = metadata.getKeyValidator();
         ByteBuffer startKey = (!select.isKeyRange()) ? (new Term()).getByteBuffer() : select.getKeyStart().getByteBuffer(keyType, variables);
         IndexClause thriftIndexClause = new IndexClause(expressions, startKey, select.getNumRecords());
         
@@ -528,7 +552,7 @@ public class QueryProcessor
                 metadata = validateColumnFamily(keyspace, select.getColumnFamily());
 
                 // need to do this in here because we need a CFMD.getKeyName()
-                select.extractKeyAliasFromColumns(metadata);
+                select = select.extractKeyAliasFromColumns(metadata);
 
                 if (select.getKeys().size() > 0)
                     validateKeyAlias(metadata, select.getKeyAlias());
@@ -567,8 +591,11 @@ public class QueryProcessor
                                                     Collections.<ByteBuffer, String>emptyMap(),
                                                     "AsciiType",
                                                     "LongType");
-                    List<Column> columns = Collections.singletonList(new Column(countBytes).setValue(ByteBufferUtil.bytes((long) rows.size())));
-                    result.rows = Collections.singletonList(new CqlRow(countBytes, columns));
+                    CqlResultBuilder builder = CqlResultBuilder.create(clientState.isPackedResults());
+                    builder.newRow(countBytes);
+                    builder.add(countBytes, ByteBufferUtil.bytes((long) rows.size()));
+                    builder.endRow(false);
+                    builder.build(result);
                     return result;
                 }
 
@@ -577,16 +604,16 @@ public class QueryProcessor
                                                 new HashMap<ByteBuffer, String>(),
                                                 TypeParser.getShortName(metadata.comparator),
                                                 TypeParser.getShortName(metadata.getDefaultValidator()));
-                List<CqlRow> cqlRows = new ArrayList<CqlRow>();
+                CqlResultBuilder builder = CqlResultBuilder.create(clientState.isPackedResults());
                 for (org.apache.cassandra.db.Row row : rows)
                 {
-                    List<Column> thriftColumns = new ArrayList<Column>();
+                    builder.newRow(row.key.key);
                     if (select.isColumnRange())
                     {
                         if (select.isFullWildcard())
                         {
                             // prepend key
-                            thriftColumns.add(new Column(metadata.getKeyName()).setValue(row.key.key).setTimestamp(-1));
+                            builder.add(metadata.getKeyName(), row.key.key, -1);
                             result.schema.name_types.put(metadata.getKeyName(), TypeParser.getShortName(AsciiType.instance));
                             result.schema.value_types.put(metadata.getKeyName(), TypeParser.getShortName(metadata.getKeyValidator()));
                         }
@@ -603,7 +630,7 @@ public class QueryProcessor
                                 if (cd != null)
                                     result.schema.value_types.put(c.name(), TypeParser.getShortName(cd.getValidator()));
 
-                                thriftColumns.add(thriftify(c));
+                                add(builder, c);
                             }
                         }
                     }
@@ -618,7 +645,7 @@ public class QueryProcessor
                             {
                                 // preserve case of key as it was requested
                                 ByteBuffer requestedKey = ByteBufferUtil.bytes(term.getText());
-                                thriftColumns.add(new Column(requestedKey).setValue(row.key.key).setTimestamp(-1));
+                                builder.add(requestedKey, row.key.key, -1);
                                 result.schema.name_types.put(requestedKey, TypeParser.getShortName(AsciiType.instance));
                                 result.schema.value_types.put(requestedKey, TypeParser.getShortName(metadata.getKeyValidator()));
                                 continue;
@@ -642,22 +669,16 @@ public class QueryProcessor
                                 result.schema.value_types.put(name, TypeParser.getShortName(cd.getValidator()));
                             IColumn c = row.cf.getColumn(name);
                             if (c == null || c.isMarkedForDelete())
-                                thriftColumns.add(new Column().setName(name));
+                                builder.add(name, null, -1);
                             else
-                                thriftColumns.add(thriftify(c));
+                                add(builder, c);
                         }
                     }
 
-                    // Create a new row, add the columns to it, and then add it to the list of rows
-                    CqlRow cqlRow = new CqlRow();
-                    cqlRow.key = row.key.key;
-                    cqlRow.columns = thriftColumns;
-                    if (select.isColumnsReversed())
-                        Collections.reverse(cqlRow.columns);
-                    cqlRows.add(cqlRow);
+                    builder.endRow(select.isColumnsReversed());
                 }
 
-                result.rows = cqlRows;
+                builder.build(result);
                 return result;
 
             case INSERT: // insert uses UpdateStatement
@@ -980,22 +1001,43 @@ public class QueryProcessor
         return processStatement(getStatement(queryString), clientState, new ArrayList<String>());
     }
 
-    public static CqlPreparedResult prepare(String queryString, ClientState clientState)
+    public static CqlPreparedResult prepare(String queryString)
     throws RecognitionException, InvalidRequestException
     {
         logger.trace("CQL QUERY: {}", queryString);
 
+        // already prepared, maybe by another client
+        Integer existingId = preparedIds.get(queryString);
+        if (existingId != null)
+        {
+            CQLStatement existing = prepared.get(existingId);
+            if (existing != null)
+                return new CqlPreparedResult(existingId, existing.boundTerms);
+        }
+
         CQLStatement statement = getStatement(queryString);
-        int statementId = makeStatementId(queryString);
+        statement.queryString = queryString;
         logger.trace("Discovered "+ statement.boundTerms + " bound variables.");
 
-        clientState.getPrepared().put(statementId, statement);
+        // published before the statement, so that evicting the statement also forgets its id.  A query
+        // prepared twice at once gets two ids, both valid
+        int statementId = nextStatementId.getAndIncrement();
+        preparedIds.put(queryString, statementId);
+        prepared.put(statementId, statement);
         logger.trace(String.format("Stored prepared statement #%d with %d bind markers",
                                    statementId,
                                    statement.boundTerms));
 
         return new CqlPreparedResult(statementId, statement.boundTerms);
     }
+
+    /**
+     * @return the statement prepared under @param statementId, or null if there is none (or it was evicted)
+     */
+    public static CQLStatement getPrepared(int statementId)
+    {
+        return prepared.get(statementId);
+    }
    
     public static CqlResult processPrepared(CQLStatement statement, ClientState clientState, List<String> variables)
     throws UnavailableException, InvalidRequestException, TimedOutException, SchemaDisagreementException
@@ -1018,18 +1060,13 @@ public class QueryProcessor
         return processStatement(statement, clientState, variables);
     }
 
-    private static final int makeStatementId(String cql)
-    {
-        // use the hash of the string till something better is provided
-        return cql.hashCode();
-    }
 
-    private static Column thriftify(IColumn c)
+    private static void add(CqlResultBuilder builder, IColumn c)
     {
         ByteBuffer value = (c instanceof CounterColumn)
                            ? ByteBufferUtil.bytes(CounterContext.instance().total(c.value()))
                            : c.value();
-        return new Column(c.name()).setValue(value).setTimestamp(c.timestamp());
+        builder.add(c.name(), value, c.timestamp());
     }
 
     private static String getKeyString(CFMetaData metadata)
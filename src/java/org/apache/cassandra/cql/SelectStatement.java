@@ -170,9 +170,16 @@ public class SelectStatement
         return clause.isMultiKey();
     }
 
-    public void extractKeyAliasFromColumns(CFMetaData cfm)
-    {
-        clause.extractKeysFromColumns(cfm);
+    /**
+     * @return this statement, or a copy of it whose key(s) are taken from the relation on the key alias
+     * of @param cfm (see WhereClause.extractKeysFromColumns)
+     */
+    public SelectStatement extractKeyAliasFromColumns(CFMetaData cfm)
+    {
+        WhereClause extracted = clause.extractKeysFromColumns(cfm);
+        return extracted == clause
+               ? this
+               : new SelectStatement(expression, isCountOper, keyspace, columnFamily, cLevel, extracted, numRecords);
     }
 
     public AbstractType<?> getComparator(String keyspace)
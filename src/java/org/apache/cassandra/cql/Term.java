@@ -37,6 +37,8 @@ public class Term
     private final String text;
     private final TermType type;
     private Integer bindIndex = -1;
+    // the value of a constant term, for the validator it was last converted with
+    private volatile Converted converted;
 
     public Term(String text, TermType type)
     {
@@ -93,7 +95,21 @@ public class Term
     {
         try
         {
-            if (!isBindMarker()) return validator.fromString(text);
+            if (!isBindMarker())
+            {
+                // "now" is a new value each time (see DateType and TimeUUIDType)
+                if (text.equalsIgnoreCase("now"))
+                    return validator.fromString(text);
+
+                // but otherwise a prepared statement's constants convert the same way every time it is executed
+                Converted c = converted;
+                if (c == null || c.validator != validator)
+                {
+                    c = new Converted(validator, validator.fromString(text));
+                    converted = c;
+                }
+                return c.value.duplicate();
+            }
             
             // must be a marker term so check for a CqlBindValue stored in the term
             if (bindIndex == null)
@@ -153,6 +169,18 @@ public class Term
         return type==TermType.QMARK;
     }
 
+    private static class Converted
+    {
+        final AbstractType<?> validator;
+        final ByteBuffer value;
+
+        Converted(AbstractType<?> validator, ByteBuffer value)
+        {
+            this.validator = validator;
+            this.value = value;
+        }
+    }
+
     @Override
     public int hashCode()
     {
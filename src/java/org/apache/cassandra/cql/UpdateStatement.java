@@ -46,7 +46,8 @@ import static org.apache.cassandra.thrift.ThriftValidation.validateCommutativeFo
  */
 public class UpdateStatement extends AbstractModification
 {
-    private Map<Term, Operation> columns;
+    // built from columnNames and columnValues for an INSERT, by the first execution
+    private volatile Map<Term, Operation> columns;
     private List<Term> columnNames, columnValues;
     private List<Term> keys;
 
@@ -162,7 +163,7 @@ public class UpdateStatement extends AbstractModification
 
         for (Term key: keys)
         {
-            rowMutations.add(mutationForKey(keyspace, key.getByteBuffer(getKeyType(keyspace),variables), metadata, timestamp, clientState, variables));
+            rowMutations.add(mutationForKey(keyspace, key.getByteBuffer(metadata.getKeyValidator(), variables), metadata, timestamp, clientState, variables));
         }
 
         return rowMutations;
@@ -185,7 +186,7 @@ public class UpdateStatement extends AbstractModification
     private IMutation mutationForKey(String keyspace, ByteBuffer key, CFMetaData metadata, Long timestamp, ClientState clientState, List<String> variables)
     throws InvalidRequestException
     {
-        AbstractType<?> comparator = getComparator(keyspace);
+        AbstractType<?> comparator = metadata.comparator;
 
         // if true we need to wrap RowMutation into CounterMutation
         boolean hasCounterColumn = false;
@@ -201,7 +202,7 @@ public class UpdateStatement extends AbstractModification
                 if (hasCounterColumn)
                     throw new InvalidRequestException("Mix of commutative and non-commutative operations is not allowed.");
 
-                ByteBuffer colValue = op.a.getByteBuffer(getValueValidator(keyspace, colName),variables);
+                ByteBuffer colValue = op.a.getByteBuffer(metadata.getValueValidator(colName), variables);
 
                 validateColumn(metadata, colName, colValue);
                 rm.add(new QueryPath(columnFamily, null, colName),
@@ -259,12 +260,13 @@ public class UpdateStatement extends AbstractModification
         if (columnNames.size() < 1)
             throw new InvalidRequestException("no columns specified for INSERT");
         
-        columns = new HashMap<Term, Operation>();
-        
+        // fill it before publishing it to concurrent executions of this statement
+        Map<Term, Operation> map = new HashMap<Term, Operation>();
         for (int i = 0; i < columnNames.size(); i++)
-            columns.put(columnNames.get(i), new Operation(columnValues.get(i)));
+            map.put(columnNames.get(i), new Operation(columnValues.get(i)));
 
-        return columns;
+        columns = map;
+        return map;
     }
     
     public String toString()
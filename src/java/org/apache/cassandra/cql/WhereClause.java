@@ -26,7 +26,6 @@ import org.apache.cassandra.utils.ByteBufferUtil;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -37,12 +36,12 @@ import java.util.Set;
  */
 public class WhereClause
 {
-    // added to either by the parser, e.g. from an IN clause, or by extractKeysFromColumns
+    // added to by the parser, e.g. from an IN clause
     private Set<Term> keys = new LinkedHashSet<Term>();
     private Term startKey, finishKey;
     private List<Relation> columns = new ArrayList<Relation>();
     private boolean includeStartKey = false, includeFinishKey = false, multiKey = false;
-    // set by extractKeysFromColumns
+    // set by the parser for an IN clause, or in the copy returned by extractKeysFromColumns
     private String keyAlias = null;
 
     /**
@@ -157,30 +156,44 @@ public class WhereClause
         return keyAlias == null ? QueryProcessor.DEFAULT_KEY_NAME : keyAlias;
     }
 
-    public void extractKeysFromColumns(CFMetaData cfm)
+    /**
+     * Prepared statements are shared by all clients, whose keyspaces may resolve the column family
+     * differently, so this clause is left as parsed.
+     *
+     * @return this clause if it already has key(s) or has no relation on the key alias of @param cfm,
+     * otherwise a copy of it with that relation moved from the columns to the keys.
+     */
+    public WhereClause extractKeysFromColumns(CFMetaData cfm)
     {
         ByteBuffer realKeyAlias = cfm.getKeyName();
 
         if (!keys.isEmpty())
-            return; // we already have key(s) set
-
-        Iterator<Relation> iter = columns.iterator();
+            return this; // we already have key(s) set
 
-        while (iter.hasNext())
+        for (int i = 0; i < columns.size(); i++)
         {
-            Relation relation = iter.next();
+            Relation relation = columns.get(i);
 
             ByteBuffer name = ByteBufferUtil.bytes(relation.getEntity().getText());
 
             if (name.equals(realKeyAlias))
             {
+                WhereClause extracted = new WhereClause();
+                extracted.startKey = startKey;
+                extracted.finishKey = finishKey;
+                extracted.includeStartKey = includeStartKey;
+                extracted.includeFinishKey = includeFinishKey;
+                extracted.multiKey = multiKey;
                 // setting found key as an alias
-                keyAlias = relation.getEntity().getText().toUpperCase();
-                keys.add(relation.getValue()); // add a key value to the keys list
-                iter.remove(); // removing it from the columns
-                break;
+                extracted.keyAlias = relation.getEntity().getText().toUpperCase();
+                extracted.keys.add(relation.getValue()); // add a key value to the keys list
+                // all the other relations stay columns
+                extracted.columns.addAll(columns.subList(0, i));
+                extracted.columns.addAll(columns.subList(i + 1, columns.size()));
+                return extracted;
             }
         }
+        return this;
     }
 
     public String toString()
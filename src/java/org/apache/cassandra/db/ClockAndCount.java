@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+/**
+ * The logical clock and count of one shard of a counter, as kept by the counter cache.
+ */
+public class ClockAndCount
+{
+    public static final ClockAndCount BLANK = new ClockAndCount(0L, 0L);
+
+    public final long clock;
+    public final long count;
+
+    public ClockAndCount(long clock, long count)
+    {
+        this.clock = clock;
+        this.count = count;
+    }
+
+    /** @return this shard after one more increment of @param delta, as delta shards merge by summing both */
+    public ClockAndCount increment(long delta)
+    {
+        return new ClockAndCount(clock + 1, count + delta);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof ClockAndCount))
+            return false;
+        ClockAndCount that = (ClockAndCount) o;
+        return clock == that.clock && count == that.count;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int) (clock ^ (clock >>> 32)) * 31 + (int) (count ^ (count >>> 32));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("ClockAndCount(clock=%d, count=%d)", clock, count);
+    }
+}
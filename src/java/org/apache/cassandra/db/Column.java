@@ -104,6 +104,16 @@ public class Column implements IColumn
         return timestamp;
     }
 
+    public long minTimestamp()
+    {
+        return timestamp;
+    }
+
+    public int maxLocalDeletionTime()
+    {
+        return Integer.MAX_VALUE;
+    }
+
     public boolean isMarkedForDelete()
     {
         return false;
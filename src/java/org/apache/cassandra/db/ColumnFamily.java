@@ -256,6 +256,26 @@ public class ColumnFamily extends AbstractColumnContainer
         return maxTimestamp;
     }
 
+    public long minTimestamp()
+    {
+        long minTimestamp = isMarkedForDelete() ? getMarkedForDeleteAt() : Long.MAX_VALUE;
+        for (IColumn column : columns)
+            minTimestamp = Math.min(minTimestamp, column.minTimestamp());
+        return minTimestamp;
+    }
+
+    /**
+     * @return the time (in seconds) after which everything in this row, including the row tombstone, is gcable;
+     * Integer.MAX_VALUE if it holds live data that does not expire
+     */
+    public int maxLocalDeletionTime()
+    {
+        int maxLocalDeletionTime = isMarkedForDelete() ? getLocalDeletionTime() : Integer.MIN_VALUE;
+        for (IColumn column : columns)
+            maxLocalDeletionTime = Math.max(maxLocalDeletionTime, column.maxLocalDeletionTime());
+        return maxLocalDeletionTime;
+    }
+
     @Override
     public int hashCode()
     {
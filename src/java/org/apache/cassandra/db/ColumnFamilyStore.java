@@ -30,6 +30,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 import javax.management.*;
 
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
 import org.apache.cassandra.db.compaction.LeveledManifest;
 import org.apache.cassandra.service.CacheService;
@@ -45,6 +46,7 @@ import org.apache.cassandra.config.*;
 import org.apache.cassandra.db.columniterator.IColumnIterator;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
+import org.apache.cassandra.db.context.CounterContext;
 import org.apache.cassandra.db.compaction.AbstractCompactionStrategy;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.compaction.LeveledCompactionStrategy;
@@ -59,6 +61,7 @@ import org.apache.cassandra.io.sstable.*;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.service.ValidationCache;
 import org.apache.cassandra.thrift.IndexClause;
 import org.apache.cassandra.utils.*;
 import org.apache.cassandra.utils.IntervalTree.Interval;
@@ -90,10 +93,22 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     public static final ExecutorService postFlushExecutor = new JMXEnabledThreadPoolExecutor("MemtablePostFlusher");
 
+    private static final int SPECULATION_UPDATE_INTERVAL_IN_MS = 1000;
+
     static
     {
         // (can block if flush queue fills up, so don't put on scheduledTasks)
         StorageService.optionalTasks.scheduleWithFixedDelay(new MeteredFlusher(), 1000, 1000, TimeUnit.MILLISECONDS);
+
+        Runnable speculationUpdater = new Runnable()
+        {
+            public void run()
+            {
+                for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
+                    cfs.updateSpeculationThreshold();
+            }
+        };
+        StorageService.optionalTasks.scheduleWithFixedDelay(speculationUpdater, SPECULATION_UPDATE_INTERVAL_IN_MS, SPECULATION_UPDATE_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
     }
 
     public final Table table;
@@ -114,12 +129,20 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     public final SecondaryIndexManager indexManager;
 
     private LatencyTracker readStats = new LatencyTracker();
+    // latency of the reads coordinated by this node, as seen by the client, for speculative retry
+    private final LatencyTracker coordinatorReadStats = new LatencyTracker();
     private LatencyTracker writeStats = new LatencyTracker();
 
     // counts of sstables accessed by reads
     private final EstimatedHistogram recentSSTablesPerRead = new EstimatedHistogram(35);
     private final EstimatedHistogram sstablesPerRead = new EstimatedHistogram(35);
 
+    private volatile SpeculativeRetry speculativeRetry = DatabaseDescriptor.getSpeculativeRetry();
+    // microseconds after which a read should speculate; recomputed from coordinator read latency for PERCENTILE
+    private volatile long speculationThreshold = Long.MAX_VALUE;
+    // coordinator read latency histogram as of the last threshold update, so we only consider recent reads
+    private volatile long[] lastReadLatencyHistogram;
+
     private static final int INTERN_CUTOFF = 256;
     public final ConcurrentMap<ByteBuffer, ByteBuffer> internedNames = new NonBlockingHashMap<ByteBuffer, ByteBuffer>();
 
@@ -189,6 +212,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         this.metadata = metadata;
         this.minCompactionThreshold = new DefaultInteger(metadata.getMinCompactionThreshold());
         this.maxCompactionThreshold = new DefaultInteger(metadata.getMaxCompactionThreshold());
+        updateSpeculationThreshold();
         this.partitioner = partitioner;
         this.indexManager = new SecondaryIndexManager(this);
         fileIndexGenerator.set(generation);
@@ -237,6 +261,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
            
             data.unreferenceSSTables();
             indexManager.invalidate();
+            ValidationCache.invalidate(metadata.cfId);
+            CounterMutation.invalidateCachedCounters(metadata.cfId);
         }
         catch (Exception e)
         {
@@ -396,6 +422,69 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                         columnFamily));
     }
 
+    // must be called after the commit log is replayed, since counter cache entries are read from the memtables too
+    public void initCounterCache()
+    {
+        long start = System.currentTimeMillis();
+        AutoSavingCache<CounterCacheKey, ClockAndCount> counterCache = CacheService.instance.counterCache;
+
+        int cachedCountersRead = 0;
+        for (ByteBuffer entry : counterCache.readSavedEntries(table.name, columnFamily))
+        {
+            CounterCacheKey key = CounterCacheKey.deserialize(metadata.cfId, entry);
+            QueryFilter filter = QueryFilter.getNamesFilter(partitioner.decorateKey(key.key),
+                                                            new QueryPath(columnFamily),
+                                                            key.name);
+            ColumnFamily cf = getColumnFamily(filter);
+            IColumn column = cf == null ? null : cf.getColumn(key.name);
+            if (column == null || column.isMarkedForDelete() || cf.isMarkedForDelete())
+                continue;
+
+            ClockAndCount shard = CounterContext.instance().getLocalClockAndCount(column.value());
+            if (shard != null)
+            {
+                counterCache.put(key, shard);
+                cachedCountersRead++;
+            }
+        }
+
+        if (cachedCountersRead > 0)
+            logger.info(String.format("completed loading (%d ms; %d counters) counter cache for %s.%s",
+                        System.currentTimeMillis() - start,
+                        cachedCountersRead,
+                        table.name,
+                        columnFamily));
+    }
+
+    /**
+     * Drop the counter cache entries @param cf deletes from row @param key: the local shard of a
+     * deleted counter is no longer what its next increment should build on.  Called once the deletions
+     * are in the memtable, so that an increment that misses the cache afterwards reads them.
+     */
+    public void invalidateCachedCounters(ByteBuffer key, ColumnFamily cf)
+    {
+        if (cf.isSuper())
+            return;
+
+        if (cf.isMarkedForDelete())
+        {
+            CounterMutation.invalidateCachedCounters(metadata.cfId, key);
+            return;
+        }
+
+        List<CounterCacheKey> deleted = null;
+        for (IColumn column : cf)
+        {
+            if (!column.isMarkedForDelete())
+                continue;
+            if (deleted == null)
+                deleted = new ArrayList<CounterCacheKey>();
+            deleted.add(new CounterCacheKey(metadata.cfId, key, column.name()));
+        }
+        if (deleted != null)
+            CounterMutation.invalidateCachedCounters(deleted);
+    }
+
     public AutoSavingCache<KeyCacheKey, Long> getKeyCache()
     {
         return CacheService.instance.keyCache;
@@ -891,6 +980,9 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     {
         assert sstable.getColumnFamilyName().equals(columnFamily);
         data.addSSTables(Arrays.asList(sstable));
+        // a streamed sstable may hold shards of ours we had lost (e.g. after a repair); don't build on stale ones
+        if (metadata.getDefaultValidator().isCommutative())
+            CounterMutation.invalidateCachedCounters(metadata.cfId);
         CompactionManager.instance.submitBackground(this);
     }
 
@@ -1275,72 +1367,113 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
       * @return true if we found all keys we were looking for, otherwise false
      */
     public List<Row> getRangeSlice(ByteBuffer superColumn, final AbstractBounds<RowPosition> range, int maxResults, IFilter columnFilter)
+    {
+        List<Row> rows = new ArrayList<Row>();
+        CloseableIterator<Row> iterator = getRangeSliceIterator(superColumn, range, columnFilter);
+        try
+        {
+            // pull rows out of the iterator
+            while (rows.size() < maxResults && iterator.hasNext())
+                rows.add(iterator.next());
+        }
+        finally
+        {
+            try
+            {
+                iterator.close();
+            }
+            catch (IOException e)
+            {
+                throw new IOError(e);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Like getRangeSlice, but reading the rows as they are pulled instead of collecting them.  The iterator
+     * holds references to the sstables it reads, so it must be closed.
+     */
+    public CloseableIterator<Row> getRangeSliceIterator(ByteBuffer superColumn, final AbstractBounds<RowPosition> range, IFilter columnFilter)
     {
         assert range instanceof Bounds
                || !((Range)range).isWrapAround() || range.right.isMinimum()
                : range;
 
-        RowPosition startWith = range.left;
-        RowPosition stopAt = range.right;
+        final RowPosition startWith = range.left;
+        final RowPosition stopAt = range.right;
 
         QueryFilter filter = new QueryFilter(null, new QueryPath(columnFamily, superColumn, null), columnFilter);
-        int gcBefore = (int)(System.currentTimeMillis() / 1000) - metadata.getGcGraceSeconds();
+        final int gcBefore = (int)(System.currentTimeMillis() / 1000) - metadata.getGcGraceSeconds();
 
-        List<Row> rows;
-        ViewFragment view = markReferenced(startWith, stopAt);
+        final ViewFragment view = markReferenced(startWith, stopAt);
+        final CloseableIterator<Row> iterator;
         try
         {
-            CloseableIterator<Row> iterator = RowIteratorFactory.getIterator(view.memtables, view.sstables, startWith, stopAt, filter, this);
-            rows = new ArrayList<Row>();
+            iterator = RowIteratorFactory.getIterator(view.memtables, view.sstables, startWith, stopAt, filter, this);
+        }
+        catch (RuntimeException e)
+        {
+            // release references in case getIterator() throws
+            SSTableReader.releaseReferences(view.sstables);
+            throw e;
+        }
 
-            try
+        return new RangeSliceIterator(iterator, view)
+        {
+            private boolean first = true;
+
+            protected Row computeNext()
             {
-                // pull rows out of the iterator
-                boolean first = true;
                 while (iterator.hasNext())
                 {
                     Row current = iterator.next();
                     DecoratedKey key = current.key;
 
                     if (!stopAt.isMinimum() && stopAt.compareTo(key) < 0)
-                        return rows;
+                        return endOfData();
 
                     // skip first one
-                    if (range instanceof Bounds || !first || !key.equals(startWith))
-                    {
-                        // TODO this is necessary because when we collate supercolumns together, we don't check
-                        // their subcolumns for relevance, so we need to do a second prune post facto here.
-                        rows.add(current.cf != null && current.cf.isSuper()
-                                 ? new Row(current.key, ColumnFamilyStore.removeDeleted(current.cf, gcBefore))
-                                 : current);
-                        if (logger.isDebugEnabled())
-                            logger.debug("scanned " + key);
-                    }
+                    boolean skip = !(range instanceof Bounds) && first && key.equals(startWith);
                     first = false;
+                    if (skip)
+                        continue;
 
-                    if (rows.size() >= maxResults)
-                        return rows;
+                    if (logger.isDebugEnabled())
+                        logger.debug("scanned " + key);
+                    // TODO this is necessary because when we collate supercolumns together, we don't check
+                    // their subcolumns for relevance, so we need to do a second prune post facto here.
+                    return current.cf != null && current.cf.isSuper()
+                           ? new Row(current.key, ColumnFamilyStore.removeDeleted(current.cf, gcBefore))
+                           : current;
                 }
+                return endOfData();
+            }
+        };
+    }
+
+    private static abstract class RangeSliceIterator extends AbstractIterator<Row> implements CloseableIterator<Row>
+    {
+        protected final CloseableIterator<Row> iterator;
+        private final ViewFragment view;
+
+        RangeSliceIterator(CloseableIterator<Row> iterator, ViewFragment view)
+        {
+            this.iterator = iterator;
+            this.view = view;
+        }
+
+        public void close() throws IOException
+        {
+            try
+            {
+                iterator.close();
             }
             finally
             {
-                try
-                {
-                    iterator.close();
-                }
-                catch (IOException e)
-                {
-                    throw new IOError(e);
-                }
+                SSTableReader.releaseReferences(view.sstables);
             }
         }
-        finally
-        {
-            // separate finally block to release references in case getIterator() throws
-            SSTableReader.releaseReferences(view.sstables);
-        }
-
-        return rows;
     }
 
     public List<Row> search(IndexClause clause, AbstractBounds<RowPosition> range, IFilter dataFilter)
@@ -1692,6 +1825,72 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         this.maxCompactionThreshold.set(maxCompactionThreshold);
     }
 
+    public void setSpeculativeRetry(String retry) throws ConfigurationException
+    {
+        speculativeRetry = SpeculativeRetry.fromString(retry);
+        // a percentile is only known once reads have been measured, so don't carry over the previous threshold
+        speculationThreshold = Long.MAX_VALUE;
+        updateSpeculationThreshold();
+    }
+
+    public String getSpeculativeRetry()
+    {
+        return speculativeRetry.toString();
+    }
+
+    /**
+     * @return how many microseconds a coordinator read should wait for its data replica before sending an
+     * extra data request to another replica, 0 to always do so, or Long.MAX_VALUE to never do so
+     */
+    public long getSpeculationThreshold()
+    {
+        return speculationThreshold;
+    }
+
+    /**
+     * Records the latency of a read of this column family coordinated by this node, from sending the
+     * requests to having enough responses.  Unlike the local read latency, this includes the network.
+     */
+    public void addCoordinatorReadLatency(long micros)
+    {
+        coordinatorReadStats.addMicro(micros);
+    }
+
+    private void updateSpeculationThreshold()
+    {
+        long[] histogram = coordinatorReadStats.getTotalLatencyHistogramMicros();
+        long[] last = lastReadLatencyHistogram;
+        lastReadLatencyHistogram = histogram;
+
+        SpeculativeRetry retry = speculativeRetry;
+        switch (retry.type)
+        {
+            case NONE:
+                speculationThreshold = Long.MAX_VALUE;
+                break;
+            case ALWAYS:
+                speculationThreshold = 0;
+                break;
+            case CUSTOM:
+                speculationThreshold = (long) (retry.value * 1000);
+                break;
+            case PERCENTILE:
+                if (last == null)
+                    break;
+                long[] recent = new long[histogram.length];
+                for (int i = 0; i < histogram.length; i++)
+                    recent[i] = histogram[i] - last[i];
+                long[] offsets = new EstimatedHistogram().getBucketOffsets();
+                long micros = new EstimatedHistogram(offsets, recent).percentile(retry.value / 100);
+                // no reads in the last interval: keep the previous value rather than speculating on everything
+                if (micros > 0)
+                    speculationThreshold = micros;
+                break;
+            default:
+                throw new AssertionError(retry.type);
+        }
+    }
+
     public boolean isCompactionDisabled()
     {
         return getMinimumCompactionThreshold() <= 0 || getMaximumCompactionThreshold() <= 0;
@@ -1704,6 +1903,18 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return data.estimatedKeys();
     }
 
+    /**
+     * @return an estimate of the number of keys in the given range.  Rows present in several sstables are
+     * counted once per sstable.
+     */
+    public long estimatedKeysForRange(Range<Token> range)
+    {
+        long keys = 0;
+        for (SSTableReader sstable : getSSTables())
+            keys += sstable.estimatedKeysForRanges(Collections.singleton(range));
+        return keys;
+    }
+
     public long[] getEstimatedRowSizeHistogram()
     {
         return data.getEstimatedRowSizeHistogram();
@@ -1775,9 +1986,14 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         ReplayPosition rp = ReplayPosition.getReplayPosition(sstables);
         SSTableMetadata.Collector sstableMetadataCollector = SSTableMetadata.createCollector().replayPosition(rp);
 
-        // get the max timestamp of the precompacted sstables
+        // get the min/max timestamp and max local deletion time of the precompacted sstables
+        // (echoed rows are not deserialized, so they can't report them)
         for (SSTableReader sstable : sstables)
+        {
             sstableMetadataCollector.updateMaxTimestamp(sstable.getMaxTimestamp());
+            sstableMetadataCollector.updateMinTimestamp(sstable.getMinTimestamp());
+            sstableMetadataCollector.updateMaxLocalDeletionTime(sstable.getMaxLocalDeletionTime());
+        }
 
         return new SSTableWriter(getTempSSTablePath(location), estimatedRows, metadata, partitioner, sstableMetadataCollector);
     }
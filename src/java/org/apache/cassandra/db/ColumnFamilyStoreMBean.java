@@ -206,6 +206,17 @@ public interface ColumnFamilyStoreMBean
      */
     public String getCompactionStrategyClass();
 
+    /**
+     * Sets when coordinator reads of this column family send an extra data request to another replica:
+     * NONE, ALWAYS, a percentile of recent coordinator read latency such as 99PERCENTILE, or a fixed delay such as 50ms
+     */
+    public void setSpeculativeRetry(String retry) throws ConfigurationException;
+
+    /**
+     * Gets the speculative retry setting
+     */
+    public String getSpeculativeRetry();
+
     /**
      * Disable automatic compaction.
      */
@@ -266,9 +266,9 @@ public class CounterColumn extends Column
         }
     }
 
-    public static void mergeAndRemoveOldShards(DecoratedKey key, ColumnFamily cf, int gcBefore, int mergeBefore)
+    public static ColumnFamily mergeAndRemoveOldShards(DecoratedKey key, ColumnFamily cf, int gcBefore, int mergeBefore)
     {
-        mergeAndRemoveOldShards(key, cf, gcBefore, mergeBefore, true);
+        return mergeAndRemoveOldShards(key, cf, gcBefore, mergeBefore, true);
     }
 
     /**
@@ -283,8 +283,10 @@ public class CounterColumn extends Column
      * (Note that the sendToOtherReplica flag is here only to facilitate
      * testing. It should be true in real code so use the method above
      * preferably)
+     *
+     * @return the counters whose current local shard the first phase changed, or null if there are none
      */
-    public static void mergeAndRemoveOldShards(DecoratedKey key, ColumnFamily cf, int gcBefore, int mergeBefore, boolean sendToOtherReplica)
+    public static ColumnFamily mergeAndRemoveOldShards(DecoratedKey key, ColumnFamily cf, int gcBefore, int mergeBefore, boolean sendToOtherReplica)
     {
         ColumnFamily remoteMerger = null;
         if (!cf.isSuper())
@@ -347,6 +349,7 @@ public class CounterColumn extends Column
                 logger.error("Error while sending shard merger mutation to remote endpoints", e);
             }
         }
+        return remoteMerger;
     }
 
     public IColumn markDeltaToBeCleared()
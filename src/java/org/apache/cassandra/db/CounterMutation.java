@@ -20,21 +20,32 @@ package org.apache.cassandra.db;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.util.Collection;
-import java.util.List;
-import java.util.LinkedList;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.cache.AutoSavingCache;
+import org.apache.cassandra.cache.CounterCacheKey;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.context.CounterContext;
+import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.io.IVersionedSerializer;
 import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.net.Message;
+import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.HeapAllocator;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.NodeId;
 import org.apache.cassandra.thrift.ConsistencyLevel;
 
 public class CounterMutation implements IMutation
@@ -42,9 +53,30 @@ public class CounterMutation implements IMutation
     private static final Logger logger = LoggerFactory.getLogger(CounterMutation.class);
     private static final CounterMutationSerializer serializer = new CounterMutationSerializer();
 
+    // striped locks serializing the increments of a given counter on this node, so that each one
+    // reads and updates the counter cache entry for it atomically
+    private static final Lock[] locks = new Lock[DatabaseDescriptor.getConcurrentWriters() * 128];
+    static
+    {
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new ReentrantLock();
+    }
+
+    // invalidations that drop whole rows or column families can't take the locks of every counter they
+    // drop, including those an increment is about to cache after a miss.  So they count themselves in
+    // invalidations instead, and an increment that sees the count change while it ran drops its cache
+    // updates rather than making them
+    private static final ReadWriteLock invalidationLock = new ReentrantReadWriteLock();
+    private static int invalidations;
+
     private final RowMutation rowMutation;
     private final ConsistencyLevel consistency;
 
+    // the local shards apply() gave the counters, by column family, for makeReplicationMutation
+    // to send instead of reading them back.  (apply() happens-before makeReplicationMutation,
+    // which runs in a task submitted after it.)
+    private Map<Integer, ColumnFamily> localShards;
+
     public CounterMutation(RowMutation rowMutation, ConsistencyLevel consistency)
     {
         this.rowMutation = rowMutation;
@@ -83,16 +115,21 @@ public class CounterMutation implements IMutation
 
     public RowMutation makeReplicationMutation() throws IOException
     {
+        // create a replication RowMutation
+        RowMutation replicationMutation = new RowMutation(rowMutation.getTable(), rowMutation.key());
+
         List<ReadCommand> readCommands = new LinkedList<ReadCommand>();
         for (ColumnFamily columnFamily : rowMutation.getColumnFamilies())
         {
             if (!columnFamily.metadata().getReplicateOnWrite())
                 continue;
-            addReadCommandFromColumnFamily(rowMutation.getTable(), rowMutation.key(), columnFamily, readCommands);
+            ColumnFamily shards = localShards == null ? null : localShards.get(columnFamily.id());
+            if (shards != null)
+                replicationMutation.add(shards);
+            else
+                addReadCommandFromColumnFamily(rowMutation.getTable(), rowMutation.key(), columnFamily, readCommands);
         }
 
-        // create a replication RowMutation
-        RowMutation replicationMutation = new RowMutation(rowMutation.getTable(), rowMutation.key());
         for (ReadCommand readCommand : readCommands)
         {
             Table table = Table.open(readCommand.table);
@@ -130,9 +167,154 @@ public class CounterMutation implements IMutation
 
     public void apply() throws IOException
     {
+        if (CacheService.instance.counterCache.getCapacity() == 0)
+        {
+            apply(null);
+            return;
+        }
+
+        // take the stripes in a fixed order, so that mutations sharing several can't deadlock
+        SortedSet<Integer> stripes = new TreeSet<Integer>();
+        for (ColumnFamily cf : rowMutation.getColumnFamilies())
+        {
+            if (cf.isSuper())
+                continue;
+            for (IColumn column : cf)
+                stripes.add(stripe(cf.id(), rowMutation.key(), column.name()));
+        }
+
+        for (int stripe : stripes)
+            locks[stripe].lock();
+        try
+        {
+            apply(new HashMap<Integer, ColumnFamily>());
+        }
+        finally
+        {
+            for (int stripe : stripes)
+                locks[stripe].unlock();
+        }
+    }
+
+    private static int stripe(int cfId, ByteBuffer key, ByteBuffer name)
+    {
+        return Math.abs(Objects.hashCode(cfId, key, name) % locks.length);
+    }
+
+    /**
+     * Drop the counter cache entries of @param counters, whose local shard changed on disk without going
+     * through apply(): compaction merges old shards into the current one, and deletions drop it.  Taking
+     * the counters' locks makes sure an increment that built on the old entry can't put it back afterwards.
+     */
+    public static void invalidateCachedCounters(Collection<CounterCacheKey> counters)
+    {
+        for (CounterCacheKey counter : counters)
+        {
+            Lock lock = locks[stripe(counter.cfId, counter.key, counter.name)];
+            lock.lock();
+            try
+            {
+                CacheService.instance.counterCache.remove(counter);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drop all the counter cache entries, e.g. because our node id changed.
+     */
+    public static void invalidateCachedCounters()
+    {
+        invalidateCachedCounters(null, null);
+    }
+
+    /**
+     * Drop the counter cache entries of column family @param cfId, e.g. because it was truncated.
+     */
+    public static void invalidateCachedCounters(int cfId)
+    {
+        invalidateCachedCounters(cfId, null);
+    }
+
+    /**
+     * Drop the counter cache entries of row @param key (all rows if null) of column family @param cfId
+     * (all column families if null), making sure an increment in flight can't put any of them back.
+     */
+    public static void invalidateCachedCounters(Integer cfId, ByteBuffer key)
+    {
+        invalidationLock.writeLock().lock();
+        try
+        {
+            invalidations++;
+            if (cfId == null)
+                CacheService.instance.invalidateCounterCache();
+            else if (key == null)
+                CacheService.instance.invalidateCounterCacheFor(cfId);
+            else
+                CacheService.instance.invalidateCounterCacheFor(cfId, key);
+        }
+        finally
+        {
+            invalidationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of invalidations of whole rows or column families so far.
+     * (Package-private for testing.)
+     */
+    static int invalidations()
+    {
+        invalidationLock.readLock().lock();
+        try
+        {
+            return invalidations;
+        }
+        finally
+        {
+            invalidationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Make the counter cache updates of an increment, unless the cache was invalidated since it read the
+     * counters (when the invalidation count was @param invalidationsBefore): @param updates may then build
+     * on entries that were dropped, so they are dropped too.  (Package-private for testing.)
+     */
+    static void updateCache(Map<CounterCacheKey, ClockAndCount> updates, int invalidationsBefore)
+    {
+        invalidationLock.readLock().lock();
+        try
+        {
+            boolean invalidated = invalidations != invalidationsBefore;
+            for (Map.Entry<CounterCacheKey, ClockAndCount> entry : updates.entrySet())
+            {
+                if (invalidated)
+                    CacheService.instance.counterCache.remove(entry.getKey());
+                else
+                    CacheService.instance.counterCache.put(entry.getKey(), entry.getValue());
+            }
+        }
+        finally
+        {
+            invalidationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param shards if not null, the counter cache is in use: collects the local shard of every counter of
+     * a standard column family after this mutation, so the cache can be updated and replicas sent those
+     */
+    private void apply(Map<Integer, ColumnFamily> shards) throws IOException
+    {
+        int invalidationsBefore = invalidations();
         // transform all CounterUpdateColumn to CounterColumn: accomplished by localCopy
         RowMutation rm = new RowMutation(rowMutation.getTable(), ByteBufferUtil.clone(rowMutation.key()));
         Table table = Table.open(rm.getTable());
+        Map<CounterCacheKey, ClockAndCount> cacheUpdates = new HashMap<CounterCacheKey, ClockAndCount>();
 
         for (ColumnFamily cf_ : rowMutation.getColumnFamilies())
         {
@@ -143,8 +325,97 @@ public class CounterMutation implements IMutation
                 cf.addColumn(column.localCopy(cfs), HeapAllocator.instance);
             }
             rm.add(cf);
+
+            if (shards != null && !cf_.isSuper())
+            {
+                ColumnFamily cfShards = computeLocalShards(cfs, cf_, cacheUpdates);
+                if (cfShards != null)
+                    shards.put(cf.id(), cfShards);
+            }
         }
         rm.apply();
+
+        updateCache(cacheUpdates, invalidationsBefore);
+        localShards = shards;
+    }
+
+    /**
+     * Compute the local shard each counter of @param cf will have once this mutation is applied, from its
+     * cached shard or, on a cache miss, from reading it.  The new shards are added to @param cacheUpdates.
+     *
+     * @return the new shards, or null if some of them couldn't be computed (or the column family isn't
+     * replicated on write), in which case makeReplicationMutation reads the counters instead
+     */
+    private ColumnFamily computeLocalShards(ColumnFamilyStore cfs, ColumnFamily cf, Map<CounterCacheKey, ClockAndCount> cacheUpdates) throws IOException
+    {
+        AutoSavingCache<CounterCacheKey, ClockAndCount> counterCache = CacheService.instance.counterCache;
+        ByteBuffer key = ByteBufferUtil.clone(rowMutation.key());
+        if (cf.isMarkedForDelete())
+            return null; // Table.apply invalidates the row's counters
+
+        Map<ByteBuffer, ClockAndCount> current = new HashMap<ByteBuffer, ClockAndCount>();
+        SortedSet<ByteBuffer> misses = new TreeSet<ByteBuffer>(cf.getComparator());
+        boolean complete = true;
+        for (IColumn column : cf)
+        {
+            if (!(column instanceof CounterUpdateColumn))
+            {
+                complete = false; // a deletion; Table.apply invalidates it
+                continue;
+            }
+            ClockAndCount cached = counterCache.get(new CounterCacheKey(cf.id(), key, column.name()));
+            if (cached == null)
+                misses.add(column.name());
+            else
+                current.put(column.name(), cached);
+        }
+        if (!misses.isEmpty())
+            readLocalShards(cfs, key, misses, current);
+
+        ColumnFamily cfShards = cf.cloneMeShallow();
+        for (IColumn column : cf)
+        {
+            ClockAndCount shard = current.get(column.name());
+            if (shard == null)
+            {
+                complete = false;
+                continue;
+            }
+
+            shard = shard.increment(((CounterUpdateColumn) column).delta());
+            ByteBuffer name = ByteBufferUtil.clone(column.name());
+            cacheUpdates.put(new CounterCacheKey(cf.id(), key, name), shard);
+            ByteBuffer context = CounterContext.instance().create(NodeId.getLocalId(), shard.clock, shard.count, false);
+            cfShards.addColumn(new CounterColumn(name, context, column.timestamp()));
+        }
+        return complete && cf.metadata().getReplicateOnWrite() ? cfShards : null;
+    }
+
+    /**
+     * Read the local shards of counters @param names of row @param key into @param shards.  Counters that
+     * are deleted, or whose local shard isn't a delta, are left out.
+     */
+    private static void readLocalShards(ColumnFamilyStore cfs, ByteBuffer key, SortedSet<ByteBuffer> names, Map<ByteBuffer, ClockAndCount> shards)
+    {
+        DecoratedKey<?> dk = StorageService.getPartitioner().decorateKey(key);
+        ColumnFamily cf = cfs.getColumnFamily(QueryFilter.getNamesFilter(dk, new QueryPath(cfs.columnFamily), names));
+        if (cf != null && cf.isMarkedForDelete())
+            return;
+
+        for (ByteBuffer name : names)
+        {
+            IColumn column = cf == null ? null : cf.getColumn(name);
+            if (column == null)
+            {
+                shards.put(name, ClockAndCount.BLANK);
+            }
+            else if (column instanceof CounterColumn && !column.isMarkedForDelete())
+            {
+                ClockAndCount shard = CounterContext.instance().getLocalClockAndCount(column.value());
+                if (shard != null)
+                    shards.put(name, shard);
+            }
+        }
     }
 
     @Override
@@ -85,6 +85,11 @@ public class DataTracker
         return view.get().nonCompactingSStables();
     }
 
+    public Set<SSTableReader> getCompacting()
+    {
+        return view.get().compacting;
+    }
+
     public View getView()
     {
         return view.get();
@@ -50,6 +50,12 @@ public class DeletedColumn extends Column
         return timestamp;
     }
 
+    @Override
+    public int maxLocalDeletionTime()
+    {
+        return getLocalDeletionTime();
+    }
+
     @Override
     public int getLocalDeletionTime()
     {
@@ -74,4 +74,14 @@ public class EchoedRow extends AbstractCompactedRow
     {
         return Long.MIN_VALUE;
     }
+
+    public long minTimestamp()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    public int maxLocalDeletionTime()
+    {
+        return Integer.MIN_VALUE;
+    }
 }
@@ -117,6 +117,12 @@ public class ExpiringColumn extends Column
         return localExpirationTime;
     }
 
+    @Override
+    public int maxLocalDeletionTime()
+    {
+        return localExpirationTime;
+    }
+
     @Override
     public IColumn localCopy(ColumnFamilyStore cfs)
     {
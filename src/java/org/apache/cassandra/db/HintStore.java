@@ -0,0 +1,465 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import com.google.common.collect.AbstractIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.Hex;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+/**
+ * Hints waiting to be delivered, kept in append-only files outside of the system table.
+ *
+ * Each target endpoint has its own files, named <hex endpoint address>-<id>.hints, where ids
+ * increase so that files can be replayed in the order they were written.  A file is written to
+ * until it is rolled over for delivery, after which it is only ever read and then deleted whole.
+ *
+ * Each hint is stored as
+ *
+ *   int: size of the serialized mutation
+ *   long: creation time (milliseconds)
+ *   int: ttl (seconds)
+ *   int: mutation serialization version
+ *   byte[size]: serialized mutation
+ *   long: CRC32 of all of the above
+ *
+ * A file that ends in a partial or corrupt hint (because we crashed mid-write) is read up to
+ * the last good one.
+ *
+ * Like the periodic commit log, hints are fsynced every hints_sync_period_in_ms (see sync), and
+ * also whenever SYNC_THRESHOLD bytes have been appended to a file since it was last synced.
+ */
+public class HintStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(HintStore.class);
+
+    public static final String EXTENSION = ".hints";
+
+    // size, creation time, ttl and version ahead of the mutation, and the checksum after it
+    private static final int OVERHEAD = 4 + 8 + 4 + 4 + 8;
+
+    // bytes appended to a file after which it is synced without waiting for the next sync()
+    static final int SYNC_THRESHOLD = 1024 * 1024;
+
+    public static final HintStore instance = new HintStore(new File(DatabaseDescriptor.getHintsLocation()));
+
+    private final File directory;
+    private final ConcurrentMap<InetAddress, Writer> writers = new NonBlockingHashMap<InetAddress, Writer>();
+    private final AtomicLong lastId = new AtomicLong();
+
+    public HintStore(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Append a hint for @param mutation, to be delivered to @param target.
+     */
+    public void append(InetAddress target, RowMutation mutation) throws IOException
+    {
+        append(target, mutation, System.currentTimeMillis());
+    }
+
+    public void append(InetAddress target, RowMutation mutation, long createdAt) throws IOException
+    {
+        // the hint must not outlive the smallest gc_grace of the CFs it touches,
+        // so that its delivery can't resurrect data a tombstone has since removed
+        int ttl = Integer.MAX_VALUE;
+        for (ColumnFamily cf : mutation.getColumnFamilies())
+            ttl = Math.min(ttl, cf.metadata().getGcGraceSeconds());
+
+        byte[] record = serialize(createdAt, ttl, MessagingService.version_, mutation.getSerializedBuffer(MessagingService.version_));
+        getWriter(target).write(target, record);
+    }
+
+    /**
+     * Close the file currently being appended to for @param target, so that new hints go to a new file.
+     * @return all the (now read-only) hint files for target, oldest first
+     */
+    public List<File> rollover(InetAddress target) throws IOException
+    {
+        // anything appended from here on goes to a file with a larger id, which we leave alone
+        long lastClosed = getWriter(target).close();
+        List<File> files = new ArrayList<File>();
+        for (File file : files(target))
+        {
+            if (idOf(file) <= lastClosed)
+                files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * fsync the file being appended to for each endpoint, if anything was appended since it last was.
+     */
+    public void sync() throws IOException
+    {
+        for (Writer writer : writers.values())
+            writer.sync();
+    }
+
+    /**
+     * Remove all hints for @param target, including any being appended to.
+     */
+    public void delete(InetAddress target) throws IOException
+    {
+        for (File file : rollover(target))
+        {
+            // a delivery may have deleted it since
+            if (file.exists())
+                FileUtils.deleteWithConfirm(file);
+        }
+    }
+
+    public boolean hasHints(InetAddress target)
+    {
+        return !files(target).isEmpty();
+    }
+
+    /**
+     * @return the endpoints we have hint files for
+     */
+    public Set<InetAddress> endpoints()
+    {
+        Set<InetAddress> endpoints = new HashSet<InetAddress>();
+        File[] files = directory.listFiles();
+        if (files == null)
+            return endpoints;
+
+        for (File file : files)
+        {
+            InetAddress endpoint = endpointOf(file);
+            if (endpoint != null)
+                endpoints.add(endpoint);
+        }
+        return endpoints;
+    }
+
+    /**
+     * @return the number of readable hints stored for @param target.  This reads every file, so it is not cheap.
+     */
+    public int count(InetAddress target) throws IOException
+    {
+        int count = 0;
+        Writer writer = writers.get(target);
+        for (File file : files(target))
+        {
+            // the file being appended to is only read up to its last complete hint
+            long length = writer == null ? -1 : writer.lengthOf(file);
+            Reader reader = length < 0 ? new Reader(file) : new Reader(file, length);
+            try
+            {
+                while (reader.hasNext())
+                {
+                    reader.next();
+                    count++;
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        return count;
+    }
+
+    /** @return the hint files for @param target, oldest first */
+    public List<File> files(InetAddress target)
+    {
+        final String prefix = prefix(target);
+        File[] files = directory.listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.startsWith(prefix) && name.endsWith(EXTENSION);
+            }
+        });
+        if (files == null)
+            return Collections.emptyList();
+
+        List<File> sorted = Arrays.asList(files);
+        Collections.sort(sorted, new Comparator<File>()
+        {
+            public int compare(File f1, File f2)
+            {
+                long id1 = idOf(f1), id2 = idOf(f2);
+                return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+            }
+        });
+        return sorted;
+    }
+
+    private Writer getWriter(InetAddress target)
+    {
+        Writer writer = writers.get(target);
+        if (writer == null)
+        {
+            Writer newWriter = new Writer();
+            writer = writers.putIfAbsent(target, newWriter);
+            if (writer == null)
+                writer = newWriter;
+        }
+        return writer;
+    }
+
+    private File newFile(InetAddress target)
+    {
+        // ids are timestamps, bumped where needed so they never repeat
+        long id;
+        while (true)
+        {
+            long last = lastId.get();
+            id = Math.max(System.currentTimeMillis(), last + 1);
+            if (lastId.compareAndSet(last, id))
+                break;
+        }
+        return new File(directory, prefix(target) + id + EXTENSION);
+    }
+
+    private static String prefix(InetAddress endpoint)
+    {
+        return Hex.bytesToHex(endpoint.getAddress()) + "-";
+    }
+
+    private static InetAddress endpointOf(File file)
+    {
+        String name = file.getName();
+        int i = name.indexOf('-');
+        if (i <= 0 || !name.endsWith(EXTENSION))
+            return null;
+        try
+        {
+            return InetAddress.getByAddress(Hex.hexToBytes(name.substring(0, i)));
+        }
+        catch (Exception e)
+        {
+            logger.warn("Ignoring unrecognized file {} in hints directory", file);
+            return null;
+        }
+    }
+
+    private static long idOf(File file)
+    {
+        String name = file.getName();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - EXTENSION.length()));
+    }
+
+    static byte[] serialize(long createdAt, int ttl, int version, byte[] mutation) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(mutation.length + OVERHEAD);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(mutation.length);
+        out.writeLong(createdAt);
+        out.writeInt(ttl);
+        out.writeInt(version);
+        out.write(mutation);
+        out.writeLong(checksum(createdAt, ttl, version, mutation));
+        return bytes.toByteArray();
+    }
+
+    private static long checksum(long createdAt, int ttl, int version, byte[] mutation)
+    {
+        ByteBuffer header = ByteBuffer.allocate(OVERHEAD - 8);
+        header.putInt(mutation.length).putLong(createdAt).putInt(ttl).putInt(version);
+
+        CRC32 checksum = new CRC32();
+        checksum.update(header.array());
+        checksum.update(mutation);
+        return checksum.getValue();
+    }
+
+    private class Writer
+    {
+        private File file;
+        private FileOutputStream fos;
+        private OutputStream out;
+        // bytes appended to file, and how many of them since it was last synced
+        private long length;
+        private long unsynced;
+
+        public synchronized void write(InetAddress target, byte[] record) throws IOException
+        {
+            if (out == null)
+            {
+                file = newFile(target);
+                fos = new FileOutputStream(file);
+                out = new BufferedOutputStream(fos);
+                length = 0;
+                unsynced = 0;
+            }
+            out.write(record);
+            // make the hint visible to readers (and survive a process crash) without paying for an fsync each time
+            out.flush();
+            length += record.length;
+            unsynced += record.length;
+            if (unsynced >= SYNC_THRESHOLD)
+                syncInternal();
+        }
+
+        public synchronized void sync() throws IOException
+        {
+            if (out != null && unsynced > 0)
+                syncInternal();
+        }
+
+        private void syncInternal() throws IOException
+        {
+            fos.getFD().sync();
+            unsynced = 0;
+        }
+
+        /**
+         * @return the number of bytes written to @param file, if this writer is appending to it, or -1
+         */
+        public synchronized long lengthOf(File file)
+        {
+            return out != null && file.equals(this.file) ? length : -1;
+        }
+
+        /**
+         * @return an id at least as large as that of any file this writer has created
+         */
+        public synchronized long close() throws IOException
+        {
+            if (out != null)
+            {
+                out.flush();
+                fos.getFD().sync();
+                out.close();
+                out = null;
+                fos = null;
+                logger.debug("Closed hint file {}", file);
+            }
+            return lastId.get();
+        }
+    }
+
+    public static class Hint
+    {
+        public final long createdAt;
+        public final int ttl;
+        public final int version;
+        public final byte[] mutation;
+
+        public Hint(long createdAt, int ttl, int version, byte[] mutation)
+        {
+            this.createdAt = createdAt;
+            this.ttl = ttl;
+            this.version = version;
+            this.mutation = mutation;
+        }
+
+        /** @return the size of this hint in its file */
+        public int size()
+        {
+            return mutation.length + OVERHEAD;
+        }
+
+        public boolean isExpired(long now)
+        {
+            return createdAt + ttl * 1000L < now;
+        }
+
+        public RowMutation getMutation() throws IOException
+        {
+            return RowMutation.serializer().deserialize(new DataInputStream(new ByteArrayInputStream(mutation)), version);
+        }
+    }
+
+    /**
+     * Reads the hints in a file sequentially, stopping at the end of the file or at the first incomplete
+     * or corrupt hint.
+     */
+    public static class Reader extends AbstractIterator<Hint> implements Closeable
+    {
+        private final File file;
+        private final DataInputStream in;
+        private long remaining;
+
+        public Reader(File file) throws IOException
+        {
+            this(file, file.length());
+        }
+
+        /**
+         * Read only the first @param length bytes of @param file, e.g. those known to hold complete hints.
+         */
+        public Reader(File file, long length) throws IOException
+        {
+            this.file = file;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            this.remaining = length;
+        }
+
+        protected Hint computeNext()
+        {
+            try
+            {
+                if (remaining == 0)
+                    return endOfData();
+                if (remaining < OVERHEAD)
+                    return corrupt();
+
+                int size = in.readInt();
+                if (size < 0 || size > remaining - OVERHEAD)
+                    return corrupt();
+                long createdAt = in.readLong();
+                int ttl = in.readInt();
+                int version = in.readInt();
+                byte[] mutation = new byte[size];
+                in.readFully(mutation);
+                if (in.readLong() != checksum(createdAt, ttl, version, mutation))
+                    return corrupt();
+                remaining -= size + OVERHEAD;
+                return new Hint(createdAt, ttl, version, mutation);
+            }
+            catch (EOFException e)
+            {
+                return corrupt();
+            }
+            catch (IOException e)
+            {
+                throw new IOError(e);
+            }
+        }
+
+        private Hint corrupt()
+        {
+            logger.warn("Ignoring incomplete or corrupt hints at the end of {}", file);
+            return endOfData();
+        }
+
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
@@ -19,15 +19,19 @@
 package org.apache.cassandra.db;
 
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
@@ -36,46 +40,38 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutor;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.config.DatabaseDescriptor;
-import org.apache.cassandra.db.compaction.CompactionManager;
-import org.apache.cassandra.db.filter.IFilter;
 import org.apache.cassandra.db.filter.NamesQueryFilter;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.filter.QueryPath;
-import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.gms.ApplicationState;
 import org.apache.cassandra.gms.FailureDetector;
 import org.apache.cassandra.gms.Gossiper;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.locator.TokenMetadata;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.*;
-import org.apache.cassandra.thrift.*;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Throttle;
 import org.apache.cassandra.utils.WrappedRunnable;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 
 
 
 /**
- * For each endpoint for which we have hints, there is a row in the system hints CF.
- * The key for this row is ByteBuffer.wrap(string), i.e. "127.0.0.1".
- * (We have to use String keys for compatibility with OPP.)
- * SuperColumns in these rows are the mutations to replay, with uuid names:
+ * Hints are kept in per-endpoint append-only files by HintStore, outside of the system table,
+ * so that storing and replaying them doesn't cost any flushing, compaction or tombstones.
  *
- *  <dest token>: {           // key
- *    <uuid>: {               // supercolumn
- *      mutation: <mutation>  // subcolumn
- *      version: <mutation serialization version>
- *      table: <table of hinted mutation>
- *      key: <key of hinted mutation>
- *    }
- *  }
- *
- * When FailureDetector signals that a node that was down is back up, we page through
- * the hinted mutations and send them over one at a time, waiting for
- * hinted_handoff_throttle_delay in between each.
+ * When FailureDetector signals that a node that was down is back up, we roll over its hint files
+ * and replay them in the order they were written, keeping up to MAX_IN_FLIGHT mutations
+ * outstanding.  Up to max_hints_delivery_threads endpoints are delivered to at once, sharing
+ * hinted_handoff_throttle_in_kb between them.  A file is deleted as soon as all of it has been
+ * delivered; if the target times out, the file is kept and delivered again (in full) next time.
  *
  * deliverHints is also exposed to JMX so it can be run manually if FD ever misses
  * its cue somehow.
@@ -84,11 +80,14 @@ import org.cliffc.high_scale_lib.NonBlockingHashSet;
 public class HintedHandOffManager implements HintedHandOffManagerMBean
 {
     public static final HintedHandOffManager instance = new HintedHandOffManager();
+
+    /** hints were kept in this system CF before HintStore; it is only read to migrate them */
     public static final String HINTS_CF = "HintsColumnFamily";
 
     private static final Logger logger_ = LoggerFactory.getLogger(HintedHandOffManager.class);
     private static final int PAGE_SIZE = 1024;
-    private static final int LARGE_NUMBER = 65536; // 64k nodes ought to be enough for anybody.
+    // (package-private for testing)
+    static final int MAX_IN_FLIGHT = 128;
 
     // in 0.8, subcolumns were KS-CF bytestrings, and the data was stored in the "normal" storage there.
     // (so replay always consisted of sending an entire row,
@@ -97,7 +96,17 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     private final NonBlockingHashSet<InetAddress> queuedDeliveries = new NonBlockingHashSet<InetAddress>();
 
-    private final ExecutorService executor_ = new JMXEnabledThreadPoolExecutor("HintedHandoff", Thread.MIN_PRIORITY);
+    private final ExecutorService executor_ = new JMXEnabledThreadPoolExecutor(DatabaseDescriptor.getMaxHintsDeliveryThreads(),
+                                                                               Integer.MAX_VALUE,
+                                                                               TimeUnit.SECONDS,
+                                                                               new LinkedBlockingQueue<Runnable>(),
+                                                                               new NamedThreadFactory("HintedHandoff", Thread.MIN_PRIORITY),
+                                                                               "internal");
+
+    private final ConcurrentMap<InetAddress, Delivery> deliveries = new NonBlockingHashMap<InetAddress, Delivery>();
+    private final AtomicLong hintsDelivered = new AtomicLong();
+    // whether the legacy hints CF still holds hints for tokens that had no endpoint last we looked
+    private volatile boolean legacyHintsLeft;
 
     public void start()
     {
@@ -112,6 +121,15 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         }
         logger_.debug("Created HHOM instance, registered MBean.");
 
+        try
+        {
+            migrateLegacyHints();
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+
         Runnable runnable = new Runnable()
         {
             public void run()
@@ -120,29 +138,130 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
             }
         };
         StorageService.optionalTasks.scheduleWithFixedDelay(runnable, 10, 10, TimeUnit.MINUTES);
+
+        Runnable sync = new WrappedRunnable()
+        {
+            public void runMayThrow() throws Exception
+            {
+                HintStore.instance.sync();
+            }
+        };
+        int period = DatabaseDescriptor.getHintsSyncPeriod();
+        StorageService.optionalTasks.scheduleWithFixedDelay(sync, period, period, TimeUnit.MILLISECONDS);
     }
 
-    private static void sendMutation(InetAddress endpoint, RowMutation mutation) throws TimeoutException
+    /**
+     * Move any hints left in the system hints CF by an older version into the HintStore, then truncate the CF.
+     * The rows there are keyed by the target's token.  Rows whose token has no endpoint yet (e.g. because
+     * its node hasn't rejoined the ring) are kept, and migrated by a later scheduleAllDeliveries; the CF
+     * is only truncated once none are left.  (Package-private for testing.)
+     */
+    void migrateLegacyHints() throws Exception
     {
-        IWriteResponseHandler responseHandler = WriteResponseHandler.create(endpoint);
-        MessagingService.instance().sendRR(mutation, endpoint, responseHandler);
-        responseHandler.get();
+        ColumnFamilyStore hintsCfs = Table.open(Table.SYSTEM_TABLE).getColumnFamilyStore(HINTS_CF);
+        if (hintsCfs.isEmpty())
+            return;
 
-        try
+        logger_.info("Migrating hints from the system table to {}", DatabaseDescriptor.getHintsLocation());
+        RowPosition minPos = StorageService.getPartitioner().getMinimumToken().minKeyBound();
+        Range<RowPosition> range = new Range<RowPosition>(minPos, minPos);
+        NamesQueryFilter keysOnly = new NamesQueryFilter(ImmutableSortedSet.<ByteBuffer>of());
+        int migrated = 0, dropped = 0, kept = 0;
+        for (Row row : hintsCfs.getRangeSlice(null, range, Integer.MAX_VALUE, keysOnly))
+        {
+            Token<?> token = StorageService.getPartitioner().getTokenFactory().fromByteArray(row.key.key);
+            InetAddress target = StorageService.instance.getTokenMetadata().getEndpoint(token);
+            if (target == null)
+            {
+                kept++;
+                continue;
+            }
+            ByteBuffer startColumn = ByteBufferUtil.EMPTY_BYTE_BUFFER;
+
+            while (true)
+            {
+                QueryFilter filter = QueryFilter.getSliceFilter(row.key, new QueryPath(HINTS_CF), startColumn, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, PAGE_SIZE);
+                ColumnFamily hintsPage = ColumnFamilyStore.removeDeleted(hintsCfs.getColumnFamily(filter), Integer.MAX_VALUE);
+                if (pagingFinished(hintsPage, startColumn))
+                    break;
+
+                for (IColumn hint : hintsPage.getSortedColumns())
+                {
+                    if (hint.name().equals(startColumn))
+                        continue;
+                    startColumn = hint.name();
+
+                    IColumn versionColumn = hint.getSubColumn(ByteBufferUtil.bytes("version"));
+                    IColumn mutationColumn = hint.getSubColumn(ByteBufferUtil.bytes("mutation"));
+                    if (versionColumn == null || mutationColumn == null || isHint08(hint))
+                    {
+                        dropped++;
+                        continue;
+                    }
+
+                    DataInputStream in = new DataInputStream(ByteBufferUtil.inputStream(mutationColumn.value()));
+                    try
+                    {
+                        RowMutation rm = RowMutation.serializer().deserialize(in, ByteBufferUtil.toInt(versionColumn.value()));
+                        HintStore.instance.append(target, rm, mutationColumn.timestamp());
+                        migrated++;
+                    }
+                    catch (UnserializableColumnFamilyException e)
+                    {
+                        dropped++;
+                    }
+                }
+            }
+
+            // so that the next migration doesn't copy the row again
+            RowMutation rm = new RowMutation(Table.SYSTEM_TABLE, row.key.key);
+            rm.delete(new QueryPath(HINTS_CF), FBUtilities.timestampMicros());
+            rm.apply();
+        }
+
+        legacyHintsLeft = kept > 0;
+        if (legacyHintsLeft)
         {
-            Thread.sleep(DatabaseDescriptor.getHintedHandoffThrottleDelay());
+            logger_.info(String.format("Migrated %d hints from the system table; dropped %d for unknown column families; "
+                                       + "kept those of %d tokens not in the ring until they are",
+                                       migrated, dropped, kept));
         }
-        catch (InterruptedException e)
+        else
         {
-            throw new AssertionError(e);
+            hintsCfs.truncate().get();
+            logger_.info(String.format("Migrated %d hints from the system table; dropped %d for unknown column families",
+                                       migrated, dropped));
         }
     }
 
-    private static void deleteHint(ByteBuffer tokenBytes, ByteBuffer hintId, long timestamp) throws IOException
+    private static boolean isHint08(IColumn hint) throws IOException
     {
-        RowMutation rm = new RowMutation(Table.SYSTEM_TABLE, tokenBytes);
-        rm.delete(new QueryPath(HINTS_CF, hintId), timestamp);
-        rm.applyUnsafe(); // don't bother with commitlog since we're going to flush as soon as we're done with delivery
+        for (IColumn subColumn : hint.getSubColumns())
+        {
+            // both 0.8 and 1.0 column names are UTF8 strings, so this check is safe
+            if (ByteBufferUtil.string(subColumn.name()).contains(SEPARATOR_08))
+                return true;
+        }
+        return false;
+    }
+
+    private static IWriteResponseHandler sendMutation(InetAddress endpoint, RowMutation mutation) throws IOException
+    {
+        IWriteResponseHandler responseHandler = WriteResponseHandler.create(endpoint);
+        MessagingService.instance().sendRR(mutation, endpoint, responseHandler);
+
+        if (DatabaseDescriptor.getHintedHandoffThrottleDelay() > 0)
+        {
+            try
+            {
+                Thread.sleep(DatabaseDescriptor.getHintedHandoffThrottleDelay());
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+        return responseHandler;
     }
 
     public void deleteHintsForEndpoint(final String ipOrHostname)
@@ -162,14 +281,6 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     public void deleteHintsForEndpoint(final InetAddress endpoint)
     {
-        if (!StorageService.instance.getTokenMetadata().isMember(endpoint))
-            return;
-        Token<?> token = StorageService.instance.getTokenMetadata().getToken(endpoint);
-        ByteBuffer tokenBytes = StorageService.getPartitioner().getTokenFactory().toByteArray(token);
-        final ColumnFamilyStore hintStore = Table.open(Table.SYSTEM_TABLE).getColumnFamilyStore(HINTS_CF);
-        final RowMutation rm = new RowMutation(Table.SYSTEM_TABLE, tokenBytes);
-        rm.delete(new QueryPath(HINTS_CF), System.currentTimeMillis());
-
         // execute asynchronously to avoid blocking caller (which may be processing gossip)
         Runnable runnable = new Runnable()
         {
@@ -178,9 +289,7 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                 try
                 {
                     logger_.info("Deleting any stored hints for " + endpoint);
-                    rm.apply();
-                    hintStore.forceFlush();
-                    CompactionManager.instance.submitMaximal(hintStore, Integer.MAX_VALUE);
+                    HintStore.instance.delete(endpoint);
                 }
                 catch (Exception e)
                 {
@@ -226,12 +335,11 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         return waited;
     }
 
-    private void deliverHintsToEndpoint(InetAddress endpoint) throws IOException, DigestMismatchException, InvalidRequestException, TimeoutException, InterruptedException
+    private void deliverHintsToEndpoint(InetAddress endpoint) throws IOException, InterruptedException
     {
-        ColumnFamilyStore hintStore = Table.open(Table.SYSTEM_TABLE).getColumnFamilyStore(HINTS_CF);
         try
         {
-            if (hintStore.isEmpty())
+            if (!HintStore.instance.hasHints(endpoint))
                 return; // nothing to do, don't confuse users by logging a no-op handoff
 
             logger_.debug("Checking remote({}) schema before delivering hints", endpoint);
@@ -256,104 +364,163 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
             queuedDeliveries.remove(endpoint);
         }
 
-        // 1. Get the key of the endpoint we need to handoff
-        // 2. For each column, deserialize the mutation and send it to the endpoint
-        // 3. Delete the subcolumn if the write was successful
-        // 4. Force a flush
-        // 5. Do major compaction to clean up all deletes etc.
-
-        // find the hints for the node using its token.
-        Token<?> token = StorageService.instance.getTokenMetadata().getToken(endpoint);
-        logger_.info("Started hinted handoff for token: {} with IP: {}", token, endpoint);
-        ByteBuffer tokenBytes = StorageService.getPartitioner().getTokenFactory().toByteArray(token);
-        DecoratedKey<?> epkey =  StorageService.getPartitioner().decorateKey(tokenBytes);
-        int rowsReplayed = 0;
-        ByteBuffer startColumn = ByteBufferUtil.EMPTY_BYTE_BUFFER;
-
-        delivery:
-        while (true)
+        replayHints(endpoint);
+    }
+
+    /**
+     * Replay the hints of @param endpoint, once we know it's up and agrees with our schema.
+     * (Package-private for testing.)
+     */
+    void replayHints(InetAddress endpoint) throws IOException
+    {
+        // with several delivery threads, make sure only one of them replays the endpoint's files
+        Delivery delivery = new Delivery();
+        if (deliveries.putIfAbsent(endpoint, delivery) != null)
         {
-            QueryFilter filter = QueryFilter.getSliceFilter(epkey, new QueryPath(HINTS_CF), startColumn, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, PAGE_SIZE);
-            ColumnFamily hintsPage = ColumnFamilyStore.removeDeleted(hintStore.getColumnFamily(filter), Integer.MAX_VALUE);
-            if (pagingFinished(hintsPage, startColumn))
-                break;
+            logger_.debug("Hints are already being delivered to {}", endpoint);
+            return;
+        }
 
-            page:
-            for (IColumn hint : hintsPage.getSortedColumns())
+        Throttle throttle = new Throttle("HintedHandoff(" + endpoint + ")", new Throttle.ThroughputFunction()
+        {
+            /** @return Instantaneous throughput target in bytes per millisecond. */
+            public int targetThroughput()
             {
-                startColumn = hint.name();
-                for (IColumn subColumn : hint.getSubColumns())
+                return HintedHandOffManager.targetThroughput(DatabaseDescriptor.getHintedHandoffThrottleInKB(), deliveries.size());
+            }
+        });
+
+        try
+        {
+            logger_.info("Started hinted handoff for {}", endpoint);
+            List<File> files = HintStore.instance.rollover(endpoint);
+            for (File file : files)
+                delivery.totalBytes += file.length();
+
+            for (File file : files)
+            {
+                if (!deliverHintFile(endpoint, file, delivery, throttle))
                 {
-                    // both 0.8 and 1.0 column names are UTF8 strings, so this check is safe
-                    if (ByteBufferUtil.string(subColumn.name()).contains(SEPARATOR_08))
-                    {
-                        logger_.debug("0.8-style hint found.  This should have been taken care of by purgeIncompatibleHints");
-                        deleteHint(tokenBytes, hint.name(), hint.maxTimestamp());
-                        continue page;
-                    }
+                    logger_.info(String.format("Timed out replaying hints to %s; aborting further deliveries", endpoint));
+                    break;
                 }
+                // (unless deleteHintsForEndpoint beat us to it)
+                if (file.exists())
+                    FileUtils.deleteWithConfirm(file);
+            }
+        }
+        finally
+        {
+            deliveries.remove(endpoint);
+        }
 
-                IColumn versionColumn = hint.getSubColumn(ByteBufferUtil.bytes("version"));
-                IColumn tableColumn = hint.getSubColumn(ByteBufferUtil.bytes("table"));
-                IColumn keyColumn = hint.getSubColumn(ByteBufferUtil.bytes("key"));
-                IColumn mutationColumn = hint.getSubColumn(ByteBufferUtil.bytes("mutation"));
-                assert versionColumn != null;
-                assert tableColumn != null;
-                assert keyColumn != null;
-                assert mutationColumn != null;
-                DataInputStream in = new DataInputStream(ByteBufferUtil.inputStream(mutationColumn.value()));
-                RowMutation rm = RowMutation.serializer().deserialize(in, ByteBufferUtil.toInt(versionColumn.value()));
+        logger_.info(String.format("Finished hinted handoff of %s rows to endpoint %s in %d ms",
+                                   delivery.hints, endpoint, System.currentTimeMillis() - delivery.startedAt));
+    }
+
+    /**
+     * Send every live hint in @param file to @param endpoint, keeping at most MAX_IN_FLIGHT unacknowledged.
+     * @return false if the endpoint timed out
+     */
+    private boolean deliverHintFile(InetAddress endpoint, File file, Delivery delivery, Throttle throttle) throws IOException
+    {
+        Queue<IWriteResponseHandler> inFlight = new ArrayDeque<IWriteResponseHandler>(MAX_IN_FLIGHT);
+        HintStore.Reader reader = new HintStore.Reader(file);
+        try
+        {
+            long now = System.currentTimeMillis();
+            while (reader.hasNext())
+            {
+                HintStore.Hint hint = reader.next();
+                delivery.bytes += hint.size();
+                if (hint.isExpired(now))
+                    continue;
 
+                RowMutation rm;
                 try
                 {
-                    sendMutation(endpoint, rm);
-                    deleteHint(tokenBytes, hint.name(), hint.maxTimestamp());
-                    rowsReplayed++;
+                    rm = hint.getMutation();
                 }
-                catch (TimeoutException e)
+                catch (UnserializableColumnFamilyException e)
                 {
-                    logger_.info(String.format("Timed out replaying hints to %s; aborting further deliveries", endpoint));
-                    break delivery;
+                    logger_.debug("Skipping hint for dropped column family {}", e.cfId);
+                    continue;
                 }
+
+                if (inFlight.size() == MAX_IN_FLIGHT)
+                    awaitAck(inFlight.remove(), delivery);
+                inFlight.add(sendMutation(endpoint, rm));
+                throttle.throttleDelta(hint.size());
             }
-        }
 
-        if (rowsReplayed > 0)
+            while (!inFlight.isEmpty())
+                awaitAck(inFlight.remove(), delivery);
+            return true;
+        }
+        catch (TimeoutException e)
         {
-            hintStore.forceFlush();
-            try
-            {
-                CompactionManager.instance.submitMaximal(hintStore, Integer.MAX_VALUE).get();
-            }
-            catch (Exception e)
-            {
-                throw new RuntimeException(e);
-            }
+            return false;
         }
+        finally
+        {
+            reader.close();
+        }
+    }
 
-        logger_.info(String.format("Finished hinted handoff of %s rows to endpoint %s",
-                                   rowsReplayed, endpoint));
+    // a hint only counts as delivered once the endpoint has acknowledged it
+    private void awaitAck(IWriteResponseHandler handler, Delivery delivery) throws TimeoutException
+    {
+        handler.get();
+        delivery.hints++;
+        hintsDelivered.incrementAndGet();
+    }
+
+    /**
+     * @return the throughput target of each of @param deliveries concurrent deliveries in bytes per millisecond,
+     * sharing @param throttleInKB per second between them, or 0 if throttling is disabled.
+     * (Package-private for testing.)
+     */
+    static int targetThroughput(int throttleInKB, int deliveries)
+    {
+        if (throttleInKB < 1)
+            // throttling disabled
+            return 0;
+        // total throughput
+        int totalBytesPerMS = throttleInKB * 1024 / 1000;
+        // per endpoint throughput (target bytes per MS)
+        return totalBytesPerMS / Math.max(1, deliveries);
     }
 
     /**
      * Attempt delivery to any node for which we have hints.  Necessary since we can generate hints even for
-     * nodes which are never officially down/failed.
+     * nodes which are never officially down/failed.  Hints for nodes no longer in the ring are deleted instead.
+     * (Package-private for testing.)
      */
-    private void scheduleAllDeliveries()
+    void scheduleAllDeliveries()
     {
         if (logger_.isDebugEnabled())
           logger_.debug("Started scheduleAllDeliveries");
 
-        ColumnFamilyStore hintStore = Table.open(Table.SYSTEM_TABLE).getColumnFamilyStore(HINTS_CF);
-        IPartitioner p = StorageService.getPartitioner();
-        Range range = new Range(p.getMinimumToken(), p.getMinimumToken(), p);
-        IFilter filter = new NamesQueryFilter(ImmutableSortedSet.<ByteBuffer>of());
-        List<Row> rows = hintStore.getRangeSlice(null, range, Integer.MAX_VALUE, filter);
-        for (Row row : rows)
+        if (legacyHintsLeft)
         {
-            Token<?> token = StorageService.getPartitioner().getTokenFactory().fromByteArray(row.key.key);
-            InetAddress target = StorageService.instance.getTokenMetadata().getEndpoint(token);
-            scheduleHintDelivery(target);
+            try
+            {
+                migrateLegacyHints();
+            }
+            catch (Exception e)
+            {
+                logger_.warn("Could not migrate hints from the system table", e);
+            }
+        }
+
+        TokenMetadata tokenMetadata = StorageService.instance.getTokenMetadata();
+        for (InetAddress target : HintStore.instance.endpoints())
+        {
+            // the hints of a node that left the ring while we weren't watching (see StorageService.excise)
+            if (!tokenMetadata.isMember(target) && !tokenMetadata.getBootstrapTokens().containsValue(target))
+                deleteHintsForEndpoint(target);
+            else
+                scheduleHintDelivery(target);
         }
 
         if (logger_.isDebugEnabled())
@@ -386,61 +553,81 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         scheduleHintDelivery(InetAddress.getByName(to));
     }
 
-    public List<String> listEndpointsPendingHints()
+    public Map<String, String> getDeliveryProgress()
     {
-        List<Row> rows = getHintsSlice(1);
+        Map<String, String> result = new TreeMap<String, String>();
+        for (Map.Entry<InetAddress, Delivery> entry : deliveries.entrySet())
+            result.put(entry.getKey().getHostAddress(), entry.getValue().toString());
+        return result;
+    }
 
-        // Extract the keys as strings to be reported.
-        LinkedList<String> result = new LinkedList<String>();
-        for (Row r : rows)
-        {
-            if (r.cf != null) //ignore removed rows
-                result.addFirst(new String(r.key.key.array()));
-        }
+    public double getDeliveryRateInKB()
+    {
+        double rate = 0;
+        for (Delivery delivery : deliveries.values())
+            rate += delivery.getRateInKB();
+        return rate;
+    }
+
+    public long getHintsDelivered()
+    {
+        return hintsDelivered.get();
+    }
+
+    public int getHintedHandoffThrottleInKB()
+    {
+        return DatabaseDescriptor.getHintedHandoffThrottleInKB();
+    }
+
+    public void setHintedHandoffThrottleInKB(int throttleInKB)
+    {
+        DatabaseDescriptor.setHintedHandoffThrottleInKB(throttleInKB);
+    }
+
+    public List<String> listEndpointsPendingHints()
+    {
+        List<String> result = new ArrayList<String>();
+        for (InetAddress endpoint : HintStore.instance.endpoints())
+            result.add(endpoint.getHostAddress());
         return result;
     }
 
     public Map<String, Integer> countPendingHints()
     {
-        List<Row> rows = getHintsSlice(Integer.MAX_VALUE);
-
         Map<String, Integer> result = new HashMap<String, Integer>();
-        for (Row r : rows)
+        try
         {
-            if (r.cf != null) //ignore removed rows
-                result.put(new String(r.key.key.array()), r.cf.getColumnCount());
+            for (InetAddress endpoint : HintStore.instance.endpoints())
+                result.put(endpoint.getHostAddress(), HintStore.instance.count(endpoint));
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
         }
         return result;
     }
 
-    private List<Row> getHintsSlice(int column_count)
+    /**
+     * Progress of the delivery to one endpoint.  Only the delivering thread updates it.
+     */
+    private static class Delivery
     {
-        // ColumnParent for HintsCF...
-        ColumnParent parent = new ColumnParent(HINTS_CF);
-
-        // Get count # of columns...
-        SlicePredicate predicate = new SlicePredicate();
-        SliceRange sliceRange = new SliceRange();
-        sliceRange.setStart(new byte[0]).setFinish(new byte[0]);
-        sliceRange.setCount(column_count);
-        predicate.setSlice_range(sliceRange);
-
-        // From keys "" to ""...
-        IPartitioner<?> partitioner = StorageService.getPartitioner();
-        RowPosition minPos = partitioner.getMinimumToken().minKeyBound();
-        Range<RowPosition> range = new Range<RowPosition>(minPos, minPos);
+        public final long startedAt = System.currentTimeMillis();
+        public volatile long totalBytes;
+        // bytes of hints read, whether sent or skipped as expired
+        public volatile long bytes;
+        public volatile long hints;
 
-        // Get a bunch of rows!
-        List<Row> rows;
-        try
+        public double getRateInKB()
         {
-            rows = StorageProxy.getRangeSlice(new RangeSliceCommand("system", parent, predicate, range, LARGE_NUMBER), ConsistencyLevel.ONE);
+            long elapsed = Math.max(1, System.currentTimeMillis() - startedAt);
+            return bytes * 1000.0 / 1024 / elapsed;
         }
-        catch (Exception e)
+
+        @Override
+        public String toString()
         {
-            logger_.info("HintsCF getEPPendingHints timed out.");
-            throw new RuntimeException(e);
+            return String.format("%d/%d bytes, %d hints, %.1f KB/s", bytes, totalBytes, hints, getRateInKB());
         }
-        return rows;
     }
 }
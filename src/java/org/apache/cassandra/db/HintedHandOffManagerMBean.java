@@ -32,7 +32,7 @@ public interface HintedHandOffManagerMBean
 
     /**
      * List all the endpoints that this node has hints for.
-     * @return set of endpoints; as Strings
+     * @return set of endpoints; as IP address Strings
      */
     public List<String> listEndpointsPendingHints();
 
@@ -40,11 +40,28 @@ public interface HintedHandOffManagerMBean
      * List all the endpoints that this node has hints for, and
      *  count the number of hints for each such endpoint.
      *
+     * This reads all the hints, so it is not cheap.
+     *
      * @return map of endpoint -> hint count
      */
     public Map<String, Integer> countPendingHints();
 
     /** force hint delivery to an endpoint **/
     public void scheduleHintDelivery(String host) throws UnknownHostException;
+
+    /**
+     * @return map of endpoint -> progress of the hint delivery to it that is currently running,
+     * as bytes read out of the total, hints sent and KB/s
+     */
+    public Map<String, String> getDeliveryProgress();
+
+    /** @return the combined rate of the running hint deliveries, in KB/s */
+    public double getDeliveryRateInKB();
+
+    /** @return the number of hints sent since this node started */
+    public long getHintsDelivered();
+
+    public int getHintedHandoffThrottleInKB();
+    public void setHintedHandoffThrottleInKB(int throttleInKB);
 }
 
@@ -81,4 +81,16 @@ public interface IColumn
      * For a super column, this is the max column timestamp of the sub columns.
      */
     public long maxTimestamp();
+
+    /**
+     * For a standard column, this is the same as timestamp().
+     * For a super column, this is the min timestamp of the sub columns and of its own tombstone.
+     */
+    public long minTimestamp();
+
+    /**
+     * @return the time (in seconds) after which this column, or all its subcolumns, are gcable tombstones:
+     * Integer.MAX_VALUE if any of it is live and does not expire.
+     */
+    public int maxLocalDeletionTime();
 }
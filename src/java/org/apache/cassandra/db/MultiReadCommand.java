@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessageProducer;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Several read commands (data or digest, possibly for different keys) sent to the same replica as a single
+ * message, so that a large multiget costs one message per replica instead of one per key and replica.
+ * The replica answers with one ReadResponse per command, in the same order; see MultiReadVerbHandler.
+ */
+public class MultiReadCommand implements MessageProducer
+{
+    public final List<ReadCommand> commands;
+
+    public MultiReadCommand(List<ReadCommand> commands)
+    {
+        this.commands = commands;
+    }
+
+    public Message getMessage(Integer version) throws IOException
+    {
+        int size = DBConstants.intSize;
+        for (ReadCommand command : commands)
+            size += ReadCommand.serializer().serializedSize(command, version);
+
+        DataOutputBuffer buffer = new DataOutputBuffer(size);
+        buffer.writeInt(commands.size());
+        for (ReadCommand command : commands)
+            ReadCommand.serializer().serialize(command, buffer, version);
+        assert buffer.getLength() == buffer.getData().length;
+        return new Message(FBUtilities.getBroadcastAddress(), StorageService.Verb.MULTI_READ, buffer.getData(), version);
+    }
+
+    public static MultiReadCommand read(byte[] body, int version) throws IOException
+    {
+        DataInputStream dis = new DataInputStream(new FastByteArrayInputStream(body));
+        int count = dis.readInt();
+        List<ReadCommand> commands = new ArrayList<ReadCommand>(count);
+        for (int i = 0; i < count; i++)
+            commands.add(ReadCommand.serializer().deserialize(dis, version));
+        return new MultiReadCommand(commands);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MultiReadCommand(" + commands + ")";
+    }
+}
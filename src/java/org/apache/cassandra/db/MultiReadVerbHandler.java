@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.IVerbHandler;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Executes every command of a MultiReadCommand and replies with a single message holding
+ * one serialized ReadResponse per command, in command order.
+ */
+public class MultiReadVerbHandler implements IVerbHandler
+{
+    private static final Logger logger = LoggerFactory.getLogger(MultiReadVerbHandler.class);
+
+    public void doVerb(Message message, String id)
+    {
+        if (StorageService.instance.isBootstrapMode())
+        {
+            throw new RuntimeException("Cannot service reads while bootstrapping!");
+        }
+
+        try
+        {
+            MultiReadCommand multiRead = MultiReadCommand.read(message.getMessageBody(), message.getVersion());
+            List<byte[]> responses = new ArrayList<byte[]>(multiRead.commands.size());
+            int size = DBConstants.intSize;
+            for (ReadCommand command : multiRead.commands)
+            {
+                Row row = command.getRow(Table.open(command.table));
+                byte[] bytes = FBUtilities.serialize(ReadVerbHandler.getResponse(command, row), ReadResponse.serializer(), message.getVersion());
+                responses.add(bytes);
+                size += DBConstants.intSize + bytes.length;
+            }
+
+            DataOutputBuffer buffer = new DataOutputBuffer(size);
+            buffer.writeInt(responses.size());
+            for (byte[] bytes : responses)
+            {
+                buffer.writeInt(bytes.length);
+                buffer.write(bytes);
+            }
+            assert buffer.getLength() == buffer.getData().length;
+            Message reply = message.getReply(FBUtilities.getBroadcastAddress(), buffer.getData(), message.getVersion());
+
+            if (logger.isDebugEnabled())
+                logger.debug(String.format("Read %d commands; sending response to %s@%s",
+                                           multiRead.commands.size(), id, message.getFrom()));
+            MessagingService.instance().sendReply(reply, id, message.getFrom());
+        }
+        catch (IOException ex)
+        {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessageProducer;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * The RowMutations of a batch_mutate that go to the same replica, sent as a single message.
+ * Each row is written with its pre-serialized buffer, so a row going to several replicas is
+ * still only serialized once.  The replica acknowledges the whole group with one WriteResponse;
+ * see MultiRowMutationVerbHandler.
+ */
+public class MultiRowMutation implements MessageProducer
+{
+    public final List<RowMutation> mutations;
+
+    public MultiRowMutation(List<RowMutation> mutations)
+    {
+        this.mutations = mutations;
+    }
+
+    public Message getMessage(Integer version) throws IOException
+    {
+        List<byte[]> buffers = new ArrayList<byte[]>(mutations.size());
+        int size = DBConstants.intSize;
+        for (RowMutation rm : mutations)
+        {
+            byte[] bytes = rm.getSerializedBuffer(version);
+            buffers.add(bytes);
+            size += DBConstants.intSize + bytes.length;
+        }
+
+        DataOutputBuffer buffer = new DataOutputBuffer(size);
+        buffer.writeInt(buffers.size());
+        for (byte[] bytes : buffers)
+        {
+            buffer.writeInt(bytes.length);
+            buffer.write(bytes);
+        }
+        assert buffer.getLength() == buffer.getData().length;
+        return new Message(FBUtilities.getBroadcastAddress(), StorageService.Verb.MULTI_MUTATION, buffer.getData(), version);
+    }
+
+    public static MultiRowMutation fromBytes(byte[] raw, int version) throws IOException
+    {
+        DataInputStream dis = new DataInputStream(new FastByteArrayInputStream(raw));
+        int count = dis.readInt();
+        List<RowMutation> mutations = new ArrayList<RowMutation>(count);
+        for (int i = 0; i < count; i++)
+        {
+            byte[] bytes = new byte[dis.readInt()];
+            dis.readFully(bytes);
+            mutations.add(RowMutation.fromBytes(bytes, version));
+        }
+        return new MultiRowMutation(mutations);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MultiRowMutation(" + mutations + ")";
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.net.IVerbHandler;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
+
+/**
+ * Applies every row of a MultiRowMutation, then sends a single acknowledgement for all of them.
+ * Like RowMutationVerbHandler, it first passes the message on to any replicas in its FORWARD_HEADER.
+ */
+public class MultiRowMutationVerbHandler implements IVerbHandler
+{
+    private static final Logger logger = LoggerFactory.getLogger(MultiRowMutationVerbHandler.class);
+
+    public void doVerb(Message message, String id)
+    {
+        try
+        {
+            MultiRowMutation mutations = MultiRowMutation.fromBytes(message.getMessageBody(), message.getVersion());
+            if (logger.isDebugEnabled())
+                logger.debug("Applying " + mutations);
+
+            byte[] forwardBytes = message.getHeader(RowMutation.FORWARD_HEADER);
+            if (forwardBytes != null)
+                RowMutationVerbHandler.forwardToLocalNodes(message, forwardBytes);
+
+            for (RowMutation rm : mutations.mutations)
+                rm.apply();
+
+            RowMutation first = mutations.mutations.get(0);
+            WriteResponse response = new WriteResponse(first.getTable(), first.key(), true);
+            Message responseMessage = WriteResponse.makeWriteResponseMessage(message, response);
+            if (logger.isDebugEnabled())
+                logger.debug(mutations.mutations.size() + " mutations applied.  Sending response to " + id + "@" + message.getFrom());
+            MessagingService.instance().sendReply(responseMessage, id, message.getFrom());
+        }
+        catch (IOException e)
+        {
+            logger.error("Error in row mutation", e);
+        }
+    }
+}
@@ -20,7 +20,10 @@ package org.apache.cassandra.db;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
@@ -28,29 +31,78 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.io.util.FastByteArrayInputStream;
 import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.FBUtilities;
 
 public class RangeSliceReply
 {
     public final List<Row> rows;
+    /**
+     * true if the replica stopped before reaching the end of the range or the requested number of rows,
+     * because the reply had grown too large; the rest of the range starts after the last row
+     */
+    public final boolean truncated;
 
     public RangeSliceReply(List<Row> rows)
+    {
+        this(rows, false);
+    }
+
+    public RangeSliceReply(List<Row> rows, boolean truncated)
     {
         this.rows = rows;
+        this.truncated = truncated;
     }
 
     public Message getReply(Message originalMessage) throws IOException
     {
+        int version = originalMessage.getVersion();
         int size = DBConstants.intSize;
         for (Row row : rows)
-            size += Row.serializer().serializedSize(row, originalMessage.getVersion());
+            size += Row.serializer().serializedSize(row, version);
+        if (version >= MessagingService.VERSION_11)
+            size += DBConstants.boolSize;
 
         DataOutputBuffer buffer = new DataOutputBuffer(size);
         buffer.writeInt(rows.size());
         for (Row row : rows)
-            Row.serializer().serialize(row, buffer, originalMessage.getVersion());
+            Row.serializer().serialize(row, buffer, version);
+        if (version >= MessagingService.VERSION_11)
+            buffer.writeBoolean(truncated);
         assert buffer.getLength() == buffer.getData().length;
-        return originalMessage.getReply(FBUtilities.getBroadcastAddress(), buffer.getData(), originalMessage.getVersion());
+        return originalMessage.getReply(FBUtilities.getBroadcastAddress(), buffer.getData(), version);
+    }
+
+    /**
+     * Serialize up to @param maxRows of @param rows into a reply to @param originalMessage, pulling them one
+     * at a time so that only the serialized reply is ever held in memory.  Once that reaches @param maxBytes,
+     * the reply is cut short (and marked truncated) if there are more rows, leaving the coordinator to ask
+     * for the rest.  Coordinators older than VERSION_11 don't know to do that, so they always get every row.
+     */
+    public static Message getReply(Message originalMessage, Iterator<Row> rows, int maxRows, int maxBytes) throws IOException
+    {
+        int version = originalMessage.getVersion();
+        DataOutputBuffer buffer = new DataOutputBuffer();
+        buffer.writeInt(0); // the row count, filled in below
+        int count = 0;
+        boolean truncated = false;
+        while (count < maxRows && rows.hasNext())
+        {
+            // always send at least one row, so that the coordinator makes progress
+            if (count > 0 && buffer.getLength() >= maxBytes && version >= MessagingService.VERSION_11)
+            {
+                truncated = true;
+                break;
+            }
+            Row.serializer().serialize(rows.next(), buffer, version);
+            count++;
+        }
+        if (version >= MessagingService.VERSION_11)
+            buffer.writeBoolean(truncated);
+
+        byte[] body = Arrays.copyOf(buffer.getData(), buffer.getLength());
+        ByteBuffer.wrap(body).putInt(0, count);
+        return originalMessage.getReply(FBUtilities.getBroadcastAddress(), body, version);
     }
 
     @Override
@@ -58,6 +110,7 @@ public class RangeSliceReply
     {
         return "RangeSliceReply{" +
                "rows=" + StringUtils.join(rows, ",") +
+               ", truncated=" + truncated +
                '}';
     }
 
@@ -71,6 +124,7 @@ public class RangeSliceReply
         {
             rows.add(Row.serializer().deserialize(dis, version));
         }
-        return new RangeSliceReply(rows);
+        boolean truncated = version >= MessagingService.VERSION_11 && dis.readBoolean();
+        return new RangeSliceReply(rows, truncated);
     }
 }
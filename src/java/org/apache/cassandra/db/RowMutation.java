@@ -42,7 +42,6 @@ import org.apache.cassandra.thrift.ColumnOrSuperColumn;
 import org.apache.cassandra.thrift.Deletion;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
-import org.apache.cassandra.utils.UUIDGen;
 
 public class RowMutation implements IMutation, MessageProducer
 {
@@ -106,54 +105,6 @@ public class RowMutation implements IMutation, MessageProducer
         return modifications_.get(cfId);
     }
 
-    /**
-     * Returns mutation representing a Hints to be sent to <code>address</code>
-     * as soon as it becomes available.
-     * The format is the following:
-     *
-     * HintsColumnFamily: {        // cf
-     *   <dest token>: {           // key
-     *     <uuid>: {               // super-column
-     *       table: <table>        // columns
-     *       key: <key>
-     *       mutation: <mutation>
-     *       version: <version>
-     *     }
-     *   }
-     * }
-     *
-     */
-    public static RowMutation hintFor(RowMutation mutation, ByteBuffer token) throws IOException
-    {
-        RowMutation rm = new RowMutation(Table.SYSTEM_TABLE, token);
-        ByteBuffer hintId = ByteBuffer.wrap(UUIDGen.getTimeUUIDBytes());
-
-        // determine the TTL for the RowMutation
-        // this is set at the smallest GCGraceSeconds for any of the CFs in the RM
-        // this ensures that deletes aren't "undone" by delivery of an old hint
-        int ttl = Integer.MAX_VALUE;
-        for (ColumnFamily cf : mutation.getColumnFamilies())
-            ttl = Math.min(ttl, cf.metadata().getGcGraceSeconds());
-
-        // serialized RowMutation
-        QueryPath path = new QueryPath(HintedHandOffManager.HINTS_CF, hintId, ByteBufferUtil.bytes("mutation"));
-        rm.add(path, ByteBuffer.wrap(mutation.getSerializedBuffer(MessagingService.version_)), System.currentTimeMillis(), ttl);
-
-        // serialization version
-        path = new QueryPath(HintedHandOffManager.HINTS_CF, hintId, ByteBufferUtil.bytes("version"));
-        rm.add(path, ByteBufferUtil.bytes(MessagingService.version_), System.currentTimeMillis(), ttl);
-
-        // table
-        path = new QueryPath(HintedHandOffManager.HINTS_CF, hintId, ByteBufferUtil.bytes("table"));
-        rm.add(path, ByteBufferUtil.bytes(mutation.getTable()), System.currentTimeMillis(), ttl);
-
-        // key
-        path = new QueryPath(HintedHandOffManager.HINTS_CF, hintId, ByteBufferUtil.bytes("key"));
-        rm.add(path, mutation.key(), System.currentTimeMillis(), ttl);
-
-        return rm;
-    }
-
     /*
      * Specify a column family name and the corresponding column
      * family object.
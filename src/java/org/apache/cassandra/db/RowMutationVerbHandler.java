@@ -65,8 +65,9 @@ public class RowMutationVerbHandler implements IVerbHandler
     /**
      * Older version (< 1.0) will not send this message at all, hence we don't
      * need to check the version of the data.
+     * (Also used by MultiRowMutationVerbHandler.)
      */
-    private void forwardToLocalNodes(Message message, byte[] forwardBytes) throws IOException
+    static void forwardToLocalNodes(Message message, byte[] forwardBytes) throws IOException
     {
         DataInputStream dis = new DataInputStream(new FastByteArrayInputStream(forwardBytes));
         int size = dis.readInt();
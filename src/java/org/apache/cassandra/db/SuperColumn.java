@@ -136,6 +136,22 @@ public class SuperColumn extends AbstractColumnContainer implements IColumn
         return maxTimestamp;
     }
 
+    public long minTimestamp()
+    {
+        long minTimestamp = isMarkedForDelete() ? getMarkedForDeleteAt() : Long.MAX_VALUE;
+        for (IColumn subColumn : getSubColumns())
+            minTimestamp = Math.min(minTimestamp, subColumn.minTimestamp());
+        return minTimestamp;
+    }
+
+    public int maxLocalDeletionTime()
+    {
+        int maxLocalDeletionTime = isMarkedForDelete() ? getLocalDeletionTime() : Integer.MIN_VALUE;
+        for (IColumn subColumn : getSubColumns())
+            maxLocalDeletionTime = Math.max(maxLocalDeletionTime, subColumn.maxLocalDeletionTime());
+        return maxLocalDeletionTime;
+    }
+
     public long mostRecentLiveChangeAt()
     {
         long max = Long.MIN_VALUE;
@@ -437,6 +437,8 @@ public class Table
                 if (mutatedIndexedColumns == null)
                 {
                     cfs.apply(key, cf);
+                    if (cf.metadata().getDefaultValidator().isCommutative())
+                        cfs.invalidateCachedCounters(mutation.key(), cf);
                     continue;
                 }
                 // else mutatedIndexedColumns != null
@@ -455,6 +457,8 @@ public class Table
                     // ignore full index memtables -- we flush those when the "master" one is full
                     cfs.indexManager.applyIndexUpdates(mutation.key(), cf, mutatedIndexedColumns, oldIndexedColumns);
                 }
+                if (cf.metadata().getDefaultValidator().isCommutative())
+                    cfs.invalidateCachedCounters(mutation.key(), cf);
             }
         }
         finally
@@ -74,4 +74,18 @@ public abstract class AbstractCompactedRow
      * make.
      */
     public abstract long maxTimestamp();
+
+    /**
+     * @return the min column timestamp in the row or Long.MAX_VALUE if
+     * computing this value would require extra effort we're not willing to
+     * make (see maxTimestamp()).
+     */
+    public abstract long minTimestamp();
+
+    /**
+     * @return the max local deletion time of the row's tombstones and expiring columns
+     * (Integer.MAX_VALUE if it holds live data that does not expire) or Integer.MIN_VALUE
+     * if computing this value would require extra effort we're not willing to make.
+     */
+    public abstract int maxLocalDeletionTime();
 }
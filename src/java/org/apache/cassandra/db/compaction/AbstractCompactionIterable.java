@@ -28,7 +28,6 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.sstable.SSTableScanner;
 import org.apache.cassandra.service.StorageService;
@@ -55,11 +54,12 @@ public abstract class AbstractCompactionIterable extends CompactionInfo.Holder i
             /** @return Instantaneous throughput target in bytes per millisecond. */
             public int targetThroughput()
             {
-                if (DatabaseDescriptor.getCompactionThroughputMbPerSec() < 1 || StorageService.instance.isBootstrapMode())
+                int throughputMbPerSec = CompactionThroughputController.instance.getThroughputMbPerSec();
+                if (throughputMbPerSec < 1 || StorageService.instance.isBootstrapMode())
                     // throttling disabled
                     return 0;
                 // total throughput
-                int totalBytesPerMS = DatabaseDescriptor.getCompactionThroughputMbPerSec() * 1024 * 1024 / 1000;
+                int totalBytesPerMS = throughputMbPerSec * 1024 * 1024 / 1000;
                 // per stream throughput (target bytes per MS)
                 return totalBytesPerMS / Math.max(1, CompactionManager.instance.getActiveCompactions());
             }
@@ -19,16 +19,20 @@
  */
 package org.apache.cassandra.db.compaction;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.cache.CounterCacheKey;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.EchoedRow;
+import org.apache.cassandra.db.IColumn;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.io.sstable.SSTableIdentityIterator;
 import org.apache.cassandra.io.sstable.SSTableReader;
 
@@ -47,6 +51,9 @@ public class CompactionController
     public boolean keyExistenceIsExpensive;
     public final int mergeShardBefore;
 
+    // counters whose local shard was changed by merging old shards into it (rows may be compacted concurrently)
+    private final Set<CounterCacheKey> mergedCounters = Collections.synchronizedSet(new HashSet<CounterCacheKey>());
+
     public CompactionController(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, int gcBefore, boolean forceDeserialize)
     {
         assert cfs != null;
@@ -98,6 +105,26 @@ public class CompactionController
         cfs.invalidateCachedRow(key);
     }
 
+    /**
+     * Record that the local shard of the counters in @param merged changed, so that their counter cache
+     * entries can be invalidated once the compacted sstables are live (see getMergedCounters).
+     */
+    public void countersMerged(DecoratedKey key, ColumnFamily merged)
+    {
+        // the counter cache only holds counters of standard column families
+        if (merged == null || merged.isSuper())
+            return;
+
+        ByteBuffer rowKey = ByteBufferUtil.clone(key.key);
+        for (IColumn column : merged)
+            mergedCounters.add(new CounterCacheKey(merged.id(), rowKey, ByteBufferUtil.clone(column.name())));
+    }
+
+    public Collection<CounterCacheKey> getMergedCounters()
+    {
+        return mergedCounters;
+    }
+
     public void removeDeletedInCache(DecoratedKey key)
     {
         ColumnFamily cachedRow = cfs.getRawCachedRow(key);
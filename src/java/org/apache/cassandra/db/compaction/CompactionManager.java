@@ -46,6 +46,7 @@ import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.service.AntiEntropyService;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.service.ValidationCache;
 import org.apache.cassandra.utils.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -633,6 +634,7 @@ public class CompactionManager implements CompactionManagerMBean
         else
         {
             cfs.replaceCompactedSSTables(Arrays.asList(sstable), Arrays.asList(newSstable));
+            CounterMutation.invalidateCachedCounters(controller.getMergedCounters());
             logger.info("Scrub of " + sstable + " complete: " + goodRows + " rows in new sstable and " + emptyRows + " empty (tombstoned) rows dropped");
             if (badRows > 0)
                 logger.warn("Unable to recover " + badRows + " rows that were skipped.  You can attempt manual recovery from the pre-scrub snapshot.  You can also run nodetool repair to transfer the data from a healthy replica, if any");
@@ -770,6 +772,7 @@ public class CompactionManager implements CompactionManagerMBean
            
 
             cfs.replaceCompactedSSTables(Arrays.asList(sstable), results);
+            CounterMutation.invalidateCachedCounters(controller.getMergedCounters());
         }
     }
 
@@ -815,7 +818,24 @@ public class CompactionManager implements CompactionManagerMBean
         // we don't mark validating sstables as compacting in DataTracker, so we have to mark them referenced
         // instead so they won't be cleaned up if they do get compacted during the validation
         Collection<SSTableReader> sstables = cfs.markCurrentSSTablesReferenced();
-        CompactionIterable ci = new ValidationCompactionIterable(cfs, sstables, validator.request.range);
+        try
+        {
+            int gcBefore = getDefaultGcBefore(cfs);
+            validator.prepare(cfs);
+            // only the parts of the tree whose sstables changed since the last validation need to be read
+            for (Range<Token> range : validator.prepareIncremental(cfs, sstables, gcBefore))
+                doValidationCompaction(cfs, validator, sstables, range, gcBefore);
+            validator.complete();
+        }
+        finally
+        {
+            SSTableReader.releaseReferences(sstables);
+        }
+    }
+
+    private void doValidationCompaction(ColumnFamilyStore cfs, AntiEntropyService.Validator validator, Collection<SSTableReader> sstables, Range<Token> range, int gcBefore) throws IOException
+    {
+        CompactionIterable ci = new ValidationCompactionIterable(cfs, sstables, range, gcBefore);
         CloseableIterator<AbstractCompactedRow> iter = ci.iterator();
         validationExecutor.beginCompaction(ci);
         try
@@ -823,7 +843,6 @@ public class CompactionManager implements CompactionManagerMBean
             Iterator<AbstractCompactedRow> nni = Iterators.filter(iter, Predicates.notNull());
 
             // validate the CF as we iterate over it
-            validator.prepare(cfs);
             while (nni.hasNext())
             {
                 if (ci.isStopped())
@@ -831,16 +850,30 @@ public class CompactionManager implements CompactionManagerMBean
                 AbstractCompactedRow row = nni.next();
                 validator.add(row);
             }
-            validator.complete();
         }
         finally
         {
-            SSTableReader.releaseReferences(sstables);
             iter.close();
             validationExecutor.finishCompaction(ci);
         }
     }
 
+    /**
+     * Build the indexes of @param columns for the data of @param sstables, split by token range across
+     * the compaction threads.  The caller must hold references to the sstables until all the returned
+     * futures are done.
+     */
+    public List<Future<?>> submitIndexBuild(ColumnFamilyStore cfs, SortedSet<ByteBuffer> columns, Collection<SSTableReader> sstables)
+    {
+        List<Range<Token>> slices = CompactionTask.getSlices(sstables, DatabaseDescriptor.getConcurrentCompactors());
+        logger.debug("Building indexes of {} in {} slices: {}", new Object[]{ cfs.columnFamily, slices.size(), slices });
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(slices.size());
+        for (Range<Token> slice : slices)
+            futures.add(submitIndexBuild(new SecondaryIndexBuilder(cfs, columns, new ReducingKeyIterator(sstables, slice))));
+        return futures;
+    }
+
     /**
      * Is not scheduled, because it is performing disjoint work from sstable compaction.
      */
@@ -932,6 +965,7 @@ public class CompactionManager implements CompactionManagerMBean
                         if (!truncatedSSTables.isEmpty())
                             cfs.markCompacted(truncatedSSTables);
                     }
+                    CounterMutation.invalidateCachedCounters(main.metadata.cfId);
                 }
                 finally
                 {
@@ -952,18 +986,22 @@ public class CompactionManager implements CompactionManagerMBean
 
     private static class ValidationCompactionIterable extends CompactionIterable
     {
-        public ValidationCompactionIterable(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, Range<Token> range) throws IOException
+        public ValidationCompactionIterable(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, Range<Token> range, int gcBefore) throws IOException
         {
             super(OperationType.VALIDATION,
                   getScanners(sstables, range),
-                  new CompactionController(cfs, sstables, getDefaultGcBefore(cfs), true));
+                  new CompactionController(cfs, sstables, gcBefore, true));
         }
 
         protected static List<SSTableScanner> getScanners(Iterable<SSTableReader> sstables, Range<Token> range) throws IOException
         {
             ArrayList<SSTableScanner> scanners = new ArrayList<SSTableScanner>();
             for (SSTableReader sstable : sstables)
-                scanners.add(sstable.getDirectScanner(range));
+            {
+                // incremental validation can scan many small ranges, so skip the sstables that can't contribute
+                if (ValidationCache.intersects(range, sstable))
+                    scanners.add(sstable.getDirectScanner(range));
+            }
             return scanners;
         }
     }
@@ -1037,7 +1075,10 @@ public class CompactionManager implements CompactionManagerMBean
     {
         public ValidationExecutor()
         {
-            super(1, Integer.MAX_VALUE, "ValidationExecutor", new SynchronousQueue<Runnable>());
+            super(DatabaseDescriptor.getConcurrentValidations(),
+                  DatabaseDescriptor.getConcurrentValidations(),
+                  "ValidationExecutor",
+                  new LinkedBlockingQueue<Runnable>());
         }
     }
 
@@ -21,6 +21,7 @@ package org.apache.cassandra.db.compaction;
 import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 
 import com.google.common.base.Predicates;
 import com.google.common.collect.Iterators;
@@ -28,13 +29,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.commons.lang.StringUtils;
 
+import org.apache.cassandra.cache.CounterCacheKey;
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.CounterMutation;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.compaction.CompactionManager.CompactionExecutorStatsCollector;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.sstable.SSTableScanner;
 import org.apache.cassandra.io.sstable.SSTableWriter;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.CloseableIterator;
 import org.apache.cassandra.utils.FBUtilities;
 
@@ -44,7 +53,10 @@ public class CompactionTask extends AbstractCompactionTask
     protected String compactionFileLocation;
     protected final int gcBefore;
     protected boolean isUserDefined;
+    protected int slices = -1;
     protected static long totalBytesCompacted = 0;
+    // don't bother splitting compactions into slices smaller than this; see getSlices
+    private static final long MIN_SLICE_SIZE = 64L * 1024 * 1024;
 
     public CompactionTask(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, final int gcBefore)
     {
@@ -106,33 +118,210 @@ public class CompactionTask extends AbstractCompactionTask
         for (SSTableReader sstable : toCompact)
             assert sstable.descriptor.cfname.equals(cfs.columnFamily);
 
-        CompactionController controller = new CompactionController(cfs, toCompact, gcBefore, isUserDefined);
-        // new sstables from flush can be added during a compaction, but only the compaction can remove them,
-        // so in our single-threaded compaction world this is a valid way of determining if we're compacting
-        // all the sstables (that existed when we started)
         logger.info("Compacting {}", toCompact);
 
         long startTime = System.currentTimeMillis();
-        long totalkeysWritten = 0;
 
         long estimatedTotalKeys = Math.max(DatabaseDescriptor.getIndexInterval(), SSTableReader.getApproximateKeyCount(toCompact));
-        long estimatedSSTables = Math.max(1, SSTable.getTotalBytes(toCompact) / cfs.getCompactionStrategy().getMaxSSTableSize());
+        long estimatedSSTables = Math.max(1, SSTable.getTotalBytes(toCompact) / getMaxSSTableSize());
         long keysPerSSTable = (long) Math.ceil((double) estimatedTotalKeys / estimatedSSTables);
         if (logger.isDebugEnabled())
             logger.debug("Expected bloom filter size : " + keysPerSSTable);
 
+        List<Range<Token>> slices = getSlices(toCompact);
+        SliceResult result = slices.size() == 1
+                           ? compactAll(toCompact, keysPerSSTable, collector)
+                           : compactSlices(toCompact, slices, keysPerSSTable, collector);
+        if (result == null)
+        {
+            // don't mark compacted in the finally block, since if there _is_ nondeleted data,
+            // we need to sync it (via closeAndOpen) first, so there is no period during which
+            // a crash could cause data loss.
+            cfs.markCompacted(toCompact);
+            return 0;
+        }
+        Collection<SSTableReader> sstables = result.sstables;
+        Map<SSTableReader, Map<DecoratedKey, Long>> cachedKeyMap = result.cachedKeyMap;
+        long totalkeysWritten = result.keysWritten;
+
+        cfs.replaceCompactedSSTables(toCompact, sstables);
+        // now that reads see the merged shards, the cache must not keep the old ones
+        CounterMutation.invalidateCachedCounters(result.mergedCounters);
+        // TODO: this doesn't belong here, it should be part of the reader to load when the tracker is wired up
+        for (Entry<SSTableReader, Map<DecoratedKey, Long>> ssTableReaderMapEntry : cachedKeyMap.entrySet())
+        {
+            SSTableReader key = ssTableReaderMapEntry.getKey();
+            for (Entry<DecoratedKey, Long> entry : ssTableReaderMapEntry.getValue().entrySet())
+               key.cacheKey(entry.getKey(), entry.getValue());
+        }
+
+        long dTime = System.currentTimeMillis() - startTime;
+        long startsize = SSTable.getTotalBytes(toCompact);
+        long endsize = SSTable.getTotalBytes(sstables);
+        double ratio = (double)endsize / (double)startsize;
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("[");
+        for (SSTableReader reader : sstables)
+            builder.append(reader.getFilename()).append(",");
+        builder.append("]");
+
+        double mbps = dTime > 0 ? (double)endsize/(1024*1024)/((double)dTime/1000) : 0;
+        logger.info(String.format("Compacted to %s.  %,d to %,d (~%d%% of original) bytes for %,d keys at %fMB/s.  Time: %,dms.",
+                                  builder.toString(), startsize, endsize, (int) (ratio * 100), totalkeysWritten, mbps, dTime));
+        logger.debug(String.format("CF Total Bytes Compacted: %,d", CompactionTask.addToTotalBytesCompacted(endsize)));
+        return toCompact.size();
+    }
+
+    private SliceResult compactAll(Set<SSTableReader> toCompact, long keysPerSSTable, CompactionExecutorStatsCollector collector) throws IOException
+    {
+        // new sstables from flush can be added during a compaction, but only the compaction can remove them,
+        // so in our single-threaded compaction world this is a valid way of determining if we're compacting
+        // all the sstables (that existed when we started)
+        CompactionController controller = new CompactionController(cfs, toCompact, gcBefore, isUserDefined);
         AbstractCompactionIterable ci = DatabaseDescriptor.isMultithreadedCompaction()
                                       ? new ParallelCompactionIterable(OperationType.COMPACTION, toCompact, controller)
                                       : new CompactionIterable(OperationType.COMPACTION, toCompact, controller);
+        return compact(ci, toCompact, keysPerSSTable, collector);
+    }
+
+    /**
+     * Compacts each slice on its own thread, into its own sstables.  The slices don't overlap, so
+     * neither do their outputs, and the caller can swap all of them in at once.
+     */
+    private SliceResult compactSlices(final Set<SSTableReader> toCompact,
+                                      List<Range<Token>> slices,
+                                      final long keysPerSSTable,
+                                      final CompactionExecutorStatsCollector collector)
+    {
+        logger.debug("Compacting {} in {} slices: {}", new Object[]{ cfs.columnFamily, slices.size(), slices });
+        ExecutorService executor = new DebuggableThreadPoolExecutor(slices.size(),
+                                                                    Integer.MAX_VALUE,
+                                                                    TimeUnit.SECONDS,
+                                                                    new LinkedBlockingQueue<Runnable>(),
+                                                                    new NamedThreadFactory("CompactionSlice", Thread.MIN_PRIORITY));
+        List<Future<SliceResult>> futures = new ArrayList<Future<SliceResult>>(slices.size());
+        for (final Range<Token> slice : slices)
+        {
+            futures.add(executor.submit(new Callable<SliceResult>()
+            {
+                public SliceResult call() throws IOException
+                {
+                    // the controller is not thread-safe, so each slice gets its own
+                    CompactionController controller = new CompactionController(cfs, toCompact, gcBefore, isUserDefined);
+                    List<SSTableScanner> scanners = new ArrayList<SSTableScanner>(toCompact.size());
+                    for (SSTableReader sstable : toCompact)
+                        scanners.add(sstable.getDirectScanner(slice));
+                    return compact(new CompactionIterable(OperationType.COMPACTION, scanners, controller), toCompact, keysPerSSTable, collector);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        SliceResult merged = null;
+        List<SliceResult> results = new ArrayList<SliceResult>(slices.size());
+        Throwable failure = null;
+        for (Future<SliceResult> future : futures)
+        {
+            try
+            {
+                SliceResult result = future.get();
+                if (result != null)
+                    results.add(result);
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+            catch (ExecutionException e)
+            {
+                failure = e.getCause();
+            }
+        }
+
+        if (failure != null)
+        {
+            // the other slices' output would duplicate the data still in toCompact
+            for (SliceResult result : results)
+            {
+                for (SSTableReader sstable : result.sstables)
+                {
+                    sstable.markCompacted();
+                    sstable.releaseReference();
+                }
+            }
+            throw failure instanceof RuntimeException ? (RuntimeException) failure : new RuntimeException(failure);
+        }
+
+        for (SliceResult result : results)
+        {
+            if (merged == null)
+                merged = new SliceResult();
+            merged.sstables.addAll(result.sstables);
+            merged.cachedKeyMap.putAll(result.cachedKeyMap);
+            merged.mergedCounters.addAll(result.mergedCounters);
+            merged.keysWritten += result.keysWritten;
+        }
+        return merged;
+    }
+
+    private List<Range<Token>> getSlices(Set<SSTableReader> toCompact)
+    {
+        int count = slices > 0
+                  ? slices
+                  : (int) Math.min(DatabaseDescriptor.getCompactionSlices(), SSTable.getTotalBytes(toCompact) / MIN_SLICE_SIZE);
+        return getSlices(toCompact, count);
+    }
+
+    /**
+     * Split the token range covered by the sstables in up to count ranges of roughly the same
+     * number of keys, based on the index samples.  A single slice covering everything means "don't split".
+     */
+    public static List<Range<Token>> getSlices(Collection<SSTableReader> toCompact, int count)
+    {
+        Token minimum = StorageService.getPartitioner().getMinimumToken();
+        if (count <= 1)
+            return Collections.singletonList(new Range<Token>(minimum, minimum));
+
+        List<Token> samples = new ArrayList<Token>();
+        for (SSTableReader sstable : toCompact)
+        {
+            for (DecoratedKey key : sstable.getKeySamples())
+                samples.add(key.token);
+        }
+        if (samples.isEmpty())
+            return Collections.singletonList(new Range<Token>(minimum, minimum));
+        Collections.sort(samples);
+
+        List<Range<Token>> slices = new ArrayList<Range<Token>>(count);
+        Token left = minimum;
+        for (int i = 1; i < count; i++)
+        {
+            Token right = samples.get(i * samples.size() / count);
+            // several samples can share a token; skip boundaries that would make an empty slice
+            if (right.compareTo(left) <= 0)
+                continue;
+            slices.add(new Range<Token>(left, right));
+            left = right;
+        }
+        // the last slice goes to the end of the ring
+        slices.add(new Range<Token>(left, minimum));
+        return slices;
+    }
+
+    /**
+     * Merge the rows of the iterable into new sstables.
+     * @return the new sstables, or null if there were no rows at all
+     */
+    private SliceResult compact(AbstractCompactionIterable ci, Set<SSTableReader> toCompact, long keysPerSSTable, CompactionExecutorStatsCollector collector) throws IOException
+    {
         CloseableIterator<AbstractCompactedRow> iter = ci.iterator();
         Iterator<AbstractCompactedRow> nni = Iterators.filter(iter, Predicates.notNull());
         Map<DecoratedKey, Long> cachedKeys = new HashMap<DecoratedKey, Long>();
 
         // we can't preheat until the tracker has been set. This doesn't happen until we tell the cfs to
         // replace the old entries.  Track entries to preheat here until then.
-        Map<SSTableReader, Map<DecoratedKey, Long>> cachedKeyMap =  new HashMap<SSTableReader, Map<DecoratedKey, Long>>();
-
-        Collection<SSTableReader> sstables = new ArrayList<SSTableReader>();
+        SliceResult result = new SliceResult();
         Collection<SSTableWriter> writers = new ArrayList<SSTableWriter>();
 
         if (collector != null)
@@ -140,13 +329,7 @@ public class CompactionTask extends AbstractCompactionTask
         try
         {
             if (!nni.hasNext())
-            {
-                // don't mark compacted in the finally block, since if there _is_ nondeleted data,
-                // we need to sync it (via closeAndOpen) first, so there is no period during which
-                // a crash could cause data loss.
-                cfs.markCompacted(toCompact);
-                return 0;
-            }
+                return null;
 
             SSTableWriter writer = cfs.createCompactionWriter(keysPerSSTable, compactionFileLocation, toCompact);
             writers.add(writer);
@@ -160,7 +343,7 @@ public class CompactionTask extends AbstractCompactionTask
                     continue;
 
                 long position = writer.append(row);
-                totalkeysWritten++;
+                result.keysWritten++;
 
                 if (DatabaseDescriptor.getPreheatKeyCache())
                 {
@@ -176,8 +359,8 @@ public class CompactionTask extends AbstractCompactionTask
                 if (!nni.hasNext() || newSSTableSegmentThresholdReached(writer, position))
                 {
                     SSTableReader toIndex = writer.closeAndOpenReader(getMaxDataAge(toCompact));
-                    cachedKeyMap.put(toIndex, cachedKeys);
-                    sstables.add(toIndex);
+                    result.cachedKeyMap.put(toIndex, cachedKeys);
+                    result.sstables.add(toIndex);
                     if (nni.hasNext())
                     {
                         writer = cfs.createCompactionWriter(keysPerSSTable, compactionFileLocation, toCompact);
@@ -199,32 +382,16 @@ public class CompactionTask extends AbstractCompactionTask
             if (collector != null)
                 collector.finishCompaction(ci);
         }
+        result.mergedCounters.addAll(ci.controller.getMergedCounters());
+        return result;
+    }
 
-        cfs.replaceCompactedSSTables(toCompact, sstables);
-        // TODO: this doesn't belong here, it should be part of the reader to load when the tracker is wired up
-        for (Entry<SSTableReader, Map<DecoratedKey, Long>> ssTableReaderMapEntry : cachedKeyMap.entrySet())
-        {
-            SSTableReader key = ssTableReaderMapEntry.getKey();
-            for (Entry<DecoratedKey, Long> entry : ssTableReaderMapEntry.getValue().entrySet())
-               key.cacheKey(entry.getKey(), entry.getValue());
-        }
-
-        long dTime = System.currentTimeMillis() - startTime;
-        long startsize = SSTable.getTotalBytes(toCompact);
-        long endsize = SSTable.getTotalBytes(sstables);
-        double ratio = (double)endsize / (double)startsize;
-
-        StringBuilder builder = new StringBuilder();
-        builder.append("[");
-        for (SSTableReader reader : sstables)
-            builder.append(reader.getFilename()).append(",");
-        builder.append("]");
-
-        double mbps = dTime > 0 ? (double)endsize/(1024*1024)/((double)dTime/1000) : 0;
-        logger.info(String.format("Compacted to %s.  %,d to %,d (~%d%% of original) bytes for %,d keys at %fMB/s.  Time: %,dms.",
-                                  builder.toString(), startsize, endsize, (int) (ratio * 100), totalkeysWritten, mbps, dTime));
-        logger.debug(String.format("CF Total Bytes Compacted: %,d", CompactionTask.addToTotalBytesCompacted(endsize)));
-        return toCompact.size();
+    private static class SliceResult
+    {
+        final Collection<SSTableReader> sstables = new ArrayList<SSTableReader>();
+        final Map<SSTableReader, Map<DecoratedKey, Long>> cachedKeyMap = new HashMap<SSTableReader, Map<DecoratedKey, Long>>();
+        final Collection<CounterCacheKey> mergedCounters = new ArrayList<CounterCacheKey>();
+        long keysWritten;
     }
 
     protected boolean partialCompactionsAcceptable()
@@ -233,6 +400,11 @@ public class CompactionTask extends AbstractCompactionTask
     }
 
     //extensibility point for other strategies that may want to limit the upper bounds of the sstable segment size
+    protected long getMaxSSTableSize()
+    {
+        return cfs.getCompactionStrategy().getMaxSSTableSize();
+    }
+
     protected boolean newSSTableSegmentThresholdReached(SSTableWriter writer, long position)
     {
         return false;
@@ -273,4 +445,13 @@ public class CompactionTask extends AbstractCompactionTask
         this.isUserDefined = isUserDefined;
         return this;
     }
+
+    /**
+     * Compact in this many token range slices, regardless of compaction_slices and of the size of the sstables.
+     */
+    public CompactionTask slices(int slices)
+    {
+        this.slices = slices;
+        return this;
+    }
 }
@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.EstimatedHistogram;
+
+/**
+ * Decides how fast compaction may go.  With adaptive throughput disabled, that is simply
+ * compaction_throughput_mb_per_sec.  Otherwise it is adjusted every few seconds, starting from
+ * compaction_throughput_mb_per_sec:
+ *
+ *  - down, to no less than a quarter of compaction_throughput_mb_per_sec, while the 99th percentile
+ *    local read latency is above its target;
+ *  - up, to no more than compaction_throughput_max_mb_per_sec, while the number of pending compactions
+ *    grows or reads touch more sstables than their target on average;
+ *  - back to compaction_throughput_mb_per_sec once there are no pending compactions left.
+ *
+ * Read latency wins over the backlog: when reads are suffering, compacting faster would make it worse first.
+ */
+public class CompactionThroughputController implements CompactionThroughputControllerMBean
+{
+    public static final String MBEAN_OBJECT_NAME = "org.apache.cassandra.db:type=CompactionThroughputController";
+    private static final Logger logger = LoggerFactory.getLogger(CompactionThroughputController.class);
+
+    public static final CompactionThroughputController instance;
+
+    private static final int UPDATE_INTERVAL_IN_MS = 5000;
+    private static final double SPEED_UP = 1.25;
+    private static final double BACK_OFF = 0.75;
+
+    static
+    {
+        instance = new CompactionThroughputController();
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            mbs.registerMBean(instance, new ObjectName(MBEAN_OBJECT_NAME));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        Runnable updater = new Runnable()
+        {
+            public void run()
+            {
+                instance.update();
+            }
+        };
+        StorageService.optionalTasks.scheduleWithFixedDelay(updater, UPDATE_INTERVAL_IN_MS, UPDATE_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private volatile boolean adaptive = DatabaseDescriptor.isAdaptiveCompactionThroughput();
+    private volatile int maxThroughputMbPerSec = DatabaseDescriptor.getCompactionThroughputMaxMbPerSec();
+    private volatile int readLatencyTargetMillis = DatabaseDescriptor.getCompactionReadLatencyTargetMillis();
+    private volatile double sstablesPerReadTarget = 4;
+
+    // the adaptive throughput; only meaningful while adaptive
+    private volatile double throughputMbPerSec = DatabaseDescriptor.getCompactionThroughputMbPerSec();
+    private volatile String lastDecision = "none yet";
+    private volatile long lastReadLatencyP99Micros;
+    private volatile double lastMeanSSTablesPerRead;
+    private volatile int lastPendingTasks;
+
+    // lifetime histograms summed over all column families at the last update, to compute what happened since
+    private long[] lastReadLatencies;
+    private long[] lastSSTablesPerRead;
+
+    CompactionThroughputController()
+    {
+    }
+
+    public int getThroughputMbPerSec()
+    {
+        int baseline = DatabaseDescriptor.getCompactionThroughputMbPerSec();
+        if (!adaptive || baseline < 1)
+            return baseline;
+        return (int) Math.max(1, Math.round(throughputMbPerSec));
+    }
+
+    private void update()
+    {
+        long[] latencyOffsets = new EstimatedHistogram().getBucketOffsets();
+        long[] sstablesOffsets = new EstimatedHistogram(35).getBucketOffsets();
+        long[] readLatencies = new long[latencyOffsets.length + 1];
+        long[] sstablesPerRead = new long[sstablesOffsets.length + 1];
+        for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
+        {
+            add(readLatencies, cfs.getLifetimeReadLatencyHistogramMicros());
+            add(sstablesPerRead, cfs.getSSTablesPerReadHistogram());
+        }
+
+        long readLatencyP99 = 0;
+        double meanSSTablesPerRead = 0;
+        if (lastReadLatencies != null)
+        {
+            readLatencyP99 = new EstimatedHistogram(latencyOffsets, subtract(readLatencies, lastReadLatencies)).percentile(0.99);
+            EstimatedHistogram recent = new EstimatedHistogram(sstablesOffsets, subtract(sstablesPerRead, lastSSTablesPerRead));
+            if (recent.isOverflowed())
+                meanSSTablesPerRead = Double.MAX_VALUE;
+            else if (recent.count() > 0)
+                meanSSTablesPerRead = recent.mean();
+        }
+        lastReadLatencies = readLatencies;
+        lastSSTablesPerRead = sstablesPerRead;
+
+        update(readLatencyP99, meanSSTablesPerRead, CompactionManager.instance.getPendingTasks());
+    }
+
+    private static void add(long[] sum, long[] histogram)
+    {
+        // column families may be dropped or added between updates, but all histograms have the same buckets
+        for (int i = 0; i < sum.length && i < histogram.length; i++)
+            sum[i] += histogram[i];
+    }
+
+    private static long[] subtract(long[] current, long[] last)
+    {
+        long[] delta = new long[current.length];
+        for (int i = 0; i < current.length; i++)
+            delta[i] = Math.max(0, current[i] - last[i]);
+        return delta;
+    }
+
+    /**
+     * Adjusts the throughput given what happened since the last update.
+     */
+    synchronized void update(long readLatencyP99Micros, double meanSSTablesPerRead, int pendingTasks)
+    {
+        int previousPendingTasks = lastPendingTasks;
+        lastReadLatencyP99Micros = readLatencyP99Micros;
+        lastMeanSSTablesPerRead = meanSSTablesPerRead;
+        lastPendingTasks = pendingTasks;
+
+        int baseline = DatabaseDescriptor.getCompactionThroughputMbPerSec();
+        if (!adaptive || baseline < 1)
+        {
+            throughputMbPerSec = baseline;
+            lastDecision = "adaptive throughput is disabled";
+            return;
+        }
+
+        double min = Math.max(1, baseline / 4.0);
+        double max = Math.max(baseline, maxThroughputMbPerSec);
+        double previous = throughputMbPerSec;
+        String reason;
+        if (readLatencyP99Micros > readLatencyTargetMillis * 1000L)
+        {
+            throughputMbPerSec = Math.max(min, previous * BACK_OFF);
+            reason = String.format("read latency p99 %dus is above %dms", readLatencyP99Micros, readLatencyTargetMillis);
+        }
+        else if (pendingTasks > previousPendingTasks)
+        {
+            throughputMbPerSec = Math.min(max, previous * SPEED_UP);
+            reason = String.format("pending compactions grew from %d to %d", previousPendingTasks, pendingTasks);
+        }
+        else if (meanSSTablesPerRead > sstablesPerReadTarget)
+        {
+            throughputMbPerSec = Math.min(max, previous * SPEED_UP);
+            reason = String.format("reads touch %.1f sstables on average, more than %.1f", meanSSTablesPerRead, sstablesPerReadTarget);
+        }
+        else if (pendingTasks == 0)
+        {
+            throughputMbPerSec = baseline;
+            reason = "no pending compactions";
+        }
+        else
+        {
+            throughputMbPerSec = Math.max(min, Math.min(max, previous));
+            reason = String.format("%d pending compactions, read latency p99 %dus", pendingTasks, readLatencyP99Micros);
+        }
+
+        String verb = throughputMbPerSec > previous ? "raised" : throughputMbPerSec < previous ? "lowered" : "kept";
+        lastDecision = String.format("%s to %.1f MB/s: %s", verb, throughputMbPerSec, reason);
+        if (throughputMbPerSec != previous)
+            logger.debug("Compaction throughput {}", lastDecision);
+    }
+
+    public boolean isAdaptive()
+    {
+        return adaptive;
+    }
+
+    public synchronized void setAdaptive(boolean adaptive)
+    {
+        this.adaptive = adaptive;
+        throughputMbPerSec = DatabaseDescriptor.getCompactionThroughputMbPerSec();
+    }
+
+    public int getMaxThroughputMbPerSec()
+    {
+        return maxThroughputMbPerSec;
+    }
+
+    public void setMaxThroughputMbPerSec(int value)
+    {
+        maxThroughputMbPerSec = value;
+    }
+
+    public int getReadLatencyTargetMillis()
+    {
+        return readLatencyTargetMillis;
+    }
+
+    public void setReadLatencyTargetMillis(int value)
+    {
+        readLatencyTargetMillis = value;
+    }
+
+    public double getSSTablesPerReadTarget()
+    {
+        return sstablesPerReadTarget;
+    }
+
+    public void setSSTablesPerReadTarget(double value)
+    {
+        sstablesPerReadTarget = value;
+    }
+
+    public String getLastDecision()
+    {
+        return lastDecision;
+    }
+
+    public long getLastReadLatencyP99Micros()
+    {
+        return lastReadLatencyP99Micros;
+    }
+
+    public double getLastMeanSSTablesPerRead()
+    {
+        return lastMeanSSTablesPerRead;
+    }
+
+    public int getLastPendingTasks()
+    {
+        return lastPendingTasks;
+    }
+}
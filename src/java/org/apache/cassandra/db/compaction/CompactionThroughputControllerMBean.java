@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+public interface CompactionThroughputControllerMBean
+{
+    /**
+     * @return the total compaction throughput currently allowed, in MB/s; 0 if compaction is not throttled
+     */
+    public int getThroughputMbPerSec();
+
+    /**
+     * @return true if the throughput adapts to the compaction backlog and read latency; otherwise it is
+     * compaction_throughput_mb_per_sec
+     */
+    public boolean isAdaptive();
+    public void setAdaptive(boolean adaptive);
+
+    /** the most compaction may be sped up to, in MB/s */
+    public int getMaxThroughputMbPerSec();
+    public void setMaxThroughputMbPerSec(int value);
+
+    /** compaction backs off when the 99th percentile read latency is above this */
+    public int getReadLatencyTargetMillis();
+    public void setReadLatencyTargetMillis(int value);
+
+    /** compaction speeds up when reads touch more sstables than this on average */
+    public double getSSTablesPerReadTarget();
+    public void setSSTablesPerReadTarget(double value);
+
+    /**
+     * @return what the last adjustment did and why
+     */
+    public String getLastDecision();
+
+    /** the 99th percentile local read latency, across all column families, seen by the last adjustment */
+    public long getLastReadLatencyP99Micros();
+
+    /** the mean number of sstables per read, across all column families, seen by the last adjustment */
+    public double getLastMeanSSTablesPerRead();
+
+    /** the number of pending compactions seen by the last adjustment */
+    public int getLastPendingTasks();
+}
@@ -65,6 +65,8 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements IIterabl
     private Reducer reducer;
     private int columnCount;
     private long maxTimestamp;
+    private long minTimestamp;
+    private int maxLocalDeletionTime;
     private long columnSerializedSize;
     private boolean closed;
 
@@ -88,11 +90,20 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements IIterabl
         // initialize row header so isEmpty can be called
         headerBuffer = new DataOutputBuffer();
         ColumnIndexer.serialize(this, headerBuffer);
-        // reach into the reducer used during iteration to get column count, size, max column timestamp
+        // reach into the reducer used during iteration to get column count, size, min/max column timestamp
+        // and max local deletion time
         // (however, if there are zero columns, iterator() will not be called by ColumnIndexer and reducer will be null)
         columnCount = reducer == null ? 0 : reducer.size;
         columnSerializedSize = reducer == null ? 0 : reducer.serializedSize;
         maxTimestamp = reducer == null ? Long.MIN_VALUE : reducer.maxTimestampSeen;
+        minTimestamp = reducer == null ? Long.MAX_VALUE : reducer.minTimestampSeen;
+        maxLocalDeletionTime = reducer == null ? Integer.MIN_VALUE : reducer.maxLocalDeletionTimeSeen;
+        // the row tombstone is written out too
+        if (emptyColumnFamily.isMarkedForDelete())
+        {
+            minTimestamp = Math.min(minTimestamp, emptyColumnFamily.getMarkedForDeleteAt());
+            maxLocalDeletionTime = Math.max(maxLocalDeletionTime, emptyColumnFamily.getLocalDeletionTime());
+        }
         reducer = null;
     }
 
@@ -194,6 +205,16 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements IIterabl
         return maxTimestamp;
     }
 
+    public long minTimestamp()
+    {
+        return minTimestamp;
+    }
+
+    public int maxLocalDeletionTime()
+    {
+        return maxLocalDeletionTime;
+    }
+
     private void close()
     {
         for (IColumnIterator row : rows)
@@ -216,6 +237,8 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements IIterabl
         long serializedSize = 4; // int for column count
         int size = 0;
         long maxTimestampSeen = Long.MIN_VALUE;
+        long minTimestampSeen = Long.MAX_VALUE;
+        int maxLocalDeletionTimeSeen = Integer.MIN_VALUE;
 
         public void reduce(IColumn current)
         {
@@ -235,6 +258,8 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements IIterabl
             serializedSize += reduced.serializedSize();
             size++;
             maxTimestampSeen = Math.max(maxTimestampSeen, reduced.maxTimestamp());
+            minTimestampSeen = Math.min(minTimestampSeen, reduced.minTimestamp());
+            maxLocalDeletionTimeSeen = Math.max(maxLocalDeletionTimeSeen, reduced.maxLocalDeletionTime());
             return reduced;
         }
     }
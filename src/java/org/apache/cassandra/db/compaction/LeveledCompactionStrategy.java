@@ -22,7 +22,6 @@ package org.apache.cassandra.db.compaction;
 
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
@@ -44,7 +43,6 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
     private final LeveledManifest manifest;
     private final String SSTABLE_SIZE_OPTION = "sstable_size_in_mb";
     private final int maxSSTableSizeInMB;
-    private final AtomicReference<LeveledCompactionTask> task = new AtomicReference<LeveledCompactionTask>();
 
     public LeveledCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
     {
@@ -89,15 +87,12 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
         return manifest.getLevelSize(i);
     }
 
+    /**
+     * May be called concurrently, once per compaction thread: the manifest hands out disjoint,
+     * non-overlapping candidates, and marks them compacting itself.
+     */
     public AbstractCompactionTask getNextBackgroundTask(int gcBefore)
     {
-        LeveledCompactionTask currentTask = task.get();
-        if (currentTask != null && !currentTask.isDone())
-        {
-            logger.debug("Compaction still in progress for {}", this);
-            return null;
-        }
-
         Collection<SSTableReader> sstables = manifest.getCompactionCandidates();
         if (sstables.isEmpty())
         {
@@ -105,10 +100,9 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
             return null;
         }
 
-        LeveledCompactionTask newTask = new LeveledCompactionTask(cfs, sstables, gcBefore, this.maxSSTableSizeInMB);
-        return task.compareAndSet(currentTask, newTask)
-               ? newTask
-               : null;
+        // size-tiered L0 compactions write a single sstable, since their output stays in L0
+        int sstableSizeInMB = manifest.isSizeTiered(sstables) ? Integer.MAX_VALUE : this.maxSSTableSizeInMB;
+        return new LeveledCompactionTask(cfs, sstables, gcBefore, sstableSizeInMB);
     }
 
     public AbstractCompactionTask getMaximalTask(int gcBefore)
@@ -22,10 +22,8 @@ package org.apache.cassandra.db.compaction;
 
 
 import java.io.File;
-import java.io.IOException;
 import java.util.Collection;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
 
 import com.google.common.collect.Iterables;
 
@@ -41,37 +39,31 @@ public class LeveledCompactionTask extends CompactionTask
 {
     private final int sstableSizeInMB;
 
-    private final CountDownLatch latch = new CountDownLatch(1);
-
     public LeveledCompactionTask(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, final int gcBefore, int sstableSizeInMB)
     {
         super(cfs, sstables, gcBefore);
         this.sstableSizeInMB = sstableSizeInMB;
     }
 
+    /**
+     * The manifest marks the sstables compacting when it hands them out, so there is nothing left to do here.
+     */
     @Override
-    public int execute(CompactionManager.CompactionExecutorStatsCollector collector) throws IOException
+    public boolean markSSTablesForCompaction(int min, int max)
     {
-        try
-        {
-            int n = super.execute(collector);
-            return n;
-        }
-        finally
-        {
-            latch.countDown();
-        }
+        return true;
     }
 
-    public boolean isDone()
+    @Override
+    protected long getMaxSSTableSize()
     {
-        return latch.getCount() == 0;
+        return sstableSizeInMB * 1024L * 1024L;
     }
 
     @Override
     protected boolean newSSTableSegmentThresholdReached(SSTableWriter writer, long position)
     {
-        return position > sstableSizeInMB * 1024L * 1024L;
+        return position > getMaxSSTableSize();
     }
 
     @Override
@@ -85,10 +77,4 @@ public class LeveledCompactionTask extends CompactionTask
     {
         return false;
     }
-
-    @Override
-    protected void cancel()
-    {
-        latch.countDown();
-    }
 }
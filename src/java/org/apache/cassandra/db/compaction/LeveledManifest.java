@@ -27,17 +27,21 @@ import java.io.IOException;
 import java.util.*;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.RowPosition;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.Pair;
 import org.codehaus.jackson.JsonEncoding;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
@@ -59,7 +63,9 @@ public class LeveledManifest
 
     private final ColumnFamilyStore cfs;
     private final List<SSTableReader>[] generations;
-    private final DecoratedKey[] lastCompactedKeys;
+    private final RowPosition[] lastCompactedKeys;
+    // L0 sstables being compacted size-tiered, whose output goes back into L0
+    private final Set<SSTableReader> sizeTieredCompacting = new HashSet<SSTableReader>();
     private final int maxSSTableSizeInMB;
     private int levelCount;
 
@@ -71,11 +77,11 @@ public class LeveledManifest
         // allocate enough generations for a PB of data
         int n = (int) Math.log10(1000 * 1000 * 1000 / maxSSTableSizeInMB);
         generations = new List[n];
-        lastCompactedKeys = new DecoratedKey[n];
+        lastCompactedKeys = new RowPosition[n];
         for (int i = 0; i < generations.length; i++)
         {
             generations[i] = new ArrayList<SSTableReader>();
-            lastCompactedKeys[i] = new DecoratedKey(cfs.partitioner.getMinimumToken(), null);
+            lastCompactedKeys[i] = cfs.partitioner.getMinimumToken().minKeyBound();
         }
     }
 
@@ -163,11 +169,13 @@ public class LeveledManifest
         // plus one if the removed were all on the same level
         int minimumLevel = Integer.MAX_VALUE;
         int maximumLevel = 0;
+        boolean sizeTiered = true;
         for (SSTableReader sstable : removed)
         {
             int thisLevel = levelOf(sstable);
             maximumLevel = Math.max(maximumLevel, thisLevel);
             minimumLevel = Math.min(minimumLevel, thisLevel);
+            sizeTiered &= sizeTieredCompacting.remove(sstable);
             remove(sstable);
         }
 
@@ -175,6 +183,17 @@ public class LeveledManifest
         if (!added.iterator().hasNext())
             return;
 
+        if (sizeTiered)
+        {
+            // the result of a size-tiered L0 compaction may overlap anything, so it stays in L0
+            if (logger.isDebugEnabled())
+                logger.debug("Adding [{}] at L0", toString(added));
+            for (SSTableReader ssTableReader : added)
+                add(ssTableReader, 0);
+            serialize();
+            return;
+        }
+
         int newLevel = minimumLevel == maximumLevel ? maximumLevel + 1 : maximumLevel;
         newLevel = skipLevels(newLevel, added);
         assert newLevel > 0;
@@ -210,6 +229,14 @@ public class LeveledManifest
                : Math.pow(10, level) * maxSSTableSizeInMB * 1024 * 1024;
     }
 
+    /**
+     * @return the sstables to compact next, already marked compacting in the DataTracker, or an empty collection
+     * if there is nothing to do.
+     *
+     * Several compactions may run at once (one per call): a candidate set is only handed out if none of its sstables
+     * are compacting already, and none of them overlap an sstable that a leveled compaction in progress is rewriting,
+     * so concurrent compactions never produce overlapping sstables in the same level.
+     */
     public synchronized Collection<SSTableReader> getCompactionCandidates()
     {
         // LevelDB gives each level a score of how much data it contains vs its ideal amount, and
@@ -233,6 +260,25 @@ public class LeveledManifest
         // So instead, we force compacting higher levels first.  This may not minimize the number
         // of reads done as quickly in the short term, but it minimizes the i/o needed to compact
         // optimially which gives us a long term win.
+        //
+        // The exception is when L0 falls so far behind that reads have to merge dozens of its sstables: then
+        // we merge L0 with itself, size-tiered, which is cheap and bounds the number of sstables a read touches.
+        Set<SSTableReader> compacting = cfs.getDataTracker().getCompacting();
+        sizeTieredCompacting.retainAll(compacting); // forget about compactions that failed
+        Set<SSTableReader> leveledCompacting = Sets.difference(compacting, sizeTieredCompacting);
+
+        if (generations[0].size() > MAX_COMPACTING_L0)
+        {
+            Collection<SSTableReader> candidates = getSizeTieredCandidatesForL0(compacting);
+            if (!candidates.isEmpty() && markCompacting(candidates))
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("L0 is behind; size-tiered compaction candidates are {}", toString(candidates));
+                sizeTieredCompacting.addAll(candidates);
+                return candidates;
+            }
+        }
+
         for (int i = generations.length - 1; i >= 0; i--)
         {
             List<SSTableReader> sstables = generations[i];
@@ -245,7 +291,10 @@ public class LeveledManifest
             // we'll go ahead and compact even just one sstable
             if (score > 1.001 || i == 0)
             {
-                Collection<SSTableReader> candidates = getCandidatesFor(i);
+                Collection<SSTableReader> candidates = getCandidatesFor(i, compacting, leveledCompacting);
+                // empty if everything in this level is involved in compactions already
+                if (candidates.isEmpty() || !markCompacting(candidates))
+                    continue;
                 if (logger.isDebugEnabled())
                     logger.debug("Compaction candidates for L{} are {}", i, toString(candidates));
                 return candidates;
@@ -255,6 +304,19 @@ public class LeveledManifest
         return Collections.emptyList();
     }
 
+    /**
+     * all or nothing: a subset of a leveled candidate set could produce sstables overlapping the rest of it
+     */
+    private boolean markCompacting(Collection<SSTableReader> candidates)
+    {
+        return cfs.getDataTracker().markCompacting(candidates, candidates.size(), candidates.size()) != null;
+    }
+
+    public synchronized boolean isSizeTiered(Collection<SSTableReader> candidates)
+    {
+        return sizeTieredCompacting.containsAll(candidates);
+    }
+
     public int getLevelSize(int i)
     {
 
@@ -295,6 +357,25 @@ public class LeveledManifest
         generations[level].add(sstable);
     }
 
+    private static boolean overlaps(Iterable<SSTableReader> sstables, Iterable<SSTableReader> others)
+    {
+        for (SSTableReader sstable : sstables)
+        {
+            // overlapping() returns the sstable itself first
+            if (overlapping(sstable, others).size() > 1)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if none of @param candidates is compacting or overlaps an sstable in a leveled compaction
+     */
+    private static boolean isCompactable(Collection<SSTableReader> candidates, Set<SSTableReader> compacting, Set<SSTableReader> leveledCompacting)
+    {
+        return Collections.disjoint(candidates, compacting) && !overlaps(candidates, leveledCompacting);
+    }
+
     private static List<SSTableReader> overlapping(SSTableReader sstable, Iterable<SSTableReader> candidates)
     {
         List<SSTableReader> overlapped = new ArrayList<SSTableReader>();
@@ -310,7 +391,7 @@ public class LeveledManifest
         return overlapped;
     }
 
-    private Collection<SSTableReader> getCandidatesFor(int level)
+    private Collection<SSTableReader> getCandidatesFor(int level, Set<SSTableReader> compacting, Set<SSTableReader> leveledCompacting)
     {
         assert !generations[level].isEmpty();
         logger.debug("Choosing candidates for L{}", level);
@@ -319,28 +400,66 @@ public class LeveledManifest
         {
             // because L0 files may overlap each other, we treat compactions there specially:
             // a L0 compaction also checks other L0 files for overlap.
-            Set<SSTableReader> candidates = new HashSet<SSTableReader>();
-            // pick the oldest sstable from L0, and any that overlap with it
+            // pick the oldest sstable from L0 we can, and any that overlap with it
             List<SSTableReader> ageSortedSSTables = new ArrayList<SSTableReader>(generations[0]);
             Collections.sort(ageSortedSSTables, SSTable.maxTimestampComparator);
-            List<SSTableReader> L0 = overlapping(ageSortedSSTables.get(0), generations[0]);
-            L0 = L0.size() > MAX_COMPACTING_L0 ? L0.subList(0, MAX_COMPACTING_L0) : L0;
-            // add the overlapping ones from L1
-            for (SSTableReader sstable : L0)
-                candidates.addAll(overlapping(sstable, generations[1]));
-            return candidates;
+            Set<SSTableReader> uncompactingL0 = Sets.difference(new HashSet<SSTableReader>(generations[0]), compacting);
+            for (SSTableReader sstable : ageSortedSSTables)
+            {
+                if (compacting.contains(sstable))
+                    continue;
+                List<SSTableReader> L0 = overlapping(sstable, uncompactingL0);
+                L0 = L0.size() > MAX_COMPACTING_L0 ? L0.subList(0, MAX_COMPACTING_L0) : L0;
+                // add the overlapping ones from L1
+                Set<SSTableReader> candidates = new HashSet<SSTableReader>();
+                for (SSTableReader l0 : L0)
+                    candidates.addAll(overlapping(l0, generations[1]));
+                if (isCompactable(candidates, compacting, leveledCompacting))
+                    return candidates;
+            }
+            return Collections.emptyList();
+        }
+
+        // for non-L0 compactions, pick up where we left off last time:
+        // the first sstable that is > than the marked, or if there was no last time, the first sstable
+        List<SSTableReader> sstables = generations[level];
+        Collections.sort(sstables, SSTable.sstableComparator);
+        int start = 0;
+        while (start < sstables.size() && sstables.get(start).first.compareTo(lastCompactedKeys[level]) <= 0)
+            start++;
+        // and move on from there if that is already involved in a compaction
+        for (int i = 0; i < sstables.size(); i++)
+        {
+            SSTableReader sstable = sstables.get((start + i) % sstables.size());
+            if (compacting.contains(sstable))
+                continue;
+            List<SSTableReader> candidates = overlapping(sstable, generations[(level + 1)]);
+            if (isCompactable(candidates, compacting, leveledCompacting))
+                return candidates;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the largest bucket of similarly-sized L0 sstables that are not compacting, if it is large enough
+     * to be worth compacting; at most MAX_COMPACTING_L0 of them
+     */
+    private Collection<SSTableReader> getSizeTieredCandidatesForL0(Set<SSTableReader> compacting)
+    {
+        List<Pair<SSTableReader, Long>> pairs = new ArrayList<Pair<SSTableReader, Long>>();
+        for (SSTableReader sstable : generations[0])
+        {
+            if (!compacting.contains(sstable))
+                pairs.add(new Pair<SSTableReader, Long>(sstable, sstable.onDiskLength()));
         }
 
-        // for non-L0 compactions, pick up where we left off last time
-        Collections.sort(generations[level], SSTable.sstableComparator);
-        for (SSTableReader sstable : generations[level])
+        List<SSTableReader> largest = Collections.emptyList();
+        for (List<SSTableReader> bucket : SizeTieredCompactionStrategy.getBuckets(pairs, SizeTieredCompactionStrategy.DEFAULT_MIN_SSTABLE_SIZE))
         {
-            // the first sstable that is > than the marked
-            if (sstable.first.compareTo(lastCompactedKeys[level]) > 0)
-                return overlapping(sstable, generations[(level + 1)]);
+            if (bucket.size() >= CFMetaData.DEFAULT_MIN_COMPACTION_THRESHOLD && bucket.size() > largest.size())
+                largest = bucket;
         }
-        // or if there was no last time, start with the first sstable
-        return overlapping(generations[level].get(0), generations[(level + 1)]);
+        return largest.size() > MAX_COMPACTING_L0 ? largest.subList(0, MAX_COMPACTING_L0) : largest;
     }
 
     public synchronized void serialize()
@@ -74,7 +74,7 @@ public class PrecompactedRow extends AbstractCompactedRow
             if (shouldPurge == null)
                 shouldPurge = controller.shouldPurge(key);
             if (shouldPurge)
-                CounterColumn.mergeAndRemoveOldShards(key, compacted, controller.gcBefore, controller.mergeShardBefore);
+                controller.countersMerged(key, CounterColumn.mergeAndRemoveOldShards(key, compacted, controller.gcBefore, controller.mergeShardBefore));
         }
 
         return compacted;
@@ -85,7 +85,7 @@ public class PrecompactedRow extends AbstractCompactedRow
         // See comment in preceding method
         ColumnFamily compacted = ColumnFamilyStore.removeDeleted(cf, shouldPurge ? controller.gcBefore : Integer.MIN_VALUE);
         if (shouldPurge && compacted != null && compacted.metadata().getDefaultValidator().isCommutative())
-            CounterColumn.mergeAndRemoveOldShards(key, compacted, controller.gcBefore, controller.mergeShardBefore);
+            controller.countersMerged(key, CounterColumn.mergeAndRemoveOldShards(key, compacted, controller.gcBefore, controller.mergeShardBefore));
         return compacted;
     }
 
@@ -169,6 +169,16 @@ public class PrecompactedRow extends AbstractCompactedRow
         return compactedCf.maxTimestamp();
     }
 
+    public long minTimestamp()
+    {
+        return compactedCf.minTimestamp();
+    }
+
+    public int maxLocalDeletionTime()
+    {
+        return compactedCf.maxLocalDeletionTime();
+    }
+
     /**
      * @return the full column family represented by this compacted row.
      *
@@ -0,0 +1,323 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * Compaction for time series data, where columns are written roughly in timestamp order and
+ * usually expire via a TTL.
+ *
+ * SSTables are grouped into time windows by their max column timestamp.  Only the sstables of the
+ * newest window are compacted with one another, size-tiered; once a window is no longer the newest
+ * its sstables are compacted into one and then left alone, so old data isn't rewritten over and over.
+ *
+ * An sstable whose tombstones and expiring columns are all gcable, and which can't shadow data in
+ * any other sstable, is dropped as a whole instead of being compacted.
+ *
+ * Options:
+ *  - time_window_in_minutes: the size of a window (default one day)
+ *  - timestamp_resolution: the unit of the client-supplied timestamps, MICROSECONDS (default) or MILLISECONDS
+ *  - min_sstable_size: as for size-tiered compaction, within the newest window
+ */
+public class TimeWindowCompactionStrategy extends AbstractCompactionStrategy
+{
+    private static final Logger logger = LoggerFactory.getLogger(TimeWindowCompactionStrategy.class);
+
+    protected static final long DEFAULT_TIME_WINDOW_IN_MINUTES = 24 * 60;
+    protected static final String TIME_WINDOW_IN_MINUTES_KEY = "time_window_in_minutes";
+    protected static final String TIMESTAMP_RESOLUTION_KEY = "timestamp_resolution";
+    protected static final String MIN_SSTABLE_SIZE_KEY = SizeTieredCompactionStrategy.MIN_SSTABLE_SIZE_KEY;
+
+    protected final long windowSizeInMillis;
+    protected final TimeUnit timestampResolution;
+    protected final long minSSTableSize;
+    protected volatile int estimatedRemainingTasks;
+
+    public TimeWindowCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
+    {
+        super(cfs, options);
+        this.estimatedRemainingTasks = 0;
+
+        String optionValue = options.get(TIME_WINDOW_IN_MINUTES_KEY);
+        long windowSizeInMinutes = (null != optionValue) ? Long.parseLong(optionValue) : DEFAULT_TIME_WINDOW_IN_MINUTES;
+        if (windowSizeInMinutes <= 0)
+            throw new IllegalArgumentException(TIME_WINDOW_IN_MINUTES_KEY + " must be positive, not " + windowSizeInMinutes);
+        windowSizeInMillis = TimeUnit.MINUTES.toMillis(windowSizeInMinutes);
+
+        optionValue = options.get(TIMESTAMP_RESOLUTION_KEY);
+        timestampResolution = (null != optionValue) ? TimeUnit.valueOf(optionValue.toUpperCase()) : TimeUnit.MICROSECONDS;
+
+        optionValue = options.get(MIN_SSTABLE_SIZE_KEY);
+        minSSTableSize = (null != optionValue) ? Long.parseLong(optionValue) : SizeTieredCompactionStrategy.DEFAULT_MIN_SSTABLE_SIZE;
+    }
+
+    public AbstractCompactionTask getNextBackgroundTask(final int gcBefore)
+    {
+        if (cfs.isCompactionDisabled())
+        {
+            logger.debug("Compaction is currently disabled.");
+            return null;
+        }
+
+        Set<SSTableReader> uncompacting = cfs.getUncompactingSSTables();
+
+        // dropping whole sstables is much cheaper than anything else we could do, so do that first
+        List<SSTableReader> expired = getFullyExpiredSSTables(uncompacting, cfs.getSSTables(), gcBefore);
+        if (!expired.isEmpty())
+        {
+            logger.debug("Dropping fully expired sstables {}", expired);
+            return new DropSSTablesTask(cfs, expired);
+        }
+
+        NavigableMap<Long, List<SSTableReader>> windows = getWindows(createSSTableAndMaxTimestampPairs(uncompacting),
+                                                                     windowSizeInMillis,
+                                                                     timestampResolution);
+        updateEstimatedCompactionsByTasks(windows);
+        if (windows.isEmpty())
+            return null;
+
+        // size-tiered within the newest window, which is still being written to
+        List<SSTableReader> newest = windows.lastEntry().getValue();
+        List<SSTableReader> bucket = getNewestWindowBucket(newest);
+        if (bucket != null)
+            return new CompactionTask(cfs, bucket, gcBefore);
+
+        // major compaction of the most recent window that has more than one sstable left
+        for (List<SSTableReader> window : windows.headMap(windows.lastKey(), false).descendingMap().values())
+        {
+            if (window.size() < 2)
+                continue;
+            Collections.sort(window, SSTable.maxTimestampComparator);
+            return new OldWindowCompactionTask(cfs, window.subList(0, Math.min(window.size(), cfs.getMaximumCompactionThreshold())), gcBefore);
+        }
+        return null;
+    }
+
+    private List<SSTableReader> getNewestWindowBucket(List<SSTableReader> sstables)
+    {
+        List<Pair<SSTableReader, Long>> pairs = new ArrayList<Pair<SSTableReader, Long>>();
+        for (SSTableReader sstable : sstables)
+            pairs.add(new Pair<SSTableReader, Long>(sstable, sstable.onDiskLength()));
+
+        List<SSTableReader> smallest = null;
+        long smallestAverage = Long.MAX_VALUE;
+        for (List<SSTableReader> bucket : SizeTieredCompactionStrategy.getBuckets(pairs, minSSTableSize))
+        {
+            if (bucket.size() < cfs.getMinimumCompactionThreshold())
+                continue;
+
+            long total = 0;
+            for (SSTableReader sstable : bucket)
+                total += sstable.bytesOnDisk();
+            if (total / bucket.size() < smallestAverage)
+            {
+                smallestAverage = total / bucket.size();
+                smallest = bucket;
+            }
+        }
+        if (smallest == null)
+            return null;
+
+        Collections.sort(smallest, new Comparator<SSTableReader>()
+        {
+            public int compare(SSTableReader o1, SSTableReader o2)
+            {
+                return o1.descriptor.generation - o2.descriptor.generation;
+            }
+        });
+        return smallest.subList(0, Math.min(smallest.size(), cfs.getMaximumCompactionThreshold()));
+    }
+
+    public AbstractCompactionTask getMaximalTask(final int gcBefore)
+    {
+        return cfs.getSSTables().isEmpty() ? null : new CompactionTask(cfs, cfs.getSSTables(), gcBefore);
+    }
+
+    public AbstractCompactionTask getUserDefinedTask(Collection<SSTableReader> sstables, final int gcBefore)
+    {
+        return new CompactionTask(cfs, sstables, gcBefore)
+                .isUserDefined(true)
+                .compactionFileLocation(cfs.table.getDataFileLocation(1));
+    }
+
+    public int getEstimatedRemainingTasks()
+    {
+        return estimatedRemainingTasks;
+    }
+
+    private static List<Pair<SSTableReader, Long>> createSSTableAndMaxTimestampPairs(Collection<SSTableReader> collection)
+    {
+        List<Pair<SSTableReader, Long>> pairs = new ArrayList<Pair<SSTableReader, Long>>();
+        for (SSTableReader sstable : collection)
+            pairs.add(new Pair<SSTableReader, Long>(sstable, sstable.getMaxTimestamp()));
+        return pairs;
+    }
+
+    /**
+     * Group files by the time window their (max) timestamp falls in.
+     * @return the windows, keyed and ordered by their start in milliseconds
+     */
+    static <T> NavigableMap<Long, List<T>> getWindows(Collection<Pair<T, Long>> files, long windowSizeInMillis, TimeUnit timestampResolution)
+    {
+        NavigableMap<Long, List<T>> windows = new TreeMap<Long, List<T>>();
+        for (Pair<T, Long> pair : files)
+        {
+            long window = getWindowStart(timestampResolution.toMillis(pair.right), windowSizeInMillis);
+            List<T> bucket = windows.get(window);
+            if (bucket == null)
+            {
+                bucket = new ArrayList<T>();
+                windows.put(window, bucket);
+            }
+            bucket.add(pair.left);
+        }
+        return windows;
+    }
+
+    static long getWindowStart(long millis, long windowSizeInMillis)
+    {
+        // round towards negative infinity, so that windows don't straddle the epoch
+        long window = millis / windowSizeInMillis;
+        if (millis < 0 && millis % windowSizeInMillis != 0)
+            window--;
+        return window * windowSizeInMillis;
+    }
+
+    /**
+     * @return the sstables among @param candidates that only hold data that is gcable before @param gcBefore,
+     * and that are older than all the data in the rest of @param all, so that dropping them can't make
+     * anything they shadow reappear.
+     */
+    static List<SSTableReader> getFullyExpiredSSTables(Collection<SSTableReader> candidates, Collection<SSTableReader> all, int gcBefore)
+    {
+        List<SSTableReader> expired = new ArrayList<SSTableReader>();
+        for (SSTableReader candidate : candidates)
+        {
+            if (candidate.getMaxLocalDeletionTime() < gcBefore)
+                expired.add(candidate);
+        }
+        if (expired.isEmpty())
+            return expired;
+
+        long minLiveTimestamp = Long.MAX_VALUE;
+        for (SSTableReader sstable : all)
+        {
+            if (sstable.getMaxLocalDeletionTime() >= gcBefore)
+                minLiveTimestamp = Math.min(minLiveTimestamp, sstable.getMinTimestamp());
+        }
+
+        Iterator<SSTableReader> iter = expired.iterator();
+        while (iter.hasNext())
+        {
+            if (iter.next().getMaxTimestamp() >= minLiveTimestamp)
+                iter.remove();
+        }
+        return expired;
+    }
+
+    private void updateEstimatedCompactionsByTasks(NavigableMap<Long, List<SSTableReader>> windows)
+    {
+        int n = 0;
+        Long newest = windows.isEmpty() ? null : windows.lastKey();
+        for (Map.Entry<Long, List<SSTableReader>> entry : windows.entrySet())
+        {
+            int size = entry.getValue().size();
+            if (entry.getKey().equals(newest))
+            {
+                if (size >= cfs.getMinimumCompactionThreshold())
+                    n += Math.ceil((double) size / cfs.getMaximumCompactionThreshold());
+            }
+            else if (size >= 2)
+            {
+                n += Math.ceil((double) (size - 1) / (cfs.getMaximumCompactionThreshold() - 1));
+            }
+        }
+        estimatedRemainingTasks = n;
+    }
+
+    public long getMaxSSTableSize()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    public boolean isKeyExistenceExpensive(Set<? extends SSTable> sstablesToIgnore)
+    {
+        return cfs.getSSTables().size() - sstablesToIgnore.size() > 20;
+    }
+
+    public String toString()
+    {
+        return String.format("TimeWindowCompactionStrategy[%s/%s, %sms windows]",
+            cfs.getMinimumCompactionThreshold(),
+            cfs.getMaximumCompactionThreshold(),
+            windowSizeInMillis);
+    }
+
+    /**
+     * Compacts the sstables of a window that isn't being written to anymore, however few there are.
+     */
+    private static class OldWindowCompactionTask extends CompactionTask
+    {
+        public OldWindowCompactionTask(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, int gcBefore)
+        {
+            super(cfs, sstables, gcBefore);
+        }
+
+        @Override
+        public boolean markSSTablesForCompaction()
+        {
+            return markSSTablesForCompaction(2, cfs.getMaximumCompactionThreshold());
+        }
+    }
+
+    /**
+     * Removes sstables without reading them.
+     */
+    private static class DropSSTablesTask extends AbstractCompactionTask
+    {
+        public DropSSTablesTask(ColumnFamilyStore cfs, Collection<SSTableReader> sstables)
+        {
+            super(cfs, sstables);
+        }
+
+        public int execute(CompactionManager.CompactionExecutorStatsCollector collector) throws IOException
+        {
+            logger.info("Dropping {} sstables of {} whose data has all expired: {}",
+                        new Object[]{ sstables.size(), cfs.getColumnFamilyName(), sstables });
+            cfs.markCompacted(sstables);
+            return sstables.size();
+        }
+
+        @Override
+        public boolean markSSTablesForCompaction()
+        {
+            return markSSTablesForCompaction(1, Integer.MAX_VALUE);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.db.ClockAndCount;
 import org.apache.cassandra.db.DBConstants;
 import org.apache.cassandra.db.marshal.MarshalException;
 import org.apache.cassandra.utils.Allocator;
@@ -136,9 +137,19 @@ public class CounterContext implements IContext
         return HEADER_SIZE_LENGTH + Math.abs(context.getShort(context.position())) * HEADER_ELT_LENGTH;
     }
 
+    // Node ids are compared as unsigned bytes, which for big-endian longs is the same as comparing
+    // them as two unsigned longs (flipping the sign bit makes a signed comparison unsigned)
     private static int compareId(ByteBuffer bb1, int pos1, ByteBuffer bb2, int pos2)
     {
-        return ByteBufferUtil.compareSubArrays(bb1, pos1, bb2, pos2, NodeId.LENGTH);
+        long high1 = bb1.getLong(pos1) ^ Long.MIN_VALUE;
+        long high2 = bb2.getLong(pos2) ^ Long.MIN_VALUE;
+        if (high1 != high2)
+            return high1 < high2 ? -1 : 1;
+        long low1 = bb1.getLong(pos1 + 8) ^ Long.MIN_VALUE;
+        long low2 = bb2.getLong(pos2 + 8) ^ Long.MIN_VALUE;
+        if (low1 != low2)
+            return low1 < low2 ? -1 : 1;
+        return 0;
     }
 
     /**
@@ -158,123 +169,83 @@ public class CounterContext implements IContext
     public ContextRelationship diff(ByteBuffer left, ByteBuffer right)
     {
         ContextRelationship relationship = ContextRelationship.EQUAL;
-        ContextState leftState = new ContextState(left, headerLength(left));
-        ContextState rightState = new ContextState(right, headerLength(right));
 
-        while (leftState.hasRemaining() && rightState.hasRemaining())
+        // shards are fixed width and sorted by id, so walk both bodies directly; the delta
+        // flags of the header don't matter here
+        int leftOffset = left.position() + headerLength(left);
+        int rightOffset = right.position() + headerLength(right);
+        int leftEnd = left.limit();
+        int rightEnd = right.limit();
+
+        while (leftOffset < leftEnd && rightOffset < rightEnd)
         {
             // compare id bytes
-            int compareId = leftState.compareIdTo(rightState);
+            int compareId = compareId(left, leftOffset, right, rightOffset);
             if (compareId == 0)
             {
-                long leftClock  = leftState.getClock();
-                long rightClock = rightState.getClock();
+                long leftClock  = left.getLong(leftOffset + NodeId.LENGTH);
+                long rightClock = right.getLong(rightOffset + NodeId.LENGTH);
 
                 // advance
-                leftState.moveToNext();
-                rightState.moveToNext();
+                leftOffset += STEP_LENGTH;
+                rightOffset += STEP_LENGTH;
 
                 // process clock comparisons
                 if (leftClock == rightClock)
-                {
                     continue;
-                }
-                else if ((leftClock >= 0 && rightClock > 0 && leftClock > rightClock)
-                      || (leftClock < 0 && (rightClock > 0 || leftClock < rightClock)))
+
+                if ((leftClock >= 0 && rightClock > 0 && leftClock > rightClock)
+                 || (leftClock < 0 && (rightClock > 0 || leftClock < rightClock)))
                 {
                     if (relationship == ContextRelationship.EQUAL)
-                    {
                         relationship = ContextRelationship.GREATER_THAN;
-                    }
-                    else if (relationship == ContextRelationship.GREATER_THAN)
-                    {
-                        continue;
-                    }
-                    else
-                    {
-                        // relationship == ContextRelationship.LESS_THAN
+                    else if (relationship == ContextRelationship.LESS_THAN)
                         return ContextRelationship.DISJOINT;
-                    }
                 }
                 else
                 {
                     if (relationship == ContextRelationship.EQUAL)
-                    {
                         relationship = ContextRelationship.LESS_THAN;
-                    }
                     else if (relationship == ContextRelationship.GREATER_THAN)
-                    {
                         return ContextRelationship.DISJOINT;
-                    }
-                    else
-                    {
-                        // relationship == ContextRelationship.LESS_THAN
-                        continue;
-                    }
                 }
             }
             else if (compareId > 0)
             {
                 // only advance the right context
-                rightState.moveToNext();
+                rightOffset += STEP_LENGTH;
 
                 if (relationship == ContextRelationship.EQUAL)
-                {
                     relationship = ContextRelationship.LESS_THAN;
-                }
                 else if (relationship == ContextRelationship.GREATER_THAN)
-                {
                     return ContextRelationship.DISJOINT;
-                }
-                else
-                {
-                    // relationship == ContextRelationship.LESS_THAN
-                    continue;
-                }
             }
             else // compareId < 0
             {
                 // only advance the left context
-                leftState.moveToNext();
+                leftOffset += STEP_LENGTH;
 
                 if (relationship == ContextRelationship.EQUAL)
-                {
                     relationship = ContextRelationship.GREATER_THAN;
-                }
-                else if (relationship == ContextRelationship.GREATER_THAN)
-                {
-                    continue;
-                }
-                else
-                // relationship == ContextRelationship.LESS_THAN
-                {
+                else if (relationship == ContextRelationship.LESS_THAN)
                     return ContextRelationship.DISJOINT;
-                }
             }
         }
 
         // check final lengths
-        if (leftState.hasRemaining())
+        if (leftOffset < leftEnd)
         {
             if (relationship == ContextRelationship.EQUAL)
-            {
                 return ContextRelationship.GREATER_THAN;
-            }
             else if (relationship == ContextRelationship.LESS_THAN)
-            {
                 return ContextRelationship.DISJOINT;
-            }
         }
-        else if (rightState.hasRemaining())
+        else if (rightOffset < rightEnd)
         {
             if (relationship == ContextRelationship.EQUAL)
-            {
                 return ContextRelationship.LESS_THAN;
-            }
             else if (relationship == ContextRelationship.GREATER_THAN)
-            {
                 return ContextRelationship.DISJOINT;
-            }
         }
 
         return relationship;
@@ -289,105 +260,127 @@ public class CounterContext implements IContext
      */
     public ByteBuffer merge(ByteBuffer left, ByteBuffer right, Allocator allocator)
     {
-        ContextState leftState = new ContextState(left, headerLength(left));
-        ContextState rightState = new ContextState(right, headerLength(right));
-
-        // Compute size of result
-        int mergedHeaderLength = HEADER_SIZE_LENGTH;
-        int mergedBodyLength = 0;
-
-        while (leftState.hasRemaining() && rightState.hasRemaining())
-        {
-            int cmp = leftState.compareIdTo(rightState);
-            if (cmp == 0)
-            {
-                mergedBodyLength += STEP_LENGTH;
-                if (leftState.isDelta() || rightState.isDelta())
-                    mergedHeaderLength += HEADER_ELT_LENGTH;
-                leftState.moveToNext();
-                rightState.moveToNext();
-            }
-            else if (cmp > 0)
-            {
-                mergedBodyLength += STEP_LENGTH;
-                if (rightState.isDelta())
-                    mergedHeaderLength += HEADER_ELT_LENGTH;
-                rightState.moveToNext();
-            }
-            else // cmp < 0
-            {
-                mergedBodyLength += STEP_LENGTH;
-                if (leftState.isDelta())
-                    mergedHeaderLength += HEADER_ELT_LENGTH;
-                leftState.moveToNext();
-            }
-        }
-        mergedHeaderLength += leftState.remainingHeaderLength() + rightState.remainingHeaderLength();
-        mergedBodyLength += leftState.remainingBodyLength() + rightState.remainingBodyLength();
-
-        // Do the actual merge
-        ByteBuffer merged = allocator.allocate(mergedHeaderLength + mergedBodyLength);
-        merged.putShort(merged.position(), (short) ((mergedHeaderLength - HEADER_SIZE_LENGTH) / HEADER_ELT_LENGTH));
-        ContextState mergedState = new ContextState(merged, mergedHeaderLength);
-        leftState.reset();
-        rightState.reset();
-        while (leftState.hasRemaining() && rightState.hasRemaining())
-        {
-            int cmp = leftState.compareIdTo(rightState);
+        int leftHeaderEnd = left.position() + headerLength(left);
+        int rightHeaderEnd = right.position() + headerLength(right);
+        int leftEnd = left.limit();
+        int rightEnd = right.limit();
+
+        // Merge the bodies in one pass into the scratch buffer, remembering which merged shards are
+        // deltas, then copy the result out in one go once we know its size.  Nothing is allocated
+        // but the result.
+        MergeBuffer scratch = mergeBuffer.get();
+        scratch.ensureCapacity((leftEnd - leftHeaderEnd + rightEnd - rightHeaderEnd) / STEP_LENGTH);
+        ByteBuffer body = scratch.body;
+        short[] deltas = scratch.deltas;
+        int bodyLength = 0;
+        int deltaCount = 0;
+
+        int leftOffset = leftHeaderEnd, rightOffset = rightHeaderEnd;
+        // next header entry, and index of the current shard, of each side
+        int leftHeader = left.position() + HEADER_SIZE_LENGTH, rightHeader = right.position() + HEADER_SIZE_LENGTH;
+        int leftIdx = 0, rightIdx = 0;
+        while (leftOffset < leftEnd || rightOffset < rightEnd)
+        {
+            boolean leftIsDelta = leftHeader < leftHeaderEnd && left.getShort(leftHeader) == leftIdx;
+            boolean rightIsDelta = rightHeader < rightHeaderEnd && right.getShort(rightHeader) == rightIdx;
+            int cmp = leftOffset == leftEnd ? 1 : (rightOffset == rightEnd ? -1 : compareId(left, leftOffset, right, rightOffset));
+
+            boolean isDelta;
             if (cmp == 0)
             {
-                if (leftState.isDelta() || rightState.isDelta())
+                if (leftIsDelta && rightIsDelta)
                 {
-                    // Local id and at least one is a delta
-                    if (leftState.isDelta() && rightState.isDelta())
-                    {
-                        // both delta, sum
-                        long clock = leftState.getClock() + rightState.getClock();
-                        long count = leftState.getCount() + rightState.getCount();
-                        mergedState.writeElement(leftState.getNodeId(), clock, count, true);
-                    }
+                    // both delta, sum
+                    ByteBufferUtil.arrayCopy(left, leftOffset, body, bodyLength, NodeId.LENGTH);
+                    body.putLong(bodyLength + NodeId.LENGTH, left.getLong(leftOffset + NodeId.LENGTH) + right.getLong(rightOffset + NodeId.LENGTH));
+                    body.putLong(bodyLength + NodeId.LENGTH + CLOCK_LENGTH, left.getLong(leftOffset + NodeId.LENGTH + CLOCK_LENGTH) + right.getLong(rightOffset + NodeId.LENGTH + CLOCK_LENGTH));
+                    isDelta = true;
+                }
+                else if (leftIsDelta || rightIsDelta)
+                {
+                    // Only one have delta, keep that one
+                    if (leftIsDelta)
+                        ByteBufferUtil.arrayCopy(left, leftOffset, body, bodyLength, STEP_LENGTH);
                     else
-                    {
-                        // Only one have delta, keep that one
-                        (leftState.isDelta() ? leftState : rightState).copyTo(mergedState);
-                    }
+                        ByteBufferUtil.arrayCopy(right, rightOffset, body, bodyLength, STEP_LENGTH);
+                    isDelta = true;
                 }
                 else
                 {
-                    long leftClock = leftState.getClock();
-                    long rightClock = rightState.getClock();
+                    long leftClock = left.getLong(leftOffset + NodeId.LENGTH);
+                    long rightClock = right.getLong(rightOffset + NodeId.LENGTH);
                     if ((leftClock >= 0 && rightClock > 0 && leftClock >= rightClock)
                      || (leftClock < 0 && (rightClock > 0 || leftClock < rightClock)))
-                        leftState.copyTo(mergedState);
+                        ByteBufferUtil.arrayCopy(left, leftOffset, body, bodyLength, STEP_LENGTH);
                     else
-                        rightState.copyTo(mergedState);
+                        ByteBufferUtil.arrayCopy(right, rightOffset, body, bodyLength, STEP_LENGTH);
+                    isDelta = false;
                 }
-                rightState.moveToNext();
-                leftState.moveToNext();
             }
             else if (cmp > 0)
             {
-                rightState.copyTo(mergedState);
-                rightState.moveToNext();
+                ByteBufferUtil.arrayCopy(right, rightOffset, body, bodyLength, STEP_LENGTH);
+                isDelta = rightIsDelta;
             }
             else // cmp < 0
             {
-                leftState.copyTo(mergedState);
-                leftState.moveToNext();
+                ByteBufferUtil.arrayCopy(left, leftOffset, body, bodyLength, STEP_LENGTH);
+                isDelta = leftIsDelta;
+            }
+
+            if (isDelta)
+                deltas[deltaCount++] = (short) (bodyLength / STEP_LENGTH);
+            bodyLength += STEP_LENGTH;
+
+            if (cmp <= 0)
+            {
+                if (leftIsDelta)
+                    leftHeader += HEADER_ELT_LENGTH;
+                leftOffset += STEP_LENGTH;
+                leftIdx++;
+            }
+            if (cmp >= 0)
+            {
+                if (rightIsDelta)
+                    rightHeader += HEADER_ELT_LENGTH;
+                rightOffset += STEP_LENGTH;
+                rightIdx++;
             }
         }
-        while (leftState.hasRemaining())
+
+        int mergedHeaderLength = HEADER_SIZE_LENGTH + deltaCount * HEADER_ELT_LENGTH;
+        ByteBuffer merged = allocator.allocate(mergedHeaderLength + bodyLength);
+        int position = merged.position();
+        merged.putShort(position, (short) deltaCount);
+        for (int i = 0; i < deltaCount; i++)
+            merged.putShort(position + HEADER_SIZE_LENGTH + i * HEADER_ELT_LENGTH, deltas[i]);
+        ByteBufferUtil.arrayCopy(body, 0, merged, position + mergedHeaderLength, bodyLength);
+        return merged;
+    }
+
+    private static final ThreadLocal<MergeBuffer> mergeBuffer = new ThreadLocal<MergeBuffer>()
+    {
+        protected MergeBuffer initialValue()
         {
-            leftState.copyTo(mergedState);
-            leftState.moveToNext();
+            return new MergeBuffer();
         }
-        while (rightState.hasRemaining())
+    };
+
+    /**
+     * Per-thread scratch space for merge(), grown to the widest merge the thread has done.
+     */
+    private static class MergeBuffer
+    {
+        ByteBuffer body = ByteBuffer.allocate(0);
+        short[] deltas = new short[0];
+
+        void ensureCapacity(int shards)
         {
-            rightState.copyTo(mergedState);
-            rightState.moveToNext();
+            if (deltas.length >= shards)
+                return;
+            body = ByteBuffer.allocate(shards * STEP_LENGTH);
+            deltas = new short[shards];
         }
-
-        return merged;
     }
 
     /**
@@ -432,16 +425,37 @@ public class CounterContext implements IContext
      */
     public long total(ByteBuffer context)
     {
-        long total = 0L;
+        int end = context.limit();
+        int offset = context.position() + headerLength(context) + NodeId.LENGTH + CLOCK_LENGTH;
+        // a single shard (a fresh increment, or a counter only ever written by one node) is the common case
+        if (offset + COUNT_LENGTH == end)
+            return context.getLong(offset);
 
         // we could use a ContextState but it is easy enough that we avoid the object creation
-        for (int offset = context.position() + headerLength(context); offset < context.limit(); offset += STEP_LENGTH)
+        long total = 0L;
+        for (; offset < end; offset += STEP_LENGTH)
+            total += context.getLong(offset);
+        return total;
+    }
+
+    /**
+     * Returns the clock and count of the local node id's shard.
+     *
+     * @param context a counter context
+     * @return the local shard, BLANK if there is none, or null if it is not a delta
+     * (only a delta shard adds up with the deltas of later increments, see merge())
+     */
+    public ClockAndCount getLocalClockAndCount(ByteBuffer context)
+    {
+        NodeId localId = NodeId.getLocalId();
+        ContextState state = new ContextState(context);
+        while (state.hasRemaining())
         {
-            long count = context.getLong(offset + NodeId.LENGTH + CLOCK_LENGTH);
-            total += count;
+            if (state.getNodeId().equals(localId))
+                return state.isDelta() ? new ClockAndCount(state.getClock(), state.getCount()) : null;
+            state.moveToNext();
         }
-
-        return total;
+        return ClockAndCount.BLANK;
     }
 
     /**
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.index;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cassandra.utils.CountMinSketch;
+import org.apache.cassandra.utils.HyperLogLog;
+
+/**
+ * Approximate distribution of the values of an indexed column on this node: how many distinct values
+ * there are (a HyperLogLog sketch) and how many index entries each value has (a count-min sketch, which
+ * gets heavy hitters right and overestimates rare values by a small fraction of the total).  Below that
+ * fraction, the count-min estimate may be nothing but collisions, so rare values are estimated by the
+ * mean number of entries per distinct value instead.
+ *
+ * Entries are counted as the index is written; what was already on disk at startup is loaded in the
+ * background, until which the statistics are incomplete and shouldn't be relied on.
+ */
+public class IndexStatistics
+{
+    private static final int WIDTH = 2048;
+
+    private final HyperLogLog distinctValues = new HyperLogLog(12);
+    private final CountMinSketch entries = new CountMinSketch(4, WIDTH);
+    private final AtomicLong totalEntries = new AtomicLong();
+    private volatile boolean loaded;
+
+    public void add(ByteBuffer value, long count)
+    {
+        distinctValues.add(value);
+        entries.add(value, count);
+        totalEntries.addAndGet(count);
+    }
+
+    public void remove(ByteBuffer value)
+    {
+        entries.add(value, -1);
+        totalEntries.decrementAndGet();
+    }
+
+    public void setLoaded()
+    {
+        loaded = true;
+    }
+
+    public boolean isLoaded()
+    {
+        return loaded;
+    }
+
+    /** @return the estimated number of index entries (i.e. rows) for @param value */
+    public long estimateEntries(ByteBuffer value)
+    {
+        long total = getTotalEntries();
+        long estimate = Math.min(entries.estimate(value), total);
+        // within the sketch's error (see CountMinSketch), the value may well have no more entries than most
+        if (estimate <= 2 * total / WIDTH)
+            estimate = Math.min(estimate, (long) Math.ceil((double) total / Math.max(estimateDistinctValues(), 1)));
+        return estimate;
+    }
+
+    /** @return the estimated number of distinct values ever indexed */
+    public long estimateDistinctValues()
+    {
+        return distinctValues.cardinality();
+    }
+
+    public long getTotalEntries()
+    {
+        return Math.max(totalEntries.get(), 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d entries, ~%d distinct values%s", getTotalEntries(), estimateDistinctValues(), loaded ? "" : " (loading)");
+    }
+}
@@ -29,7 +29,6 @@ import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.SystemTable;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.index.keys.KeysIndex;
-import org.apache.cassandra.io.sstable.ReducingKeyIterator;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.commons.lang.StringUtils;
@@ -150,13 +149,11 @@ public abstract class SecondaryIndex
             columnNames.add(cdef.name);
 
         Collection<SSTableReader> sstables = baseCfs.markCurrentSSTablesReferenced();
-        SecondaryIndexBuilder builder = new SecondaryIndexBuilder(baseCfs,
-                                                                  columnNames,
-                                                                  new ReducingKeyIterator(sstables));
-        Future<?> future = CompactionManager.instance.submitIndexBuild(builder);
+        List<Future<?>> futures = CompactionManager.instance.submitIndexBuild(baseCfs, columnNames, sstables);
         try
         {
-            future.get();
+            for (Future<?> future : futures)
+                future.get();
             forceBlockingFlush();
             
             // Mark all indexed columns as built
@@ -30,7 +30,8 @@ import org.apache.cassandra.db.compaction.CompactionInterruptedException;
 import org.apache.cassandra.io.sstable.ReducingKeyIterator;
 
 /**
- * Manages building an entire index from column family data. Runs on to compaction manager.
+ * Manages building an index from the column family data of one token range slice (see
+ * CompactionManager.submitIndexBuild). Runs on the compaction manager.
  */
 public class SecondaryIndexBuilder extends CompactionInfo.Holder
 {
@@ -29,7 +29,6 @@ import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.filter.IFilter;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.LocalToken;
-import org.apache.cassandra.io.sstable.ReducingKeyIterator;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.thrift.IndexClause;
 import org.apache.cassandra.thrift.IndexExpression;
@@ -115,11 +114,11 @@ public class SecondaryIndexManager
         logger.info(String.format("Submitting index build of %s for data in %s",
                                   baseCfs.metadata.comparator.getString(columns), StringUtils.join(sstables, ", ")));
 
-        SecondaryIndexBuilder builder = new SecondaryIndexBuilder(baseCfs, columns, new ReducingKeyIterator(sstables));
-        Future<?> future = CompactionManager.instance.submitIndexBuild(builder);
+        List<Future<?>> futures = CompactionManager.instance.submitIndexBuild(baseCfs, columns, sstables);
         try
         {
-            future.get();
+            for (Future<?> future : futures)
+                future.get();
             flushIndexesBlocking();
         }
         catch (InterruptedException e)
@@ -545,4 +544,33 @@ public class SecondaryIndexManager
         
         return indexSearchers.get(0).search(clause, range, dataFilter);
     }
+
+    /**
+     * Like search, but returning the rows as they are read.
+     */
+    public Iterator<Row> searchIterator(IndexClause clause, AbstractBounds<RowPosition> range, IFilter dataFilter)
+    {
+        List<SecondaryIndexSearcher> indexSearchers = getIndexSearchersForQuery(clause);
+
+        if (indexSearchers.isEmpty())
+            return Collections.<Row>emptyList().iterator();
+
+        //We currently don't support searching across multiple index types
+        if (indexSearchers.size() > 1)
+            throw new RuntimeException("Unable to search across multiple secondary index types");
+
+        return indexSearchers.get(0).searchIterator(clause, range, dataFilter);
+    }
+
+    /**
+     * @return an estimate of how many rows of this node match the indexed expressions of @param clause,
+     * or -1 if there is none
+     */
+    public long estimateResultRows(IndexClause clause)
+    {
+        List<SecondaryIndexSearcher> indexSearchers = getIndexSearchersForQuery(clause);
+        if (indexSearchers.size() != 1)
+            return -1;
+        return indexSearchers.get(0).estimateResultRows(clause);
+    }
 }
@@ -88,4 +88,22 @@ public abstract class SecondaryIndexSearcher
     }
     
     public abstract List<Row> search(IndexClause clause, AbstractBounds<RowPosition> range, IFilter dataFilter);
+
+    /**
+     * Like search, but returning the matching rows as they are read, so that the caller can stop pulling
+     * (and reading) them whenever it likes.  By default, this just iterates over the result of search.
+     */
+    public Iterator<Row> searchIterator(IndexClause clause, AbstractBounds<RowPosition> range, IFilter dataFilter)
+    {
+        return search(clause, range, dataFilter).iterator();
+    }
+
+    /**
+     * @return an estimate of how many rows of this node match the indexed expressions of @param clause,
+     * or -1 if there is none
+     */
+    public long estimateResultRows(IndexClause clause)
+    {
+        return -1;
+    }
 }
@@ -20,21 +20,29 @@ package org.apache.cassandra.db.index.keys;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.config.ConfigurationException;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.index.IndexStatistics;
 import org.apache.cassandra.db.index.PerColumnSecondaryIndex;
 import org.apache.cassandra.db.index.SecondaryIndexSearcher;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.cassandra.db.marshal.LocalByPartionerType;
 import org.apache.cassandra.dht.*;
+import org.apache.cassandra.io.sstable.SSTableIdentityIterator;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.sstable.SSTableScanner;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.WrappedRunnable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,7 +53,12 @@ import org.slf4j.LoggerFactory;
 public class KeysIndex extends PerColumnSecondaryIndex
 {
     private static final Logger logger = LoggerFactory.getLogger(KeysIndex.class);
+
+    // scans every index sstable, so it gets a (low priority) thread of its own rather than holding up StorageService.tasks
+    private static final ExecutorService statisticsLoader = new DebuggableThreadPoolExecutor("IndexStatisticsLoader", Thread.MIN_PRIORITY);
+
     private ColumnFamilyStore indexCfs;
+    private final IndexStatistics statistics = new IndexStatistics();
 
     public KeysIndex() 
     {
@@ -61,6 +74,49 @@ public class KeysIndex extends PerColumnSecondaryIndex
                                                              indexedCfMetadata.cfName,
                                                              new LocalPartitioner(columnDef.getValidator()),
                                                              indexedCfMetadata);
+
+        // entries written from now on are counted as they are inserted; count those already in
+        // the current sstables (which can't contain any of the former) in the background
+        final Collection<SSTableReader> sstables = indexCfs.markCurrentSSTablesReferenced();
+        statisticsLoader.execute(new WrappedRunnable()
+        {
+            public void runMayThrow() throws IOException
+            {
+                try
+                {
+                    loadStatistics(sstables);
+                }
+                finally
+                {
+                    SSTableReader.releaseReferences(sstables);
+                }
+            }
+        });
+    }
+
+    private void loadStatistics(Collection<SSTableReader> sstables) throws IOException
+    {
+        long start = System.currentTimeMillis();
+        for (SSTableReader sstable : sstables)
+        {
+            // each index row is a value, with an entry per row having it
+            SSTableScanner scanner = sstable.getDirectScanner();
+            try
+            {
+                while (scanner.hasNext())
+                {
+                    SSTableIdentityIterator row = (SSTableIdentityIterator) scanner.next();
+                    statistics.add(row.getKey().key, row.getColumnCount());
+                }
+            }
+            finally
+            {
+                scanner.close();
+            }
+        }
+        statistics.setLoaded();
+        logger.debug("Loaded statistics for index {} in {} ms: {}",
+                     new Object[]{ indexCfs.columnFamily, System.currentTimeMillis() - start, statistics });
     }
 
     public static AbstractType indexComparator()
@@ -80,6 +136,7 @@ public class KeysIndex extends PerColumnSecondaryIndex
         ColumnFamily cfi = ColumnFamily.create(indexCfs.metadata);
         cfi.addTombstone(rowKey, localDeletionTime, column.timestamp());
         indexCfs.apply(valueKey, cfi);
+        statistics.remove(valueKey.key);
         if (logger.isDebugEnabled())
             logger.debug("removed index entry for cleaned-up value {}:{}", valueKey, cfi);
     }
@@ -100,6 +157,7 @@ public class KeysIndex extends PerColumnSecondaryIndex
             logger.debug("applying index row {} in {}", indexCfs.metadata.getKeyValidator().getString(valueKey.key), cfi);
         
         indexCfs.apply(valueKey, cfi);
+        statistics.add(valueKey.key, 1);
     }
     
     public void updateColumn(DecoratedKey<?> valueKey, ByteBuffer rowKey, IColumn col)
@@ -133,6 +191,11 @@ public class KeysIndex extends PerColumnSecondaryIndex
         indexCfs.invalidate();
     }
 
+    public IndexStatistics getStatistics()
+    {
+        return statistics;
+    }
+
     public ColumnFamilyStore getIndexCfs()
     {
        return indexCfs;
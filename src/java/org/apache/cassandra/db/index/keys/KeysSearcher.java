@@ -20,11 +20,13 @@ package org.apache.cassandra.db.index.keys;
 import java.nio.ByteBuffer;
 import java.util.*;
 
+import com.google.common.collect.AbstractIterator;
+
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.columniterator.IColumnIterator;
 import org.apache.cassandra.db.filter.*;
-import org.apache.cassandra.db.index.SecondaryIndex;
+import org.apache.cassandra.db.index.IndexStatistics;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.db.index.SecondaryIndexSearcher;
 import org.apache.cassandra.dht.AbstractBounds;
@@ -39,35 +41,15 @@ import org.slf4j.LoggerFactory;
 public class KeysSearcher extends SecondaryIndexSearcher
 {
     private static final Logger logger = LoggerFactory.getLogger(KeysSearcher.class);
+
+    // index page size for the non-driving indexes of a merge join
+    private static final int JOIN_PAGE_SIZE = 128;
     
     public KeysSearcher(SecondaryIndexManager indexManager, Set<ByteBuffer> columns)
     {
         super(indexManager, columns);
     }
     
-    private IndexExpression highestSelectivityPredicate(IndexClause clause)
-    {
-        IndexExpression best = null;
-        int bestMeanCount = Integer.MAX_VALUE;
-        for (IndexExpression expression : clause.expressions)
-        {
-            //skip columns belonging to a different index type
-            if(!columns.contains(expression.column_name))
-                continue;
-            
-            SecondaryIndex index = indexManager.getIndexForColumn(expression.column_name);
-            if (index == null || (expression.op != IndexOperator.EQ))
-                continue;
-            int columns = index.getIndexCfs().getMeanColumns();
-            if (columns < bestMeanCount)
-            {
-                best = expression;
-                bestMeanCount = columns;
-            }
-        }
-        return best;
-    }
-
     private String expressionString(IndexExpression expr)
     {
         return String.format("'%s.%s %s %s'",
@@ -84,22 +66,94 @@ public class KeysSearcher extends SecondaryIndexSearcher
             && filter.count == Integer.MAX_VALUE;
     }
     
+    /**
+     * @return the indexed EQ expressions of @param clause, most selective (i.e. with the
+     * fewest estimated matching rows) first
+     */
+    private List<IndexExpression> indexedPredicates(IndexClause clause)
+    {
+        List<IndexExpression> predicates = new ArrayList<IndexExpression>();
+        for (IndexExpression expression : clause.expressions)
+        {
+            //skip columns belonging to a different index type
+            if (!columns.contains(expression.column_name) || expression.op != IndexOperator.EQ)
+                continue;
+            if (indexManager.getIndexForColumn(expression.column_name) == null)
+                continue;
+            predicates.add(expression);
+        }
+
+        Collections.sort(predicates, new Comparator<IndexExpression>()
+        {
+            public int compare(IndexExpression e1, IndexExpression e2)
+            {
+                long c1 = estimateMatches(e1);
+                long c2 = estimateMatches(e2);
+                return c1 < c2 ? -1 : (c1 == c2 ? 0 : 1);
+            }
+        });
+        return predicates;
+    }
+
+    /**
+     * @return the estimated number of rows matching @param expression (an indexed EQ one).  Until the
+     * index statistics are loaded, this is the mean size of its index rows, which ignores skew.
+     */
+    private long estimateMatches(IndexExpression expression)
+    {
+        KeysIndex index = (KeysIndex) indexManager.getIndexForColumn(expression.column_name);
+        IndexStatistics statistics = index.getStatistics();
+        return statistics.isLoaded()
+             ? statistics.estimateEntries(expression.value)
+             : index.getIndexCfs().getMeanColumns();
+    }
+
+    /**
+     * Estimate how many rows on this node match the indexed expressions of @param clause, assuming the
+     * values of different columns are independent.
+     */
+    @Override
+    public long estimateResultRows(IndexClause clause)
+    {
+        List<IndexExpression> predicates = indexedPredicates(clause);
+        if (predicates.isEmpty())
+            return -1;
+        for (IndexExpression predicate : predicates)
+        {
+            if (!((KeysIndex) indexManager.getIndexForColumn(predicate.column_name)).getStatistics().isLoaded())
+                return -1;
+        }
+
+        double estimate = estimateMatches(predicates.get(0));
+        long rows = Math.max(baseCfs.estimateKeys(), 1);
+        for (IndexExpression predicate : predicates.subList(1, predicates.size()))
+            estimate *= Math.min((double) estimateMatches(predicate) / rows, 1.0);
+        return Math.round(estimate);
+    }
+
     @Override
     public List<Row> search(IndexClause clause, AbstractBounds<RowPosition> range, IFilter dataFilter)
     {
-        // Start with the most-restrictive indexed clause, then apply remaining clauses
-        // to each row matching that clause.
-        // TODO: allow merge join instead of just one index + loop
-        IndexExpression primary = highestSelectivityPredicate(clause);
-        SecondaryIndex index = indexManager.getIndexForColumn(primary.column_name);
-        if (logger.isDebugEnabled())
-            logger.debug("Primary scan clause is " + baseCfs.getComparator().getString(primary.column_name));
-        assert index != null;
-        DecoratedKey indexKey = indexManager.getIndexKeyFor(primary.column_name, primary.value);
+        List<Row> rows = new ArrayList<Row>();
+        Iterator<Row> iterator = searchIterator(clause, range, dataFilter);
+        while (rows.size() < clause.count && iterator.hasNext())
+            rows.add(iterator.next());
+        return rows;
+    }
 
+    /**
+     * Rows are fetched from the base column family as they are pulled, a page of index entries at a time,
+     * so a caller that stops early never reads the rest.  clause.count is only used to size the index pages.
+     */
+    @Override
+    public Iterator<Row> searchIterator(final IndexClause clause, final AbstractBounds<RowPosition> range, final IFilter dataFilter)
+    {
+        List<IndexExpression> predicates = indexedPredicates(clause);
+        assert !predicates.isEmpty();
+        
         // if the slicepredicate doesn't contain all the columns for which we have expressions to evaluate,
         // it needs to be expanded to include those too
-        IFilter firstFilter = dataFilter;
+        IFilter filter = dataFilter;
         if (dataFilter instanceof SliceQueryFilter)
         {
             // if we have a high chance of getting all the columns in a single index slice, do that.
@@ -107,7 +161,7 @@ public class KeysSearcher extends SecondaryIndexSearcher
             if (baseCfs.getMaxRowSize() < DatabaseDescriptor.getColumnIndexSize())
             {
                 logger.debug("Expanding slice filter to entire row to cover additional expressions");
-                firstFilter = new SliceQueryFilter(ByteBufferUtil.EMPTY_BYTE_BUFFER,
+                filter = new SliceQueryFilter(ByteBufferUtil.EMPTY_BYTE_BUFFER,
                         ByteBufferUtil.EMPTY_BYTE_BUFFER,
                         ((SliceQueryFilter) dataFilter).reversed,
                         Integer.MAX_VALUE);
@@ -126,132 +180,268 @@ public class KeysSearcher extends SecondaryIndexSearcher
             if (columns.size() > 0)
             {
                 columns.addAll(((NamesQueryFilter) dataFilter).columns);
-                firstFilter = new NamesQueryFilter(columns);
+                filter = new NamesQueryFilter(columns);
             }
         }
 
-        List<Row> rows = new ArrayList<Row>();
-        ByteBuffer startKey = clause.start_key;
-        QueryPath path = new QueryPath(baseCfs.columnFamily);
+        final IFilter firstFilter = filter;
 
-        // we need to store last data key accessed to avoid duplicate results
-        // because in the while loop new iteration we can access the same column if start_key was not set
-        ByteBuffer lastDataKey = null;
+        if (logger.isDebugEnabled())
+        {
+            if (predicates.size() == 1)
+            {
+                logger.debug("Index plan: scan of {} (~{} rows), checking each row against the other clauses",
+                             expressionString(predicates.get(0)), estimateMatches(predicates.get(0)));
+            }
+            else
+            {
+                StringBuilder sb = new StringBuilder();
+                for (IndexExpression predicate : predicates)
+                    sb.append(sb.length() == 0 ? "" : ", ").append(expressionString(predicate)).append(" (~").append(estimateMatches(predicate)).append(" rows)");
+                logger.debug("Index plan: merge join of {}, checking each row in the intersection against the other clauses", sb);
+            }
+        }
 
-        // fetch row keys matching the primary expression, fetch the slice predicate for each
-        // and filter by remaining expressions.  repeat until finished w/ assigned range or index row is exhausted.
-        outer:
-        while (true)
+        // the driving (most selective) index is paged by the requested row count -- but never by 1, which
+        // would page badly when the first row doesn't satisfy all clauses.  The others can match much less
+        // densely, so read those in larger pages
+        final List<IndexCursor> cursors = new ArrayList<IndexCursor>(predicates.size());
+        for (IndexExpression predicate : predicates)
         {
-            /* we don't have a way to get the key back from the DK -- we just have a token --
-             * so, we need to loop after starting with start_key, until we get to keys in the given `range`.
-             * But, if the calling StorageProxy is doing a good job estimating data from each range, the range
-             * should be pretty close to `start_key`. */
-            if (logger.isDebugEnabled())
-                logger.debug(String.format("Scanning index %s starting with %s",
-                                           expressionString(primary), index.getBaseCfs().metadata.getKeyValidator().getString(startKey)));
-
-            // We shouldn't fetch only 1 row as this provides buggy paging in case the first row doesn't satisfy all clauses
-            int count = Math.max(clause.count, 2);
-            QueryFilter indexFilter = QueryFilter.getSliceFilter(indexKey,
-                                                                 new QueryPath(index.getIndexCfs().getColumnFamilyName()),
-                                                                 startKey,
-                                                                 ByteBufferUtil.EMPTY_BYTE_BUFFER,
-                                                                 false,
-                                                                 count);
-            ColumnFamily indexRow = index.getIndexCfs().getColumnFamily(indexFilter);
-            logger.debug("fetched {}", indexRow);
-            if (indexRow == null)
-                break;
+            int pageSize = cursors.isEmpty() ? Math.max(clause.count, 2) : Math.max(clause.count, JOIN_PAGE_SIZE);
+            cursors.add(new IndexCursor(predicate, pageSize));
+        }
+        final IndexCursor driver = cursors.get(0);
 
-            ByteBuffer dataKey = null;
-            int n = 0;
-            for (IColumn column : indexRow.getSortedColumns())
-            {
-                if (column.isMarkedForDelete())
-                {
-                    logger.debug("skipping {}",column.name());
-                    continue;
-                }
-                
-                dataKey = column.name();
-                n++;
-                
-                if(logger.isDebugEnabled())
-                    logger.debug("fetching {}",column.name());
-
-                DecoratedKey dk = baseCfs.partitioner.decorateKey(dataKey);
-                if (!range.right.isMinimum(baseCfs.partitioner) && range.right.compareTo(dk) < 0)
-                    break outer;
-                if (!range.contains(dk) || dataKey.equals(lastDataKey))
-                    continue;
+        /*
+         * Fetch the row keys in the intersection of the index rows of all the predicates (just those of the
+         * driving one if there is a single predicate), fetch the slice predicate for each and filter by the
+         * remaining expressions.  Index rows all sort their columns (the base row keys) the same way, so this
+         * walks them together a page at a time, letting whichever is furthest along tell the others where to
+         * skip to.
+         */
+        return new AbstractIterator<Row>()
+        {
+            private boolean started;
+            private int matches;
+            private int found;
 
-                // get the row columns requested, and additional columns for the expressions if necessary
-                ColumnFamily data = baseCfs.getColumnFamily(new QueryFilter(dk, path, firstFilter));
-                // While we the column family we'll get in the end should contains the primary clause column, the firstFilter may not have found it.
-                if (data == null)
-                    data = ColumnFamily.create(baseCfs.metadata);
-                logger.debug("fetched data row {}", data);
-                NamesQueryFilter extraFilter = null;
-                if (dataFilter instanceof SliceQueryFilter && !isIdentityFilter((SliceQueryFilter)dataFilter))
+            protected Row computeNext()
+            {
+                ByteBuffer candidate = started ? driver.next() : driver.seek(clause.start_key);
+                started = true;
+                outer:
+                while (candidate != null)
                 {
-                    // we might have gotten the expression columns in with the main data slice, but
-                    // we can't know for sure until that slice is done.  So, we'll do the extra query
-                    // if we go through and any expression columns are not present.
-                    boolean needExtraFilter = false;
-                    for (IndexExpression expr : clause.expressions)
+                    for (IndexCursor cursor : cursors)
                     {
-                        if (data.getColumn(expr.column_name) == null)
+                        if (cursor == driver)
+                            continue;
+                        ByteBuffer key = cursor.seek(candidate);
+                        if (key == null)
+                            return finish();
+                        if (!key.equals(candidate))
                         {
-                            logger.debug("adding extraFilter to cover additional expressions");
-                            // Lazily creating extra filter
-                            needExtraFilter = true;
-                            break;
+                            // nothing before key can be in the intersection
+                            candidate = driver.seek(key);
+                            continue outer;
                         }
                     }
-                    if (needExtraFilter)
+
+                    matches++;
+                    DecoratedKey dk = baseCfs.partitioner.decorateKey(candidate);
+                    if (!range.right.isMinimum(baseCfs.partitioner) && range.right.compareTo(dk) < 0)
+                        return finish();
+                    if (range.contains(dk))
                     {
-                        // Note: for counters we must be careful to not add a column that was already there (to avoid overcount). That is
-                        // why we do the dance of avoiding to query any column we already have (it's also more efficient anyway)
-                        extraFilter = getExtraFilter(clause);
-                        for (IndexExpression expr : clause.expressions)
+                        Row row = fetchIfSatisfies(dk, clause, dataFilter, firstFilter, driver.expression);
+                        if (row != null)
                         {
-                            if (data.getColumn(expr.column_name) != null)
-                                extraFilter.columns.remove(expr.column_name);
+                            found++;
+                            return row;
                         }
-                        assert !extraFilter.columns.isEmpty();
-                        ColumnFamily cf = baseCfs.getColumnFamily(new QueryFilter(dk, path, extraFilter));
-                        if (cf != null)
-                            data.addAll(cf, HeapAllocator.instance);
                     }
+                    candidate = driver.next();
+                }
+                return finish();
+            }
 
+            private Row finish()
+            {
+                if (logger.isDebugEnabled())
+                {
+                    StringBuilder sb = new StringBuilder();
+                    for (IndexCursor cursor : cursors)
+                        sb.append(sb.length() == 0 ? "" : ", ").append(cursor.pages).append(" page(s) of ").append(expressionString(cursor.expression));
+                    logger.debug("Index scan read {} and found {} candidate row(s), {} of which satisfied all clauses",
+                                 new Object[]{ sb, matches, found });
                 }
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * Fetch the requested columns of row @param dk, plus those the expressions of @param clause need.
+     * @return the row, cut back to what @param dataFilter requested, if it satisfies all the clauses
+     * other than @param primary; null otherwise.
+     */
+    private Row fetchIfSatisfies(DecoratedKey dk, IndexClause clause, IFilter dataFilter, IFilter firstFilter, IndexExpression primary)
+    {
+        QueryPath path = new QueryPath(baseCfs.columnFamily);
 
-                if (SecondaryIndexSearcher.satisfies(data, clause, primary))
+        // get the row columns requested, and additional columns for the expressions if necessary
+        ColumnFamily data = baseCfs.getColumnFamily(new QueryFilter(dk, path, firstFilter));
+        // While we the column family we'll get in the end should contains the primary clause column, the firstFilter may not have found it.
+        if (data == null)
+            data = ColumnFamily.create(baseCfs.metadata);
+        logger.debug("fetched data row {}", data);
+        NamesQueryFilter extraFilter = null;
+        if (dataFilter instanceof SliceQueryFilter && !isIdentityFilter((SliceQueryFilter)dataFilter))
+        {
+            // we might have gotten the expression columns in with the main data slice, but
+            // we can't know for sure until that slice is done.  So, we'll do the extra query
+            // if we go through and any expression columns are not present.
+            boolean needExtraFilter = false;
+            for (IndexExpression expr : clause.expressions)
+            {
+                if (data.getColumn(expr.column_name) == null)
                 {
-                    logger.debug("row {} satisfies all clauses", data);
-                    // cut the resultset back to what was requested, if necessary
-                    if (firstFilter != dataFilter || extraFilter != null)
-                    {
-                        ColumnFamily expandedData = data;
-                        data = expandedData.cloneMeShallow();
-                        IColumnIterator iter = dataFilter.getMemtableColumnIterator(expandedData, dk);
-                        new QueryFilter(dk, path, dataFilter).collateColumns(data, Collections.singletonList(iter), baseCfs.gcBefore());
-                    }
+                    logger.debug("adding extraFilter to cover additional expressions");
+                    // Lazily creating extra filter
+                    needExtraFilter = true;
+                    break;
+                }
+            }
+            if (needExtraFilter)
+            {
+                // Note: for counters we must be careful to not add a column that was already there (to avoid overcount). That is
+                // why we do the dance of avoiding to query any column we already have (it's also more efficient anyway)
+                extraFilter = getExtraFilter(clause);
+                for (IndexExpression expr : clause.expressions)
+                {
+                    if (data.getColumn(expr.column_name) != null)
+                        extraFilter.columns.remove(expr.column_name);
+                }
+                assert !extraFilter.columns.isEmpty();
+                ColumnFamily cf = baseCfs.getColumnFamily(new QueryFilter(dk, path, extraFilter));
+                if (cf != null)
+                    data.addAll(cf, HeapAllocator.instance);
+            }
+
+        }
+
+        if (!SecondaryIndexSearcher.satisfies(data, clause, primary))
+            return null;
+
+        logger.debug("row {} satisfies all clauses", data);
+        // cut the resultset back to what was requested, if necessary
+        if (firstFilter != dataFilter || extraFilter != null)
+        {
+            ColumnFamily expandedData = data;
+            data = expandedData.cloneMeShallow();
+            IColumnIterator iter = dataFilter.getMemtableColumnIterator(expandedData, dk);
+            new QueryFilter(dk, path, dataFilter).collateColumns(data, Collections.singletonList(iter), baseCfs.gcBefore());
+        }
+        return new Row(dk, data);
+    }
 
-                    rows.add(new Row(dk, data));
+    /**
+     * Pages through the live columns (base row keys) of the index row for an expression, in index order.
+     */
+    private class IndexCursor
+    {
+        final IndexExpression expression;
+        private final ColumnFamilyStore indexCfs;
+        private final DecoratedKey indexKey;
+        private final int pageSize;
+
+        private List<ByteBuffer> page = Collections.emptyList();
+        private int position;
+        // the last column of the current page, live or not; null before the first page
+        private ByteBuffer pageEnd;
+        private boolean exhausted;
+        int pages;
+
+        IndexCursor(IndexExpression expression, int pageSize)
+        {
+            this.expression = expression;
+            this.indexCfs = indexManager.getIndexForColumn(expression.column_name).getIndexCfs();
+            this.indexKey = indexManager.getIndexKeyFor(expression.column_name, expression.value);
+            this.pageSize = pageSize;
+        }
+
+        /**
+         * @return the first key at or after @param target (which may be empty, for the start of the row), or
+         * null if there is none.  Keys before target are skipped, fetching a page starting at target
+         * rather than paging through them.
+         */
+        ByteBuffer seek(ByteBuffer target)
+        {
+            while (true)
+            {
+                for (; position < page.size(); position++)
+                {
+                    ByteBuffer key = page.get(position);
+                    if (!isBefore(key, target))
+                        return key;
                 }
+                if (exhausted)
+                    return null;
 
-                if (rows.size() == clause.count)
-                    break outer;
+                if (pageEnd == null || isBefore(pageEnd, target))
+                    fetch(target, false);
+                else
+                    fetch(pageEnd, true);
             }
-            if (n < clause.count || startKey.equals(dataKey))
-                break;
+        }
 
-            lastDataKey = startKey = dataKey;
+        /** @return the key after the one the last seek returned, or null if there is none */
+        ByteBuffer next()
+        {
+            assert position < page.size();
+            // pages fetched from here on start after current, so this can't return it again
+            return seek(page.get(position++));
         }
 
-        return rows;
-    }
+        private boolean isBefore(ByteBuffer key, ByteBuffer target)
+        {
+            return target.remaining() > 0 && indexCfs.getComparator().compare(key, target) < 0;
+        }
 
+        private void fetch(ByteBuffer start, boolean afterStart)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug(String.format("Scanning index %s starting with %s",
+                                           expressionString(expression), baseCfs.metadata.getKeyValidator().getString(start)));
+
+            QueryFilter filter = QueryFilter.getSliceFilter(indexKey,
+                                                            new QueryPath(indexCfs.getColumnFamilyName()),
+                                                            start,
+                                                            ByteBufferUtil.EMPTY_BYTE_BUFFER,
+                                                            false,
+                                                            pageSize);
+            ColumnFamily indexRow = indexCfs.getColumnFamily(filter);
+            pages++;
+            page = new ArrayList<ByteBuffer>();
+            position = 0;
+            if (indexRow == null)
+            {
+                exhausted = true;
+                return;
+            }
+
+            int live = 0;
+            for (IColumn column : indexRow.getSortedColumns())
+            {
+                pageEnd = column.name();
+                if (column.isMarkedForDelete())
+                    continue;
+                live++;
+                if (!(afterStart && column.name().equals(start)))
+                    page.add(column.name());
+            }
+            exhausted = live < pageSize;
+        }
+    }
 }
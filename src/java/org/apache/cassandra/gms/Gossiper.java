@@ -223,6 +223,14 @@ public class Gossiper implements IFailureDetectionEventListener, GossiperMBean
         versions.remove(endpoint);
     }
 
+    /**
+     * @return true if we know the protocol version of @param address, rather than getVersion assuming it
+     */
+    public boolean knowsVersion(InetAddress address)
+    {
+        return versions.containsKey(address);
+    }
+
     public Integer getVersion(InetAddress address)
     {
         Integer v = versions.get(address);
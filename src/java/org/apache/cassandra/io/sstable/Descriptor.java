@@ -58,7 +58,8 @@ public class Descriptor
     // h (1.0): tracks max client timestamp in metadata component
     // hb (1.0.3): records compression ration in metadata component
     // hc (1.0.4): records partitioner in metadata component
-    public static final String CURRENT_VERSION = "hc";
+    // hd (1.1): tracks min client timestamp and max local deletion time in metadata component
+    public static final String CURRENT_VERSION = "hd";
 
     public final File directory;
     /** version has the following format: <code>[a-z]+</code> */
@@ -78,6 +79,7 @@ public class Descriptor
     public final boolean tracksMaxTimestamp;
     public final boolean hasCompressionRatio;
     public final boolean hasPartitioner;
+    public final boolean tracksMinTimestampAndMaxLocalDeletionTime;
 
     /**
      * A descriptor that assumes CURRENT_VERSION.
@@ -106,6 +108,7 @@ public class Descriptor
         tracksMaxTimestamp = version.compareTo("h") >= 0;
         hasCompressionRatio = version.compareTo("hb") >= 0;
         hasPartitioner = version.compareTo("hc") >= 0;
+        tracksMinTimestampAndMaxLocalDeletionTime = version.compareTo("hd") >= 0;
         isLatestVersion = version.compareTo(CURRENT_VERSION) == 0;
     }
 
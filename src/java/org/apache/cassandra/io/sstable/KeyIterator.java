@@ -28,6 +28,9 @@ import java.io.IOException;
 import com.google.common.collect.AbstractIterator;
 
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -37,10 +40,17 @@ public class KeyIterator extends AbstractIterator<DecoratedKey> implements Close
 {
     private final RandomAccessReader in;
     private final Descriptor desc;
+    private final Range<Token> range;
+    // the part of the index file to read (end is approximate; -1 means to the end)
+    private final long start;
+    private final long end;
 
     public KeyIterator(Descriptor desc)
     {
         this.desc = desc;
+        this.range = null;
+        this.start = 0;
+        this.end = -1;
         try
         {
             in = RandomAccessReader.open(new File(desc.filenameFor(SSTable.COMPONENT_INDEX)), true);
@@ -51,15 +61,42 @@ public class KeyIterator extends AbstractIterator<DecoratedKey> implements Close
         }
     }
 
+    /**
+     * Iterate over the keys of @param sstable in @param range only, seeking to the first of them.
+     */
+    public KeyIterator(SSTableReader sstable, Range<Token> range)
+    {
+        this.desc = sstable.descriptor;
+        this.range = range;
+        IPartitioner partitioner = StorageService.getPartitioner();
+        this.start = range.left.isMinimum(partitioner) ? 0 : sstable.getIndexScanOffset(range.left.maxKeyBound());
+        this.end = range.right.isMinimum(partitioner) ? -1 : sstable.getIndexScanOffset(range.right.maxKeyBound());
+        try
+        {
+            in = RandomAccessReader.open(new File(desc.filenameFor(SSTable.COMPONENT_INDEX)), true);
+            in.seek(start);
+        }
+        catch (IOException e)
+        {
+            throw new IOError(e);
+        }
+    }
+
     protected DecoratedKey<?> computeNext()
     {
         try
         {
-            if (in.isEOF())
-                return endOfData();
-            DecoratedKey<?> key = SSTableReader.decodeKey(StorageService.getPartitioner(), desc, ByteBufferUtil.readWithShortLength(in));
-            in.readLong(); // skip data position
-            return key;
+            while (!in.isEOF())
+            {
+                DecoratedKey<?> key = SSTableReader.decodeKey(StorageService.getPartitioner(), desc, ByteBufferUtil.readWithShortLength(in));
+                in.readLong(); // skip data position
+                if (range == null || range.contains(key.token))
+                    return key;
+                // keys are sorted: past the start of the range, a key outside of it is past its end
+                if (range.left.compareTo(key.token) < 0)
+                    break;
+            }
+            return endOfData();
         }
         catch (IOException e)
         {
@@ -74,14 +111,14 @@ public class KeyIterator extends AbstractIterator<DecoratedKey> implements Close
 
     public long getBytesRead()
     {
-        return in.getFilePointer();
+        return Math.min(in.getFilePointer() - start, getTotalBytes());
     }
 
     public long getTotalBytes()
     {
         try
         {
-            return in.length();
+            return (end < 0 ? in.length() : end) - start;
         }
         catch (IOException e)
         {
@@ -26,6 +26,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.utils.CloseableIterator;
 import org.apache.cassandra.utils.IMergeIterator;
 import org.apache.cassandra.utils.MergeIterator;
@@ -38,10 +40,18 @@ public class ReducingKeyIterator implements CloseableIterator<DecoratedKey>
     private final IMergeIterator<DecoratedKey,DecoratedKey> mi;
 
     public ReducingKeyIterator(Collection<SSTableReader> sstables)
+    {
+        this(sstables, null);
+    }
+
+    /**
+     * Iterate over the keys in @param range only (all of them if null).
+     */
+    public ReducingKeyIterator(Collection<SSTableReader> sstables, Range<Token> range)
     {
         ArrayList<KeyIterator> iters = new ArrayList<KeyIterator>();
         for (SSTableReader sstable : sstables)
-            iters.add(new KeyIterator(sstable.descriptor));
+            iters.add(range == null ? new KeyIterator(sstable.descriptor) : new KeyIterator(sstable, range));
         mi = MergeIterator.get(iters, DecoratedKey.comparator, new MergeIterator.Reducer<DecoratedKey,DecoratedKey>()
         {
             DecoratedKey<?> reduced = null;
@@ -42,6 +42,8 @@ import org.apache.cassandra.utils.EstimatedHistogram;
  *  - max column timestamp
  *  - compression ratio
  *  - partitioner
+ *  - min column timestamp
+ *  - max local deletion time, i.e. when the last tombstone or expiring column becomes purgeable
  *
  * An SSTableMetadata should be instantiated via the Collector, openFromDescriptor()
  * or createDefaultInstance()
@@ -58,6 +60,8 @@ public class SSTableMetadata
     public final long maxTimestamp;
     public final double compressionRatio;
     public final String partitioner;
+    public final long minTimestamp;
+    public final int maxLocalDeletionTime;
 
     private SSTableMetadata()
     {
@@ -66,10 +70,12 @@ public class SSTableMetadata
              ReplayPosition.NONE,
              Long.MIN_VALUE,
              Double.MIN_VALUE,
-             null);
+             null,
+             Long.MIN_VALUE,
+             Integer.MAX_VALUE);
     }
 
-    private SSTableMetadata(EstimatedHistogram rowSizes, EstimatedHistogram columnCounts, ReplayPosition replayPosition, long maxTimestamp, double cr, String partitioner)
+    private SSTableMetadata(EstimatedHistogram rowSizes, EstimatedHistogram columnCounts, ReplayPosition replayPosition, long maxTimestamp, double cr, String partitioner, long minTimestamp, int maxLocalDeletionTime)
     {
         this.estimatedRowSize = rowSizes;
         this.estimatedColumnCount = columnCounts;
@@ -77,6 +83,8 @@ public class SSTableMetadata
         this.maxTimestamp = maxTimestamp;
         this.compressionRatio = cr;
         this.partitioner = partitioner;
+        this.minTimestamp = minTimestamp;
+        this.maxLocalDeletionTime = maxLocalDeletionTime;
     }
 
     public static SSTableMetadata createDefaultInstance()
@@ -108,6 +116,8 @@ public class SSTableMetadata
         protected ReplayPosition replayPosition = ReplayPosition.NONE;
         protected long maxTimestamp = Long.MIN_VALUE;
         protected double compressionRatio = Double.MIN_VALUE;
+        protected long minTimestamp = Long.MAX_VALUE;
+        protected int maxLocalDeletionTime = Integer.MIN_VALUE;
 
         public void addRowSize(long rowSize)
         {
@@ -133,6 +143,16 @@ public class SSTableMetadata
             maxTimestamp = Math.max(maxTimestamp, potentialMax);
         }
 
+        public void updateMinTimestamp(long potentialMin)
+        {
+            minTimestamp = Math.min(minTimestamp, potentialMin);
+        }
+
+        public void updateMaxLocalDeletionTime(int potentialMax)
+        {
+            maxLocalDeletionTime = Math.max(maxLocalDeletionTime, potentialMax);
+        }
+
         public SSTableMetadata finalizeMetadata(String partitioner)
         {
             return new SSTableMetadata(estimatedRowSize,
@@ -140,7 +160,9 @@ public class SSTableMetadata
                                        replayPosition,
                                        maxTimestamp,
                                        compressionRatio,
-                                       partitioner);
+                                       partitioner,
+                                       minTimestamp,
+                                       maxLocalDeletionTime);
         }
 
         public Collector estimatedRowSize(EstimatedHistogram estimatedRowSize)
@@ -176,6 +198,8 @@ public class SSTableMetadata
             dos.writeLong(sstableStats.maxTimestamp);
             dos.writeDouble(sstableStats.compressionRatio);
             dos.writeUTF(sstableStats.partitioner);
+            dos.writeLong(sstableStats.minTimestamp);
+            dos.writeInt(sstableStats.maxLocalDeletionTime);
         }
 
         public SSTableMetadata deserialize(Descriptor descriptor) throws IOException
@@ -211,7 +235,15 @@ public class SSTableMetadata
                                     ? dis.readDouble()
                                     : Double.MIN_VALUE;
             String partitioner = desc.hasPartitioner ? dis.readUTF() : null;
-            return new SSTableMetadata(rowSizes, columnCounts, replayPosition, maxTimestamp, compressionRatio, partitioner);
+            // older sstables may contain anything, so make them look like they span all time
+            long minTimestamp = Long.MIN_VALUE;
+            int maxLocalDeletionTime = Integer.MAX_VALUE;
+            if (desc.tracksMinTimestampAndMaxLocalDeletionTime)
+            {
+                minTimestamp = dis.readLong();
+                maxLocalDeletionTime = dis.readInt();
+            }
+            return new SSTableMetadata(rowSizes, columnCounts, replayPosition, maxTimestamp, compressionRatio, partitioner, minTimestamp, maxLocalDeletionTime);
         }
     }
 }
@@ -393,6 +393,15 @@ public class SSTableReader extends SSTable
         dfile = dbuilder.complete(descriptor.filenameFor(Component.DATA));
     }
 
+    /**
+     * @return the position in the primary index from which to scan for the first key at or after @param key
+     */
+    public long getIndexScanOffset(RowPosition key)
+    {
+        IndexSummary.KeyPosition sampledPosition = getIndexScanPosition(key);
+        return sampledPosition == null ? 0 : sampledPosition.indexPosition;
+    }
+
     /** get the position in the index file to start scanning to find the given key (at most indexInterval keys away) */
     private IndexSummary.KeyPosition getIndexScanPosition(RowPosition key)
     {
@@ -944,6 +953,20 @@ public class SSTableReader extends SSTable
         return sstableMetadata.maxTimestamp;
     }
 
+    public long getMinTimestamp()
+    {
+        return sstableMetadata.minTimestamp;
+    }
+
+    /**
+     * @return the time (in seconds) after which every tombstone and expiring column in this sstable is gcable,
+     * Integer.MIN_VALUE if it contains none, or Integer.MAX_VALUE if it contains live (non-expiring) data
+     */
+    public int getMaxLocalDeletionTime()
+    {
+        return sstableMetadata.maxLocalDeletionTime;
+    }
+
     public RandomAccessReader openDataReader(boolean skipIOCache) throws IOException
     {
         return compression
@@ -162,12 +162,14 @@ public class SSTableWriter extends SSTable
                 : "incorrect row data size " + dataSize + " written to " + dataFile.getPath() + "; correct is " + (dataFile.getFilePointer() - (dataStart + 8));
         /*
          * The max timestamp is not always collected here (more precisely, row.maxTimestamp() may return Long.MIN_VALUE),
-         * to avoid deserializing an EchoedRow.
+         * to avoid deserializing an EchoedRow.  The same goes for the min timestamp and max local deletion time.
          * This is the reason why it is collected first when calling ColumnFamilyStore.createCompactionWriter
          * However, for old sstables without timestamp, we still want to update the timestamp (and we know
          * that in this case we will not use EchoedRow, since CompactionControler.needsDeserialize() will be true).
         */
         sstableMetadataCollector.updateMaxTimestamp(row.maxTimestamp());
+        sstableMetadataCollector.updateMinTimestamp(row.minTimestamp());
+        sstableMetadataCollector.updateMaxLocalDeletionTime(row.maxLocalDeletionTime());
         sstableMetadataCollector.addRowSize(dataFile.getFilePointer() - currentPosition);
         sstableMetadataCollector.addColumnCount(row.columnCount());
         afterAppend(row.key, currentPosition);
@@ -189,8 +191,10 @@ public class SSTableWriter extends SSTable
         int columnCount = ColumnFamily.serializer().serializeWithIndexes(cf, header, dataFile.stream);
         afterAppend(decoratedKey, startPosition);
 
-        // track max column timestamp
+        // track min/max column timestamp and max local deletion time
         sstableMetadataCollector.updateMaxTimestamp(cf.maxTimestamp());
+        sstableMetadataCollector.updateMinTimestamp(cf.minTimestamp());
+        sstableMetadataCollector.updateMaxLocalDeletionTime(cf.maxLocalDeletionTime());
         sstableMetadataCollector.addRowSize(dataFile.getFilePointer() - startPosition);
         sstableMetadataCollector.addColumnCount(columnCount);
     }
@@ -202,6 +206,9 @@ public class SSTableWriter extends SSTable
         assert value.remaining() > 0;
         dataFile.stream.writeLong(value.remaining());
         ByteBufferUtil.write(value, dataFile.stream);
+        // we know nothing about the serialized row's columns, so assume it may span any time
+        sstableMetadataCollector.updateMinTimestamp(Long.MIN_VALUE);
+        sstableMetadataCollector.updateMaxLocalDeletionTime(Integer.MAX_VALUE);
         afterAppend(decoratedKey, currentPosition);
     }
 
@@ -227,15 +234,24 @@ public class SSTableWriter extends SSTable
             dataFile.stream.writeByte(in.readByte());
 
         // cf data
-        dataFile.stream.writeInt(in.readInt());
-        dataFile.stream.writeLong(in.readLong());
+        int localDeletionTime = in.readInt();
+        long markedForDeleteAt = in.readLong();
+        dataFile.stream.writeInt(localDeletionTime);
+        dataFile.stream.writeLong(markedForDeleteAt);
 
         // column size
         int columnCount = in.readInt();
         dataFile.stream.writeInt(columnCount);
 
-        // deserialize each column to obtain maxTimestamp and immediately serialize it.
+        // deserialize each column to obtain timestamps and deletion times and immediately serialize it.
         long maxTimestamp = Long.MIN_VALUE;
+        long minTimestamp = Long.MAX_VALUE;
+        int maxLocalDeletionTime = Integer.MIN_VALUE;
+        if (markedForDeleteAt > Long.MIN_VALUE)
+        {
+            minTimestamp = markedForDeleteAt;
+            maxLocalDeletionTime = localDeletionTime;
+        }
         ColumnFamily cf = ColumnFamily.create(metadata, ArrayBackedSortedColumns.factory());
         for (int i = 0; i < columnCount; i++)
         {
@@ -259,12 +275,16 @@ public class SSTableWriter extends SSTable
                 }
             }
             maxTimestamp = Math.max(maxTimestamp, column.maxTimestamp());
+            minTimestamp = Math.min(minTimestamp, column.minTimestamp());
+            maxLocalDeletionTime = Math.max(maxLocalDeletionTime, column.maxLocalDeletionTime());
             cf.getColumnSerializer().serialize(column, dataFile.stream);
         }
 
         assert dataSize == dataFile.getFilePointer() - (dataStart + 8)
                 : "incorrect row data size " + dataSize + " written to " + dataFile.getPath() + "; correct is " + (dataFile.getFilePointer() - (dataStart + 8));
         sstableMetadataCollector.updateMaxTimestamp(maxTimestamp);
+        sstableMetadataCollector.updateMinTimestamp(minTimestamp);
+        sstableMetadataCollector.updateMaxLocalDeletionTime(maxLocalDeletionTime);
         sstableMetadataCollector.addRowSize(dataFile.getFilePointer() - currentPosition);
         sstableMetadataCollector.addColumnCount(columnCount);
         afterAppend(key, currentPosition);
@@ -276,6 +296,16 @@ public class SSTableWriter extends SSTable
         sstableMetadataCollector.updateMaxTimestamp(timestamp);
     }
 
+    public void updateMinTimestamp(long timestamp)
+    {
+        sstableMetadataCollector.updateMinTimestamp(timestamp);
+    }
+
+    public void updateMaxLocalDeletionTime(int localDeletionTime)
+    {
+        sstableMetadataCollector.updateMaxLocalDeletionTime(localDeletionTime);
+    }
+
     /**
      * After failure, attempt to close the index writer and data file before deleting all temp components for the sstable
      */
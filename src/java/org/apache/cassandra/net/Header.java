@@ -51,6 +51,9 @@ public class Header
     private final InetAddress from_;
     private final StorageService.Verb verb_;
     protected final Map<String, byte[]> details_;
+    // wall clock time at which the sending node wrote this header to the socket, or 0 if we don't know
+    // (local delivery, or a node that doesn't send it).  See VerbMetrics.
+    private final long timestamp_;
 
     Header(InetAddress from, StorageService.Verb verb)
     {
@@ -58,6 +61,11 @@ public class Header
     }
 
     Header(InetAddress from, StorageService.Verb verb, Map<String, byte[]> details)
+    {
+        this(from, verb, details, 0);
+    }
+
+    Header(InetAddress from, StorageService.Verb verb, Map<String, byte[]> details, long timestamp)
     {
         assert from != null;
         assert verb != null;
@@ -65,6 +73,7 @@ public class Header
         from_ = from;
         verb_ = verb;
         details_ = ImmutableMap.copyOf(details);
+        timestamp_ = timestamp;
     }
 
     InetAddress getFrom()
@@ -77,6 +86,11 @@ public class Header
         return verb_;
     }
     
+    long getTimestamp()
+    {
+        return timestamp_;
+    }
+
     byte[] getDetail(String key)
     {
         return details_.get(key);
@@ -98,12 +112,14 @@ public class Header
         return new Header(from_, verb_, detailsCopy);
     }
 
-    public int serializedSize()
+    public int serializedSize(int version)
     {
         int size = 0;
         size += CompactEndpointSerializationHelper.serializedSize(getFrom());
         size += 4;
         size += 4;
+        if (version >= MessagingService.VERSION_11)
+            size += HeaderSerializer.TIMESTAMP_SIZE;
         for (String key : details_.keySet())
         {
             size += 2 + FBUtilities.encodedUTF8Length(key);
@@ -116,11 +132,29 @@ public class Header
 
 class HeaderSerializer implements IVersionedSerializer<Header>
 {
+    /*
+     * The send timestamp travels as an extra detail rather than as a new field, so the framing
+     * stays the same for every version.  It is never exposed through getDetail; deserialize strips
+     * it out into Header.timestamp_ instead.
+     */
+    static final String TIMESTAMP_KEY = "TS";
+    static final int TIMESTAMP_SIZE = 2 + TIMESTAMP_KEY.length() + 4 + 8;
+
     public void serialize(Header t, DataOutput dos, int version) throws IOException
     {           
         CompactEndpointSerializationHelper.serialize(t.getFrom(), dos);
         dos.writeInt(t.getVerb().ordinal());
-        dos.writeInt(t.details_.size());
+        if (version >= MessagingService.VERSION_11)
+        {
+            dos.writeInt(t.details_.size() + 1);
+            dos.writeUTF(TIMESTAMP_KEY);
+            dos.writeInt(8);
+            dos.writeLong(System.currentTimeMillis());
+        }
+        else
+        {
+            dos.writeInt(t.details_.size());
+        }
         for (String key : t.details_.keySet())
         {
             dos.writeUTF(key);
@@ -136,15 +170,21 @@ class HeaderSerializer implements IVersionedSerializer<Header>
         int verbOrdinal = dis.readInt();
         int size = dis.readInt();
         Map<String, byte[]> details = new Hashtable<String, byte[]>(size);
+        long timestamp = 0;
         for ( int i = 0; i < size; ++i )
         {
             String key = dis.readUTF();
             int length = dis.readInt();
+            if (length == 8 && key.equals(TIMESTAMP_KEY))
+            {
+                timestamp = dis.readLong();
+                continue;
+            }
             byte[] bytes = new byte[length];
             dis.readFully(bytes);
             details.put(key, bytes);
         }
-        return new Header(from, StorageService.VERBS[verbOrdinal], details);
+        return new Header(from, StorageService.VERBS[verbOrdinal], details, timestamp);
     }
 
     public long serializedSize(Header header, int version)
@@ -148,7 +148,7 @@ public class IncomingTcpConnection extends Thread
             input.readFully(body, offset, CHUNK_SIZE);
         input.readFully(body, bodySize - remainder, remainder);
         // earlier versions would send unnecessary bytes left over at the end of a buffer, too
-        long remaining = totalSize - OutboundTcpConnection.messageLength(header, id, body);
+        long remaining = totalSize - OutboundTcpConnection.messageLength(header, id, body, version);
         while (remaining > 0)
             remaining -= input.skip(remaining);
 
@@ -156,6 +156,8 @@ public class IncomingTcpConnection extends Thread
         // starts sending correct-version messages (which it can do without reconnecting -- version is per-Message)
         if (version <= MessagingService.version_)
         {
+            if (header.getTimestamp() > 0)
+                VerbMetrics.get(header.getVerb()).addCrossNodeMillis(System.currentTimeMillis() - header.getTimestamp());
             Message message = new Message(header, body, version);
             MessagingService.instance().receive(message, id);
             return message;
@@ -30,6 +30,7 @@ public class MessageDeliveryTask implements Runnable
 
     private Message message;
     private final long constructionTime = System.currentTimeMillis();
+    private final long constructionNanos = System.nanoTime();
     private final String id;
 
     public MessageDeliveryTask(Message message, String id)
@@ -56,6 +57,10 @@ public class MessageDeliveryTask implements Runnable
             return;
         }
 
+        VerbMetrics metrics = VerbMetrics.get(verb);
+        long start = System.nanoTime();
+        metrics.addStageWaitNanos(start - constructionNanos);
         verbHandler.doVerb(message, id);
+        metrics.addProcessingNanos(System.nanoTime() - start);
     }
 }
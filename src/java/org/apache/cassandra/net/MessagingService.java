@@ -48,6 +48,7 @@ import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.ConfigurationException;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.EncryptionOptions;
+import org.apache.cassandra.db.MultiRowMutation;
 import org.apache.cassandra.db.RowMutation;
 import org.apache.cassandra.gms.Gossiper;
 import org.apache.cassandra.io.util.DataOutputBuffer;
@@ -117,8 +118,10 @@ public final class MessagingService implements MessagingServiceMBean
      */
     public static final EnumSet<StorageService.Verb> DROPPABLE_VERBS = EnumSet.of(StorageService.Verb.BINARY,
                                                                                   StorageService.Verb.MUTATION,
+                                                                                  StorageService.Verb.MULTI_MUTATION,
                                                                                   StorageService.Verb.READ_REPAIR,
                                                                                   StorageService.Verb.READ,
+                                                                                  StorageService.Verb.MULTI_READ,
                                                                                   StorageService.Verb.RANGE_SLICE,
                                                                                   StorageService.Verb.REQUEST_RESPONSE);
 
@@ -189,7 +192,14 @@ public final class MessagingService implements MessagingServiceMBean
                     assert expiredCallbackInfo.message != null;
                     try
                     {
-                        RowMutation rm = RowMutation.fromBytes(expiredCallbackInfo.message.getMessageBody(), expiredCallbackInfo.message.getVersion());
+                        Message message = expiredCallbackInfo.message;
+                        if (message.getVerb() == StorageService.Verb.MULTI_MUTATION)
+                        {
+                            for (RowMutation rm : MultiRowMutation.fromBytes(message.getMessageBody(), message.getVersion()).mutations)
+                                StorageProxy.scheduleLocalHint(rm, expiredCallbackInfo.target, null, null);
+                            return null;
+                        }
+                        RowMutation rm = RowMutation.fromBytes(message.getMessageBody(), message.getVersion());
                         return StorageProxy.scheduleLocalHint(rm, expiredCallbackInfo.target, null, null);
                     }
                     catch (IOException e)
@@ -350,7 +360,8 @@ public final class MessagingService implements MessagingServiceMBean
         CallbackInfo previous;
 
         // If HH is enabled and this is a mutation message => store the message to track for potential hints.
-        if (DatabaseDescriptor.hintedHandoffEnabled() && message.getVerb() == StorageService.Verb.MUTATION)
+        if (DatabaseDescriptor.hintedHandoffEnabled()
+            && (message.getVerb() == StorageService.Verb.MUTATION || message.getVerb() == StorageService.Verb.MULTI_MUTATION))
             previous = callbacks.put(messageId, new CallbackInfo(to, cb, message), timeout);
         else
             previous = callbacks.put(messageId, new CallbackInfo(to, cb), timeout);
@@ -825,4 +836,28 @@ public final class MessagingService implements MessagingServiceMBean
         return result;
     }
 
+    public long[] getRecentOutboundQueueHistogramMicros(String verb)
+    {
+        return VerbMetrics.get(StorageService.Verb.valueOf(verb)).getRecentOutboundQueueHistogramMicros();
+    }
+
+    public long[] getRecentCrossNodeHistogramMicros(String verb)
+    {
+        return VerbMetrics.get(StorageService.Verb.valueOf(verb)).getRecentCrossNodeHistogramMicros();
+    }
+
+    public long[] getRecentStageWaitHistogramMicros(String verb)
+    {
+        return VerbMetrics.get(StorageService.Verb.valueOf(verb)).getRecentStageWaitHistogramMicros();
+    }
+
+    public long[] getRecentProcessingHistogramMicros(String verb)
+    {
+        return VerbMetrics.get(StorageService.Verb.valueOf(verb)).getRecentProcessingHistogramMicros();
+    }
+
+    public long[] getRecentMessageSizeHistogram(String verb)
+    {
+        return VerbMetrics.get(StorageService.Verb.valueOf(verb)).getRecentSizeHistogram();
+    }
 }
@@ -84,4 +84,30 @@ public interface MessagingServiceMBean
      * Number of timeouts since last check per host.
      */
     public Map<String, Long> getRecentTimeoutsPerHost();
+
+    /**
+     * Histogram of time messages of the given verb spent in the outbound connection queue, since last called
+     */
+    public long[] getRecentOutboundQueueHistogramMicros(String verb);
+
+    /**
+     * Histogram of time between the sender writing a message of the given verb and us reading it, since last called.
+     * Depends on clock synchronization between nodes.
+     */
+    public long[] getRecentCrossNodeHistogramMicros(String verb);
+
+    /**
+     * Histogram of time messages of the given verb waited for a stage thread, since last called
+     */
+    public long[] getRecentStageWaitHistogramMicros(String verb);
+
+    /**
+     * Histogram of time spent in the verb handler for the given verb, since last called
+     */
+    public long[] getRecentProcessingHistogramMicros(String verb);
+
+    /**
+     * Histogram of the body size in bytes of messages of the given verb we sent, since last called
+     */
+    public long[] getRecentMessageSizeHistogram(String verb);
 }
@@ -71,7 +71,7 @@ public class OutboundTcpConnection extends Thread
         expireMessages();
         try
         {
-            backlog.put(new Entry(message, id, System.currentTimeMillis()));
+            backlog.put(new Entry(message, id, System.currentTimeMillis(), System.nanoTime()));
         }
         catch (InterruptedException e)
         {
@@ -109,7 +109,6 @@ public class OutboundTcpConnection extends Thread
             }
 
             Message m = entry.message;
-            String id = entry.id;
             if (m == CLOSE_SENTINEL)
             {
                 disconnect();
@@ -118,7 +117,7 @@ public class OutboundTcpConnection extends Thread
             if (entry.timestamp < System.currentTimeMillis() - DatabaseDescriptor.getRpcTimeout())
                 dropped.incrementAndGet();
             else if (socket != null || connect())
-                writeConnected(m, id);
+                writeConnected(entry);
             else
                 // clear out the queue, else gossip messages back up.
                 active.clear();
@@ -140,11 +139,15 @@ public class OutboundTcpConnection extends Thread
         return dropped.get();
     }
 
-    private void writeConnected(Message message, String id)
+    private void writeConnected(Entry entry)
     {
+        Message message = entry.message;
         try
         {
-            write(message, id, out);
+            VerbMetrics metrics = VerbMetrics.get(message.getVerb());
+            metrics.addOutboundQueueNanos(System.nanoTime() - entry.enqueuedNanos);
+            metrics.addSize(message.getMessageBody().length);
+            write(message, entry.id, out);
             completed++;
             if (active.peek() == null)
             {
@@ -187,7 +190,7 @@ public class OutboundTcpConnection extends Thread
         out.writeInt(header);
         // compute total Message length for compatibility w/ 0.8 and earlier
         byte[] bytes = message.getMessageBody();
-        int total = messageLength(message.header_, id, bytes);
+        int total = messageLength(message.header_, id, bytes, message.getVersion());
         out.writeInt(total);
         out.writeUTF(id);
         Header.serializer().serialize(message.header_, out, message.getVersion());
@@ -195,9 +198,9 @@ public class OutboundTcpConnection extends Thread
         out.write(bytes);
     }
 
-    public static int messageLength(Header header, String id, byte[] bytes)
+    public static int messageLength(Header header, String id, byte[] bytes, int version)
     {
-        return 2 + FBUtilities.encodedUTF8Length(id) + header.serializedSize() + 4 + bytes.length;
+        return 2 + FBUtilities.encodedUTF8Length(id) + header.serializedSize(version) + 4 + bytes.length;
     }
 
     private void disconnect()
@@ -279,12 +282,14 @@ public class OutboundTcpConnection extends Thread
         final Message message;
         final String id;
         final long timestamp;
+        final long enqueuedNanos;
 
-        Entry(Message message, String id, long timestamp)
+        Entry(Message message, String id, long timestamp, long enqueuedNanos)
         {
             this.message = message;
             this.id = id;
             this.timestamp = timestamp;
+            this.enqueuedNanos = enqueuedNanos;
         }
     }
 }
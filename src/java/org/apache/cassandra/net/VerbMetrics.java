@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.net;
+
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.EstimatedHistogram;
+
+/**
+ * Per-verb histograms of where a message spends its time:
+ *
+ *  - outbound queue: from OutboundTcpConnection.enqueue until it is written to the socket (sender side)
+ *  - cross-node: from the sender writing it until the receiver has deserialized it.  This uses the
+ *    wall clocks of both nodes, so it is only as accurate as their clock synchronization (and only millisecond-precise)
+ *  - stage wait: from MessagingService.receive handing it to a stage until a stage thread picks it up
+ *  - processing: time spent in the verb handler
+ *  - size: serialized message body size in bytes (sender side)
+ *
+ * Latencies are in microseconds.  Recording is a binary search and an atomic increment, so it is cheap
+ * enough to do for every message.
+ */
+public class VerbMetrics
+{
+    private final EstimatedHistogram outboundQueue = new EstimatedHistogram();
+    private final EstimatedHistogram crossNode = new EstimatedHistogram();
+    private final EstimatedHistogram stageWait = new EstimatedHistogram();
+    private final EstimatedHistogram processing = new EstimatedHistogram();
+    private final EstimatedHistogram size = new EstimatedHistogram();
+
+    // indexed by verb ordinal, so lookups on the hot path don't need to hash
+    private static final VerbMetrics[] metrics = new VerbMetrics[StorageService.VERBS.length];
+    static
+    {
+        for (int i = 0; i < metrics.length; i++)
+            metrics[i] = new VerbMetrics();
+    }
+
+    public static VerbMetrics get(StorageService.Verb verb)
+    {
+        return metrics[verb.ordinal()];
+    }
+
+    public void addOutboundQueueNanos(long nanos)
+    {
+        outboundQueue.add(nanos / 1000);
+    }
+
+    public void addCrossNodeMillis(long millis)
+    {
+        // clock skew can make this negative; such samples tell us nothing
+        if (millis >= 0)
+            crossNode.add(millis * 1000);
+    }
+
+    public void addStageWaitNanos(long nanos)
+    {
+        stageWait.add(nanos / 1000);
+    }
+
+    public void addProcessingNanos(long nanos)
+    {
+        processing.add(nanos / 1000);
+    }
+
+    public void addSize(long bytes)
+    {
+        size.add(bytes);
+    }
+
+    public long[] getRecentOutboundQueueHistogramMicros()
+    {
+        return outboundQueue.getBuckets(true);
+    }
+
+    public long[] getRecentCrossNodeHistogramMicros()
+    {
+        return crossNode.getBuckets(true);
+    }
+
+    public long[] getRecentStageWaitHistogramMicros()
+    {
+        return stageWait.getBuckets(true);
+    }
+
+    public long[] getRecentProcessingHistogramMicros()
+    {
+        return processing.getBuckets(true);
+    }
+
+    public long[] getRecentSizeHistogram()
+    {
+        return size.getBuckets(true);
+    }
+}
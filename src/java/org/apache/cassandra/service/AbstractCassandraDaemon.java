@@ -220,6 +220,13 @@ public abstract class AbstractCassandraDaemon implements CassandraDaemon
         // replay the log if necessary
         CommitLog.instance.recover();
 
+        // load the counter cache, now that the commit log has restored the counters it saw last
+        for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
+        {
+            if (cfs.metadata.getDefaultValidator().isCommutative())
+                cfs.initCounterCache();
+        }
+
         // check to see if CL.recovery modified the lastMigrationId. if it did, we need to re apply migrations. this isn't
         // the same as merely reloading the schema (which wouldn't perform file deletion after a DROP). The solution
         // is to read those migrations from disk and apply them.
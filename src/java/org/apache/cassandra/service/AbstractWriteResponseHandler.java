@@ -24,10 +24,14 @@ package org.apache.cassandra.service;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.apache.cassandra.concurrent.CreationTimeAwareFuture;
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -54,10 +58,16 @@ public abstract class AbstractWriteResponseHandler implements IWriteResponseHand
 
     public void get() throws TimeoutException
     {
+        get(DatabaseDescriptor.getRpcTimeout() - (System.currentTimeMillis() - startTime));
+    }
+
+    public void get(long timeout) throws TimeoutException
+    {
+        long start = System.currentTimeMillis();
         if (hintFutures != null)
             waitForHints(hintFutures);
 
-        long timeout = DatabaseDescriptor.getRpcTimeout() - (System.currentTimeMillis() - startTime);
+        timeout -= System.currentTimeMillis() - start;
         boolean success;
         try
         {
@@ -74,6 +84,39 @@ public abstract class AbstractWriteResponseHandler implements IWriteResponseHand
         }
     }
 
+    public boolean isDone()
+    {
+        if (!condition.isSignaled())
+            return false;
+        if (hintFutures != null)
+        {
+            for (CreationTimeAwareFuture<?> hintFuture : hintFutures)
+            {
+                if (!hintFuture.isDone())
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    public void addCallback(final Runnable callback)
+    {
+        // with CL.ANY, writing a hint signals the condition before its future is done, so wait for both
+        List<CreationTimeAwareFuture<?>> hints = hintFutures == null ? Collections.<CreationTimeAwareFuture<?>>emptyList() : hintFutures;
+        final AtomicInteger pending = new AtomicInteger(hints.size() + 1);
+        Runnable countdown = new Runnable()
+        {
+            public void run()
+            {
+                if (pending.decrementAndGet() == 0)
+                    callback.run();
+            }
+        };
+        condition.addListener(countdown);
+        for (CreationTimeAwareFuture<?> hintFuture : hints)
+            hintFuture.addListener(countdown, MoreExecutors.sameThreadExecutor());
+    }
+
     public void addFutureForHint(CreationTimeAwareFuture<?> hintFuture)
     {
         if (hintFutures == null)
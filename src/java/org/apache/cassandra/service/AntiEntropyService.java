@@ -44,6 +44,7 @@ import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.gms.*;
 import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.util.FastByteArrayInputStream;
 import org.apache.cassandra.io.util.FastByteArrayOutputStream;
 import org.apache.cassandra.net.CompactEndpointSerializationHelper;
@@ -95,7 +96,8 @@ public class AntiEntropyService
     private static final ThreadPoolExecutor executor;
     static
     {
-        executor = new JMXConfigurableThreadPoolExecutor(4,
+        // each session holds a thread until it completes
+        executor = new JMXConfigurableThreadPoolExecutor(Math.max(4, DatabaseDescriptor.getConcurrentRepairSessions()),
                                                          60,
                                                          TimeUnit.SECONDS,
                                                          new LinkedBlockingQueue<Runnable>(),
@@ -121,11 +123,30 @@ public class AntiEntropyService
      */
     public RepairFuture submitRepairSession(Range<Token> range, String tablename, String... cfnames)
     {
-        RepairFuture futureTask = new RepairSession(range, tablename, cfnames).getFuture();
+        return submitRepairSession(range, tablename, null, cfnames);
+    }
+
+    /**
+     * @param onDifferencingDone called once the session no longer needs trees to be validated, or has failed
+     */
+    public RepairFuture submitRepairSession(Range<Token> range, String tablename, Runnable onDifferencingDone, String... cfnames)
+    {
+        RepairFuture futureTask = new RepairSession(range, tablename, onDifferencingDone, cfnames).getFuture();
         executor.execute(futureTask);
         return futureTask;
     }
 
+    /**
+     * @return the progress of the repair sessions running on this node, by session
+     */
+    public Map<String, String> getSessionsProgress()
+    {
+        Map<String, String> progress = new TreeMap<String, String>();
+        for (RepairSession session : sessions.values())
+            progress.put(session.getName(), session.getProgress());
+        return progress;
+    }
+
     public void terminateSessions()
     {
         for (RepairSession session : sessions.values())
@@ -202,7 +223,7 @@ public class AntiEntropyService
             if (nextJob == null)
                 // We are done with this repair session as far as differencing
                 // is considern. Just inform the session
-                session.differencingDone.signalAll();
+                session.signalDifferencingDone();
             else
                 nextJob.sendTreeRequests();
         }
@@ -250,8 +271,15 @@ public class AntiEntropyService
      */
     public static class Validator implements Runnable
     {
+        // trees never get smaller than they used to be, and are bounded so they can still be sent around,
+        // and so that the ValidationCache can still hold them
+        static final long MIN_TREE_SIZE = (long)Math.pow(2, 15);
+        static final long MAX_TREE_SIZE = ValidationCache.MAX_LEAVES;
+
         public final TreeRequest request;
         public final MerkleTree tree;
+        // whether prepare() should size the tree after the number of rows in the range
+        private final boolean sizeTree;
 
         // null when all rows with the min token have been consumed
         private transient long validated;
@@ -259,20 +287,34 @@ public class AntiEntropyService
         private transient MerkleTree.TreeRangeIterator ranges;
         private transient DecoratedKey lastKey;
 
+        // when validating incrementally: the leaves reused from the previous validation of the range,
+        // the sstables overlapping each leaf, and the leaves of this validation, to be cached in turn
+        private transient Integer cfId;
+        private transient int gcBefore;
+        private transient Map<Range<Token>, ValidationCache.Leaf> reused;
+        private transient Map<Range<Token>, Set<Integer>> leafGenerations;
+        private transient Map<Range<Token>, ValidationCache.Leaf> leaves;
+        private transient int minDeletionTime = Integer.MAX_VALUE;
+
         public final static MerkleTree.RowHash EMPTY_ROW = new MerkleTree.RowHash(null, new byte[0]);
         
         Validator(TreeRequest request)
         {
             this(request,
-                 // TODO: memory usage (maxsize) should either be tunable per
-                 // CF, globally, or as shared for all CFs in a cluster
-                 new MerkleTree(DatabaseDescriptor.getPartitioner(), request.range, MerkleTree.RECOMMENDED_DEPTH, (int)Math.pow(2, 15)));
+                 new MerkleTree(DatabaseDescriptor.getPartitioner(), request.range, MerkleTree.RECOMMENDED_DEPTH, MIN_TREE_SIZE),
+                 true);
         }
 
         Validator(TreeRequest request, MerkleTree tree)
+        {
+            this(request, tree, false);
+        }
+
+        private Validator(TreeRequest request, MerkleTree tree, boolean sizeTree)
         {
             this.request = request;
             this.tree = tree;
+            this.sizeTree = sizeTree;
             // Reestablishing the range because we don't serialize it (for bad
             // reason - see MerkleTree for details)
             this.tree.fullRange = this.request.range;
@@ -283,6 +325,11 @@ public class AntiEntropyService
 
         public void prepare(ColumnFamilyStore cfs)
         {
+            // with row-level repair, aim for about one row per leaf, so that a mismatching leaf only makes us
+            // repair the rows around the mismatch rather than a large slice of the range
+            if (sizeTree)
+                tree.maxsize(treeSize(cfs.estimatedKeysForRange(request.range), DatabaseDescriptor.getRepairRowLevelMaxRows()));
+
             if (tree.partitioner() instanceof RandomPartitioner)
             {
                 // You can't beat an even tree distribution for md5
@@ -319,6 +366,77 @@ public class AntiEntropyService
             ranges = tree.invalids();
         }
 
+        /**
+         * Reuses the hashes of the leaves whose sstables have not changed since the previous validation of this
+         * range (see ValidationCache).  Must be called after prepare() and before the first add().
+         *
+         * @param sstables the sstables being validated
+         * @param gcBefore the gcBefore the rows passed to add() are purged with
+         * @return the ranges whose rows still need to be passed to add(), in token order
+         */
+        public List<Range<Token>> prepareIncremental(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, int gcBefore)
+        {
+            assert ranges != null : "Validator was not prepared()";
+            if (!ValidationCache.isCacheable(cfs, request.range))
+                return Collections.singletonList(request.range);
+
+            this.cfId = cfs.metadata.cfId;
+            this.gcBefore = gcBefore;
+            reused = new HashMap<Range<Token>, ValidationCache.Leaf>();
+            leafGenerations = new HashMap<Range<Token>, Set<Integer>>();
+            leaves = new HashMap<Range<Token>, ValidationCache.Leaf>();
+
+            Map<Range<Token>, ValidationCache.Leaf> previous = ValidationCache.get(cfId, request.range);
+            List<Range<Token>> dirty = new ArrayList<Range<Token>>();
+            // contiguous leaves to re-read are scanned together
+            Token dirtyLeft = null;
+            Token dirtyRight = null;
+            for (MerkleTree.TreeRange leaf : tree.invalids())
+            {
+                Range<Token> key = new Range<Token>(leaf.left, leaf.right);
+                Set<Integer> generations = ValidationCache.generations(key, sstables);
+                leafGenerations.put(key, generations);
+
+                ValidationCache.Leaf cached = previous == null ? null : previous.get(key);
+                if (cached != null && cached.isReusable(generations, gcBefore))
+                {
+                    reused.put(key, cached);
+                    if (dirtyLeft != null)
+                    {
+                        dirty.add(new Range<Token>(dirtyLeft, dirtyRight));
+                        dirtyLeft = null;
+                    }
+                }
+                else
+                {
+                    if (dirtyLeft == null)
+                        dirtyLeft = leaf.left;
+                    dirtyRight = leaf.right;
+                }
+            }
+            if (dirtyLeft != null)
+                dirty.add(new Range<Token>(dirtyLeft, dirtyRight));
+
+            logger.debug("Reusing " + reused.size() + " of " + leafGenerations.size() + " leaves for " + request);
+            return dirty;
+        }
+
+        /**
+         * @return the size of the tree for a range of @param keys rows: MIN_TREE_SIZE unless row-level repair
+         * is enabled by @param maxRows, since streamed ranges don't get any smaller with a bigger tree
+         */
+        static long treeSize(long keys, int maxRows)
+        {
+            if (maxRows <= 0)
+                return MIN_TREE_SIZE;
+            return Math.max(MIN_TREE_SIZE, Math.min(MAX_TREE_SIZE, keys));
+        }
+
+        int getReusedLeaves()
+        {
+            return reused == null ? 0 : reused.size();
+        }
+
         /**
          * Called (in order) for every row present in the CF.
          * Hashes the row, and adds it to the tree being built.
@@ -351,12 +469,40 @@ public class AntiEntropyService
             while (!range.contains(row.key.token))
             {
                 // add the empty hash, and move to the next range
-                range.addHash(EMPTY_ROW);
+                completeRange();
                 range = ranges.next();
             }
 
             // case 3 must be true: mix in the hashed row
             range.addHash(rowHash(row));
+            if (leaves != null)
+                minDeletionTime = Math.min(minDeletionTime, ValidationCache.minDeletionTime(row));
+        }
+
+        /**
+         * Finishes the current range, using the cached hash if it was reused.
+         */
+        private void completeRange()
+        {
+            if (leaves == null)
+            {
+                range.addHash(EMPTY_ROW);
+                return;
+            }
+
+            Range<Token> key = new Range<Token>(range.left, range.right);
+            ValidationCache.Leaf cached = reused.get(key);
+            if (cached != null)
+            {
+                range.hash(cached.hash);
+                leaves.put(key, new ValidationCache.Leaf(cached.generations, cached.hash, gcBefore, cached.minDeletionTime));
+            }
+            else
+            {
+                range.addHash(EMPTY_ROW);
+                leaves.put(key, new ValidationCache.Leaf(leafGenerations.get(key), range.hash(), gcBefore, minDeletionTime));
+            }
+            minDeletionTime = Integer.MAX_VALUE;
         }
 
         private MerkleTree.RowHash rowHash(AbstractCompactedRow row)
@@ -384,12 +530,15 @@ public class AntiEntropyService
             assert ranges != null : "Validator was not prepared()";
 
             if (range != null)
-                range.addHash(EMPTY_ROW);
+                completeRange();
             while (ranges.hasNext())
             {
                 range = ranges.next();
-                range.addHash(EMPTY_ROW);
+                completeRange();
             }
+
+            if (leaves != null)
+                ValidationCache.put(cfId, request.range, leaves);
         }
 
         /**
@@ -610,23 +759,26 @@ public class AntiEntropyService
 
         private final SimpleCondition completed = new SimpleCondition();
         public final Condition differencingDone = new SimpleCondition();
+        private final Runnable onDifferencingDone;
+        private final AtomicBoolean isDifferencingDone = new AtomicBoolean(false);
 
         private volatile boolean terminated = false;
 
         public RepairSession(TreeRequest req, String tablename, String... cfnames)
         {
-            this(req.sessionid, req.range, tablename, cfnames);
+            this(req.sessionid, req.range, tablename, null, cfnames);
             AntiEntropyService.instance.sessions.put(getName(), this);
         }
 
-        public RepairSession(Range<Token> range, String tablename, String... cfnames)
+        public RepairSession(Range<Token> range, String tablename, Runnable onDifferencingDone, String... cfnames)
         {
-            this(UUIDGen.makeType1UUIDFromHost(FBUtilities.getBroadcastAddress()).toString(), range, tablename, cfnames);
+            this(UUIDGen.makeType1UUIDFromHost(FBUtilities.getBroadcastAddress()).toString(), range, tablename, onDifferencingDone, cfnames);
         }
 
-        private RepairSession(String id, Range<Token> range, String tablename, String[] cfnames)
+        private RepairSession(String id, Range<Token> range, String tablename, Runnable onDifferencingDone, String[] cfnames)
         {
             this.sessionName = id;
+            this.onDifferencingDone = onDifferencingDone;
             this.tablename = tablename;
             this.cfnames = cfnames;
             assert cfnames.length > 0 : "Repairing no column families seems pointless, doesn't it";
@@ -660,7 +812,7 @@ public class AntiEntropyService
 
             if (endpoints.isEmpty())
             {
-                differencingDone.signalAll();
+                signalDifferencingDone();
                 logger.info("[repair #%s] No neighbors to repair with on range %s: session completed", getName(), range);
                 return;
             }
@@ -670,7 +822,7 @@ public class AntiEntropyService
             {
                 if (!FailureDetector.instance.isAlive(endpoint))
                 {
-                    differencingDone.signalAll();
+                    signalDifferencingDone();
                     logger.info(String.format("[repair #%s] Cannot proceed on repair because a neighbor (%s) is dead: session failed", getName(), endpoint));
                     return;
                 }
@@ -712,6 +864,8 @@ public class AntiEntropyService
             {
                 // mark this session as terminated
                 terminate();
+                // (a no-op unless the session failed before being done with differencing)
+                signalDifferencingDone();
                 FailureDetector.instance.unregisterFailureDetectionEventListener(this);
                 Gossiper.instance.unregister(this);
                 AntiEntropyService.instance.sessions.remove(getName());
@@ -738,10 +892,30 @@ public class AntiEntropyService
          */
         public void forceShutdown()
         {
-            differencingDone.signalAll();
+            signalDifferencingDone();
             completed.signalAll();
         }
 
+        void signalDifferencingDone()
+        {
+            differencingDone.signalAll();
+            if (isDifferencingDone.compareAndSet(false, true) && onDifferencingDone != null)
+                onDifferencingDone.run();
+        }
+
+        /**
+         * @return where this session is at, for JMX
+         */
+        String getProgress()
+        {
+            RepairJob job = jobs.peek();
+            String state = job == null
+                         ? "syncing"
+                         : String.format("validating %s (%d/%d trees received)", job.cfname, job.receivedTrees(), endpoints.size() + 1);
+            int synced = cfnames.length - activeJobs.size();
+            return String.format("%s.%s %s: %s, %d/%d column families synced", tablename, Arrays.toString(cfnames), range, state, synced, cfnames.length);
+        }
+
         void completed(Differencer differencer)
         {
             logger.debug(String.format("[repair #%s] Repair completed between %s and %s on %s",
@@ -863,6 +1037,11 @@ public class AntiEntropyService
                 return remainingEndpoints.size();
             }
 
+            synchronized int receivedTrees()
+            {
+                return trees.size();
+            }
+
             /**
              * Submit differencers for running.
              * All tree *must* have been received before this is called.
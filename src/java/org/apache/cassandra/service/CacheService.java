@@ -18,6 +18,7 @@
 package org.apache.cassandra.service;
 
 import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -29,6 +30,7 @@ import javax.management.ObjectName;
 
 import org.apache.cassandra.cache.*;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ClockAndCount;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
@@ -44,11 +46,14 @@ public class CacheService implements CacheServiceMBean
 
     public static final String MBEAN_NAME = "org.apache.cassandra.db:type=Caches";
     public static final int AVERAGE_KEY_CACHE_ROW_SIZE = 48;
+    // key, column name and clock/count, plus the objects wrapping them
+    public static final int AVERAGE_COUNTER_CACHE_ROW_SIZE = 128;
 
     public static enum CacheType
     {
         KEY_CACHE("KeyCache"),
-        ROW_CACHE("RowCache");
+        ROW_CACHE("RowCache"),
+        COUNTER_CACHE("CounterCache");
 
         private final String name;
 
@@ -67,9 +72,11 @@ public class CacheService implements CacheServiceMBean
 
     public final AutoSavingCache<KeyCacheKey, Long> keyCache;
     public final AutoSavingCache<RowCacheKey, ColumnFamily> rowCache;
+    public final AutoSavingCache<CounterCacheKey, ClockAndCount> counterCache;
 
     private int rowCacheSavePeriod;
     private int keyCacheSavePeriod;
+    private int counterCacheSavePeriod;
 
     private CacheService()
     {
@@ -86,9 +93,11 @@ public class CacheService implements CacheServiceMBean
 
         rowCacheSavePeriod = DatabaseDescriptor.getRowCacheSavePeriod();
         keyCacheSavePeriod = DatabaseDescriptor.getKeyCacheSavePeriod();
+        counterCacheSavePeriod = DatabaseDescriptor.getCounterCacheSavePeriod();
 
         keyCache = initKeyCache();
         rowCache = initRowCache();
+        counterCache = initCounterCache();
     }
 
     /**
@@ -143,6 +152,30 @@ public class CacheService implements CacheServiceMBean
         return rowCache;
     }
 
+    /**
+     * Like the key cache, entries are small and of roughly constant size, so we use the singleton weigher
+     * @return initialized counter cache
+     */
+    private AutoSavingCache<CounterCacheKey, ClockAndCount> initCounterCache()
+    {
+        logger.info("Initializing counter cache with capacity of {} MBs.", DatabaseDescriptor.getCounterCacheSizeInMB());
+
+        int counterCacheInMemoryCapacity = DatabaseDescriptor.getCounterCacheSizeInMB() * 1024 * 1024;
+
+        ICache<CounterCacheKey, ClockAndCount> cc = ConcurrentLinkedHashCache.create(counterCacheInMemoryCapacity / AVERAGE_COUNTER_CACHE_ROW_SIZE);
+        AutoSavingCache<CounterCacheKey, ClockAndCount> counterCache = new AutoSavingCache<CounterCacheKey, ClockAndCount>(cc, CacheType.COUNTER_CACHE);
+
+        int counterCacheKeysToSave = DatabaseDescriptor.getCounterCacheKeysToSave();
+
+        logger.info("Scheduling counter cache save to each {} seconds (going to save {} keys).",
+                    counterCacheSavePeriod,
+                    counterCacheKeysToSave == Integer.MAX_VALUE ? "all" : counterCacheKeysToSave);
+
+        counterCache.scheduleSaving(counterCacheSavePeriod, counterCacheKeysToSave);
+
+        return counterCache;
+    }
+
     public long getKeyCacheHits()
     {
         return keyCache.getHits();
@@ -153,6 +186,11 @@ public class CacheService implements CacheServiceMBean
         return rowCache.getHits();
     }
 
+    public long getCounterCacheHits()
+    {
+        return counterCache.getHits();
+    }
+
     public long getKeyCacheRequests()
     {
         return keyCache.getRequests();
@@ -163,6 +201,11 @@ public class CacheService implements CacheServiceMBean
         return rowCache.getRequests();
     }
 
+    public long getCounterCacheRequests()
+    {
+        return counterCache.getRequests();
+    }
+
     public double getKeyCacheRecentHitRate()
     {
         return keyCache.getRecentHitRate();
@@ -173,6 +216,11 @@ public class CacheService implements CacheServiceMBean
         return rowCache.getRecentHitRate();
     }
 
+    public double getCounterCacheRecentHitRate()
+    {
+        return counterCache.getRecentHitRate();
+    }
+
     public int getRowCacheSavePeriodInSeconds()
     {
         return rowCacheSavePeriod;
@@ -201,6 +249,20 @@ public class CacheService implements CacheServiceMBean
         keyCache.scheduleSaving(keyCacheSavePeriod, DatabaseDescriptor.getKeyCacheKeysToSave());
     }
 
+    public int getCounterCacheSavePeriodInSeconds()
+    {
+        return counterCacheSavePeriod;
+    }
+
+    public void setCounterCacheSavePeriodInSeconds(int ccspis)
+    {
+        if (ccspis < 0)
+            throw new RuntimeException("CounterCacheSavePeriodInSeconds must be non-negative.");
+
+        counterCacheSavePeriod = ccspis;
+        counterCache.scheduleSaving(counterCacheSavePeriod, DatabaseDescriptor.getCounterCacheKeysToSave());
+    }
+
     public void invalidateKeyCache()
     {
         keyCache.clear();
@@ -211,6 +273,37 @@ public class CacheService implements CacheServiceMBean
         rowCache.clear();
     }
 
+    public void invalidateCounterCache()
+    {
+        counterCache.clear();
+    }
+
+    /**
+     * Remove the counters of column family @param cfId from the counter cache.  This walks the whole cache,
+     * so it is only meant for rare events such as truncation.
+     */
+    public void invalidateCounterCacheFor(int cfId)
+    {
+        for (CounterCacheKey key : counterCache.getKeySet())
+        {
+            if (key.cfId == cfId)
+                counterCache.remove(key);
+        }
+    }
+
+    /**
+     * Remove the counters of row @param key in column family @param cfId from the counter cache.
+     * Like invalidateCounterCacheFor(int), this walks the whole cache.
+     */
+    public void invalidateCounterCacheFor(int cfId, ByteBuffer key)
+    {
+        for (CounterCacheKey cacheKey : counterCache.getKeySet())
+        {
+            if (cacheKey.cfId == cfId && cacheKey.key.equals(key))
+                counterCache.remove(cacheKey);
+        }
+    }
+
     public int getRowCacheCapacityInBytes()
     {
         return rowCache.getCapacity();
@@ -247,6 +340,24 @@ public class CacheService implements CacheServiceMBean
         keyCache.setCapacity(capacity * 1024 * 1024 / 48);
     }
 
+    public int getCounterCacheCapacityInBytes()
+    {
+        return counterCache.getCapacity() * AVERAGE_COUNTER_CACHE_ROW_SIZE;
+    }
+
+    public int getCounterCacheCapacityInMB()
+    {
+        return getCounterCacheCapacityInBytes() / 1024 / 1024;
+    }
+
+    public void setCounterCacheCapacityInMB(int capacity)
+    {
+        if (capacity < 0)
+            throw new RuntimeException("capacity should not be negative.");
+
+        counterCache.setCapacity(capacity * 1024 * 1024 / AVERAGE_COUNTER_CACHE_ROW_SIZE);
+    }
+
     public int getRowCacheSize()
     {
         return rowCache.weightedSize();
@@ -257,10 +368,16 @@ public class CacheService implements CacheServiceMBean
         return keyCache.weightedSize() * AVERAGE_KEY_CACHE_ROW_SIZE;
     }
 
+    public int getCounterCacheSize()
+    {
+        return counterCache.weightedSize() * AVERAGE_COUNTER_CACHE_ROW_SIZE;
+    }
+
     public void reduceCacheSizes()
     {
         reduceRowCacheSize();
         reduceKeyCacheSize();
+        reduceCounterCacheSize();
     }
 
     public void reduceRowCacheSize()
@@ -273,6 +390,11 @@ public class CacheService implements CacheServiceMBean
         keyCache.reduceCacheSize();
     }
 
+    public void reduceCounterCacheSize()
+    {
+        counterCache.reduceCacheSize();
+    }
+
     public void saveCaches() throws ExecutionException, InterruptedException
     {
         List<Future<?>> futures = new ArrayList<Future<?>>();
@@ -280,6 +402,7 @@ public class CacheService implements CacheServiceMBean
 
         futures.add(keyCache.submitWrite(DatabaseDescriptor.getKeyCacheKeysToSave()));
         futures.add(rowCache.submitWrite(DatabaseDescriptor.getRowCacheKeysToSave()));
+        futures.add(counterCache.submitWrite(DatabaseDescriptor.getCounterCacheKeysToSave()));
 
         FBUtilities.waitOnFutures(futures);
         logger.debug("cache saves completed");
@@ -23,12 +23,15 @@ public interface CacheServiceMBean
 {
     public long getKeyCacheHits();
     public long getRowCacheHits();
+    public long getCounterCacheHits();
 
     public long getKeyCacheRequests();
     public long getRowCacheRequests();
+    public long getCounterCacheRequests();
 
     public double getKeyCacheRecentHitRate();
     public double getRowCacheRecentHitRate();
+    public double getCounterCacheRecentHitRate();
 
     public int getRowCacheSavePeriodInSeconds();
     public void setRowCacheSavePeriodInSeconds(int rcspis);
@@ -36,6 +39,9 @@ public interface CacheServiceMBean
     public int getKeyCacheSavePeriodInSeconds();
     public void setKeyCacheSavePeriodInSeconds(int kcspis);
 
+    public int getCounterCacheSavePeriodInSeconds();
+    public void setCounterCacheSavePeriodInSeconds(int ccspis);
+
     /**
      * invalidate the key cache; for use after invalidating row cache
      */
@@ -46,6 +52,11 @@ public interface CacheServiceMBean
      */
     public void invalidateRowCache();
 
+    /**
+     * invalidate the counter cache; counters are then read back from disk the next time they are incremented
+     */
+    public void invalidateCounterCache();
+
     public int getRowCacheCapacityInMB();
     public int getRowCacheCapacityInBytes();
     public void setRowCacheCapacityInMB(int capacity);
@@ -54,17 +65,23 @@ public interface CacheServiceMBean
     public int getKeyCacheCapacityInBytes();
     public void setKeyCacheCapacityInMB(int capacity);
 
+    public int getCounterCacheCapacityInMB();
+    public int getCounterCacheCapacityInBytes();
+    public void setCounterCacheCapacityInMB(int capacity);
+
     public int getRowCacheSize();
 
     public int getKeyCacheSize();
 
+    public int getCounterCacheSize();
+
     /**
      * sets each cache's maximum capacity to "reduce_cache_capacity_to" of its current size
      */
     public void reduceCacheSizes();
 
     /**
-     * save row and key caches
+     * save row, key and counter caches
      *
      * @throws ExecutionException when attempting to retrieve the result of a task that aborted by throwing an exception
      * @throws InterruptedException when a thread is waiting, sleeping, or otherwise occupied, and the thread is interrupted, either before or during the activity.
@@ -32,7 +32,6 @@ import org.apache.cassandra.auth.AuthenticatedUser;
 import org.apache.cassandra.auth.Permission;
 import org.apache.cassandra.auth.Resources;
 import org.apache.cassandra.config.DatabaseDescriptor;
-import org.apache.cassandra.cql.CQLStatement;
 import org.apache.cassandra.db.Table;
 import org.apache.cassandra.thrift.AuthenticationException;
 import org.apache.cassandra.thrift.InvalidRequestException;
@@ -43,7 +42,6 @@ import org.apache.cassandra.thrift.InvalidRequestException;
  */
 public class ClientState
 {
-    private static final int MAX_CACHE_PREPARED = 10000;    // Enough to keep buggy clients from OOM'ing us
     private static Logger logger = LoggerFactory.getLogger(ClientState.class);
 
     // Current user for the session
@@ -52,15 +50,23 @@ public class ClientState
     // Reusable array for authorization
     private final List<Object> resource = new ArrayList<Object>();
 
-    // An LRU map of prepared statements
-    private Map<Integer, CQLStatement> prepared = new LinkedHashMap<Integer, CQLStatement>(16, 0.75f, true) {
-        protected boolean removeEldestEntry(Map.Entry<Integer, CQLStatement> eldest) {
-            return size() > MAX_CACHE_PREPARED;
+    // server-side cursors of the queries this client is paging through, by query (see CassandraServer)
+    private final Map<Object, RowCursor> cursors = new LinkedHashMap<Object, RowCursor>(16, 0.75f, true)
+    {
+        protected boolean removeEldestEntry(Map.Entry<Object, RowCursor> eldest)
+        {
+            if (size() <= DatabaseDescriptor.getThriftMaxCursorsPerConnection())
+                return false;
+            eldest.getValue().close();
+            return true;
         }
     };
 
     private long clock;
 
+    // whether CQL results go back as a packed_rows block rather than CqlRows (see set_cql_result_format)
+    private boolean packedResults;
+
     /**
      * Construct a new, empty ClientState: can be reused after logout() or reset().
      */
@@ -69,11 +75,39 @@ public class ClientState
         reset();
     }
 
-    public Map<Integer, CQLStatement> getPrepared()
+    /**
+     * @return the cursor of @param query, or null if it has none (or it was closed for being idle, or its
+     * column family was flushed)
+     */
+    public RowCursor getCursor(Object query)
     {
-        return prepared;
+        RowCursor cursor = cursors.get(query);
+        if (cursor != null && cursor.isExhausted())
+        {
+            cursors.remove(query);
+            cursor.close();
+            return null;
+        }
+        return cursor;
     }
-    
+
+    /**
+     * Keep @param cursor open for the next page of @param query, closing the one it replaces.
+     */
+    public void setCursor(Object query, RowCursor cursor)
+    {
+        RowCursor previous = cursors.put(query, cursor);
+        if (previous != null && previous != cursor)
+            previous.close();
+    }
+
+    public void closeCursor(Object query)
+    {
+        RowCursor cursor = cursors.remove(query);
+        if (cursor != null)
+            cursor.close();
+    }
+
     public String getRawKeyspace()
     {
         return keyspace;
@@ -91,6 +125,16 @@ public class ClientState
         keyspace = ks;
     }
 
+    public boolean isPackedResults()
+    {
+        return packedResults;
+    }
+
+    public void setPackedResults(boolean packedResults)
+    {
+        this.packedResults = packedResults;
+    }
+
     public String getSchedulingValue()
     {
         switch(DatabaseDescriptor.getRequestSchedulerId())
@@ -129,8 +173,11 @@ public class ClientState
     {
         user = DatabaseDescriptor.getAuthenticator().defaultUser();
         keyspace = null;
+        packedResults = false;
         resourceClear();
-        prepared.clear();
+        for (RowCursor cursor : cursors.values())
+            cursor.close();
+        cursors.clear();
     }
 
     /**
@@ -0,0 +1,325 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.CreationTimeAwareFuture;
+import org.apache.cassandra.concurrent.DebuggableScheduledThreadPoolExecutor;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.CounterMutation;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.db.Table;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.cassandra.utils.HeapAllocator;
+import org.apache.cassandra.utils.SimpleCondition;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+/**
+ * Sums the counter increments a leader receives for the same row, at the same consistency level, within
+ * a short window into a single CounterMutation.  A hot counter then costs one read-before-write and one
+ * replicate-on-write message per window rather than per increment.
+ *
+ * The first increment for a row opens a batch, which is applied when the window closes (or as soon as it
+ * holds MAX_BATCH_SIZE increments); each increment is acknowledged when the batch meets its consistency
+ * level.  Batches are applied on our own threads rather than on the MUTATION stage, whose threads may
+ * all be waiting on batches (see CounterMutationVerbHandler).
+ */
+public class CounterCoalescer
+{
+    private static final Logger logger = LoggerFactory.getLogger(CounterCoalescer.class);
+
+    public static final CounterCoalescer instance = new CounterCoalescer();
+
+    // apply a batch early once it holds this many increments, to bound both its size and the
+    // number of clients waiting on it
+    static final int MAX_BATCH_SIZE = 1024;
+
+    private final ConcurrentMap<BatchKey, Batch> batches = new NonBlockingHashMap<BatchKey, Batch>();
+    private final ScheduledExecutorService executor = new DebuggableScheduledThreadPoolExecutor(DatabaseDescriptor.getConcurrentWriters(),
+                                                                                                "CounterCoalescer",
+                                                                                                Thread.NORM_PRIORITY);
+    private volatile int window = DatabaseDescriptor.getCounterCoalescingWindow();
+
+    private CounterCoalescer() {}
+
+    /** @return the coalescing window in milliseconds; 0 if increments are applied one by one */
+    public int getWindow()
+    {
+        return window;
+    }
+
+    public void setWindow(int ms)
+    {
+        window = ms;
+    }
+
+    /**
+     * Add @param cm to the batch of its row, to be applied with the other increments of the window.
+     * @return a handler whose get() returns once the batch has been applied at cm's consistency level.
+     * @throws UnavailableException if the consistency level can't be met at this time
+     */
+    public IWriteResponseHandler add(CounterMutation cm, String localDataCenter) throws UnavailableException
+    {
+        // fail now rather than when the batch is applied, as an uncoalesced write would
+        Table.open(cm.getTable()).getReplicationStrategy()
+             .getWriteResponseHandler(StorageProxy.getWriteEndpoints(cm.getTable(), cm.key()), cm.consistency())
+             .assureSufficientLiveNodes();
+
+        BatchKey key = new BatchKey(cm.getTable(), cm.key(), cm.consistency());
+        while (true)
+        {
+            Batch batch = batches.get(key);
+            if (batch == null)
+            {
+                Batch newBatch = new Batch(key, localDataCenter);
+                batch = batches.putIfAbsent(key, newBatch);
+                if (batch == null)
+                {
+                    batch = newBatch;
+                    executor.schedule(batch, window, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            int size = batch.add(cm);
+            // the batch was applied before we could join it: start a new one
+            if (size < 0)
+                continue;
+            if (size == MAX_BATCH_SIZE)
+                executor.execute(batch);
+            return new CoalescedResponseHandler(batch);
+        }
+    }
+
+    private static class BatchKey
+    {
+        final String table;
+        final ByteBuffer key;
+        final ConsistencyLevel consistency;
+
+        BatchKey(String table, ByteBuffer key, ConsistencyLevel consistency)
+        {
+            this.table = table;
+            this.key = key;
+            this.consistency = consistency;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof BatchKey))
+                return false;
+            BatchKey that = (BatchKey) o;
+            return table.equals(that.table) && key.equals(that.key) && consistency == that.consistency;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * table.hashCode() + key.hashCode()) + consistency.hashCode();
+        }
+    }
+
+    private class Batch implements Runnable
+    {
+        final BatchKey key;
+        final String localDataCenter;
+        final SimpleCondition applied = new SimpleCondition();
+
+        private RowMutation merged;
+        private int size;
+        private boolean closed;
+
+        // set before applied is signaled
+        private volatile IWriteResponseHandler handler;
+        private volatile Exception error;
+
+        Batch(BatchKey key, String localDataCenter)
+        {
+            this.key = key;
+            this.localDataCenter = localDataCenter;
+            this.merged = new RowMutation(key.table, key.key);
+        }
+
+        /**
+         * @return the number of increments in the batch, counting cm; -1 if the batch is closed
+         */
+        synchronized int add(CounterMutation cm)
+        {
+            if (closed)
+                return -1;
+            for (ColumnFamily cf : cm.rowMutation().getColumnFamilies())
+            {
+                ColumnFamily existing = merged.getColumnFamily(cf.id());
+                // increments of the same column sum up (see CounterUpdateColumn.reconcile)
+                if (existing == null)
+                    merged.add(cf.cloneMe());
+                else
+                    existing.addAll(cf, HeapAllocator.instance);
+            }
+            return ++size;
+        }
+
+        private synchronized RowMutation close()
+        {
+            if (closed)
+                return null;
+            closed = true;
+            batches.remove(key, this);
+            return merged;
+        }
+
+        public void run()
+        {
+            // when a full batch is applied early, the scheduled run finds it closed
+            RowMutation rm = close();
+            if (rm == null)
+                return;
+
+            if (logger.isDebugEnabled())
+                logger.debug("Applying {} coalesced increment(s) of key {}", size, rm.key());
+            try
+            {
+                handler = StorageProxy.applyCoalescedCounterMutation(new CounterMutation(rm, key.consistency), localDataCenter);
+            }
+            catch (Exception e)
+            {
+                logger.debug("Failed to apply coalesced counter increments", e);
+                error = e;
+            }
+            finally
+            {
+                applied.signalAll();
+            }
+        }
+    }
+
+    /**
+     * What each of the increments of a batch waits on: the batch being applied, then it meeting the
+     * consistency level.  Responses and hint futures are passed on to the batch's own handler once the
+     * batch has been applied.
+     */
+    private static class CoalescedResponseHandler implements IWriteResponseHandler
+    {
+        private final Batch batch;
+        private final long startTime = System.currentTimeMillis();
+
+        CoalescedResponseHandler(Batch batch)
+        {
+            this.batch = batch;
+        }
+
+        public void get() throws TimeoutException
+        {
+            get(DatabaseDescriptor.getRpcTimeout() - (System.currentTimeMillis() - startTime));
+        }
+
+        public void get(long timeout) throws TimeoutException
+        {
+            long start = System.currentTimeMillis();
+            try
+            {
+                if (!batch.applied.await(timeout, TimeUnit.MILLISECONDS))
+                    throw new TimeoutException();
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+
+            // nodes went down since we checked; the client will see that as a timeout
+            if (batch.error instanceof UnavailableException || batch.error instanceof TimeoutException)
+                throw new TimeoutException();
+            if (batch.error instanceof IOException)
+                throw new RuntimeException(batch.error);
+            if (batch.error != null)
+                throw (RuntimeException) batch.error;
+            // only what is left of our own timeout, not a fresh one from when the batch was applied
+            batch.handler.get(timeout - (System.currentTimeMillis() - start));
+        }
+
+        public boolean isDone()
+        {
+            if (!batch.applied.isSignaled())
+                return false;
+            // without a handler, the batch failed and get() throws right away
+            return batch.handler == null || batch.handler.isDone();
+        }
+
+        public void addCallback(final Runnable callback)
+        {
+            batch.applied.addListener(new Runnable()
+            {
+                public void run()
+                {
+                    // without a handler, the batch failed and get() throws right away
+                    if (batch.handler == null)
+                        callback.run();
+                    else
+                        batch.handler.addCallback(callback);
+                }
+            });
+        }
+
+        public void addFutureForHint(final CreationTimeAwareFuture<?> hintFuture)
+        {
+            batch.applied.addListener(new Runnable()
+            {
+                public void run()
+                {
+                    // without a handler, the batch failed and nothing waits on the hint
+                    if (batch.handler != null)
+                        batch.handler.addFutureForHint(hintFuture);
+                }
+            });
+        }
+
+        public void assureSufficientLiveNodes()
+        {
+            // checked when the increment was added
+        }
+
+        public void response(final Message msg)
+        {
+            batch.applied.addListener(new Runnable()
+            {
+                public void run()
+                {
+                    if (batch.handler != null)
+                        batch.handler.response(msg);
+                }
+            });
+        }
+
+        public boolean isLatencyForSnitch()
+        {
+            return false;
+        }
+    }
+}
@@ -30,7 +30,6 @@ import org.apache.cassandra.db.ReadResponse;
 import org.apache.cassandra.db.Table;
 import org.apache.cassandra.locator.IEndpointSnitch;
 import org.apache.cassandra.locator.NetworkTopologyStrategy;
-import org.apache.cassandra.net.Message;
 import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.apache.cassandra.thrift.UnavailableException;
 import org.apache.cassandra.utils.FBUtilities;
@@ -63,9 +62,9 @@ public class DatacenterReadCallback<T> extends ReadCallback<T>
     }
 
     @Override
-    protected boolean waitingFor(Message message)
+    protected boolean waitingFor(InetAddress from)
     {
-        return localdc.equals(snitch.getDatacenter(message.getFrom()));
+        return localdc.equals(snitch.getDatacenter(from));
     }
 
     @Override
@@ -29,6 +29,23 @@ import org.apache.cassandra.thrift.UnavailableException;
 public interface IWriteResponseHandler extends IAsyncCallback
 {
     public void get() throws TimeoutException;
+
+    /**
+     * Like get(), but waits for at most @param timeout milliseconds, for callers that have already spent part
+     * of the rpc timeout.
+     */
+    public void get(long timeout) throws TimeoutException;
     public void addFutureForHint(CreationTimeAwareFuture<?> hintFuture);
     public void assureSufficientLiveNodes() throws UnavailableException;
+
+    /**
+     * @return true if get() would return, or throw, without waiting.  Doesn't block.
+     */
+    public boolean isDone();
+
+    /**
+     * Run @param callback once isDone(), in whichever thread gets there first.  The hints must have been
+     * added already.  It is not run on timeout: callers wanting to know about that must schedule it themselves.
+     */
+    public void addCallback(Runnable callback);
 }
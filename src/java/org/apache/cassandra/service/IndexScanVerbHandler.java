@@ -18,11 +18,12 @@
 
 package org.apache.cassandra.service;
 
-import java.util.List;
+import java.util.Iterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.net.IVerbHandler;
@@ -39,11 +40,10 @@ public class IndexScanVerbHandler implements IVerbHandler
         {
             IndexScanCommand command = IndexScanCommand.read(message);
             ColumnFamilyStore cfs = Table.open(command.keyspace).getColumnFamilyStore(command.column_family);
-            List<Row> rows = cfs.indexManager.search(command.index_clause, command.range, QueryFilter.getFilter(command.predicate, cfs.getComparator()));
-            RangeSliceReply reply = new RangeSliceReply(rows);
-            Message response = reply.getReply(message);
+            Iterator<Row> rows = cfs.indexManager.searchIterator(command.index_clause, command.range, QueryFilter.getFilter(command.predicate, cfs.getComparator()));
+            Message response = RangeSliceReply.getReply(message, rows, command.index_clause.count, DatabaseDescriptor.getRangeReplySize());
             if (logger.isDebugEnabled())
-                logger.debug("Sending " + reply+ " to " + id + "@" + message.getFrom());
+                logger.debug("Sending index scan reply of " + response.getMessageBody().length + " bytes to " + id + "@" + message.getFrom());
             MessagingService.instance().sendReply(response, id, message.getFrom());
         }
         catch (Exception ex)
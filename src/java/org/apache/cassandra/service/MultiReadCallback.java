@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.net.IAsyncCallback;
+import org.apache.cassandra.net.Message;
+
+/**
+ * Splits the reply to a MultiReadCommand into one message per command and hands each
+ * to the ReadCallback of its key, so resolution is the same as for individual reads.
+ */
+public class MultiReadCallback implements IAsyncCallback
+{
+    private final List<ReadCallback<Row>> handlers;
+
+    /**
+     * @param handlers the callback for each command of the MultiReadCommand, in the same order
+     */
+    public MultiReadCallback(List<ReadCallback<Row>> handlers)
+    {
+        this.handlers = handlers;
+    }
+
+    public void response(Message message)
+    {
+        DataInputStream dis = new DataInputStream(new FastByteArrayInputStream(message.getMessageBody()));
+        try
+        {
+            int count = dis.readInt();
+            assert count == handlers.size() : count + " responses for " + handlers.size() + " commands";
+            for (int i = 0; i < count; i++)
+            {
+                byte[] bytes = new byte[dis.readInt()];
+                dis.readFully(bytes);
+                handlers.get(i).response(new Message(message.getFrom(), message.getVerb(), bytes, message.getVersion()));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public boolean isLatencyForSnitch()
+    {
+        // one round trip for several rows says little about the latency of a single-row read
+        return false;
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.util.List;
+
+import org.apache.cassandra.net.IAsyncCallback;
+import org.apache.cassandra.net.Message;
+
+/**
+ * Passes the acknowledgement of a MultiRowMutation on to the response handler of each row
+ * it contained, so every row still reaches its consistency level on its own.
+ */
+public class MultiWriteCallback implements IAsyncCallback
+{
+    private final List<IWriteResponseHandler> handlers;
+
+    public MultiWriteCallback(List<IWriteResponseHandler> handlers)
+    {
+        this.handlers = handlers;
+    }
+
+    public void response(Message message)
+    {
+        for (IWriteResponseHandler handler : handlers)
+            handler.response(message);
+    }
+
+    public boolean isLatencyForSnitch()
+    {
+        return false;
+    }
+}
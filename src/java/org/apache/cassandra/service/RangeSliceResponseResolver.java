@@ -56,9 +56,11 @@ public class RangeSliceResponseResolver implements IResponseResolver<Iterable<Ro
     };
 
     private final String table;
-    private final List<InetAddress> sources;
+    final List<InetAddress> sources;
     protected final Collection<Message> responses = new LinkedBlockingQueue<Message>();;
     public final List<IAsyncResult> repairResults = new ArrayList<IAsyncResult>();
+    // where the resolved rows stop short of the range, if a replica truncated its reply
+    private volatile DecoratedKey resumeKey;
 
     public RangeSliceResponseResolver(String table, List<InetAddress> sources)
     {
@@ -70,20 +72,52 @@ public class RangeSliceResponseResolver implements IResponseResolver<Iterable<Ro
     {
         Message response = responses.iterator().next();
         RangeSliceReply reply = RangeSliceReply.read(response.getMessageBody(), response.getVersion());
+        resumeKey = reply.truncated ? reply.rows.get(reply.rows.size() - 1).key : null;
         return reply.rows;
     }
 
+    /**
+     * @return the key of the last row resolved if a replica cut its reply short of what was asked for, so
+     * that the rest of the range must be read starting after it; null otherwise.  Only meaningful after
+     * getData or resolve.
+     */
+    public DecoratedKey getResumeKey()
+    {
+        return resumeKey;
+    }
+
     // Note: this would deserialize the response a 2nd time if getData was called first.
     // (this is not currently an issue since we don't do read repair for range queries.)
     public Iterable<Row> resolve() throws IOException
     {
-        ArrayList<RowIterator> iters = new ArrayList<RowIterator>(responses.size());
-        int n = 0;
+        List<RangeSliceReply> replies = new ArrayList<RangeSliceReply>(responses.size());
+        List<InetAddress> from = new ArrayList<InetAddress>(responses.size());
+        DecoratedKey stopAt = null;
         for (Message response : responses)
         {
             RangeSliceReply reply = RangeSliceReply.read(response.getMessageBody(), response.getVersion());
-            n = Math.max(n, reply.rows.size());
-            iters.add(new RowIterator(reply.rows.iterator(), response.getFrom()));
+            replies.add(reply);
+            from.add(response.getFrom());
+            if (reply.truncated)
+            {
+                DecoratedKey last = reply.rows.get(reply.rows.size() - 1).key;
+                if (stopAt == null || last.compareTo(stopAt) < 0)
+                    stopAt = last;
+            }
+        }
+        resumeKey = stopAt;
+
+        // past the point where the shortest truncated reply stops, we don't know what every replica
+        // has, so leave those rows for the next page rather than resolving (and "repairing") them
+        ArrayList<RowIterator> iters = new ArrayList<RowIterator>(replies.size());
+        int n = 0;
+        for (int i = 0; i < replies.size(); i++)
+        {
+            List<Row> rows = replies.get(i).rows;
+            if (stopAt != null)
+                rows = rows.subList(0, rowsUpTo(rows, stopAt));
+            n = Math.max(n, rows.size());
+            iters.add(new RowIterator(rows.iterator(), from.get(i)));
         }
         // for each row, compute the combination of all different versions seen, and repair incomplete versions
         // TODO do we need to call close?
@@ -96,6 +130,14 @@ public class RangeSliceResponseResolver implements IResponseResolver<Iterable<Ro
         return resolvedRows;
     }
 
+    private static int rowsUpTo(List<Row> rows, DecoratedKey key)
+    {
+        int i = 0;
+        while (i < rows.size() && rows.get(i).key.compareTo(key) <= 0)
+            i++;
+        return i;
+    }
+
     public void preprocess(Message message)
     {
         responses.add(message);
@@ -21,14 +21,13 @@ package org.apache.cassandra.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.db.ColumnFamilyStore;
-import org.apache.cassandra.db.RangeSliceCommand;
-import org.apache.cassandra.db.RangeSliceReply;
-import org.apache.cassandra.db.Table;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.net.IVerbHandler;
 import org.apache.cassandra.net.Message;
 import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.CloseableIterator;
 
 public class RangeSliceVerbHandler implements IVerbHandler
 {
@@ -46,13 +45,20 @@ public class RangeSliceVerbHandler implements IVerbHandler
             }
             RangeSliceCommand command = RangeSliceCommand.read(message);
             ColumnFamilyStore cfs = Table.open(command.keyspace).getColumnFamilyStore(command.column_family);
-            RangeSliceReply reply = new RangeSliceReply(cfs.getRangeSlice(command.super_column,
-                                                                          command.range,
-                                                                          command.max_keys,
-                                                                          QueryFilter.getFilter(command.predicate, cfs.getComparator())));
-            Message response = reply.getReply(message);
+            CloseableIterator<Row> rows = cfs.getRangeSliceIterator(command.super_column,
+                                                                    command.range,
+                                                                    QueryFilter.getFilter(command.predicate, cfs.getComparator()));
+            Message response;
+            try
+            {
+                response = RangeSliceReply.getReply(message, rows, command.max_keys, DatabaseDescriptor.getRangeReplySize());
+            }
+            finally
+            {
+                rows.close();
+            }
             if (logger.isDebugEnabled())
-                logger.debug("Sending " + reply+ " to " + id + "@" + message.getFrom());
+                logger.debug("Sending range slice reply of " + response.getMessageBody().length + " bytes to " + id + "@" + message.getFrom());
             MessagingService.instance().sendReply(response, id, message.getFrom());
         }
         catch (Exception ex)
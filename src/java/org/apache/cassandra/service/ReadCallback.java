@@ -20,6 +20,7 @@ package org.apache.cassandra.service;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
@@ -54,10 +55,15 @@ public class ReadCallback<T> implements IAsyncCallback
     public final IResponseResolver<T> resolver;
     protected final SimpleCondition condition = new SimpleCondition();
     private final long startTime;
+    private final long startNanos = System.nanoTime();
+    // when enough responses had arrived, or 0 if they haven't yet
+    private volatile long completedNanos;
     protected final int blockfor;
     final List<InetAddress> endpoints;
     private final IReadCommand command;
     protected final AtomicInteger received = new AtomicInteger(0);
+    // replica we sent an extra data request to because the data replica was slow; see StorageProxy.fetchRows
+    private volatile InetAddress speculatedEndpoint;
 
     /**
      * Constructor when response count has to be calculated and blocked for.
@@ -97,6 +103,66 @@ public class ReadCallback<T> implements IAsyncCallback
         return false;
     }
 
+    /**
+     * Wait until enough responses have arrived, or until the given number of microseconds has passed
+     * since this callback was created.
+     * @return true if enough responses arrived
+     */
+    public boolean await(long micros)
+    {
+        long timeout = TimeUnit.MICROSECONDS.toNanos(micros) - (System.nanoTime() - startNanos);
+        if (timeout <= 0)
+            return condition.isSignaled();
+        try
+        {
+            return condition.await(timeout, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * @param liveEndpoints all live replicas for the command, sorted by proximity
+     * @return the closest replica we have not sent a request to whose response would count towards
+     * the consistency level, or null if there is none or we already speculated
+     */
+    public InetAddress getSpeculationTarget(List<InetAddress> liveEndpoints)
+    {
+        if (speculatedEndpoint != null)
+            return null;
+        for (InetAddress endpoint : liveEndpoints)
+        {
+            if (!endpoints.contains(endpoint) && waitingFor(endpoint))
+                return endpoint;
+        }
+        return null;
+    }
+
+    /**
+     * Record that an extra data request is being sent to the given replica.  Must be called before sending it.
+     */
+    public void speculate(InetAddress endpoint)
+    {
+        assert speculatedEndpoint == null;
+        speculatedEndpoint = endpoint;
+    }
+
+    /**
+     * @return every replica we sent a request to, including the speculated one
+     */
+    public List<InetAddress> contactedEndpoints()
+    {
+        InetAddress speculated = speculatedEndpoint;
+        if (speculated == null)
+            return endpoints;
+        List<InetAddress> contacted = new ArrayList<InetAddress>(endpoints.size() + 1);
+        contacted.addAll(endpoints);
+        contacted.add(speculated);
+        return contacted;
+    }
+
     public T get() throws TimeoutException, DigestMismatchException, IOException
     {
         long timeout = DatabaseDescriptor.getRpcTimeout() - (System.currentTimeMillis() - startTime);
@@ -121,6 +187,22 @@ public class ReadCallback<T> implements IAsyncCallback
         return blockfor == 1 ? resolver.getData() : resolver.resolve();
     }
 
+    /**
+     * @return how many microseconds it took for enough responses to arrive; only valid once they have
+     */
+    public long getLatencyMicros()
+    {
+        assert completedNanos > 0;
+        return TimeUnit.NANOSECONDS.toMicros(completedNanos - startNanos);
+    }
+
+    private void signal()
+    {
+        if (completedNanos == 0)
+            completedNanos = System.nanoTime();
+        condition.signal();
+    }
+
     public void response(Message message)
     {
         resolver.preprocess(message);
@@ -129,7 +211,7 @@ public class ReadCallback<T> implements IAsyncCallback
               : received.get();
         if (n >= blockfor && resolver.isDataPresent())
         {
-            condition.signal();
+            signal();
             maybeResolveForRepair();
         }
     }
@@ -139,6 +221,14 @@ public class ReadCallback<T> implements IAsyncCallback
      * TODO turn the Message into a response so we don't need two versions of this method
      */
     protected boolean waitingFor(Message message)
+    {
+        return waitingFor(message.getFrom());
+    }
+
+    /**
+     * @return true if a response from the given endpoint would count towards the blockfor threshold
+     */
+    protected boolean waitingFor(InetAddress from)
     {
         return true;
     }
@@ -159,7 +249,7 @@ public class ReadCallback<T> implements IAsyncCallback
               : received.get();
         if (n >= blockfor && resolver.isDataPresent())
         {
-            condition.signal();
+            signal();
             maybeResolveForRepair();
         }
     }
@@ -170,7 +260,8 @@ public class ReadCallback<T> implements IAsyncCallback
      */
     protected void maybeResolveForRepair()
     {
-        if (blockfor < endpoints.size() && received.get() == endpoints.size())
+        int contacted = endpoints.size() + (speculatedEndpoint == null ? 0 : 1);
+        if (blockfor < contacted && received.get() == contacted)
         {
             assert resolver.isDataPresent();
             StageManager.getStage(Stage.READ_REPAIR).execute(new AsyncRepairRunner());
@@ -226,9 +317,10 @@ public class ReadCallback<T> implements IAsyncCallback
 
                 ReadCommand readCommand = (ReadCommand) command;
                 final RowRepairResolver repairResolver = new RowRepairResolver(readCommand.table, readCommand.key);
-                IAsyncCallback repairHandler = new AsyncRepairCallback(repairResolver, endpoints.size());
+                List<InetAddress> contacted = contactedEndpoints();
+                IAsyncCallback repairHandler = new AsyncRepairCallback(repairResolver, contacted.size());
 
-                for (InetAddress endpoint : endpoints)
+                for (InetAddress endpoint : contacted)
                     MessagingService.instance().sendRR(readCommand, endpoint, repairHandler);
             }
         }
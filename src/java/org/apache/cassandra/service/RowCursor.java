@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.io.IOError;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.utils.CloseableIterator;
+import org.cliffc.high_scale_lib.NonBlockingHashSet;
+
+/**
+ * A range slice or index scan that a client is paging through, kept open between pages so that each page
+ * continues the merge of memtables and sstables where the previous one stopped, rather than seeking to
+ * its start key all over again.
+ *
+ * A cursor reads the memtables and sstables that existed when it was opened, and its sstable references keep
+ * them from being deleted after a compaction.  So it is closed once it has been idle for thrift_cursor_timeout_in_ms,
+ * whether or not its client comes back, or once it has been open for thrift_cursor_max_lifetime_in_ms, even if its
+ * client is still using it.  It is also closed as soon as its column family switches memtables, so that it neither
+ * keeps a flushed memtable on the heap nor serves data older than the last flush; the next page then seeks to its
+ * start key in the current data.  At most thrift_max_cursors are open at once, the least recently used one being
+ * closed to make room for a new one.
+ */
+public class RowCursor
+{
+    private static final Logger logger = LoggerFactory.getLogger(RowCursor.class);
+
+    private static final int CLOSE_EXPIRED_INTERVAL_IN_MS = 1000;
+
+    // cursors that are not closed yet, for closeExpired to look at
+    private static final Set<RowCursor> open = new NonBlockingHashSet<RowCursor>();
+
+    static
+    {
+        Runnable closeExpired = new Runnable()
+        {
+            public void run()
+            {
+                long now = System.currentTimeMillis();
+                for (RowCursor cursor : open)
+                {
+                    if (cursor.isExpired(now) || cursor.isFlushed())
+                        cursor.close();
+                }
+            }
+        };
+        StorageService.scheduledTasks.scheduleWithFixedDelay(closeExpired, CLOSE_EXPIRED_INTERVAL_IN_MS, CLOSE_EXPIRED_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private final CloseableIterator<Row> rows;
+    private final ColumnFamilyStore cfs;
+    // the memtable generation of cfs when we were opened
+    private final int memtableSwitchCount;
+    private Row last;
+    private final long opened = System.currentTimeMillis();
+    // read without the lock when looking for the least recently used cursor
+    private volatile long lastUsed = opened;
+    private boolean closed;
+
+    /**
+     * @param rows the rows of @param cfs (and of its indexes, for an index scan) to page through
+     */
+    public RowCursor(CloseableIterator<Row> rows, ColumnFamilyStore cfs)
+    {
+        this.rows = rows;
+        this.cfs = cfs;
+        this.memtableSwitchCount = cfs.getMemtableSwitchCount();
+        open.add(this);
+        while (open.size() > DatabaseDescriptor.getThriftMaxCursors())
+        {
+            RowCursor leastRecentlyUsed = null;
+            for (RowCursor cursor : open)
+            {
+                if (cursor != this && (leastRecentlyUsed == null || cursor.lastUsed < leastRecentlyUsed.lastUsed))
+                    leastRecentlyUsed = cursor;
+            }
+            if (leastRecentlyUsed == null)
+                break;
+            leastRecentlyUsed.close();
+        }
+    }
+
+    /**
+     * @return the key of the last row returned, or null if there is none
+     */
+    public synchronized DecoratedKey lastKey()
+    {
+        return last == null ? null : last.key;
+    }
+
+    /**
+     * @return up to @param count rows following the last one returned, starting with the last one itself if
+     * @param repeatLast (for a client that gives the last key it got as the start of its next page); null if the
+     * cursor has been closed
+     */
+    public synchronized List<Row> next(int count, boolean repeatLast)
+    {
+        if (isFlushed())
+            close();
+        if (closed)
+            return null;
+
+        List<Row> page = new ArrayList<Row>();
+        if (repeatLast && last != null)
+            page.add(last);
+        while (page.size() < count && rows.hasNext())
+        {
+            last = rows.next();
+            page.add(last);
+        }
+        lastUsed = System.currentTimeMillis();
+        return page;
+    }
+
+    public synchronized boolean isExhausted()
+    {
+        return closed || isFlushed() || !rows.hasNext();
+    }
+
+    /**
+     * @return true if cfs has switched memtables (a flush switches those of its indexes too) since we were opened
+     */
+    private boolean isFlushed()
+    {
+        return cfs.getMemtableSwitchCount() != memtableSwitchCount;
+    }
+
+    private synchronized boolean isExpired(long now)
+    {
+        return !closed
+               && (now - lastUsed >= DatabaseDescriptor.getThriftCursorTimeout()
+                   || now - opened >= DatabaseDescriptor.getThriftCursorMaxLifetime());
+    }
+
+    public synchronized void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+        open.remove(this);
+        if (logger.isDebugEnabled())
+            logger.debug("Closing cursor after {}", last == null ? null : last.key);
+        try
+        {
+            rows.close();
+        }
+        catch (IOException e)
+        {
+            throw new IOError(e);
+        }
+    }
+}
@@ -86,17 +86,26 @@ public class RowDigestResolver extends AbstractRowResolver
                         throw new DigestMismatchException(key, digest, digest2);
                 }
             }
-            else
+            else if (data == null)
             {
                 data = response.row().cf;
             }
+            else
+            {
+                // a second data response means we speculatively retried the read (see StorageProxy.fetchRows);
+                // treat it like a digest
+                ByteBuffer digest2 = ColumnFamily.digest(response.row().cf);
+                if (digest == null)
+                    digest = digest2;
+                else if (!digest.equals(digest2))
+                    throw new DigestMismatchException(key, digest, digest2);
+            }
         }
 
 		// Compare digest (only one, since we threw earlier if there were different replies)
         // with the data response. If there is a mismatch then throw an exception so that read repair can happen.
         //
-        // It's important to note that we do not consider the possibility of multiple data responses --
-        // that can only happen when we're doing the repair post-mismatch, and will be handled by RowRepairResolver.
+        // Multiple data responses on a repair post-mismatch are handled by RowRepairResolver instead.
         if (digest != null)
         {
             ByteBuffer digest2 = ColumnFamily.digest(data);
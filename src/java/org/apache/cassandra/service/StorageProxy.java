@@ -19,22 +19,27 @@
 package org.apache.cassandra.service;
 
 import java.io.DataOutputStream;
+import java.io.IOError;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
 import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -46,10 +51,12 @@ import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.IFilter;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.Bounds;
 import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.RingPosition;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.gms.FailureDetector;
@@ -78,11 +85,13 @@ public class StorageProxy implements StorageProxyMBean
     private static final WritePerformer standardWritePerformer;
     private static final WritePerformer counterWritePerformer;
     private static final WritePerformer counterWriteOnCoordinatorPerformer;
+    private static final WritePerformer batchedCounterWriteOnCoordinatorPerformer;
 
     public static final StorageProxy instance = new StorageProxy();
 
     private static volatile boolean hintedHandoffEnabled = DatabaseDescriptor.hintedHandoffEnabled();
     private static volatile int maxHintWindow = DatabaseDescriptor.getMaxHintWindow();
+    private static volatile boolean inlineLocalRequests = DatabaseDescriptor.inlineLocalRequests();
     private static volatile int maxHintsInProgress = 1024 * Runtime.getRuntime().availableProcessors();
     private static final AtomicInteger totalHintsInProgress = new AtomicInteger();
     private static final Map<InetAddress, AtomicInteger> hintsInProgress = new MapMaker().concurrencyLevel(1).makeComputingMap(new Function<InetAddress, AtomicInteger>()
@@ -93,6 +102,9 @@ public class StorageProxy implements StorageProxyMBean
         }
     });
     private static final AtomicLong totalHints = new AtomicLong();
+    private static final AtomicLong speculativeRetries = new AtomicLong();
+    // the most ranges an index scan queries at once, however few matches it expects from each
+    private static final int MAX_SCAN_CONCURRENCY = 32;
 
     private StorageProxy() {}
 
@@ -145,7 +157,17 @@ public class StorageProxy implements StorageProxyMBean
             }
         };
 
-        counterWriteOnCoordinatorPerformer = new WritePerformer()
+        counterWriteOnCoordinatorPerformer = counterWriteOnCoordinatorPerformer(true);
+        batchedCounterWriteOnCoordinatorPerformer = counterWriteOnCoordinatorPerformer(false);
+    }
+
+    /**
+     * @param inlineAllowed whether the local write may run on the calling thread, which is only worth it
+     * when the caller has no other row to send (see executeLocally)
+     */
+    private static WritePerformer counterWriteOnCoordinatorPerformer(final boolean inlineAllowed)
+    {
+        return new WritePerformer()
         {
             public void apply(IMutation mutation,
                               Collection<InetAddress> targets,
@@ -158,7 +180,7 @@ public class StorageProxy implements StorageProxyMBean
                     logger.debug("insert writing local & replicate " + mutation.toString(true));
 
                 Runnable runnable = counterWriteTask(mutation, targets, responseHandler, localDataCenter, consistency_level);
-                StageManager.getStage(Stage.MUTATION).execute(runnable);
+                executeLocally(Stage.MUTATION, runnable, inlineAllowed && targets.size() == 1);
             }
         };
     }
@@ -173,13 +195,71 @@ public class StorageProxy implements StorageProxyMBean
      * @param consistency_level the consistency level for the operation
      */
     public static void mutate(List<? extends IMutation> mutations, ConsistencyLevel consistency_level) throws UnavailableException, TimeoutException
+    {
+        long startTime = System.nanoTime();
+        try
+        {
+            // wait for writes.  throws TimeoutException if necessary
+            for (IWriteResponseHandler responseHandler : write(mutations, consistency_level))
+            {
+                responseHandler.get();
+            }
+        }
+        catch (TimeoutException ex)
+        {
+            if (logger.isDebugEnabled())
+            {
+                List<String> mstrings = new ArrayList<String>();
+                for (IMutation mutation : mutations)
+                    mstrings.add(mutation.toString(true));
+                logger.debug("Write timeout {} for one (or more) of: ", ex.toString(), mstrings);
+            }
+            throw ex;
+        }
+        finally
+        {
+            writeStats.addNano(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Like mutate, but returns as soon as the mutations have been sent rather than waiting for the
+     * replicas: @param write is completed once they are acknowledged at the consistency level, or
+     * the rpc timeout passes.
+     */
+    public static void mutate(List<? extends IMutation> mutations, ConsistencyLevel consistency_level, AsyncWrite write) throws UnavailableException, TimeoutException
+    {
+        write.start(write(mutations, consistency_level));
+    }
+
+    /**
+     * Send @param mutations to their replicas.
+     * @return the handlers to wait on for them to meet the consistency level, one per mutation
+     */
+    private static List<IWriteResponseHandler> write(List<? extends IMutation> mutations, ConsistencyLevel consistency_level) throws UnavailableException, TimeoutException
     {
         logger.debug("Mutations/ConsistencyLevel are {}/{}", mutations, consistency_level);
         final String localDataCenter = DatabaseDescriptor.getEndpointSnitch().getDatacenter(FBUtilities.getBroadcastAddress());
 
-        long startTime = System.nanoTime();
         List<IWriteResponseHandler> responseHandlers = new ArrayList<IWriteResponseHandler>();
 
+        // with several rows, remote writes are grouped by replica (or, in other datacenters, by the replicas
+        // one of them forwards the write to) and sent once every row has been looked at
+        final Map<Set<InetAddress>, WriteBatch> batches = mutations.size() > 1 ? new HashMap<Set<InetAddress>, WriteBatch>() : null;
+        WritePerformer performer = batches == null ? standardWritePerformer : new WritePerformer()
+        {
+            public void apply(IMutation mutation,
+                              Collection<InetAddress> targets,
+                              IWriteResponseHandler responseHandler,
+                              String localDataCenter,
+                              ConsistencyLevel consistency_level)
+            throws IOException, TimeoutException
+            {
+                assert mutation instanceof RowMutation;
+                sendToHintedEndpoints((RowMutation) mutation, targets, responseHandler, localDataCenter, consistency_level, batches);
+            }
+        };
+
         IMutation mostRecentMutation = null;
         try
         {
@@ -188,41 +268,26 @@ public class StorageProxy implements StorageProxyMBean
                 mostRecentMutation = mutation;
                 if (mutation instanceof CounterMutation)
                 {
-                    responseHandlers.add(mutateCounter((CounterMutation)mutation, localDataCenter));
+                    responseHandlers.add(mutateCounter((CounterMutation)mutation, localDataCenter, batches == null));
                 }
                 else
                 {
-                    responseHandlers.add(performWrite(mutation, consistency_level, localDataCenter, standardWritePerformer));
+                    responseHandlers.add(performWrite(mutation, consistency_level, localDataCenter, performer));
                 }
             }
 
-            // wait for writes.  throws TimeoutException if necessary
-            for (IWriteResponseHandler responseHandler : responseHandlers)
+            if (batches != null)
             {
-                responseHandler.get();
+                for (Map.Entry<Set<InetAddress>, WriteBatch> entry : batches.entrySet())
+                    entry.getValue().send(entry.getKey());
             }
-
-        }
-        catch (TimeoutException ex)
-        {
-            if (logger.isDebugEnabled())
-            {
-                List<String> mstrings = new ArrayList<String>();
-                for (IMutation mutation : mutations)
-                    mstrings.add(mutation.toString(true));
-                logger.debug("Write timeout {} for one (or more) of: ", ex.toString(), mstrings);
-            }
-            throw ex;
         }
         catch (IOException e)
         {
             assert mostRecentMutation != null;
             throw new RuntimeException("error writing key " + ByteBufferUtil.bytesToHex(mostRecentMutation.key()), e);
         }
-        finally
-        {
-            writeStats.addNano(System.nanoTime() - startTime);
-        }
+        return responseHandlers;
     }
 
     /**
@@ -257,7 +322,7 @@ public class StorageProxy implements StorageProxyMBean
         return responseHandler;
     }
 
-    private static Collection<InetAddress> getWriteEndpoints(String table, ByteBuffer key)
+    static Collection<InetAddress> getWriteEndpoints(String table, ByteBuffer key)
     {
         StorageService ss = StorageService.instance;
         Token tk = StorageService.getPartitioner().getToken(key);
@@ -285,9 +350,28 @@ public class StorageProxy implements StorageProxyMBean
                                               String localDataCenter,
                                               ConsistencyLevel consistency_level)
     throws IOException, TimeoutException
+    {
+        sendToHintedEndpoints(rm, targets, responseHandler, localDataCenter, consistency_level, null);
+    }
+
+    /**
+     * @param batches if not null, writes to live remote replicas are added to the batch of the
+     * replica instead of being sent; the caller sends the batches once it has added all its rows.
+     * Replicas in other datacenters share the batch of the row's replicas in their datacenter, so
+     * that the batch crosses to it once and is forwarded from there.
+     */
+    private static void sendToHintedEndpoints(final RowMutation rm,
+                                              Collection<InetAddress> targets,
+                                              IWriteResponseHandler responseHandler,
+                                              String localDataCenter,
+                                              ConsistencyLevel consistency_level,
+                                              Map<Set<InetAddress>, WriteBatch> batches)
+    throws IOException, TimeoutException
     {
         // Multimap that holds onto all the messages and addresses meant for a specific datacenter
         Map<String, Multimap<Message, InetAddress>> dcMessages = new HashMap<String, Multimap<Message, InetAddress>>(targets.size());
+        // the same for the replicas of a batched row, by datacenter
+        Map<String, Set<InetAddress>> dcTargets = null;
         MessageProducer producer = new CachingMessageProducer(rm);
 
         for (InetAddress destination : targets)
@@ -307,7 +391,28 @@ public class StorageProxy implements StorageProxyMBean
             {
                 if (destination.equals(FBUtilities.getBroadcastAddress()) && OPTIMIZE_LOCAL_REQUESTS)
                 {
-                    insertLocal(rm, responseHandler);
+                    // with no other replica or row to send to, there is nothing to gain from applying the write concurrently
+                    insertLocal(rm, responseHandler, batches == null && targets.size() == 1);
+                }
+                else if (batches != null)
+                {
+                    String dc = DatabaseDescriptor.getEndpointSnitch().getDatacenter(destination);
+                    if (dc.equals(localDataCenter))
+                    {
+                        WriteBatch.add(batches, Collections.singleton(destination), rm, responseHandler);
+                    }
+                    else
+                    {
+                        if (dcTargets == null)
+                            dcTargets = new HashMap<String, Set<InetAddress>>();
+                        Set<InetAddress> dcDestinations = dcTargets.get(dc);
+                        if (dcDestinations == null)
+                        {
+                            dcDestinations = new HashSet<InetAddress>();
+                            dcTargets.put(dc, dcDestinations);
+                        }
+                        dcDestinations.add(destination);
+                    }
                 }
                 else
                 {
@@ -332,15 +437,20 @@ public class StorageProxy implements StorageProxyMBean
                     continue;
 
                 // Schedule a local hint and let the handler know it needs to wait for the hint to complete too
-                Future<Void> hintfuture = scheduleLocalHint(rm, destination, responseHandler, consistency_level);
+                ListenableFuture<Void> hintfuture = scheduleLocalHint(rm, destination, responseHandler, consistency_level);
                 responseHandler.addFutureForHint(new CreationTimeAwareFuture<Void>(hintfuture));
             }
         }
 
+        if (dcTargets != null)
+        {
+            for (Set<InetAddress> dcDestinations : dcTargets.values())
+                WriteBatch.add(batches, dcDestinations, rm, responseHandler);
+        }
         sendMessages(localDataCenter, dcMessages, responseHandler);
     }
 
-    public static Future<Void> scheduleLocalHint(final RowMutation mutation,
+    public static ListenableFuture<Void> scheduleLocalHint(final RowMutation mutation,
                                                  final InetAddress target,
                                                  final IWriteResponseHandler responseHandler,
                                                  final ConsistencyLevel consistencyLevel)
@@ -361,10 +471,7 @@ public class StorageProxy implements StorageProxyMBean
 
                 try
                 {
-                    Token<?> token = StorageService.instance.getTokenMetadata().getToken(target);
-                    ByteBuffer tokenbytes = StorageService.getPartitioner().getTokenFactory().toByteArray(token);
-                    RowMutation hintedMutation = RowMutation.hintFor(mutation, tokenbytes);
-                    hintedMutation.apply();
+                    HintStore.instance.append(target, mutation);
 
                     totalHints.incrementAndGet();
 
@@ -380,7 +487,10 @@ public class StorageProxy implements StorageProxyMBean
             }
         };
 
-        return (Future<Void>) StageManager.getStage(Stage.MUTATION).submit(runnable);
+        // listenable, so that asynchronous writes can wait for it without blocking (see AsyncWrite)
+        ListenableFutureTask<Void> task = new ListenableFutureTask<Void>(runnable, null);
+        StageManager.getStage(Stage.MUTATION).execute(task);
+        return task;
     }
 
     /**
@@ -418,19 +528,7 @@ public class StorageProxy implements StorageProxyMBean
                 }
 
                 // Add all the other destinations of the same message as a FORWARD_HEADER entry
-                FastByteArrayOutputStream bos = new FastByteArrayOutputStream();
-                DataOutputStream dos = new DataOutputStream(bos);
-                dos.writeInt(messages.getValue().size() - 1);
-                while (iter.hasNext())
-                {
-                    InetAddress destination = iter.next();
-                    CompactEndpointSerializationHelper.serialize(destination, dos);
-                    String id = MessagingService.instance().addCallback(handler, message, destination);
-                    dos.writeUTF(id);
-                    if (logger.isDebugEnabled())
-                        logger.debug("Adding FWD message to: " + destination + " with ID " + id);
-                }
-                message = message.withHeaderAdded(RowMutation.FORWARD_HEADER, bos.toByteArray());
+                message = withForwards(message, iter, messages.getValue().size() - 1, handler);
                 // send the combined message + forward headers
                 String id = MessagingService.instance().sendRR(message, target, handler);
                 if (logger.isDebugEnabled())
@@ -439,7 +537,118 @@ public class StorageProxy implements StorageProxyMBean
         }
     }
 
-    private static void insertLocal(final RowMutation rm, final IWriteResponseHandler responseHandler)
+    /**
+     * @return @param message with a FORWARD_HEADER asking its recipient to pass it on to the @param count
+     * remaining @param destinations, whose responses go to @param callback
+     */
+    private static Message withForwards(Message message, Iterator<InetAddress> destinations, int count, IMessageCallback callback)
+    throws IOException
+    {
+        FastByteArrayOutputStream bos = new FastByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(count);
+        while (destinations.hasNext())
+        {
+            InetAddress destination = destinations.next();
+            CompactEndpointSerializationHelper.serialize(destination, dos);
+            String id = MessagingService.instance().addCallback(callback, message, destination);
+            dos.writeUTF(id);
+            if (logger.isDebugEnabled())
+                logger.debug("Adding FWD message to: " + destination + " with ID " + id);
+        }
+        return message.withHeaderAdded(RowMutation.FORWARD_HEADER, bos.toByteArray());
+    }
+
+    /**
+     * @return true if @param endpoint is known to understand the MULTI_MUTATION and MULTI_READ verbs, which
+     * nodes older than 1.1 don't.  Until gossip tells us its version, a node may be one of those.
+     * (Package-private for testing.)
+     */
+    static boolean knowsBatches(InetAddress endpoint)
+    {
+        return Gossiper.instance.knowsVersion(endpoint) && Gossiper.instance.getVersion(endpoint) >= MessagingService.VERSION_11;
+    }
+
+    /**
+     * The rows of a batch_mutate that go to the same replica.  They are sent as a single MultiRowMutation
+     * acknowledged once for the whole group; each row's response handler still counts that replica's
+     * acknowledgement separately, so consistency levels are per row as before.  The rows that go to the
+     * same replicas of another datacenter are sent to one of them, which forwards them to the others.
+     */
+    private static class WriteBatch
+    {
+        private final List<RowMutation> mutations = new ArrayList<RowMutation>();
+        private final List<IWriteResponseHandler> handlers = new ArrayList<IWriteResponseHandler>();
+
+        static void add(Map<Set<InetAddress>, WriteBatch> batches, Set<InetAddress> endpoints, RowMutation rm, IWriteResponseHandler handler)
+        {
+            WriteBatch batch = batches.get(endpoints);
+            if (batch == null)
+            {
+                batch = new WriteBatch();
+                batches.put(endpoints, batch);
+            }
+            batch.mutations.add(rm);
+            batch.handlers.add(handler);
+        }
+
+        void send(Set<InetAddress> endpoints) throws IOException
+        {
+            Iterator<InetAddress> iter = endpoints.iterator();
+            InetAddress target = iter.next();
+            if (!iter.hasNext())
+            {
+                send(target);
+                return;
+            }
+
+            // forwarding needs a single version, and nodes older than 1.1 don't know the MULTI_MUTATION verb
+            int version = Gossiper.instance.getVersion(target);
+            for (InetAddress endpoint : endpoints)
+            {
+                if (!knowsBatches(endpoint) || Gossiper.instance.getVersion(endpoint) != version)
+                {
+                    for (InetAddress destination : endpoints)
+                        send(destination);
+                    return;
+                }
+            }
+
+            Message message;
+            IMessageCallback callback;
+            if (mutations.size() == 1)
+            {
+                message = mutations.get(0).getMessage(version);
+                callback = handlers.get(0);
+            }
+            else
+            {
+                message = new MultiRowMutation(mutations).getMessage(version);
+                callback = new MultiWriteCallback(handlers);
+            }
+            if (logger.isDebugEnabled())
+                logger.debug("sending {} mutations to {} for forwarding to {}", new Object[]{ mutations.size(), target, endpoints });
+            message = withForwards(message, iter, endpoints.size() - 1, callback);
+            MessagingService.instance().sendRR(message, target, callback);
+        }
+
+        private void send(InetAddress endpoint) throws IOException
+        {
+            if (mutations.size() == 1 || !knowsBatches(endpoint))
+            {
+                for (int i = 0; i < mutations.size(); i++)
+                    MessagingService.instance().sendRR(mutations.get(i), endpoint, handlers.get(i));
+            }
+            else
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("sending {} mutations to {} in one message", mutations.size(), endpoint);
+                MessagingService.instance().sendRR(new MultiRowMutation(mutations), endpoint, new MultiWriteCallback(handlers));
+            }
+        }
+    }
+
+    private static void insertLocal(final RowMutation rm, final IWriteResponseHandler responseHandler, boolean inlineAllowed)
     {
         if (logger.isDebugEnabled())
             logger.debug("insert writing local " + rm.toString(true));
@@ -451,7 +660,22 @@ public class StorageProxy implements StorageProxyMBean
                 responseHandler.response(null);
             }
         };
-        StageManager.getStage(Stage.MUTATION).execute(runnable);
+        executeLocally(Stage.MUTATION, runnable, inlineAllowed);
+    }
+
+    /**
+     * Runs a local read or write on the calling thread if inline_local_requests is enabled, the caller
+     * has nothing else to do concurrently, and the stage has no backlog; this saves the hand-off to a
+     * stage thread for CL.ONE requests coordinated by a replica.  Otherwise the task goes to the stage
+     * as usual, so a busy node still applies the stage's backpressure and ordering.
+     */
+    private static void executeLocally(Stage stage, Runnable runnable, boolean inlineAllowed)
+    {
+        ThreadPoolExecutor executor = StageManager.getStage(stage);
+        if (inlineAllowed && inlineLocalRequests && executor.getQueue().isEmpty())
+            runnable.run();
+        else
+            executor.execute(runnable);
     }
 
     /**
@@ -469,12 +693,21 @@ public class StorageProxy implements StorageProxyMBean
      * the write latencies at the coordinator node to make gathering point similar to the case of standard writes.
      */
     public static IWriteResponseHandler mutateCounter(CounterMutation cm, String localDataCenter) throws UnavailableException, TimeoutException, IOException
+    {
+        return mutateCounter(cm, localDataCenter, true);
+    }
+
+    /**
+     * @param single false if @param cm is one of several rows being sent, whose local write must then
+     * not hold up the others
+     */
+    private static IWriteResponseHandler mutateCounter(CounterMutation cm, String localDataCenter, boolean single) throws UnavailableException, TimeoutException, IOException
     {
         InetAddress endpoint = findSuitableEndpoint(cm.getTable(), cm.key(), localDataCenter);
 
         if (endpoint.equals(FBUtilities.getBroadcastAddress()))
         {
-            return applyCounterMutationOnCoordinator(cm, localDataCenter);
+            return applyCounterMutationOnCoordinator(cm, localDataCenter, single);
         }
         else
         {
@@ -537,6 +770,8 @@ public class StorageProxy implements StorageProxyMBean
     // leader of this mutation.
     public static IWriteResponseHandler applyCounterMutationOnLeader(CounterMutation cm, String localDataCenter) throws UnavailableException, TimeoutException, IOException
     {
+        if (CounterCoalescer.instance.getWindow() > 0)
+            return CounterCoalescer.instance.add(cm, localDataCenter);
         return performWrite(cm, cm.consistency(), localDataCenter, counterWritePerformer);
     }
 
@@ -544,7 +779,21 @@ public class StorageProxy implements StorageProxyMBean
     // applyCounterMutationOnLeader assumes it is on the MUTATION stage already)
     public static IWriteResponseHandler applyCounterMutationOnCoordinator(CounterMutation cm, String localDataCenter) throws UnavailableException, TimeoutException, IOException
     {
-        return performWrite(cm, cm.consistency(), localDataCenter, counterWriteOnCoordinatorPerformer);
+        return applyCounterMutationOnCoordinator(cm, localDataCenter, true);
+    }
+
+    private static IWriteResponseHandler applyCounterMutationOnCoordinator(CounterMutation cm, String localDataCenter, boolean single) throws UnavailableException, TimeoutException, IOException
+    {
+        if (CounterCoalescer.instance.getWindow() > 0)
+            return CounterCoalescer.instance.add(cm, localDataCenter);
+        return performWrite(cm, cm.consistency(), localDataCenter, single ? counterWriteOnCoordinatorPerformer : batchedCounterWriteOnCoordinatorPerformer);
+    }
+
+    // Applies a batch of coalesced increments on the CounterCoalescer thread calling it, which is not
+    // a MUTATION stage thread but may be the only one free to run the write (see CounterCoalescer)
+    static IWriteResponseHandler applyCoalescedCounterMutation(CounterMutation cm, String localDataCenter) throws UnavailableException, TimeoutException, IOException
+    {
+        return performWrite(cm, cm.consistency(), localDataCenter, counterWritePerformer);
     }
 
     private static Runnable counterWriteTask(final IMutation mutation, 
@@ -568,7 +817,8 @@ public class StorageProxy implements StorageProxyMBean
                 targets.remove(FBUtilities.getBroadcastAddress());
                 if (cm.shouldReplicateOnWrite() && !targets.isEmpty())
                 {
-                    // We do the replication on another stage because it involves a read (see CM.makeReplicationMutation)
+                    // We do the replication on another stage because it may involve a read (see CM.makeReplicationMutation;
+                    // only counters missing from the counter cache are read, and that happens in CM.apply)
                     // and we want to avoid blocking too much the MUTATION stage
                     StageManager.getStage(Stage.REPLICATE_ON_WRITE).execute(new DroppableRunnable(StorageService.Verb.READ)
                     {
@@ -625,6 +875,9 @@ public class StorageProxy implements StorageProxyMBean
         {
             List<ReadCommand> commands = commandsToRetry.isEmpty() ? initialCommands : commandsToRetry;
             ReadCallback<Row>[] readCallbacks = new ReadCallback[commands.size()];
+            List<InetAddress>[] liveEndpoints = new List[commands.size()];
+            // with several keys, remote requests are grouped by replica and sent after the loop
+            Map<InetAddress, ReadBatch> batches = commands.size() > 1 ? new HashMap<InetAddress, ReadBatch>() : null;
 
             if (!commandsToRetry.isEmpty())
                 logger.debug("Retrying {} commands", commandsToRetry.size());
@@ -645,18 +898,23 @@ public class StorageProxy implements StorageProxyMBean
                 handler.assureSufficientLiveNodes();
                 assert !handler.endpoints.isEmpty();
                 readCallbacks[i] = handler;
+                liveEndpoints[i] = endpoints;
 
                 // The data-request message is sent to dataPoint, the node that will actually get the data for us
                 InetAddress dataPoint = handler.endpoints.get(0);
                 if (dataPoint.equals(FBUtilities.getBroadcastAddress()) && OPTIMIZE_LOCAL_REQUESTS)
                 {
                     logger.debug("reading data locally");
-                    StageManager.getStage(Stage.READ).execute(new LocalReadRunnable(command, handler));
+                    // only a single local read can run inline, since other requests would wait for it to be sent
+                    executeLocally(Stage.READ, new LocalReadRunnable(command, handler), commands.size() == 1 && handler.endpoints.size() == 1);
                 }
                 else
                 {
                     logger.debug("reading data from {}", dataPoint);
-                    MessagingService.instance().sendRR(command, dataPoint, handler);
+                    if (batches == null)
+                        MessagingService.instance().sendRR(command, dataPoint, handler);
+                    else
+                        ReadBatch.add(batches, dataPoint, command, handler);
                 }
 
                 if (handler.endpoints.size() == 1)
@@ -676,6 +934,11 @@ public class StorageProxy implements StorageProxyMBean
                     else
                     {
                         logger.debug("reading digest from {}", digestPoint);
+                        if (batches != null)
+                        {
+                            ReadBatch.add(batches, digestPoint, digestCommand, handler);
+                            continue;
+                        }
                         // (We lazy-construct the digest Message object since it may not be necessary if we
                         // are doing a local digest read, or no digest reads at all.)
                         if (producer == null)
@@ -685,6 +948,12 @@ public class StorageProxy implements StorageProxyMBean
                 }
             }
 
+            if (batches != null)
+            {
+                for (Map.Entry<InetAddress, ReadBatch> entry : batches.entrySet())
+                    entry.getValue().send(entry.getKey());
+            }
+
             // read results and make a second pass for any digest mismatches
             List<ReadCommand> repairCommands = null;
             List<RepairCallback> repairResponseHandlers = null;
@@ -695,7 +964,9 @@ public class StorageProxy implements StorageProxyMBean
                 try
                 {
                     long startTime2 = System.currentTimeMillis();
+                    maybeSpeculate(command, handler, liveEndpoints[i]);
                     Row row = handler.get();
+                    Table.open(command.table).getColumnFamilyStore(command.getColumnFamilyName()).addCoordinatorReadLatency(handler.getLatencyMicros());
                     if (row != null)
                     {
                         command.maybeTrim(row);
@@ -716,7 +987,8 @@ public class StorageProxy implements StorageProxyMBean
                     if (logger.isDebugEnabled())
                         logger.debug("Digest mismatch: {}", ex.toString());
                     RowRepairResolver resolver = new RowRepairResolver(command.table, command.key);
-                    RepairCallback repairHandler = new RepairCallback(resolver, handler.endpoints);
+                    List<InetAddress> contacted = handler.contactedEndpoints();
+                    RepairCallback repairHandler = new RepairCallback(resolver, contacted);
 
                     if (repairCommands == null)
                     {
@@ -727,7 +999,7 @@ public class StorageProxy implements StorageProxyMBean
                     repairResponseHandlers.add(repairHandler);
 
                     MessageProducer producer = new CachingMessageProducer(command);
-                    for (InetAddress endpoint : handler.endpoints)
+                    for (InetAddress endpoint : contacted)
                         MessagingService.instance().sendRR(producer, endpoint, repairHandler);
                 }
             }
@@ -803,6 +1075,73 @@ public class StorageProxy implements StorageProxyMBean
         }
     }
 
+    /**
+     * The read commands of a multiget that go to the same replica.  They are sent as a single
+     * MultiReadCommand, so a 500-key multiget costs one message per replica instead of one per key and replica.
+     */
+    private static class ReadBatch
+    {
+        private final List<ReadCommand> commands = new ArrayList<ReadCommand>();
+        private final List<ReadCallback<Row>> handlers = new ArrayList<ReadCallback<Row>>();
+
+        static void add(Map<InetAddress, ReadBatch> batches, InetAddress endpoint, ReadCommand command, ReadCallback<Row> handler)
+        {
+            ReadBatch batch = batches.get(endpoint);
+            if (batch == null)
+            {
+                batch = new ReadBatch();
+                batches.put(endpoint, batch);
+            }
+            batch.commands.add(command);
+            batch.handlers.add(handler);
+        }
+
+        void send(InetAddress endpoint) throws IOException
+        {
+            if (commands.size() == 1 || !knowsBatches(endpoint))
+            {
+                for (int i = 0; i < commands.size(); i++)
+                    MessagingService.instance().sendRR(commands.get(i), endpoint, handlers.get(i));
+            }
+            else
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("sending {} read commands to {} in one message", commands.size(), endpoint);
+                MessagingService.instance().sendRR(new MultiReadCommand(commands), endpoint, new MultiReadCallback(handlers));
+            }
+        }
+    }
+
+    /**
+     * If the column family's speculative retry threshold passes before we have enough responses,
+     * send an extra data request to the closest replica we haven't asked yet.  Whichever data
+     * response arrives first is used; RowDigestResolver compares the second one like a digest.
+     * (Package-private for testing.)
+     */
+    static void maybeSpeculate(ReadCommand command, ReadCallback<Row> handler, List<InetAddress> liveEndpoints) throws IOException
+    {
+        long threshold = Table.open(command.table).getColumnFamilyStore(command.getColumnFamilyName()).getSpeculationThreshold();
+        if (threshold >= TimeUnit.MILLISECONDS.toMicros(DatabaseDescriptor.getRpcTimeout()) || handler.await(threshold))
+            return;
+
+        InetAddress target = handler.getSpeculationTarget(liveEndpoints);
+        if (target == null)
+            return;
+
+        handler.speculate(target);
+        speculativeRetries.incrementAndGet();
+        if (target.equals(FBUtilities.getBroadcastAddress()) && OPTIMIZE_LOCAL_REQUESTS)
+        {
+            logger.debug("speculatively reading data locally");
+            StageManager.getStage(Stage.READ).execute(new LocalReadRunnable(command, handler));
+        }
+        else
+        {
+            logger.debug("speculatively reading data from {}", target);
+            MessagingService.instance().sendRR(command, target, handler);
+        }
+    }
+
     static <T> ReadCallback<T> getReadCallback(IResponseResolver<T> resolver, IReadCommand command, ConsistencyLevel consistencyLevel, List<InetAddress> endpoints)
     {
         if (consistencyLevel == ConsistencyLevel.LOCAL_QUORUM || consistencyLevel == ConsistencyLevel.EACH_QUORUM)
@@ -845,37 +1184,47 @@ public class StorageProxy implements StorageProxyMBean
                 }
                 else
                 {
-                    RangeSliceCommand c2 = new RangeSliceCommand(command.keyspace, command.column_family, command.super_column, command.predicate, range, command.max_keys);
-
-                    // collect replies and resolve according to consistency level
-                    RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(command.keyspace, liveEndpoints);
-                    ReadCallback<Iterable<Row>> handler = getReadCallback(resolver, command, consistency_level, liveEndpoints);
-                    handler.assureSufficientLiveNodes();
-                    for (InetAddress endpoint : handler.endpoints)
+                    // replicas may cut their replies short when the rows are large; keep asking for
+                    // the rest of the range until we have it all or have enough rows
+                    AbstractBounds<RowPosition> subRange = range;
+                    while (subRange != null)
                     {
-                        MessagingService.instance().sendRR(c2, endpoint, handler);
-                        if (logger.isDebugEnabled())
-                            logger.debug("reading " + c2 + " from " + endpoint);
-                    }
+                        RangeSliceCommand c2 = new RangeSliceCommand(command.keyspace, command.column_family, command.super_column, command.predicate, subRange, command.max_keys - rows.size());
 
-                    try
-                    {
-                        for (Row row : handler.get())
+                        // collect replies and resolve according to consistency level
+                        RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(command.keyspace, liveEndpoints);
+                        ReadCallback<Iterable<Row>> handler = getReadCallback(resolver, command, consistency_level, liveEndpoints);
+                        handler.assureSufficientLiveNodes();
+                        for (InetAddress endpoint : handler.endpoints)
                         {
-                            rows.add(row);
-                            logger.debug("range slices read {}", row.key);
+                            MessagingService.instance().sendRR(c2, endpoint, handler);
+                            if (logger.isDebugEnabled())
+                                logger.debug("reading " + c2 + " from " + endpoint);
                         }
-                        FBUtilities.waitOnFutures(resolver.repairResults, DatabaseDescriptor.getRpcTimeout());
-                    }
-                    catch (TimeoutException ex)
-                    {
-                        if (logger.isDebugEnabled())
-                            logger.debug("Range slice timeout: {}", ex.toString());
-                        throw ex;
-                    }
-                    catch (DigestMismatchException e)
-                    {
-                        throw new AssertionError(e); // no digests in range slices yet
+
+                        try
+                        {
+                            for (Row row : handler.get())
+                            {
+                                rows.add(row);
+                                logger.debug("range slices read {}", row.key);
+                            }
+                            FBUtilities.waitOnFutures(resolver.repairResults, DatabaseDescriptor.getRpcTimeout());
+                        }
+                        catch (TimeoutException ex)
+                        {
+                            if (logger.isDebugEnabled())
+                                logger.debug("Range slice timeout: {}", ex.toString());
+                            throw ex;
+                        }
+                        catch (DigestMismatchException e)
+                        {
+                            throw new AssertionError(e); // no digests in range slices yet
+                        }
+
+                        subRange = resolver.getResumeKey() == null || rows.size() >= command.max_keys
+                                 ? null
+                                 : new Range<RowPosition>(resolver.getResumeKey(), range.right);
                     }
                 }
 
@@ -891,6 +1240,134 @@ public class StorageProxy implements StorageProxyMBean
         return rows.size() > command.max_keys ? rows.subList(0, command.max_keys) : rows;
     }
 
+    /**
+     * @return all the rows of @param command (regardless of its max_keys), read lazily from this node alone; or null
+     * if that would not be what getRangeSlice does, i.e. unless @param consistency_level is ONE and this node is the
+     * replica getRangeSlice would read every part of the range from.  The caller must close the iterator.
+     */
+    public static CloseableIterator<Row> getLocalRangeSliceIterator(final RangeSliceCommand command, ConsistencyLevel consistency_level)
+    {
+        List<AbstractBounds<RowPosition>> ranges = getRestrictedRanges(command.range);
+        if (!isLocal(command.keyspace, ranges, consistency_level))
+            return null;
+
+        final ColumnFamilyStore cfs = Table.open(command.keyspace).getColumnFamilyStore(command.column_family);
+        final IFilter filter = QueryFilter.getFilter(command.predicate, cfs.getComparator());
+        return new LocalRangesIterator(ranges)
+        {
+            protected CloseableIterator<Row> open(AbstractBounds<RowPosition> range)
+            {
+                return cfs.getRangeSliceIterator(command.super_column, range, filter);
+            }
+        };
+    }
+
+    /**
+     * The index scan counterpart of getLocalRangeSliceIterator: @return all the rows matching @param index_clause
+     * from its start key on (regardless of its count), or null if this node can't answer the scan by itself
+     */
+    public static CloseableIterator<Row> getLocalIndexScanIterator(String keyspace, String column_family, final IndexClause index_clause, SlicePredicate column_predicate, ConsistencyLevel consistency_level)
+    {
+        IPartitioner p = StorageService.getPartitioner();
+        RowPosition leftPos = RowPosition.forKey(index_clause.start_key, p);
+        List<AbstractBounds<RowPosition>> ranges = getRestrictedRanges(new Bounds<RowPosition>(leftPos, p.getMinimumToken().minKeyBound()));
+        if (!isLocal(keyspace, ranges, consistency_level))
+            return null;
+
+        final ColumnFamilyStore cfs = Table.open(keyspace).getColumnFamilyStore(column_family);
+        final IFilter filter = QueryFilter.getFilter(column_predicate, cfs.getComparator());
+        return new LocalRangesIterator(ranges)
+        {
+            protected CloseableIterator<Row> open(AbstractBounds<RowPosition> range)
+            {
+                final Iterator<Row> rows = cfs.indexManager.searchIterator(index_clause, range, filter);
+                return new CloseableIterator<Row>()
+                {
+                    public boolean hasNext()
+                    {
+                        return rows.hasNext();
+                    }
+
+                    public Row next()
+                    {
+                        return rows.next();
+                    }
+
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    public void close()
+                    {
+                        // the index searcher holds no references
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return true if, at @param consistency_level, each of @param ranges would be read from this node alone
+     */
+    private static boolean isLocal(String keyspace, List<AbstractBounds<RowPosition>> ranges, ConsistencyLevel consistency_level)
+    {
+        if (consistency_level != ConsistencyLevel.ONE)
+            return false;
+        for (AbstractBounds<RowPosition> range : ranges)
+        {
+            List<InetAddress> liveEndpoints = StorageService.instance.getLiveNaturalEndpoints(keyspace, range.right);
+            DatabaseDescriptor.getEndpointSnitch().sortByProximity(FBUtilities.getBroadcastAddress(), liveEndpoints);
+            if (liveEndpoints.isEmpty() || !liveEndpoints.get(0).equals(FBUtilities.getBroadcastAddress()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The rows of consecutive ranges, each read from an iterator that is only opened once the previous one is done.
+     */
+    private static abstract class LocalRangesIterator extends AbstractIterator<Row> implements CloseableIterator<Row>
+    {
+        private final Iterator<AbstractBounds<RowPosition>> ranges;
+        private CloseableIterator<Row> current;
+
+        LocalRangesIterator(List<AbstractBounds<RowPosition>> ranges)
+        {
+            this.ranges = ranges.iterator();
+        }
+
+        protected abstract CloseableIterator<Row> open(AbstractBounds<RowPosition> range);
+
+        protected Row computeNext()
+        {
+            while (current == null || !current.hasNext())
+            {
+                try
+                {
+                    close();
+                }
+                catch (IOException e)
+                {
+                    throw new IOError(e);
+                }
+                if (!ranges.hasNext())
+                    return endOfData();
+                current = open(ranges.next());
+            }
+            return current.next();
+        }
+
+        public void close() throws IOException
+        {
+            if (current != null)
+            {
+                current.close();
+                current = null;
+            }
+        }
+    }
+
     /**
      * initiate a request/response session with each live node to check whether or not everybody is using the same
      * migration id. This is useful for determining if a schema change has propagated through the cluster. Disagreement
@@ -1108,58 +1585,133 @@ public class StorageProxy implements StorageProxyMBean
         List<AbstractBounds<RowPosition>> ranges = getRestrictedRanges(new Bounds<RowPosition>(leftPos, p.getMinimumToken().minKeyBound()));
         logger.debug("scan ranges are {}", StringUtils.join(ranges, ","));
 
+        // query as many ranges at once as we expect to need to get enough results
+        int concurrencyFactor = estimateScanConcurrency(keyspace, column_family, index_clause, ranges.size());
+        logger.debug("scanning {} range(s) at a time", concurrencyFactor);
+
         // now scan until we have enough results
         List<Row> rows = new ArrayList<Row>(index_clause.count);
-        for (AbstractBounds<RowPosition> range : ranges)
+        int scanned = 0;
+        while (scanned < ranges.size())
         {
-            List<InetAddress> liveEndpoints = StorageService.instance.getLiveNaturalEndpoints(keyspace, range.right);
-            DatabaseDescriptor.getEndpointSnitch().sortByProximity(FBUtilities.getBroadcastAddress(), liveEndpoints);
-
-            // collect replies and resolve according to consistency level
-            RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(keyspace, liveEndpoints);
-            IReadCommand iCommand = new IReadCommand()
+            List<ReadCallback<Iterable<Row>>> handlers = new ArrayList<ReadCallback<Iterable<Row>>>(concurrencyFactor);
+            List<RangeSliceResponseResolver> resolvers = new ArrayList<RangeSliceResponseResolver>(concurrencyFactor);
+            for (AbstractBounds<RowPosition> range : ranges.subList(scanned, Math.min(scanned + concurrencyFactor, ranges.size())))
             {
-                public String getKeyspace()
-                {
-                    return keyspace;
-                }
-            };
-            ReadCallback<Iterable<Row>> handler = getReadCallback(resolver, iCommand, consistency_level, liveEndpoints);
-            handler.assureSufficientLiveNodes();
+                List<InetAddress> liveEndpoints = StorageService.instance.getLiveNaturalEndpoints(keyspace, range.right);
+                DatabaseDescriptor.getEndpointSnitch().sortByProximity(FBUtilities.getBroadcastAddress(), liveEndpoints);
 
-            IndexScanCommand command = new IndexScanCommand(keyspace, column_family, index_clause, column_predicate, range);
-            MessageProducer producer = new CachingMessageProducer(command);
-            for (InetAddress endpoint : handler.endpoints)
-            {
-                MessagingService.instance().sendRR(producer, endpoint, handler);
-                if (logger.isDebugEnabled())
-                    logger.debug("reading {} from {}", command, endpoint);
+                // collect replies and resolve according to consistency level
+                RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(keyspace, liveEndpoints);
+                handlers.add(sendIndexScan(keyspace, column_family, index_clause, column_predicate, range, resolver, consistency_level));
+                resolvers.add(resolver);
             }
 
-            try
+            // results must come back in range order
+            for (int i = 0; i < handlers.size(); i++)
             {
-                for (Row row : handler.get())
+                AbstractBounds<RowPosition> range = ranges.get(scanned + i);
+                ReadCallback<Iterable<Row>> handler = handlers.get(i);
+                RangeSliceResponseResolver resolver = resolvers.get(i);
+                while (true)
                 {
-                    rows.add(row);
-                    logger.debug("read {}", row);
+                    try
+                    {
+                        for (Row row : handler.get())
+                        {
+                            rows.add(row);
+                            logger.debug("read {}", row);
+                        }
+                        FBUtilities.waitOnFutures(resolver.repairResults, DatabaseDescriptor.getRpcTimeout());
+                    }
+                    catch (TimeoutException ex)
+                    {
+                        if (logger.isDebugEnabled())
+                            logger.debug("Index scan timeout: {}", ex.toString());
+                        throw ex;
+                    }
+                    catch (DigestMismatchException e)
+                    {
+                        throw new AssertionError(e);
+                    }
+                    if (rows.size() >= index_clause.count)
+                        return rows.subList(0, index_clause.count);
+
+                    // a replica cut its reply short: read the rest of this range, starting after the last row
+                    DecoratedKey resumeKey = resolver.getResumeKey();
+                    if (resumeKey == null)
+                        break;
+                    IndexClause clause = new IndexClause(index_clause.expressions, resumeKey.key, index_clause.count - rows.size());
+                    resolver = new RangeSliceResponseResolver(keyspace, resolver.sources);
+                    handler = sendIndexScan(keyspace, column_family, clause, column_predicate, new Range<RowPosition>(resumeKey, range.right), resolver, consistency_level);
                 }
-                FBUtilities.waitOnFutures(resolver.repairResults, DatabaseDescriptor.getRpcTimeout());
-            }
-            catch (TimeoutException ex)
-            {
-                if (logger.isDebugEnabled())
-                    logger.debug("Index scan timeout: {}", ex.toString());
-                throw ex;
             }
-            catch (DigestMismatchException e)
+            scanned += handlers.size();
+
+            // the estimate was off: size the next batch by what the ranges so far actually returned
+            concurrencyFactor = nextScanConcurrency(concurrencyFactor, rows.size(), scanned, index_clause.count, ranges.size() - scanned);
+        }
+
+        return rows;
+    }
+
+    private static ReadCallback<Iterable<Row>> sendIndexScan(final String keyspace, String column_family, IndexClause index_clause, SlicePredicate column_predicate,
+                                                             AbstractBounds<RowPosition> range, RangeSliceResponseResolver resolver, ConsistencyLevel consistency_level)
+    throws IOException, UnavailableException
+    {
+        IReadCommand iCommand = new IReadCommand()
+        {
+            public String getKeyspace()
             {
-                throw new AssertionError(e);
+                return keyspace;
             }
-            if (rows.size() >= index_clause.count)
-                return rows.subList(0, index_clause.count);
+        };
+        ReadCallback<Iterable<Row>> handler = getReadCallback(resolver, iCommand, consistency_level, resolver.sources);
+        handler.assureSufficientLiveNodes();
+
+        IndexScanCommand command = new IndexScanCommand(keyspace, column_family, index_clause, column_predicate, range);
+        MessageProducer producer = new CachingMessageProducer(command);
+        for (InetAddress endpoint : handler.endpoints)
+        {
+            MessagingService.instance().sendRR(producer, endpoint, handler);
+            if (logger.isDebugEnabled())
+                logger.debug("reading {} from {}", command, endpoint);
         }
+        return handler;
+    }
 
-        return rows;
+    /**
+     * @return the number of ranges to scan in the next round of an index scan that has found @param rows
+     * of the @param count it wants in the @param scanned ranges so far, scanning @param concurrencyFactor
+     * ranges at once, with @param rangesLeft ranges to go.  The rate of matches so far decides, but the
+     * factor grows no faster than doubling, since a few empty ranges say little about the rest.
+     * (Package-private for testing.)
+     */
+    static int nextScanConcurrency(int concurrencyFactor, int rows, int scanned, int count, int rangesLeft)
+    {
+        int needed = rows == 0
+                   ? Integer.MAX_VALUE
+                   : (int) Math.ceil((count - rows) / ((double) rows / scanned));
+        int next = Math.min(needed, Math.min(2 * concurrencyFactor, MAX_SCAN_CONCURRENCY));
+        return Math.max(1, Math.min(next, rangesLeft));
+    }
+
+    /**
+     * @return the number of ranges (of @param rangeCount) to scan at once to get @param index_clause.count
+     * results, from our estimate of how many of our rows match.  Each of our ranges should hold about as
+     * many matches as the ranges of the other nodes.
+     */
+    private static int estimateScanConcurrency(String keyspace, String column_family, IndexClause index_clause, int rangeCount)
+    {
+        ColumnFamilyStore cfs = Table.open(keyspace).getColumnFamilyStore(column_family);
+        long estimate = cfs.indexManager.estimateResultRows(index_clause);
+        if (estimate < 0)
+            return 1;
+
+        // expecting no match at all, start from one range and let scan double it
+        double perRange = (double) estimate / Math.max(StorageService.instance.getLocalRanges(keyspace).size(), 1);
+        int concurrencyFactor = perRange == 0 ? 1 : (int) Math.min(Math.ceil(index_clause.count / perRange), MAX_SCAN_CONCURRENCY);
+        return Math.max(1, Math.min(concurrencyFactor, rangeCount));
     }
 
     public boolean getHintedHandoffEnabled()
@@ -1177,6 +1729,31 @@ public class StorageProxy implements StorageProxyMBean
         return maxHintWindow;
     }
 
+    public boolean getInlineLocalRequests()
+    {
+        return inlineLocalRequests;
+    }
+
+    public void setInlineLocalRequests(boolean b)
+    {
+        inlineLocalRequests = b;
+    }
+
+    public int getCounterCoalescingWindow()
+    {
+        return CounterCoalescer.instance.getWindow();
+    }
+
+    public void setCounterCoalescingWindow(int ms)
+    {
+        // as checked for counter_coalescing_window_in_ms when loading the configuration
+        if (ms < 0)
+            throw new IllegalArgumentException("The counter coalescing window must not be negative");
+        if (ms >= DatabaseDescriptor.getRpcTimeout())
+            throw new IllegalArgumentException("The counter coalescing window must be lower than rpc_timeout_in_ms");
+        CounterCoalescer.instance.setWindow(ms);
+    }
+
     public void setMaxHintWindow(int ms)
     {
         maxHintWindow = ms;
@@ -1245,6 +1822,85 @@ public class StorageProxy implements StorageProxyMBean
         public void apply(IMutation mutation, Collection<InetAddress> targets, IWriteResponseHandler responseHandler, String localDataCenter, ConsistencyLevel consistency_level) throws IOException, TimeoutException;
     }
 
+    /**
+     * Writes that no thread waits for (see mutate(List, ConsistencyLevel, AsyncWrite)).  Once every one of
+     * them has met the consistency level, or the rpc timeout has passed, onComplete is called and get()
+     * tells which it was.
+     */
+    public static abstract class AsyncWrite
+    {
+        private final long startTime = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile List<IWriteResponseHandler> handlers = Collections.emptyList();
+        private volatile ScheduledFuture<?> timeout;
+        // whether all the handlers were done when we completed, i.e. whether we did so in time
+        private volatile boolean done;
+
+        /**
+         * Called exactly once, by whichever thread completes the writes: one handling a replica's response,
+         * writing a hint, or the timer.  So it must not block.
+         */
+        protected abstract void onComplete();
+
+        /**
+         * Must only be called once onComplete has been, and then doesn't block.
+         * @throws TimeoutException if a write did not meet the consistency level, or write its hints, in time
+         */
+        public void get() throws TimeoutException
+        {
+            assert completed.get();
+            if (!done)
+                throw new TimeoutException();
+            // these are all done, so this only checks how
+            for (IWriteResponseHandler handler : handlers)
+                handler.get();
+        }
+
+        // package-private for testing
+        void start(List<IWriteResponseHandler> handlers)
+        {
+            this.handlers = handlers;
+            timeout = StorageService.scheduledTasks.schedule(new Runnable()
+            {
+                public void run()
+                {
+                    complete();
+                }
+            }, DatabaseDescriptor.getRpcTimeout(), TimeUnit.MILLISECONDS);
+
+            // one more than the handlers, so that the ones done already can't complete us before we are set up
+            final AtomicInteger pending = new AtomicInteger(handlers.size() + 1);
+            Runnable countdown = new Runnable()
+            {
+                public void run()
+                {
+                    if (pending.decrementAndGet() == 0)
+                        complete();
+                }
+            };
+            for (IWriteResponseHandler handler : handlers)
+                handler.addCallback(countdown);
+            countdown.run();
+        }
+
+        private void complete()
+        {
+            if (!completed.compareAndSet(false, true))
+                return;
+            // null if the timer beat its own assignment
+            if (timeout != null)
+                timeout.cancel(false);
+
+            boolean allDone = true;
+            for (IWriteResponseHandler handler : handlers)
+                allDone &= handler.isDone();
+            done = allDone;
+
+            writeStats.addNano(System.nanoTime() - startTime);
+            onComplete();
+        }
+    }
+
     private static abstract class DroppableRunnable implements Runnable
     {
         private final long constructionTime = System.currentTimeMillis();
@@ -1281,6 +1937,11 @@ public class StorageProxy implements StorageProxyMBean
         return totalHints.get();
     }
 
+    public long getSpeculativeRetries()
+    {
+        return speculativeRetries.get();
+    }
+
     public int getMaxHintsInProgress()
     {
         return maxHintsInProgress;
@@ -46,4 +46,12 @@ public interface StorageProxyMBean
     public int getMaxHintsInProgress();
     public void setMaxHintsInProgress(int qs);
     public int getHintsInProgress();
+    public boolean getInlineLocalRequests();
+    public void setInlineLocalRequests(boolean b);
+    /** Window, in milliseconds, within which counter increments to the same row are summed before being applied; 0 to disable */
+    public int getCounterCoalescingWindow();
+    public void setCounterCoalescingWindow(int ms);
+
+    /** Number of extra data reads sent because the first replica was slower than the speculative retry threshold */
+    public long getSpeculativeRetries();
 }
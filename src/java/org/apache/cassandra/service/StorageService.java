@@ -111,6 +111,8 @@ public class StorageService implements IEndpointStateChangeSubscriber, StorageSe
         COUNTER_MUTATION,
         STREAMING_REPAIR_REQUEST,
         STREAMING_REPAIR_RESPONSE,
+        MULTI_READ,
+        MULTI_MUTATION,
         // use as padding for backwards compatability where a previous version needs to validate a verb from the future.
         UNUSED_1,
         UNUSED_2,
@@ -123,9 +125,11 @@ public class StorageService implements IEndpointStateChangeSubscriber, StorageSe
     public static final EnumMap<StorageService.Verb, Stage> verbStages = new EnumMap<StorageService.Verb, Stage>(StorageService.Verb.class)
     {{
         put(Verb.MUTATION, Stage.MUTATION);
+        put(Verb.MULTI_MUTATION, Stage.MUTATION);
         put(Verb.BINARY, Stage.MUTATION);
         put(Verb.READ_REPAIR, Stage.MUTATION);
         put(Verb.READ, Stage.READ);
+        put(Verb.MULTI_READ, Stage.READ);
         put(Verb.REQUEST_RESPONSE, Stage.REQUEST_RESPONSE);
         put(Verb.STREAM_REPLY, Stage.MISC); // TODO does this really belong on misc? I've just copied old behavior here
         put(Verb.STREAM_REQUEST, Stage.STREAM);
@@ -262,6 +266,8 @@ public class StorageService implements IEndpointStateChangeSubscriber, StorageSe
         MessagingService.instance().registerVerbHandlers(Verb.MUTATION, new RowMutationVerbHandler());
         MessagingService.instance().registerVerbHandlers(Verb.READ_REPAIR, new ReadRepairVerbHandler());
         MessagingService.instance().registerVerbHandlers(Verb.READ, new ReadVerbHandler());
+        MessagingService.instance().registerVerbHandlers(Verb.MULTI_READ, new MultiReadVerbHandler());
+        MessagingService.instance().registerVerbHandlers(Verb.MULTI_MUTATION, new MultiRowMutationVerbHandler());
         MessagingService.instance().registerVerbHandlers(Verb.RANGE_SLICE, new RangeSliceVerbHandler());
         MessagingService.instance().registerVerbHandlers(Verb.INDEX_SCAN, new IndexScanVerbHandler());
         MessagingService.instance().registerVerbHandlers(Verb.COUNTER_MUTATION, new CounterMutationVerbHandler());
@@ -1811,24 +1817,31 @@ public class StorageService implements IEndpointStateChangeSubscriber, StorageSe
             return;
 
 
-        Collection<Range<Token>> ranges = getLocalRanges(tableName);
+        List<Range<Token>> ranges = nonAdjacentOrder(getLocalRanges(tableName));
         int cmd = nextRepairCommand.incrementAndGet();
         logger_.info("Starting repair command #{}, repairing {} ranges.", cmd, ranges.size());
 
+        // each session has to be done with its differencing before we start more than concurrent_repair_sessions
+        final Semaphore differencing = new Semaphore(DatabaseDescriptor.getConcurrentRepairSessions());
+        Runnable onDifferencingDone = new Runnable()
+        {
+            public void run()
+            {
+                differencing.release();
+            }
+        };
         List<AntiEntropyService.RepairFuture> futures = new ArrayList<AntiEntropyService.RepairFuture>(ranges.size());
         for (Range<Token> range : ranges)
         {
-            AntiEntropyService.RepairFuture future = forceTableRepair(range, tableName, columnFamilies);
-            futures.add(future);
-            // wait for a session to be done with its differencing before starting the next one
             try
             {
-                future.session.differencingDone.await();
+                differencing.acquire();
             }
             catch (InterruptedException e)
             {
-                logger_.error("Interrupted while waiting for the differencing of repair session " + future.session + " to be done. Repair may be imprecise.", e);
+                logger_.error("Interrupted while waiting for the differencing of a previous repair session to be done. Repair may be imprecise.", e);
             }
+            futures.add(forceTableRepair(range, tableName, onDifferencingDone, columnFamilies));
         }
 
         boolean failedSession = false;
@@ -1871,6 +1884,11 @@ public class StorageService implements IEndpointStateChangeSubscriber, StorageSe
     }
 
     public AntiEntropyService.RepairFuture forceTableRepair(final Range<Token> range, final String tableName, final String... columnFamilies) throws IOException
+    {
+        return forceTableRepair(range, tableName, null, columnFamilies);
+    }
+
+    private AntiEntropyService.RepairFuture forceTableRepair(Range<Token> range, String tableName, Runnable onDifferencingDone, String... columnFamilies) throws IOException
     {
         ArrayList<String> names = new ArrayList<String>();
         for (ColumnFamilyStore cfStore : getValidColumnFamilies(tableName, columnFamilies))
@@ -1878,7 +1896,28 @@ public class StorageService implements IEndpointStateChangeSubscriber, StorageSe
             names.add(cfStore.getColumnFamilyName());
         }
 
-        return AntiEntropyService.instance.submitRepairSession(range, tableName, names.toArray(new String[names.size()]));
+        return AntiEntropyService.instance.submitRepairSession(range, tableName, onDifferencingDone, names.toArray(new String[names.size()]));
+    }
+
+    /**
+     * @return the ranges in an order where consecutive ranges are not adjacent on the ring (when there are
+     * more than two of them): every other range, then the ranges in between.
+     */
+    static List<Range<Token>> nonAdjacentOrder(Collection<Range<Token>> ranges)
+    {
+        List<Range<Token>> sorted = new ArrayList<Range<Token>>(ranges);
+        Collections.sort(sorted);
+        List<Range<Token>> ordered = new ArrayList<Range<Token>>(sorted.size());
+        for (int i = 0; i < sorted.size(); i += 2)
+            ordered.add(sorted.get(i));
+        for (int i = 1; i < sorted.size(); i += 2)
+            ordered.add(sorted.get(i));
+        return ordered;
+    }
+
+    public Map<String, String> getRepairSessionsProgress()
+    {
+        return AntiEntropyService.instance.getSessionsProgress();
     }
 
     public void forceTerminateAllRepairSessions() {
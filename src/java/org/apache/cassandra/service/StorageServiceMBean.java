@@ -245,6 +245,12 @@ public interface StorageServiceMBean
      */
     public void forceTableRepairPrimaryRange(String tableName, String... columnFamilies) throws IOException;
 
+    /**
+     * @return the progress of the repair sessions coordinated or validated by this node, keyed by session,
+     * with the keyspace, column families and range each one repairs
+     */
+    public Map<String, String> getRepairSessionsProgress();
+
     public void forceTerminateAllRepairSessions();
 
     /**
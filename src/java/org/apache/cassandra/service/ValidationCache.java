@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentMap;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.ExpiringColumn;
+import org.apache.cassandra.db.IColumn;
+import org.apache.cassandra.db.SuperColumn;
+import org.apache.cassandra.db.compaction.AbstractCompactedRow;
+import org.apache.cassandra.db.compaction.PrecompactedRow;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * Remembers the leaf hashes of the last Merkle tree validated for each column family and range, together
+ * with the sstables each leaf was computed from, so that the next validation of that range only has to
+ * re-read the leaves whose sstables changed in between.
+ *
+ * A leaf hash is a function of the merged rows of the sstables overlapping the leaf and of gcBefore (which
+ * decides what tombstones validation purges), so a cached leaf is reused only if
+ *  - the set of sstables overlapping it is the same (sstables are immutable, so same generations means
+ *    same data), and
+ *  - no tombstone or expiring column left in it has become purgeable since it was hashed.
+ * Under those conditions the reused hash is identical to the one a full scan would produce.
+ *
+ * Wrapping ranges (whose tree iterates the wrapping leaf twice) and counter column families (whose
+ * validation also merges old shards based on the current time) are always validated in full.
+ *
+ * At most MAX_LEAVES leaves are kept, the trees least recently validated being evicted first; a range
+ * whose tree was evicted is simply validated in full again.
+ */
+public class ValidationCache
+{
+    // a leaf takes a few hundred bytes (its range, sstable generations and hash), so this is some tens of MB:
+    // eight trees of the minimum size, or a quarter of one of the maximum size
+    static final int MAX_LEAVES = 1 << 18;
+
+    private static final ConcurrentMap<Pair<Integer, Range<Token>>, Map<Range<Token>, Leaf>> trees
+        = new ConcurrentLinkedHashMap.Builder<Pair<Integer, Range<Token>>, Map<Range<Token>, Leaf>>()
+          .maximumWeightedCapacity(MAX_LEAVES)
+          .weigher(new Weigher<Map<Range<Token>, Leaf>>()
+          {
+              public int weightOf(Map<Range<Token>, Leaf> leaves)
+              {
+                  return Math.max(1, leaves.size());
+              }
+          })
+          .build();
+
+    public static class Leaf
+    {
+        /** generations of the sstables overlapping the leaf */
+        public final Set<Integer> generations;
+        public final byte[] hash;
+        /** the gcBefore the leaf was validated with */
+        public final int gcBefore;
+        /** the smallest local deletion time of the tombstones and expiring columns left in the leaf */
+        public final int minDeletionTime;
+
+        public Leaf(Set<Integer> generations, byte[] hash, int gcBefore, int minDeletionTime)
+        {
+            this.generations = generations;
+            this.hash = hash;
+            this.gcBefore = gcBefore;
+            this.minDeletionTime = minDeletionTime;
+        }
+
+        /**
+         * @return true if validating the given sstables with the given gcBefore would yield the same hash.
+         * A smaller gcBefore than last time would resurrect tombstones that were purged then.
+         */
+        public boolean isReusable(Set<Integer> generations, int gcBefore)
+        {
+            return gcBefore >= this.gcBefore && gcBefore < minDeletionTime && this.generations.equals(generations);
+        }
+    }
+
+    public static boolean isCacheable(ColumnFamilyStore cfs, Range<Token> range)
+    {
+        return !range.isWrapAround() && !cfs.metadata.getDefaultValidator().isCommutative();
+    }
+
+    public static Map<Range<Token>, Leaf> get(Integer cfId, Range<Token> range)
+    {
+        return trees.get(new Pair<Integer, Range<Token>>(cfId, range));
+    }
+
+    public static void put(Integer cfId, Range<Token> range, Map<Range<Token>, Leaf> leaves)
+    {
+        Pair<Integer, Range<Token>> key = new Pair<Integer, Range<Token>>(cfId, range);
+        // a tree this large would only evict all the others and then itself
+        if (leaves.size() > MAX_LEAVES)
+            trees.remove(key);
+        else
+            trees.put(key, leaves);
+    }
+
+    public static void invalidate(Integer cfId)
+    {
+        for (Pair<Integer, Range<Token>> key : trees.keySet())
+        {
+            if (key.left.equals(cfId))
+                trees.remove(key);
+        }
+    }
+
+    /**
+     * @return true if the sstable may contain keys in the (non-wrapping) range; always true for wrapping ranges
+     */
+    public static boolean intersects(Range<Token> range, SSTableReader sstable)
+    {
+        if (range.isWrapAround())
+            return true;
+        return sstable.last.token.compareTo(range.left) > 0 && sstable.first.token.compareTo(range.right) <= 0;
+    }
+
+    /**
+     * @return the generations of the sstables whose key span intersects the (non-wrapping) leaf
+     */
+    public static Set<Integer> generations(Range<Token> leaf, Collection<SSTableReader> sstables)
+    {
+        Set<Integer> generations = new TreeSet<Integer>();
+        for (SSTableReader sstable : sstables)
+        {
+            if (intersects(leaf, sstable))
+                generations.add(sstable.descriptor.generation);
+        }
+        return generations;
+    }
+
+    /**
+     * @return the smallest local deletion time of the tombstones and expiring columns in the (already purged)
+     * row: validating with a gcBefore at or past it would purge more of the row.  Rows too large to be
+     * deserialized are not inspected and return Integer.MIN_VALUE, i.e. are never reused.
+     */
+    public static int minDeletionTime(AbstractCompactedRow row)
+    {
+        if (!(row instanceof PrecompactedRow))
+            return Integer.MIN_VALUE;
+
+        ColumnFamily cf;
+        try
+        {
+            cf = ((PrecompactedRow) row).getFullColumnFamily();
+        }
+        catch (IOException e)
+        {
+            return Integer.MIN_VALUE;
+        }
+
+        int min = cf.isMarkedForDelete() ? cf.getLocalDeletionTime() : Integer.MAX_VALUE;
+        for (IColumn column : cf.getSortedColumns())
+            min = Math.min(min, minDeletionTime(column));
+        return min;
+    }
+
+    private static int minDeletionTime(IColumn column)
+    {
+        int min = column.isMarkedForDelete() || column instanceof ExpiringColumn ? column.getLocalDeletionTime() : Integer.MAX_VALUE;
+        if (column instanceof SuperColumn)
+        {
+            for (IColumn subcolumn : column.getSubColumns())
+                min = Math.min(min, minDeletionTime(subcolumn));
+        }
+        return min;
+    }
+}
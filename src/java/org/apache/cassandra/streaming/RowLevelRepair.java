@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
+import org.apache.cassandra.dht.AbstractBounds;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.gms.Gossiper;
+import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.net.IAsyncResult;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.CloseableIterator;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * Repairs ranges holding few rows by exchanging the rows themselves with the other replica, as mutations,
+ * which is much cheaper than streaming the sstable sections covering those ranges.  The tombstones that
+ * are still within gc_grace_seconds are part of the rows, so deletions are repaired too.
+ *
+ * Rows are read, and sent, PAGE_SIZE columns at a time, so that a wide row doesn't have to fit in memory
+ * or in a single message; still, this is only meant for the small ranges a fine-grained Merkle tree finds
+ * out of sync (see repair_row_level_max_rows).
+ */
+public class RowLevelRepair
+{
+    // the most mutations, or range requests, left unanswered at once (package-private for testing)
+    static final int MAX_IN_FLIGHT = 128;
+    // the most live columns of a row read, and sent, at once
+    static final int PAGE_SIZE = 1024;
+
+    /**
+     * Sends our rows in the given ranges to the endpoint, and waits for it to have applied them.
+     */
+    public static void send(ColumnFamilyStore cfs, InetAddress endpoint, Collection<Range<Token>> ranges) throws IOException, TimeoutException
+    {
+        send(cfs, endpoint, ranges, PAGE_SIZE);
+    }
+
+    // (package-private for testing)
+    static void send(ColumnFamilyStore cfs, InetAddress endpoint, Collection<Range<Token>> ranges, int pageSize) throws IOException, TimeoutException
+    {
+        int version = Gossiper.instance.getVersion(endpoint);
+        Queue<IAsyncResult> inFlight = new ArrayDeque<IAsyncResult>(MAX_IN_FLIGHT);
+        SliceQueryFilter filter = new SliceQueryFilter(ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, pageSize);
+        for (Range<Token> range : ranges)
+        {
+            CloseableIterator<Row> rows = cfs.getRangeSliceIterator(null, range.toRowBounds(), filter);
+            try
+            {
+                while (rows.hasNext())
+                {
+                    Row row = rows.next();
+                    ColumnFamily page = row.cf;
+                    ByteBuffer start = null;
+                    while (true)
+                    {
+                        ByteBuffer next = nextPageStart(page, pageSize);
+                        withoutStart(page, start);
+                        if (!isEmpty(page))
+                        {
+                            if (inFlight.size() == MAX_IN_FLIGHT)
+                                inFlight.remove().get(DatabaseDescriptor.getRpcTimeout(), TimeUnit.MILLISECONDS);
+                            RowMutation rm = new RowMutation(cfs.table.name, row.key.key);
+                            rm.add(page);
+                            inFlight.add(MessagingService.instance().sendRR(rm.getMessage(version), endpoint));
+                        }
+
+                        if (next == null)
+                            break;
+                        start = next;
+                        page = cfs.getColumnFamily(QueryFilter.getSliceFilter(row.key, new QueryPath(cfs.columnFamily), start, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, pageSize));
+                    }
+                }
+            }
+            finally
+            {
+                rows.close();
+            }
+        }
+
+        while (!inFlight.isEmpty())
+            inFlight.remove().get(DatabaseDescriptor.getRpcTimeout(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the endpoint's rows in the given ranges, and applies them locally.
+     */
+    public static void receive(ColumnFamilyStore cfs, InetAddress endpoint, Collection<Range<Token>> ranges) throws IOException, TimeoutException
+    {
+        receive(cfs, endpoint, ranges, PAGE_SIZE);
+    }
+
+    // (package-private for testing)
+    static void receive(ColumnFamilyStore cfs, InetAddress endpoint, Collection<Range<Token>> ranges, int pageSize) throws IOException, TimeoutException
+    {
+        int version = Gossiper.instance.getVersion(endpoint);
+        SlicePredicate predicate = new SlicePredicate().setSlice_range(new SliceRange(ByteBufferUtil.EMPTY_BYTE_BUFFER,
+                                                                                      ByteBufferUtil.EMPTY_BYTE_BUFFER,
+                                                                                      false,
+                                                                                      pageSize));
+        Queue<Pair<AbstractBounds<RowPosition>, IAsyncResult>> inFlight = new ArrayDeque<Pair<AbstractBounds<RowPosition>, IAsyncResult>>(MAX_IN_FLIGHT);
+        for (Range<Token> range : ranges)
+        {
+            if (inFlight.size() == MAX_IN_FLIGHT)
+                apply(cfs, endpoint, version, predicate, inFlight.remove());
+            AbstractBounds<RowPosition> bounds = range.toRowBounds();
+            inFlight.add(Pair.create(bounds, request(cfs, endpoint, version, predicate, bounds)));
+        }
+
+        while (!inFlight.isEmpty())
+            apply(cfs, endpoint, version, predicate, inFlight.remove());
+    }
+
+    /**
+     * Applies the rows of the reply to a request, requesting the rest of its range for as long as the endpoint
+     * cuts its replies short, and the rest of each row for as long as it fills a page.
+     */
+    private static void apply(ColumnFamilyStore cfs, InetAddress endpoint, int version, SlicePredicate predicate, Pair<AbstractBounds<RowPosition>, IAsyncResult> request) throws IOException, TimeoutException
+    {
+        int pageSize = predicate.slice_range.count;
+        IAsyncResult response = request.right;
+        while (true)
+        {
+            RangeSliceReply reply = RangeSliceReply.read(response.get(DatabaseDescriptor.getRpcTimeout(), TimeUnit.MILLISECONDS), version);
+            for (Row row : reply.rows)
+            {
+                ColumnFamily page = row.cf;
+                ByteBuffer start = null;
+                while (true)
+                {
+                    ByteBuffer next = nextPageStart(page, pageSize);
+                    withoutStart(page, start);
+                    if (!isEmpty(page))
+                    {
+                        RowMutation rm = new RowMutation(cfs.table.name, row.key.key);
+                        rm.add(page);
+                        rm.apply();
+                    }
+
+                    if (next == null)
+                        break;
+                    start = next;
+                    page = readPage(cfs, endpoint, version, row.key, start, pageSize);
+                }
+            }
+            if (!reply.truncated)
+                return;
+
+            // the endpoint cut its reply short; ask for the rest of the range
+            DecoratedKey last = reply.rows.get(reply.rows.size() - 1).key;
+            response = request(cfs, endpoint, version, predicate, new Range<RowPosition>(last, request.left.right));
+        }
+    }
+
+    private static IAsyncResult request(ColumnFamilyStore cfs, InetAddress endpoint, int version, SlicePredicate predicate, AbstractBounds<RowPosition> range) throws IOException
+    {
+        RangeSliceCommand command = new RangeSliceCommand(cfs.table.name, cfs.columnFamily, null, predicate, range, Integer.MAX_VALUE);
+        return MessagingService.instance().sendRR(command.getMessage(version), endpoint);
+    }
+
+    // reads the page of the endpoint's row @param key starting at column @param start
+    private static ColumnFamily readPage(ColumnFamilyStore cfs, InetAddress endpoint, int version, DecoratedKey key, ByteBuffer start, int pageSize) throws IOException, TimeoutException
+    {
+        ReadCommand command = new SliceFromReadCommand(cfs.table.name, key.key, new QueryPath(cfs.columnFamily), start, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, pageSize);
+        byte[] reply = MessagingService.instance().sendRR(command.getMessage(version), endpoint).get(DatabaseDescriptor.getRpcTimeout(), TimeUnit.MILLISECONDS);
+        return ReadResponse.serializer().deserialize(new DataInputStream(new FastByteArrayInputStream(reply)), version).row().cf;
+    }
+
+    /**
+     * @return the column the next page of the row starts at (inclusively), or null if @param page, as read,
+     * is the last one.  Only live columns count towards a page, so a page holding as many columns may not be
+     * full, in which case the next page is simply empty.
+     */
+    private static ByteBuffer nextPageStart(ColumnFamily page, int pageSize)
+    {
+        // with a single column per page, the next one would only hold the column it starts at
+        assert pageSize > 1 : pageSize;
+        if (page == null || page.getColumnCount() < pageSize)
+            return null;
+        return page.getColumnNames().last();
+    }
+
+    // removes from @param page the column it starts at, which the previous page ended with, if any
+    private static void withoutStart(ColumnFamily page, ByteBuffer start)
+    {
+        if (page != null && start != null)
+            page.remove(start);
+    }
+
+    private static boolean isEmpty(ColumnFamily cf)
+    {
+        return cf == null || (cf.isEmpty() && !cf.isMarkedForDelete());
+    }
+}
@@ -24,10 +24,13 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Table;
 import org.apache.cassandra.dht.AbstractBounds;
@@ -40,12 +43,15 @@ import org.apache.cassandra.net.*;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.UUIDGen;
+import org.apache.cassandra.utils.WrappedRunnable;
 
 /**
  * Task that make two nodes exchange (stream) some ranges (for a given table/cf).
  * This handle the case where the local node is neither of the two nodes that
  * must stream their range, and allow to register a callback to be called on
  * completion.
+ * Ranges holding few enough rows (repair_row_level_max_rows) are exchanged as
+ * rows rather than streamed, see RowLevelRepair.
  */
 public class StreamingRepairTask implements Runnable
 {
@@ -54,6 +60,8 @@ public class StreamingRepairTask implements Runnable
     // maps of tasks created on this node
     private static final ConcurrentMap<UUID, StreamingRepairTask> tasks = new ConcurrentHashMap<UUID, StreamingRepairTask>();
     private static final StreamingRepairTaskSerializer serializer = new StreamingRepairTaskSerializer();
+    // row-level repair waits on remote nodes, so it doesn't run on the stage that handed us the task
+    private static final ExecutorService rowRepairExecutor = new DebuggableThreadPoolExecutor("RowLevelRepair", Thread.MIN_PRIORITY);
 
     public final UUID id;
     private final InetAddress owner; // the node where the task is created; can be == src but don't need to
@@ -112,16 +120,94 @@ public class StreamingRepairTask implements Runnable
 
     private void initiateStreaming()
     {
-        ColumnFamilyStore cfstore = Table.open(tableName).getColumnFamilyStore(cfName);
+        final ColumnFamilyStore cfstore = Table.open(tableName).getColumnFamilyStore(cfName);
+
+        final List<Range<Token>> rowRanges = new ArrayList<Range<Token>>();
+        List<Range<Token>> streamRanges = new ArrayList<Range<Token>>();
+        splitRanges(cfstore, ranges, DatabaseDescriptor.getRepairRowLevelMaxRows(), rowRanges, streamRanges);
+
+        if (rowRanges.isEmpty())
+        {
+            stream(cfstore, ranges, callback, callback);
+            return;
+        }
+
+        // the callback expects one call once we're done sending, and one once we're done receiving
+        final Runnable sent = streamRanges.isEmpty() ? callback : countDown(2, callback);
+        final Runnable received = streamRanges.isEmpty() ? callback : countDown(2, callback);
+        if (!streamRanges.isEmpty())
+            stream(cfstore, streamRanges, sent, received);
+
+        rowRepairExecutor.execute(new WrappedRunnable()
+        {
+            protected void runMayThrow() throws Exception
+            {
+                logger.info(String.format("[streaming task #%s] Performing row-level repair of %d ranges with %s", id, rowRanges.size(), dst));
+                boolean isSent = false;
+                try
+                {
+                    RowLevelRepair.send(cfstore, dst, rowRanges);
+                    isSent = true;
+                    sent.run();
+                    RowLevelRepair.receive(cfstore, dst, rowRanges);
+                    received.run();
+                }
+                catch (Exception e)
+                {
+                    // applying the same rows twice is harmless, so just stream whatever wasn't done yet
+                    logger.warn(String.format("[streaming task #%s] Row-level repair with %s failed, streaming the ranges instead", id, dst), e);
+                    if (!isSent)
+                        streamOut(cfstore, rowRanges, sent);
+                    streamIn(cfstore, rowRanges, received);
+                }
+            }
+        });
+    }
+
+    /**
+     * Ranges with at most @param maxRows rows are repaired by exchanging those rows as mutations, and go to
+     * @param rowRanges; the rest, and every range of a counter column family, go to @param streamRanges.
+     * (Package-private for testing.)
+     */
+    static void splitRanges(ColumnFamilyStore cfstore, Collection<Range<Token>> ranges, long maxRows, List<Range<Token>> rowRanges, List<Range<Token>> streamRanges)
+    {
+        for (Range<Token> range : ranges)
+        {
+            if (maxRows > 0 && !cfstore.metadata.getDefaultValidator().isCommutative() && cfstore.estimatedKeysForRange(range) <= maxRows)
+                rowRanges.add(range);
+            else
+                streamRanges.add(range);
+        }
+    }
+
+    private void stream(ColumnFamilyStore cfstore, Collection<Range<Token>> ranges, Runnable sent, Runnable received)
+    {
+        logger.info(String.format("[streaming task #%s] Performing streaming repair of %d ranges with %s", id, ranges.size(), dst));
+        streamOut(cfstore, ranges, sent);
+        streamIn(cfstore, ranges, received);
+    }
+
+    // send ranges to the remote node
+    private void streamOut(ColumnFamilyStore cfstore, Collection<Range<Token>> ranges, Runnable callback)
+    {
         try
         {
-            logger.info(String.format("[streaming task #%s] Performing streaming repair of %d ranges with %s", id, ranges.size(), dst));
             // We acquire references for transferSSTables
             Collection<SSTableReader> sstables = cfstore.markCurrentSSTablesReferenced();
-            // send ranges to the remote node
             StreamOutSession outsession = StreamOutSession.create(tableName, dst, callback);
             StreamOut.transferSSTables(outsession, sstables, ranges, OperationType.AES);
-            // request ranges from the remote node
+        }
+        catch(Exception e)
+        {
+            throw new RuntimeException("Streaming repair failed", e);
+        }
+    }
+
+    // request ranges from the remote node
+    private void streamIn(ColumnFamilyStore cfstore, Collection<Range<Token>> ranges, Runnable callback)
+    {
+        try
+        {
             StreamIn.requestRanges(dst, tableName, Collections.singleton(cfstore), ranges, callback, OperationType.AES);
         }
         catch(Exception e)
@@ -130,6 +216,20 @@ public class StreamingRepairTask implements Runnable
         }
     }
 
+    private static Runnable countDown(final int count, final Runnable callback)
+    {
+        return new Runnable()
+        {
+            private final AtomicInteger outstanding = new AtomicInteger(count);
+
+            public void run()
+            {
+                if (outstanding.decrementAndGet() == 0)
+                    callback.run();
+            }
+        };
+    }
+
     private void forwardToSource()
     {
         try
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cassandra.thrift;
+
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.service.StorageProxy;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+
+/**
+ * A Cassandra.Processor that doesn't hold an invoker thread while writes wait for their replicas:
+ * insert, remove and batch_mutate suspend the request once their mutations are sent, and the
+ * response is written by whichever thread completes them (see StorageProxy.AsyncWrite).
+ *
+ * This needs CustomTHsHaServer to defer the response; elsewhere, and for every other method,
+ * requests are processed synchronously as usual.
+ */
+public class AsyncCassandraProcessor extends Cassandra.Processor
+{
+    private static final Logger logger = LoggerFactory.getLogger(AsyncCassandraProcessor.class);
+
+    private final CassandraServer server;
+
+    public AsyncCassandraProcessor(CassandraServer server)
+    {
+        super(server);
+        this.server = server;
+
+        processMap_.put("insert", new AsyncWriteFunction<Cassandra.insert_args>("insert")
+        {
+            protected Cassandra.insert_args newArgs()
+            {
+                return new Cassandra.insert_args();
+            }
+
+            protected TBase newResult()
+            {
+                return new Cassandra.insert_result();
+            }
+
+            protected void start(Cassandra.insert_args args, StorageProxy.AsyncWrite write)
+            throws InvalidRequestException, UnavailableException, TimedOutException
+            {
+                AsyncCassandraProcessor.this.server.insert(args.key, args.column_parent, args.column, args.consistency_level, write);
+            }
+        });
+        processMap_.put("remove", new AsyncWriteFunction<Cassandra.remove_args>("remove")
+        {
+            protected Cassandra.remove_args newArgs()
+            {
+                return new Cassandra.remove_args();
+            }
+
+            protected TBase newResult()
+            {
+                return new Cassandra.remove_result();
+            }
+
+            protected void start(Cassandra.remove_args args, StorageProxy.AsyncWrite write)
+            throws InvalidRequestException, UnavailableException, TimedOutException
+            {
+                AsyncCassandraProcessor.this.server.remove(args.key, args.column_path, args.timestamp, args.consistency_level, write);
+            }
+        });
+        processMap_.put("batch_mutate", new AsyncWriteFunction<Cassandra.batch_mutate_args>("batch_mutate")
+        {
+            protected Cassandra.batch_mutate_args newArgs()
+            {
+                return new Cassandra.batch_mutate_args();
+            }
+
+            protected TBase newResult()
+            {
+                return new Cassandra.batch_mutate_result();
+            }
+
+            protected void start(Cassandra.batch_mutate_args args, StorageProxy.AsyncWrite write)
+            throws InvalidRequestException, UnavailableException, TimedOutException
+            {
+                AsyncCassandraProcessor.this.server.batch_mutate(args.mutation_map, args.consistency_level, write);
+            }
+        });
+    }
+
+    /**
+     * Processes a write method the way the generated ProcessFunction does, except that the result
+     * is written once the write completes, rather than before returning.
+     */
+    private abstract class AsyncWriteFunction<A extends TBase> implements ProcessFunction
+    {
+        // the results of insert, remove and batch_mutate all number their exceptions the same way
+        private static final int IRE = 1, UE = 2, TE = 3;
+
+        private final String name;
+        private final ProcessFunction sync;
+
+        protected AsyncWriteFunction(String name)
+        {
+            this.name = name;
+            this.sync = processMap_.get(name);
+        }
+
+        protected abstract A newArgs();
+
+        protected abstract TBase newResult();
+
+        /**
+         * Send the write described by @param args, completing @param write when it is done.
+         */
+        protected abstract void start(A args, StorageProxy.AsyncWrite write)
+        throws InvalidRequestException, UnavailableException, TimedOutException;
+
+        public void process(final int seqid, TProtocol iprot, final TProtocol oprot) throws TException
+        {
+            final CustomTHsHaServer.AsyncFrameBuffer request = CustomTHsHaServer.currentRequest();
+            if (request == null)
+            {
+                sync.process(seqid, iprot, oprot);
+                return;
+            }
+
+            A args = newArgs();
+            try
+            {
+                args.read(iprot);
+            }
+            catch (TProtocolException e)
+            {
+                iprot.readMessageEnd();
+                writeException(seqid, oprot, new TApplicationException(TApplicationException.PROTOCOL_ERROR, e.getMessage()));
+                return;
+            }
+            iprot.readMessageEnd();
+
+            final TBase result = newResult();
+            request.suspend();
+            try
+            {
+                start(args, new StorageProxy.AsyncWrite()
+                {
+                    protected void onComplete()
+                    {
+                        try
+                        {
+                            // doesn't block: whether the write succeeded is already known
+                            get();
+                        }
+                        catch (TimeoutException e)
+                        {
+                            setException(result, TE, new TimedOutException());
+                        }
+                        catch (Throwable th)
+                        {
+                            internalError(seqid, oprot, th);
+                            request.resume();
+                            return;
+                        }
+                        writeResult(seqid, oprot, result);
+                        request.resume();
+                    }
+                });
+                return;
+            }
+            catch (InvalidRequestException e)
+            {
+                setException(result, IRE, e);
+            }
+            catch (UnavailableException e)
+            {
+                setException(result, UE, e);
+            }
+            catch (TimedOutException e)
+            {
+                setException(result, TE, e);
+            }
+            catch (Throwable th)
+            {
+                internalError(seqid, oprot, th);
+                request.resume();
+                return;
+            }
+            // the write failed before anything was sent
+            writeResult(seqid, oprot, result);
+            request.resume();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void setException(TBase result, int id, Exception e)
+        {
+            result.setFieldValue(result.fieldForId(id), e);
+        }
+
+        private void writeResult(int seqid, TProtocol oprot, TBase result)
+        {
+            try
+            {
+                oprot.writeMessageBegin(new TMessage(name, TMessageType.REPLY, seqid));
+                result.write(oprot);
+                oprot.writeMessageEnd();
+                oprot.getTransport().flush();
+            }
+            catch (TException e)
+            {
+                // the response is buffered in memory, so this can't really happen
+                throw new AssertionError(e);
+            }
+        }
+
+        private void internalError(int seqid, TProtocol oprot, Throwable th)
+        {
+            logger.error("Internal error processing " + name, th);
+            try
+            {
+                writeException(seqid, oprot, new TApplicationException(TApplicationException.INTERNAL_ERROR, "Internal error processing " + name));
+            }
+            catch (TException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+
+        private void writeException(int seqid, TProtocol oprot, TApplicationException x) throws TException
+        {
+            oprot.writeMessageBegin(new TMessage(name, TMessageType.EXCEPTION, seqid));
+            x.write(oprot);
+            oprot.writeMessageEnd();
+            oprot.getTransport().flush();
+        }
+    }
+}
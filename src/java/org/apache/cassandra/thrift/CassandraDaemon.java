@@ -119,7 +119,10 @@ public class CassandraDaemon extends org.apache.cassandra.service.AbstractCassan
         {
             // now we start listening for clients
             final CassandraServer cassandraServer = new CassandraServer();
-            Cassandra.Processor processor = new Cassandra.Processor(cassandraServer);
+            // only the hsha server can defer a response until the write it waits for completes
+            Cassandra.Processor processor = DatabaseDescriptor.getRpcServerType().equalsIgnoreCase(HSHA) && DatabaseDescriptor.getRpcAsyncWrites()
+                                          ? new AsyncCassandraProcessor(cassandraServer)
+                                          : new Cassandra.Processor(cassandraServer);
 
             // Transport
             logger.info(String.format("Binding thrift service to %s:%s", listenAddr, listenPort));
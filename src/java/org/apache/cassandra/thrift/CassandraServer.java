@@ -53,10 +53,12 @@ import org.apache.cassandra.io.util.FastByteArrayOutputStream;
 import org.apache.cassandra.locator.*;
 import org.apache.cassandra.scheduler.IRequestScheduler;
 import org.apache.cassandra.service.ClientState;
+import org.apache.cassandra.service.RowCursor;
 import org.apache.cassandra.service.SocketSessionManagementService;
 import org.apache.cassandra.service.StorageProxy;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.CloseableIterator;
 import org.apache.thrift.TException;
 
 public class CassandraServer implements Cassandra.Iface
@@ -483,7 +485,7 @@ public class CassandraServer implements Cassandra.Iface
         return counts;
     }
 
-    private void internal_insert(ByteBuffer key, ColumnParent column_parent, Column column, ConsistencyLevel consistency_level)
+    private void internal_insert(ByteBuffer key, ColumnParent column_parent, Column column, ConsistencyLevel consistency_level, StorageProxy.AsyncWrite write)
     throws InvalidRequestException, UnavailableException, TimedOutException
     {
         state().hasColumnFamilyAccess(column_parent.column_family, Permission.WRITE);
@@ -508,7 +510,7 @@ public class CassandraServer implements Cassandra.Iface
         {
             throw new InvalidRequestException(e.getMessage());
         }
-        doInsert(consistency_level, Arrays.asList(rm));
+        doInsert(consistency_level, Arrays.asList(rm), write);
     }
 
     public void insert(ByteBuffer key, ColumnParent column_parent, Column column, ConsistencyLevel consistency_level)
@@ -516,10 +518,22 @@ public class CassandraServer implements Cassandra.Iface
     {
         logger.debug("insert");
 
-        internal_insert(key, column_parent, column, consistency_level);
+        internal_insert(key, column_parent, column, consistency_level, null);
     }
 
-    private void internal_batch_mutate(Map<ByteBuffer,Map<String,List<Mutation>>> mutation_map, ConsistencyLevel consistency_level)
+    /**
+     * Like insert, but returns once the mutation is sent, completing @param write when the replicas have
+     * answered (see AsyncCassandraProcessor).
+     */
+    public void insert(ByteBuffer key, ColumnParent column_parent, Column column, ConsistencyLevel consistency_level, StorageProxy.AsyncWrite write)
+    throws InvalidRequestException, UnavailableException, TimedOutException
+    {
+        logger.debug("insert (async)");
+
+        internal_insert(key, column_parent, column, consistency_level, write);
+    }
+
+    private void internal_batch_mutate(Map<ByteBuffer,Map<String,List<Mutation>>> mutation_map, ConsistencyLevel consistency_level, StorageProxy.AsyncWrite write)
     throws InvalidRequestException, UnavailableException, TimedOutException
     {
         List<String> cfamsSeen = new ArrayList<String>();
@@ -583,7 +597,7 @@ public class CassandraServer implements Cassandra.Iface
                 rowMutations.add(new org.apache.cassandra.db.CounterMutation(rmCounter, consistency_level));
         }
 
-        doInsert(consistency_level, rowMutations);
+        doInsert(consistency_level, rowMutations, write);
     }
 
     public void batch_mutate(Map<ByteBuffer,Map<String,List<Mutation>>> mutation_map, ConsistencyLevel consistency_level)
@@ -591,10 +605,22 @@ public class CassandraServer implements Cassandra.Iface
     {
         logger.debug("batch_mutate");
 
-        internal_batch_mutate(mutation_map, consistency_level);
+        internal_batch_mutate(mutation_map, consistency_level, null);
     }
 
-    private void internal_remove(ByteBuffer key, ColumnPath column_path, long timestamp, ConsistencyLevel consistency_level, boolean isCommutativeOp)
+    /**
+     * Like batch_mutate, but returns once the mutations are sent, completing @param write when the replicas
+     * have answered (see AsyncCassandraProcessor).
+     */
+    public void batch_mutate(Map<ByteBuffer,Map<String,List<Mutation>>> mutation_map, ConsistencyLevel consistency_level, StorageProxy.AsyncWrite write)
+    throws InvalidRequestException, UnavailableException, TimedOutException
+    {
+        logger.debug("batch_mutate (async)");
+
+        internal_batch_mutate(mutation_map, consistency_level, write);
+    }
+
+    private void internal_remove(ByteBuffer key, ColumnPath column_path, long timestamp, ConsistencyLevel consistency_level, boolean isCommutativeOp, StorageProxy.AsyncWrite write)
     throws InvalidRequestException, UnavailableException, TimedOutException
     {
         state().hasColumnFamilyAccess(column_path.column_family, Permission.WRITE);
@@ -609,9 +635,9 @@ public class CassandraServer implements Cassandra.Iface
         rm.delete(new QueryPath(column_path), timestamp); 
 
         if (isCommutativeOp)
-            doInsert(consistency_level, Arrays.asList(new CounterMutation(rm, consistency_level)));
+            doInsert(consistency_level, Arrays.asList(new CounterMutation(rm, consistency_level)), write);
         else
-            doInsert(consistency_level, Arrays.asList(rm));
+            doInsert(consistency_level, Arrays.asList(rm), write);
     }
 
     public void remove(ByteBuffer key, ColumnPath column_path, long timestamp, ConsistencyLevel consistency_level)
@@ -619,23 +645,43 @@ public class CassandraServer implements Cassandra.Iface
     {
         logger.debug("remove");
 
-        internal_remove(key, column_path, timestamp, consistency_level, false);
+        internal_remove(key, column_path, timestamp, consistency_level, false, null);
     }
 
-    private void doInsert(ConsistencyLevel consistency_level, List<? extends IMutation> mutations) throws UnavailableException, TimedOutException, InvalidRequestException
+    /**
+     * Like remove, but returns once the deletion is sent, completing @param write when the replicas have
+     * answered (see AsyncCassandraProcessor).
+     */
+    public void remove(ByteBuffer key, ColumnPath column_path, long timestamp, ConsistencyLevel consistency_level, StorageProxy.AsyncWrite write)
+    throws InvalidRequestException, UnavailableException, TimedOutException
+    {
+        logger.debug("remove (async)");
+
+        internal_remove(key, column_path, timestamp, consistency_level, false, write);
+    }
+
+    /**
+     * Write @param mutations, waiting for the replicas unless @param write is given, in which case it is
+     * completed once they answer (even if there is nothing to write).
+     */
+    private void doInsert(ConsistencyLevel consistency_level, List<? extends IMutation> mutations, StorageProxy.AsyncWrite write) throws UnavailableException, TimedOutException, InvalidRequestException
     {
         ThriftValidation.validateConsistencyLevel(state().getKeyspace(), consistency_level, RequestType.WRITE);
-        if (mutations.isEmpty())
+        if (mutations.isEmpty() && write == null)
             return;
         try
         {
             schedule(DatabaseDescriptor.getRpcTimeout());
             try
             {
-                StorageProxy.mutate(mutations, consistency_level);
+                if (write == null)
+                    StorageProxy.mutate(mutations, consistency_level);
+                else
+                    StorageProxy.mutate(mutations, consistency_level, write);
             }
             finally
             {
+                // the scheduler bounds the threads held by requests, and an asynchronous write holds none once sent
                 release();
             }
         }
@@ -687,10 +733,13 @@ public class CassandraServer implements Cassandra.Iface
             {
                 bounds = new Bounds<RowPosition>(RowPosition.forKey(range.start_key, p), RowPosition.forKey(range.end_key, p));
             }
+            RangeSliceCommand command = new RangeSliceCommand(keyspace, column_parent, predicate, bounds, range.count);
             schedule(DatabaseDescriptor.getRpcTimeout());
             try
             {
-                rows = StorageProxy.getRangeSlice(new RangeSliceCommand(keyspace, column_parent, predicate, bounds, range.count), consistency_level);
+                rows = DatabaseDescriptor.getThriftCursorTimeout() > 0
+                     ? getRangeSlicePage(command, range, consistency_level)
+                     : StorageProxy.getRangeSlice(command, consistency_level);
             }
             finally
             {
@@ -711,6 +760,75 @@ public class CassandraServer implements Cassandra.Iface
         return thriftifyKeySlices(rows, column_parent, predicate);
     }
 
+    /**
+     * Read the page of a range slice that @param range asks for from a server-side cursor: the one the previous page
+     * left open, if range starts at the last key it returned (or at the token of that key), or else a new one.  Falls
+     * back to a plain StorageProxy read when this node can't answer the query by itself.
+     */
+    private List<Row> getRangeSlicePage(RangeSliceCommand command, KeyRange range, ConsistencyLevel consistency_level)
+    throws IOException, UnavailableException, TimeoutException
+    {
+        // the query the pages belong to: everything but where they start and how many rows they hold
+        List<Object> query = Arrays.<Object>asList("get_range_slices", command.keyspace, command.column_family, command.super_column,
+                                                   command.predicate, range.end_key, range.end_token, consistency_level);
+        List<Row> rows = nextPage(query, range.start_key, range.start_token, range.count);
+        if (rows != null)
+            return rows;
+
+        CloseableIterator<Row> iterator = StorageProxy.getLocalRangeSliceIterator(command, consistency_level);
+        if (iterator == null)
+            return StorageProxy.getRangeSlice(command, consistency_level);
+        return firstPage(query, iterator, Table.open(command.keyspace).getColumnFamilyStore(command.column_family), range.count);
+    }
+
+    /** The get_indexed_slices counterpart of getRangeSlicePage */
+    private List<Row> getIndexedSlicesPage(String keyspace, ColumnParent column_parent, IndexClause index_clause, SlicePredicate column_predicate, ConsistencyLevel consistency_level)
+    throws IOException, UnavailableException, TimeoutException
+    {
+        List<Object> query = Arrays.<Object>asList("get_indexed_slices", keyspace, column_parent, column_predicate, index_clause.expressions, consistency_level);
+        List<Row> rows = nextPage(query, index_clause.start_key, null, index_clause.count);
+        if (rows != null)
+            return rows;
+
+        CloseableIterator<Row> iterator = StorageProxy.getLocalIndexScanIterator(keyspace, column_parent.column_family, index_clause, column_predicate, consistency_level);
+        if (iterator == null)
+            return StorageProxy.scan(keyspace, column_parent.column_family, index_clause, column_predicate, consistency_level);
+        return firstPage(query, iterator, Table.open(keyspace).getColumnFamilyStore(column_parent.column_family), index_clause.count);
+    }
+
+    /**
+     * @return the next @param count rows of the cursor of @param query, if a page starting at @param startKey
+     * (inclusive) or @param startToken (exclusive) continues it; null otherwise
+     */
+    private List<Row> nextPage(List<Object> query, ByteBuffer startKey, String startToken, int count)
+    {
+        RowCursor cursor = state().getCursor(query);
+        if (cursor == null)
+            return null;
+
+        DecoratedKey last = cursor.lastKey();
+        boolean fromLast = startKey != null && startKey.equals(last.key);
+        boolean afterLast = startToken != null && startToken.equals(StorageService.getPartitioner().getTokenFactory().toString(last.token));
+        if (!fromLast && !afterLast)
+            return null;
+
+        List<Row> rows = cursor.next(count, fromLast);
+        if (rows != null && cursor.isExhausted())
+            state().closeCursor(query);
+        return rows;
+    }
+
+    private List<Row> firstPage(List<Object> query, CloseableIterator<Row> iterator, ColumnFamilyStore cfs, int count)
+    {
+        RowCursor cursor = new RowCursor(iterator, cfs);
+        List<Row> rows = cursor.next(count, false);
+        if (cursor.isExhausted())
+            cursor.close();
+        else
+            state().setCursor(query, cursor);
+        return rows;
+    }
+
     private List<KeySlice> thriftifyKeySlices(List<Row> rows, ColumnParent column_parent, SlicePredicate predicate)
     {
         List<KeySlice> keySlices = new ArrayList<KeySlice>(rows.size());
@@ -739,7 +857,9 @@ public class CassandraServer implements Cassandra.Iface
         List<Row> rows;
         try
         {
-            rows = StorageProxy.scan(keyspace, column_parent.column_family, index_clause, column_predicate, consistency_level);
+            rows = DatabaseDescriptor.getThriftCursorTimeout() > 0
+                 ? getIndexedSlicesPage(keyspace, column_parent, index_clause, column_predicate, consistency_level)
+                 : StorageProxy.scan(keyspace, column_parent.column_family, index_clause, column_predicate, consistency_level);
         }
         catch (IOException e)
         {
@@ -1146,7 +1266,7 @@ public class CassandraServer implements Cassandra.Iface
         {
             throw new InvalidRequestException(e.getMessage());
         }
-        doInsert(consistency_level, Arrays.asList(new CounterMutation(rm, consistency_level)));
+        doInsert(consistency_level, Arrays.asList(new CounterMutation(rm, consistency_level)), null);
     }
 
     public void remove_counter(ByteBuffer key, ColumnPath path, ConsistencyLevel consistency_level)
@@ -1154,7 +1274,7 @@ public class CassandraServer implements Cassandra.Iface
     {
         logger.debug("remove_counter");
 
-        internal_remove(key, path, System.currentTimeMillis(), consistency_level, true);
+        internal_remove(key, path, System.currentTimeMillis(), consistency_level, true, null);
     }
     
     private static String uncompress(ByteBuffer query, Compression compression) throws InvalidRequestException
@@ -1243,7 +1363,7 @@ public class CassandraServer implements Cassandra.Iface
         
         try
         {
-            return QueryProcessor.prepare(queryString, state());
+            return QueryProcessor.prepare(queryString);
         }
         catch (RecognitionException e)
         {
@@ -1258,14 +1378,24 @@ public class CassandraServer implements Cassandra.Iface
     {
         if (logger.isDebugEnabled()) logger.debug("execute_prepared_cql_query");
         
-        CQLStatement statement = state().getPrepared().get(itemId);
+        CQLStatement statement = QueryProcessor.getPrepared(itemId);
 
         if (statement == null)
             throw new InvalidRequestException(String.format("Prepared query with ID %d not found", itemId));
-        logger.trace("Retrieved prepared statement #{} with {} bind markers", itemId, state().getPrepared().size());
+        logger.trace("Retrieved prepared statement #{} with {} bind markers", itemId, statement.boundTerms);
 
         return QueryProcessor.processPrepared(statement, state(), bindVariables);
     }
 
+    public void set_cql_result_format(String format) throws InvalidRequestException, TException
+    {
+        if (format.equalsIgnoreCase("packed"))
+            state().setPackedResults(true);
+        else if (format.equalsIgnoreCase("rows"))
+            state().setPackedResults(false);
+        else
+            throw new InvalidRequestException("Unknown CQL result format " + format + "; expected rows or packed");
+    }
+
     // main method moved to CassandraDaemon
 }
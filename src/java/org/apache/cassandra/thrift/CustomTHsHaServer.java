@@ -30,6 +30,7 @@ import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.cassandra.service.SocketSessionManagementService;
 import org.apache.thrift.server.TNonblockingServer;
@@ -54,6 +55,9 @@ public class CustomTHsHaServer extends TNonblockingServer
     private volatile boolean stopped_ = true;
     private ExecutorService invoker;
 
+    // the request being invoked by the current thread, so that a processor can defer its response
+    private static final ThreadLocal<AsyncFrameBuffer> currentRequest = new ThreadLocal<AsyncFrameBuffer>();
+
     /**
      * All the arguments to Non Blocking Server will apply here. In addition,
      * executor pool will be responsible for creating the internal threads which
@@ -84,15 +88,23 @@ public class CustomTHsHaServer extends TNonblockingServer
         stopListening();
     }
 
+    /**
+     * @return the request the current thread is invoking, or null if it is not an invoker thread
+     */
+    public static AsyncFrameBuffer currentRequest()
+    {
+        return currentRequest.get();
+    }
+
     /**
      * Save the remote socket as a thead local for future use of client state.
      */
     protected class Invocation implements Runnable
     {
-        private final FrameBuffer frameBuffer;
+        private final AsyncFrameBuffer frameBuffer;
         private SelectorThread thread;
 
-        public Invocation(final FrameBuffer frameBuffer, SelectorThread thread)
+        public Invocation(final AsyncFrameBuffer frameBuffer, SelectorThread thread)
         {
             this.frameBuffer = frameBuffer;
             this.thread = thread;
@@ -102,9 +114,79 @@ public class CustomTHsHaServer extends TNonblockingServer
         {
             TNonblockingSocket socket = (TNonblockingSocket) frameBuffer.trans_;
             SocketSessionManagementService.remoteSocket.set(socket.getSocketChannel().socket().getRemoteSocketAddress());
-            frameBuffer.invoke();
+            currentRequest.set(frameBuffer);
+            try
+            {
+                frameBuffer.invoke();
+            }
+            finally
+            {
+                currentRequest.remove();
+            }
             // this is how we let the same selector thread change the selection type.
-            thread.requestSelectInterestChange(frameBuffer);
+            // a deferred response does so itself once it is ready (see AsyncFrameBuffer.resume)
+            if (!frameBuffer.isDeferred())
+                thread.requestSelectInterestChange(frameBuffer);
+        }
+    }
+
+    /**
+     * A FrameBuffer whose response may be written after invoke() returns, so that the invoker thread
+     * doesn't have to wait for it: the processor calls suspend() before handing the request off, and
+     * whichever thread finishes writing the response calls resume().
+     */
+    public class AsyncFrameBuffer extends FrameBuffer
+    {
+        private final SelectorThread thread;
+        // suspend() counts both the invoker returning and resume(); the response is sent after the second
+        private final AtomicInteger pending = new AtomicInteger();
+        // only used by the invoker thread
+        private boolean deferred;
+
+        public AsyncFrameBuffer(TNonblockingTransport trans, SelectionKey selectionKey, SelectorThread thread)
+        {
+            super(trans, selectionKey);
+            this.thread = thread;
+        }
+
+        /**
+         * Don't send the response when invoke() returns, but when resume() is called.
+         */
+        public void suspend()
+        {
+            pending.set(2);
+        }
+
+        /**
+         * Send the response, which must be complete, of a suspended request.
+         */
+        public void resume()
+        {
+            if (pending.decrementAndGet() == 0)
+            {
+                super.responseReady();
+                thread.requestSelectInterestChange(this);
+            }
+        }
+
+        @Override
+        public void invoke()
+        {
+            deferred = false;
+            super.invoke();
+        }
+
+        @Override
+        public void responseReady()
+        {
+            deferred = pending.get() > 0 && pending.decrementAndGet() > 0;
+            if (!deferred)
+                super.responseReady();
+        }
+
+        boolean isDeferred()
+        {
+            return deferred;
         }
     }
 
@@ -223,7 +305,7 @@ public class CustomTHsHaServer extends TNonblockingServer
                 client = (TNonblockingTransport) serverTransport.accept();
                 clientKey = client.registerSelector(selector, SelectionKey.OP_READ);
                 // add this key to the map
-                FrameBuffer frameBuffer = new FrameBuffer(client, clientKey);
+                FrameBuffer frameBuffer = new AsyncFrameBuffer(client, clientKey, this);
                 clientKey.attach(frameBuffer); 
             } catch (TTransportException ex)
             {
@@ -305,7 +387,7 @@ public class CustomTHsHaServer extends TNonblockingServer
     {
         try
         {
-            Runnable invocation = new Invocation(frameBuffer, thread);
+            Runnable invocation = new Invocation((AsyncFrameBuffer) frameBuffer, thread);
             invoker.execute(invocation);
             return true;
         } 
@@ -116,6 +116,7 @@ public class NodeCmd
         UPGRADESSTABLES,
         VERSION,
         DESCRIBERING,
+        VERBHISTOGRAMS,
     }
 
     
@@ -153,6 +154,7 @@ public class NodeCmd
         addCmdHelp(header, "setcompactionthroughput <value_in_mb>", "Set the MB/s throughput cap for compaction in the system, or 0 to disable throttling.");
         addCmdHelp(header, "setstreamthroughput <value_in_mb>", "Set the MB/s throughput cap for streaming in the system, or 0 to disable throttling.");
         addCmdHelp(header, "describering [keyspace]", "Shows the token ranges info of a given keyspace.");
+        addCmdHelp(header, "verbhistograms <verb>", "Print queueing, network, stage and handler latency histograms for a given message verb");
 
         // Two args
         addCmdHelp(header, "snapshot [keyspaces...] -t [snapshotName]", "Take a snapshot of the specified keyspaces using optional name snapshotName");
@@ -569,6 +571,36 @@ public class NodeCmd
         }
     }
 
+    private void printVerbHistograms(String verb, PrintStream output)
+    {
+        MessagingServiceMBean ms = this.probe.getMsProxy();
+
+        // default is 90 offsets
+        long[] offsets = new EstimatedHistogram().getBucketOffsets();
+
+        long[] oqh = ms.getRecentOutboundQueueHistogramMicros(verb);
+        long[] cnh = ms.getRecentCrossNodeHistogramMicros(verb);
+        long[] swh = ms.getRecentStageWaitHistogramMicros(verb);
+        long[] ph = ms.getRecentProcessingHistogramMicros(verb);
+        long[] msh = ms.getRecentMessageSizeHistogram(verb);
+
+        output.println(String.format("%s histograms", verb));
+
+        output.println(String.format("%-10s%18s%18s%18s%18s%18s",
+                                     "Offset", "Outbound Queue", "Cross Node", "Stage Wait", "Processing", "Message Size"));
+
+        for (int i = 0; i < offsets.length; i++)
+        {
+            output.println(String.format("%-10d%18s%18s%18s%18s%18s",
+                                         offsets[i],
+                                         (i < oqh.length ? oqh[i] : ""),
+                                         (i < cnh.length ? cnh[i] : ""),
+                                         (i < swh.length ? swh[i] : ""),
+                                         (i < ph.length ? ph[i] : ""),
+                                         (i < msh.length ? msh[i] : "")));
+        }
+    }
+
     private void printEndPoints(String keySpace, String cf, String key, PrintStream output)
     {
         List<InetAddress> endpoints = this.probe.getEndpoints(keySpace, cf, key);
@@ -750,6 +782,11 @@ public class NodeCmd
                     probe.setCompactionThreshold(arguments[0], arguments[1], minthreshold, maxthreshold);
                     break;
 
+                case VERBHISTOGRAMS :
+                    if (arguments.length != 1) { badUse("verbhistograms requires a verb arg"); }
+                    nodeCmd.printVerbHistograms(arguments[0].toUpperCase(), System.out);
+                    break;
+
                 case GETENDPOINTS :
                     if (arguments.length != 3) { badUse("getendpoints requires ks, cf and key args"); }
                     nodeCmd.printEndPoints(arguments[0], arguments[1], arguments[2], System.out);
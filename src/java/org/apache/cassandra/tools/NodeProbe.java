@@ -614,6 +614,11 @@ public class NodeProbe
         return msProxy.getDroppedMessages();
     }
 
+    public MessagingServiceMBean getMsProxy()
+    {
+        return msProxy;
+    }
+
     public void loadNewSSTables(String ksName, String cfName)
     {
         ssProxy.loadNewSSTables(ksName, cfName);
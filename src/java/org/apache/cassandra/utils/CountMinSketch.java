@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of how often each value was seen: depth rows of width counters, each value
+ * hashed to one counter per row.  Estimates never undercount as long as no value is removed more
+ * often than it was added; they overcount by about 2 * total / width with probability 1 - 2^-depth.
+ * Thread-safe.
+ */
+public class CountMinSketch
+{
+    private final int depth;
+    private final int width;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.counters = new AtomicLongArray(depth * width);
+    }
+
+    public void add(ByteBuffer value, long count)
+    {
+        long hash1 = MurmurHash.hash64(value, value.position(), value.remaining(), 0);
+        long hash2 = MurmurHash.hash64(value, value.position(), value.remaining(), hash1);
+        for (int i = 0; i < depth; i++)
+            counters.addAndGet(i * width + index(hash1, hash2, i), count);
+    }
+
+    public long estimate(ByteBuffer value)
+    {
+        long hash1 = MurmurHash.hash64(value, value.position(), value.remaining(), 0);
+        long hash2 = MurmurHash.hash64(value, value.position(), value.remaining(), hash1);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++)
+            estimate = Math.min(estimate, counters.get(i * width + index(hash1, hash2, i)));
+        return Math.max(estimate, 0);
+    }
+
+    private int index(long hash1, long hash2, int row)
+    {
+        // the rows' hashes are combinations of two (Kirsch-Mitzenmacher), as in BloomFilter
+        return (int) Math.abs((hash1 + (long) row * hash2) % width);
+    }
+}
@@ -182,6 +182,31 @@ public class EstimatedHistogram
         return (long) Math.ceil((double) sum / elements);
     }
 
+    /**
+     * @param percentile the percentile to compute, between 0 and 1
+     * @return the smallest bucket offset such that at least that fraction of values is less than or equal to it.
+     * If the percentile falls in the overflow bucket, returns Long.MAX_VALUE; if the histogram is empty, returns 0.
+     */
+    public long percentile(double percentile)
+    {
+        assert percentile >= 0 && percentile <= 1.0;
+        int lastBucket = buckets.length() - 1;
+
+        long elements = count();
+        if (elements == 0)
+            return 0;
+
+        long threshold = (long) Math.ceil(elements * percentile);
+        long seen = 0;
+        for (int i = 0; i < lastBucket; i++)
+        {
+            seen += buckets.get(i);
+            if (seen >= threshold)
+                return bucketOffsets[i];
+        }
+        return Long.MAX_VALUE;
+    }
+
     /**
      * @return the total number of non-zero values
      */
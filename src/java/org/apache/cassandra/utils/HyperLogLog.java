@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * HyperLogLog estimate of the number of distinct values added, in a fixed 2^precision registers
+ * (standard error about 1.04 / sqrt(2^precision)).  Values can't be removed, so this counts every
+ * value ever added.  Thread-safe.
+ */
+public class HyperLogLog
+{
+    private final int precision;
+    private final AtomicIntegerArray registers;
+
+    public HyperLogLog(int precision)
+    {
+        assert precision >= 4 && precision <= 16 : precision;
+        this.precision = precision;
+        this.registers = new AtomicIntegerArray(1 << precision);
+    }
+
+    public void add(ByteBuffer value)
+    {
+        long hash = mix(MurmurHash.hash64(value, value.position(), value.remaining(), 0));
+        int register = (int) (hash >>> (64 - precision));
+        // position of the leftmost 1 among the remaining bits (all zeroes count as the maximum)
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+
+        while (true)
+        {
+            int current = registers.get(register);
+            if (rank <= current || registers.compareAndSet(register, current, rank))
+                return;
+        }
+    }
+
+    /**
+     * hash64 sign-extends the trailing bytes of the value into its high bits, which leaves the
+     * high bits of short values correlated; scramble them again (murmur3's finalizer) so that
+     * the register index and rank are evenly distributed.
+     */
+    private static long mix(long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public long cardinality()
+    {
+        int m = registers.length();
+        double sum = 0;
+        int zeroes = 0;
+        for (int i = 0; i < m; i++)
+        {
+            int rank = registers.get(i);
+            sum += 1.0 / (1L << rank);
+            if (rank == 0)
+                zeroes++;
+        }
+
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // small cardinalities are estimated better by counting empty registers
+        if (estimate <= 2.5 * m && zeroes > 0)
+            estimate = m * Math.log((double) m / zeroes);
+        return Math.round(estimate);
+    }
+}
@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Objects;
 
 import org.apache.cassandra.db.CounterColumn;
+import org.apache.cassandra.db.CounterMutation;
 import org.apache.cassandra.db.SystemTable;
 
 public class NodeId implements Comparable<NodeId>
@@ -68,6 +69,8 @@ public class NodeId implements Comparable<NodeId>
     public static synchronized void renewLocalId(long now)
     {
         localIds().renewCurrent(now);
+        // the cached shards are those of the old id
+        CounterMutation.invalidateCachedCounters();
     }
 
     /**
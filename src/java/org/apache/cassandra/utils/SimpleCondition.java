@@ -21,7 +21,9 @@ package org.apache.cassandra.utils;
  */
 
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 
@@ -31,6 +33,7 @@ import java.util.concurrent.locks.Condition;
 public class SimpleCondition implements Condition
 {
     boolean set;
+    private List<Runnable> listeners;
 
     public synchronized void await() throws InterruptedException
     {
@@ -45,27 +48,73 @@ public class SimpleCondition implements Condition
 
     public synchronized boolean await(long time, TimeUnit unit) throws InterruptedException
     {
-        // micro/nanoseconds not supported
-        assert unit == TimeUnit.DAYS || unit == TimeUnit.HOURS || unit == TimeUnit.MINUTES || unit == TimeUnit.SECONDS || unit == TimeUnit.MILLISECONDS;
-
-        long end = System.currentTimeMillis() + unit.convert(time, TimeUnit.MILLISECONDS);
-        while (!set && end > System.currentTimeMillis())
+        long end = System.nanoTime() + unit.toNanos(time);
+        long remaining;
+        while (!set && (remaining = end - System.nanoTime()) > 0)
         {
-            TimeUnit.MILLISECONDS.timedWait(this, end - System.currentTimeMillis());
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
         }
         return set;
     }
 
-    public synchronized void signal()
+    public void signal()
+    {
+        List<Runnable> toRun;
+        synchronized (this)
+        {
+            set = true;
+            notify();
+            toRun = takeListeners();
+        }
+        run(toRun);
+    }
+
+    public void signalAll()
+    {
+        List<Runnable> toRun;
+        synchronized (this)
+        {
+            set = true;
+            notifyAll();
+            toRun = takeListeners();
+        }
+        run(toRun);
+    }
+
+    /**
+     * Run @param listener once this is signaled: in the signaling thread, or right away in this one
+     * if it already has been.
+     */
+    public void addListener(Runnable listener)
     {
-        set = true;
-        notify();
+        synchronized (this)
+        {
+            if (!set)
+            {
+                if (listeners == null)
+                    listeners = new ArrayList<Runnable>(1);
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
     }
 
-    public synchronized void signalAll()
+    private List<Runnable> takeListeners()
     {
-        set = true;
-        notifyAll();
+        List<Runnable> toRun = listeners;
+        listeners = null;
+        return toRun;
+    }
+
+    private static void run(List<Runnable> listeners)
+    {
+        // outside the lock, since listeners may do anything
+        if (listeners != null)
+        {
+            for (Runnable listener : listeners)
+                listener.run();
+        }
     }
 
     public synchronized boolean isSignaled()
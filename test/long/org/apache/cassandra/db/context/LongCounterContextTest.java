@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cassandra.db.context;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.context.CounterContext.ContextState;
+import org.apache.cassandra.utils.HeapAllocator;
+import org.apache.cassandra.utils.NodeId;
+
+/**
+ * Times merge, diff and total on contexts of 3 shards (a counter written by one replica set), 30 and
+ * 300 (a counter that has seen many node replacements).  The two merged contexts share most of their
+ * shards, with one delta each, as when compaction reconciles replicas' versions of a counter.
+ */
+public class LongCounterContextTest
+{
+    private static final CounterContext cc = CounterContext.instance();
+    private static final int ITERATIONS = 5000000;
+
+    @Test
+    public void testNarrow()
+    {
+        testContext(3);
+    }
+
+    @Test
+    public void testWide()
+    {
+        testContext(30);
+    }
+
+    @Test
+    public void testVeryWide()
+    {
+        testContext(300);
+    }
+
+    private void testContext(int shards)
+    {
+        Random random = new Random(0);
+        List<NodeId> ids = new ArrayList<NodeId>(shards);
+        for (int i = 0; i < shards; i++)
+            ids.add(NodeId.generate());
+        Collections.sort(ids);
+
+        // left has every shard, right all but one with clocks no higher (so that diff has to look at
+        // every shard to find left GREATER_THAN right); both have a delta for the first id
+        ContextState left = ContextState.allocate(shards, 1);
+        ContextState right = ContextState.allocate(shards - 1, 1);
+        for (int i = 0; i < shards; i++)
+        {
+            long clock = random.nextInt(100) + 2;
+            left.writeElement(ids.get(i), clock, random.nextInt(1000), i == 0);
+            if (i != shards / 2)
+                right.writeElement(ids.get(i), clock - random.nextInt(2), random.nextInt(1000), i == 0);
+        }
+
+        // scale the iterations down so that every width processes about as many shards
+        int iterations = ITERATIONS * 3 / shards;
+        long sink = 0;
+        for (int round = 0; round < 2; round++)
+        {
+            // the first round is a warm-up
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                sink += cc.merge(left.context, right.context, HeapAllocator.instance).remaining();
+            long merge = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                sink += cc.diff(left.context, right.context).ordinal();
+            long diff = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                sink += cc.total(left.context);
+            long total = System.nanoTime() - start;
+
+            if (round > 0)
+                System.out.println(String.format("%s: shards=%d iterations=%d: merge %d ns/op, diff %d ns/op, total %d ns/op (%d)",
+                                                 this.getClass().getName(),
+                                                 shards,
+                                                 iterations,
+                                                 merge / iterations,
+                                                 diff / iterations,
+                                                 total / iterations,
+                                                 sink));
+        }
+    }
+}
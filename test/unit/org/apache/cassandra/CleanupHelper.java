@@ -48,8 +48,8 @@ public class CleanupHelper extends SchemaLoader
 
     public static void cleanup() throws IOException
     {
-        // clean up commitlog
-        String[] directoryNames = { DatabaseDescriptor.getCommitLogLocation(), };
+        // clean up commitlog and hints
+        String[] directoryNames = { DatabaseDescriptor.getCommitLogLocation(), DatabaseDescriptor.getHintsLocation(), };
         for (String dirName : directoryNames)
         {
             File dir = new File(dirName);
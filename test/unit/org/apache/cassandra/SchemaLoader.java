@@ -140,6 +140,7 @@ public class SchemaLoader
                                            superCFMD(ks1, "Super6", LexicalUUIDType.instance, UTF8Type.instance),
                                            indexCFMD(ks1, "Indexed1", true),
                                            indexCFMD(ks1, "Indexed2", false),
+                                           multiIndexCFMD(ks1, "Indexed3", "birthdate", "state"),
                                            new CFMetaData(ks1,
                                                           "StandardInteger1",
                                                           st,
@@ -288,6 +289,19 @@ public class SchemaLoader
                         put(cName, new ColumnDefinition(cName, LongType.instance, keys, null, ByteBufferUtil.bytesToHex(cName)));
                     }});
     }
+    private static CFMetaData multiIndexCFMD(String ksName, String cfName, final String... columns) throws ConfigurationException
+    {
+        return standardCFMD(ksName, cfName)
+               .keyValidator(AsciiType.instance)
+               .columnMetadata(new HashMap<ByteBuffer, ColumnDefinition>()
+                   {{
+                        for (String column : columns)
+                        {
+                            ByteBuffer cName = ByteBuffer.wrap(column.getBytes(Charsets.UTF_8));
+                            put(cName, new ColumnDefinition(cName, LongType.instance, IndexType.KEYS, null, ByteBufferUtil.bytesToHex(cName)));
+                        }
+                    }});
+    }
     private static CFMetaData jdbcCFMD(String ksName, String cfName, AbstractType comp)
     {
         return new CFMetaData(ksName, cfName, ColumnFamilyType.Standard, comp, null).defaultValidator(comp);
@@ -33,7 +33,9 @@ import org.apache.cassandra.config.ConfigurationException;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
 import org.apache.cassandra.db.filter.*;
+import org.apache.cassandra.db.index.IndexStatistics;
 import org.apache.cassandra.db.index.SecondaryIndex;
+import org.apache.cassandra.db.index.keys.KeysIndex;
 import org.apache.cassandra.db.marshal.LongType;
 import org.apache.cassandra.db.marshal.LexicalUUIDType;
 import org.apache.cassandra.dht.IPartitioner;
@@ -272,6 +274,74 @@ public class ColumnFamilyStoreTest extends CleanupHelper
         assert rows.size() == keys.size();
     }
 
+    @Test
+    public void testMergeJoinScan() throws IOException, InterruptedException
+    {
+        ColumnFamilyStore cfs = Table.open("Keyspace1").getColumnFamilyStore("Indexed3");
+        RowMutation rm;
+        for (int i = 0; i < 300; i++)
+        {
+            rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("key" + i));
+            rm.add(new QueryPath("Indexed3", null, ByteBufferUtil.bytes("birthdate")), ByteBufferUtil.bytes((long) (i % 3)), 0);
+            rm.add(new QueryPath("Indexed3", null, ByteBufferUtil.bytes("state")), ByteBufferUtil.bytes((long) (i % 5)), 0);
+            rm.add(new QueryPath("Indexed3", null, ByteBufferUtil.bytes("notindexed")), ByteBufferUtil.bytes((long) (i % 2)), 0);
+            rm.applyUnsafe();
+        }
+        // a deleted match must not come back
+        rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("key7"));
+        rm.delete(new QueryPath("Indexed3"), 1);
+        rm.applyUnsafe();
+
+        IndexExpression expr = new IndexExpression(ByteBufferUtil.bytes("birthdate"), IndexOperator.EQ, ByteBufferUtil.bytes(1L));
+        IndexExpression expr2 = new IndexExpression(ByteBufferUtil.bytes("state"), IndexOperator.EQ, ByteBufferUtil.bytes(2L));
+        IndexClause clause = new IndexClause(Arrays.asList(expr, expr2), ByteBufferUtil.EMPTY_BYTE_BUFFER, 100);
+        Range<RowPosition> range = Util.range("", "");
+        List<Row> rows = cfs.search(clause, range, new IdentityQueryFilter());
+
+        // i % 15 == 7, except key7
+        Set<String> expected = new HashSet<String>();
+        for (int i = 22; i < 300; i += 15)
+            expected.add("key" + i);
+        Set<String> keys = new HashSet<String>();
+        for (Row row : rows)
+            keys.add(ByteBufferUtil.string(row.key.key));
+        assertEquals(expected, keys);
+        assertEquals(expected.size(), rows.size());
+
+        // the index statistics know a third of the rows have birthdate 1, and a fifth state 2
+        IndexStatistics statistics = ((KeysIndex) cfs.indexManager.getIndexForColumn(ByteBufferUtil.bytes("birthdate"))).getStatistics();
+        for (int i = 0; i < 1000 && !statistics.isLoaded(); i++)
+            Thread.sleep(10);
+        assert statistics.isLoaded();
+        long estimate = cfs.indexManager.estimateResultRows(new IndexClause(Arrays.asList(expr), ByteBufferUtil.EMPTY_BYTE_BUFFER, 100));
+        assert estimate >= 99 && estimate <= 110 : estimate;
+        estimate = cfs.indexManager.estimateResultRows(new IndexClause(Arrays.asList(expr2), ByteBufferUtil.EMPTY_BYTE_BUFFER, 100));
+        assert estimate >= 59 && estimate <= 70 : estimate;
+
+        // non-indexed clauses still apply to the intersection
+        IndexExpression expr3 = new IndexExpression(ByteBufferUtil.bytes("notindexed"), IndexOperator.EQ, ByteBufferUtil.bytes(0L));
+        clause = new IndexClause(Arrays.asList(expr, expr2, expr3), ByteBufferUtil.EMPTY_BYTE_BUFFER, 100);
+        rows = cfs.search(clause, range, new IdentityQueryFilter());
+        for (Row row : rows)
+            assert Integer.parseInt(ByteBufferUtil.string(row.key.key).substring(3)) % 2 == 0;
+        assertEquals(10, rows.size()); // 22, 52, ..., 292
+
+        // page through the intersection, a few rows at a time
+        keys.clear();
+        ByteBuffer startKey = ByteBufferUtil.EMPTY_BYTE_BUFFER;
+        while (true)
+        {
+            clause = new IndexClause(Arrays.asList(expr, expr2), startKey, 3);
+            rows = cfs.search(clause, range, new IdentityQueryFilter());
+            for (Row row : rows)
+                keys.add(ByteBufferUtil.string(row.key.key));
+            if (rows.size() < 3)
+                break;
+            startKey = rows.get(rows.size() - 1).key.key;
+        }
+        assertEquals(expected, keys);
+    }
+
     @Test
     public void testIndexDeletions() throws IOException
     {
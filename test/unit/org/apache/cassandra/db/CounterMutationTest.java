@@ -21,13 +21,18 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import static org.junit.Assert.fail;
 
+import org.apache.cassandra.cache.CounterCacheKey;
+import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.context.CounterContext;
 import org.apache.cassandra.db.filter.*;
 import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.thrift.*;
 import org.apache.cassandra.utils.*;
 import org.apache.cassandra.Util;
@@ -193,5 +198,118 @@ public class CounterMutationTest extends CleanupHelper
         ByteBuffer onRemote = ctx.merge(ctx.clearAllDelta(state.context), ctx.clearAllDelta(cleaned), HeapAllocator.instance);
         assert ctx.total(onRemote) == 11;
     }
-}
 
+    @Test
+    public void testCounterCache() throws IOException
+    {
+        CacheService.instance.invalidateCounterCache();
+        ColumnFamilyStore cfs = Table.open("Keyspace1").getColumnFamilyStore("Counter1");
+        CounterCacheKey key1 = new CounterCacheKey(cfs.metadata.cfId, bytes("key2"), bytes("Column1"));
+        CounterCacheKey key2 = new CounterCacheKey(cfs.metadata.cfId, bytes("key2"), bytes("Column2"));
+
+        RowMutation rm = new RowMutation("Keyspace1", bytes("key2"));
+        rm.addCounter(new QueryPath("Counter1", null, bytes("Column1")), 3);
+        new CounterMutation(rm, ConsistencyLevel.ONE).apply();
+        assert CacheService.instance.counterCache.get(key1).equals(new ClockAndCount(1, 3));
+
+        // cached from here on: no read needed to know the local shard
+        rm = new RowMutation("Keyspace1", bytes("key2"));
+        rm.addCounter(new QueryPath("Counter1", null, bytes("Column1")), 4);
+        rm.addCounter(new QueryPath("Counter1", null, bytes("Column2")), 1);
+        CounterMutation cm = new CounterMutation(rm, ConsistencyLevel.ONE);
+        cm.apply();
+        assert CacheService.instance.counterCache.get(key1).equals(new ClockAndCount(2, 7));
+        assert CacheService.instance.counterCache.get(key2).equals(new ClockAndCount(1, 1));
+
+        // replicas are sent our shard, as a non-delta one
+        ColumnFamily cf = cm.makeReplicationMutation().getColumnFamilies().iterator().next();
+        assert cf.getColumnCount() == 2;
+        ContextState s = new ContextState(cf.getColumn(bytes("Column1")).value());
+        assert s.getNodeId().equals(NodeId.getLocalId());
+        assert !s.isDelta();
+        assert s.getClock() == 2L && s.getCount() == 7L;
+        assert ((CounterColumn) cf.getColumn(bytes("Column2"))).total() == 1L;
+
+        // and they agree with what is stored locally
+        cf = Util.getColumnFamily(Table.open("Keyspace1"), Util.dk("key2"), "Counter1");
+        assert ((CounterColumn) cf.getColumn(bytes("Column1"))).total() == 7L;
+
+        // deleting a counter drops it from the cache
+        rm = new RowMutation("Keyspace1", bytes("key2"));
+        rm.delete(new QueryPath("Counter1", null, bytes("Column1")), System.currentTimeMillis());
+        rm.apply();
+        assert CacheService.instance.counterCache.get(key1) == null;
+        assert CacheService.instance.counterCache.get(key2) != null;
+
+        // and so does renewing our node id, since cached shards are those of the old one
+        NodeId.renewLocalId();
+        assert CacheService.instance.counterCache.get(key2) == null;
+    }
+
+    @Test
+    public void testCounterCacheAfterRowDeletion() throws IOException
+    {
+        CacheService.instance.invalidateCounterCache();
+        ColumnFamilyStore cfs = Table.open("Keyspace1").getColumnFamilyStore("Counter1");
+        CounterCacheKey key = new CounterCacheKey(cfs.metadata.cfId, bytes("key4"), bytes("Column1"));
+        Map<CounterCacheKey, ClockAndCount> updates = Collections.singletonMap(key, new ClockAndCount(1, 3));
+
+        // an increment that read the counter before its row was deleted doesn't cache what it built on it...
+        int invalidationsBefore = CounterMutation.invalidations();
+        RowMutation rm = new RowMutation("Keyspace1", bytes("key4"));
+        rm.delete(new QueryPath("Counter1"), System.currentTimeMillis());
+        rm.apply();
+        CounterMutation.updateCache(updates, invalidationsBefore);
+        assert CacheService.instance.counterCache.get(key) == null;
+
+        // ...but one that read it afterwards does
+        CounterMutation.updateCache(updates, CounterMutation.invalidations());
+        assert CacheService.instance.counterCache.get(key).equals(new ClockAndCount(1, 3));
+    }
+
+    @Test
+    public void testCounterCacheAfterShardMerge() throws Exception
+    {
+        CacheService.instance.invalidateCounterCache();
+        ColumnFamilyStore cfs = Table.open("Keyspace1").getColumnFamilyStore("Counter1");
+        CounterCacheKey key = new CounterCacheKey(cfs.metadata.cfId, bytes("key3"), bytes("Column1"));
+        // compaction sends the merged shards to the other replicas
+        StorageService.instance.getTokenMetadata().updateNormalToken(StorageService.getPartitioner().getRandomToken(), FBUtilities.getBroadcastAddress());
+        try
+        {
+            RowMutation rm = new RowMutation("Keyspace1", bytes("key3"));
+            rm.addCounter(new QueryPath("Counter1", null, bytes("Column1")), 3);
+            new CounterMutation(rm, ConsistencyLevel.ONE).apply();
+            cfs.forceBlockingFlush();
+
+            NodeId.renewLocalId(2L); // faking time of renewal, so that compaction merges the old shard
+            rm = new RowMutation("Keyspace1", bytes("key3"));
+            rm.addCounter(new QueryPath("Counter1", null, bytes("Column1")), 4);
+            new CounterMutation(rm, ConsistencyLevel.ONE).apply();
+            assert CacheService.instance.counterCache.get(key).equals(new ClockAndCount(1, 4));
+            cfs.forceBlockingFlush();
+
+            // merging the old shard into the current one changes the latter, so its cache entry must go
+            CompactionManager.instance.performMaximal(cfs);
+            assert CacheService.instance.counterCache.get(key) == null;
+
+            // and the next increment builds on the merged shard, which is what replicas are sent
+            rm = new RowMutation("Keyspace1", bytes("key3"));
+            rm.addCounter(new QueryPath("Counter1", null, bytes("Column1")), 5);
+            CounterMutation cm = new CounterMutation(rm, ConsistencyLevel.ONE);
+            cm.apply();
+            assert CacheService.instance.counterCache.get(key).equals(new ClockAndCount(3, 12));
+            ColumnFamily cf = cm.makeReplicationMutation().getColumnFamilies().iterator().next();
+            ContextState s = new ContextState(cf.getColumn(bytes("Column1")).value());
+            assert s.getNodeId().equals(NodeId.getLocalId());
+            assert s.getClock() == 3L && s.getCount() == 12L;
+
+            cf = Util.getColumnFamily(Table.open("Keyspace1"), Util.dk("key3"), "Counter1");
+            assert ((CounterColumn) cf.getColumn(bytes("Column1"))).total() == 12L;
+        }
+        finally
+        {
+            StorageService.instance.getTokenMetadata().clearUnsafe();
+        }
+    }
+}
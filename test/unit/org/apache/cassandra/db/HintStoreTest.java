@@ -0,0 +1,216 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HintStoreTest extends CleanupHelper
+{
+    private static final InetAddress TARGET;
+    private static final InetAddress OTHER;
+    static
+    {
+        try
+        {
+            TARGET = InetAddress.getByName("127.0.0.2");
+            OTHER = InetAddress.getByName("127.0.0.3");
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static RowMutation mutation(String key)
+    {
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes(key));
+        rm.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes(key), 0);
+        return rm;
+    }
+
+    private static HintStore newStore() throws IOException
+    {
+        File directory = File.createTempFile("hints", "");
+        directory.delete();
+        directory.mkdir();
+        directory.deleteOnExit();
+        return new HintStore(directory);
+    }
+
+    private static List<String> readKeys(File file) throws IOException
+    {
+        List<String> keys = new ArrayList<String>();
+        HintStore.Reader reader = new HintStore.Reader(file);
+        try
+        {
+            while (reader.hasNext())
+                keys.add(ByteBufferUtil.string(reader.next().getMutation().key()));
+        }
+        finally
+        {
+            reader.close();
+        }
+        return keys;
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException
+    {
+        HintStore store = newStore();
+        for (int i = 0; i < 10; i++)
+            store.append(TARGET, mutation("k" + i));
+        store.append(OTHER, mutation("other"));
+
+        assertEquals(2, store.endpoints().size());
+        assertEquals(10, store.count(TARGET));
+        assertEquals(1, store.count(OTHER));
+
+        List<File> files = store.rollover(TARGET);
+        assertEquals(1, files.size());
+        List<String> keys = readKeys(files.get(0));
+        assertEquals(10, keys.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals("k" + i, keys.get(i));
+    }
+
+    @Test
+    public void testHintSize() throws IOException
+    {
+        HintStore store = newStore();
+        for (int i = 0; i < 5; i++)
+            store.append(TARGET, mutation("k" + i));
+        File file = store.rollover(TARGET).get(0);
+
+        // delivery progress is measured by hint sizes, which add up to the file's
+        long size = 0;
+        HintStore.Reader reader = new HintStore.Reader(file);
+        while (reader.hasNext())
+            size += reader.next().size();
+        reader.close();
+        assertEquals(file.length(), size);
+    }
+
+    @Test
+    public void testRollover() throws IOException
+    {
+        HintStore store = newStore();
+        store.append(TARGET, mutation("a"));
+        List<File> first = store.rollover(TARGET);
+        store.append(TARGET, mutation("b"));
+
+        // "b" went to a new file, which sorts after the first
+        assertEquals(1, first.size());
+        List<File> files = store.rollover(TARGET);
+        assertEquals(2, files.size());
+        assertEquals("a", readKeys(files.get(0)).get(0));
+        assertEquals("b", readKeys(files.get(1)).get(0));
+    }
+
+    @Test
+    public void testTruncatedAndCorruptTail() throws IOException
+    {
+        HintStore store = newStore();
+        for (int i = 0; i < 3; i++)
+            store.append(TARGET, mutation("k" + i));
+        File file = store.rollover(TARGET).get(0);
+        long length = file.length();
+
+        // cut the last hint short
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(length - 5);
+        raf.close();
+        assertEquals(2, readKeys(file).size());
+
+        // flip a byte in the second hint's payload
+        raf = new RandomAccessFile(file, "rw");
+        raf.seek(length / 2);
+        int b = raf.read();
+        raf.seek(length / 2);
+        raf.write(~b);
+        raf.close();
+        assertEquals(1, readKeys(file).size());
+    }
+
+    @Test
+    public void testExpiry() throws IOException
+    {
+        HintStore store = newStore();
+        // Standard1 has the default gc_grace, so a hint created that long ago has expired
+        long gcGrace = Table.open("Keyspace1").getColumnFamilyStore("Standard1").metadata.getGcGraceSeconds() * 1000L;
+        store.append(TARGET, mutation("old"), System.currentTimeMillis() - gcGrace - 1000);
+        store.append(TARGET, mutation("new"));
+
+        HintStore.Reader reader = new HintStore.Reader(store.rollover(TARGET).get(0));
+        long now = System.currentTimeMillis();
+        assertTrue(reader.next().isExpired(now));
+        assertFalse(reader.next().isExpired(now));
+        reader.close();
+    }
+
+    @Test
+    public void testDelete() throws IOException
+    {
+        HintStore store = newStore();
+        store.append(TARGET, mutation("a"));
+        store.append(OTHER, mutation("b"));
+
+        store.delete(TARGET);
+        assertFalse(store.hasHints(TARGET));
+        assertTrue(store.hasHints(OTHER));
+
+        // appending after a delete starts a new file
+        store.append(TARGET, mutation("c"));
+        assertEquals(1, store.count(TARGET));
+    }
+
+    @Test
+    public void testCountWhileAppending() throws IOException
+    {
+        HintStore store = newStore();
+        for (int i = 0; i < 3; i++)
+            store.append(TARGET, mutation("k" + i));
+        store.sync();
+
+        // bytes past the last complete hint, as if the next one were being written
+        File file = store.files(TARGET).get(0);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(raf.length());
+        raf.writeInt(1000);
+        raf.close();
+
+        // are left alone by count, rather than read as a corrupt hint
+        assertEquals(3, store.count(TARGET));
+        assertEquals(1, store.rollover(TARGET).size());
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.locator.TokenMetadata;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.net.sink.IMessageSink;
+import org.apache.cassandra.net.sink.SinkManager;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.UUIDGen;
+
+import static org.apache.cassandra.Util.token;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HintedHandOffManagerTest extends CleanupHelper
+{
+    @After
+    public void tearDown()
+    {
+        SinkManager.clear();
+    }
+
+    private static RowMutation mutation(String key)
+    {
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes(key));
+        rm.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes(key), 0);
+        return rm;
+    }
+
+    // a hint for @param mutation as an older version stored it in the system table
+    private static void legacyHint(Token token, RowMutation mutation) throws Exception
+    {
+        ByteBuffer key = StorageService.getPartitioner().getTokenFactory().toByteArray(token);
+        RowMutation rm = new RowMutation(Table.SYSTEM_TABLE, key);
+        ByteBuffer hintId = ByteBuffer.wrap(UUIDGen.getTimeUUIDBytes());
+        long now = System.currentTimeMillis();
+        rm.add(new QueryPath(HintedHandOffManager.HINTS_CF, hintId, ByteBufferUtil.bytes("mutation")),
+               ByteBuffer.wrap(mutation.getSerializedBuffer(MessagingService.version_)), now);
+        rm.add(new QueryPath(HintedHandOffManager.HINTS_CF, hintId, ByteBufferUtil.bytes("version")),
+               ByteBufferUtil.bytes(MessagingService.version_), now);
+        rm.apply();
+    }
+
+    @Test
+    public void testMigrateLegacyHints() throws Exception
+    {
+        InetAddress known = InetAddress.getByName("127.0.0.2");
+        InetAddress rejoining = InetAddress.getByName("127.0.0.3");
+        TokenMetadata tmd = StorageService.instance.getTokenMetadata();
+        ColumnFamilyStore hintsCfs = Table.open(Table.SYSTEM_TABLE).getColumnFamilyStore(HintedHandOffManager.HINTS_CF);
+        tmd.updateNormalToken(token("a"), known);
+        try
+        {
+            legacyHint(token("a"), mutation("k1"));
+            legacyHint(token("a"), mutation("k2"));
+            legacyHint(token("b"), mutation("k3"));
+
+            // the hints of a token without an endpoint stay where they are...
+            HintedHandOffManager.instance.migrateLegacyHints();
+            assertEquals(2, HintStore.instance.count(known));
+            assertFalse(HintStore.instance.hasHints(rejoining));
+            assertFalse(hintsCfs.isEmpty());
+
+            // ...until it has one; the others aren't migrated again
+            tmd.updateNormalToken(token("b"), rejoining);
+            HintedHandOffManager.instance.migrateLegacyHints();
+            assertEquals(2, HintStore.instance.count(known));
+            assertEquals(1, HintStore.instance.count(rejoining));
+            assertTrue(hintsCfs.isEmpty());
+        }
+        finally
+        {
+            tmd.clearUnsafe();
+            HintStore.instance.delete(known);
+            HintStore.instance.delete(rejoining);
+        }
+    }
+
+    @Test
+    public void testDeleteHintsOfLeftEndpoints() throws Exception
+    {
+        InetAddress left = InetAddress.getByName("127.0.0.4");
+        HintStore.instance.append(left, mutation("k1"));
+
+        // not in the ring, so nothing will ever be delivered to it
+        HintedHandOffManager.instance.scheduleAllDeliveries();
+        for (int i = 0; i < 500 && HintStore.instance.hasHints(left); i++)
+            Thread.sleep(10);
+        assertFalse(HintStore.instance.hasHints(left));
+    }
+
+    @Test
+    public void testReplayHints() throws Exception
+    {
+        Peer peer = new Peer(InetAddress.getByName("127.0.0.5"), Integer.MAX_VALUE);
+        for (int i = 0; i < 300; i++)
+            HintStore.instance.append(peer.address, mutation("k" + i));
+        long delivered = HintedHandOffManager.instance.getHintsDelivered();
+
+        SinkManager.add(peer);
+        peer.start();
+        try
+        {
+            HintedHandOffManager.instance.replayHints(peer.address);
+        }
+        finally
+        {
+            peer.interrupt();
+        }
+
+        assertEquals(300, peer.mutations);
+        assertTrue(peer.maxInFlight <= HintedHandOffManager.MAX_IN_FLIGHT);
+        assertEquals(300, HintedHandOffManager.instance.getHintsDelivered() - delivered);
+        assertFalse(HintStore.instance.hasHints(peer.address));
+    }
+
+    @Test
+    public void testReplayHintsTimeout() throws Exception
+    {
+        // only the first few hints are ever acknowledged
+        Peer peer = new Peer(InetAddress.getByName("127.0.0.6"), 10);
+        for (int i = 0; i < 300; i++)
+            HintStore.instance.append(peer.address, mutation("k" + i));
+        long delivered = HintedHandOffManager.instance.getHintsDelivered();
+
+        SinkManager.add(peer);
+        peer.start();
+        try
+        {
+            HintedHandOffManager.instance.replayHints(peer.address);
+        }
+        finally
+        {
+            peer.interrupt();
+        }
+
+        // the acknowledged hints made room for as many more, but what was never acknowledged isn't counted,
+        // and is kept for the next delivery
+        assertEquals(HintedHandOffManager.MAX_IN_FLIGHT + 10, peer.mutations);
+        assertEquals(10, HintedHandOffManager.instance.getHintsDelivered() - delivered);
+        assertEquals(300, HintStore.instance.count(peer.address));
+        HintStore.instance.delete(peer.address);
+    }
+
+    @Test
+    public void testTargetThroughput()
+    {
+        assertEquals(0, HintedHandOffManager.targetThroughput(0, 1));
+        assertEquals(1048, HintedHandOffManager.targetThroughput(1024, 0));
+        assertEquals(1048, HintedHandOffManager.targetThroughput(1024, 1));
+        // concurrent deliveries share the throttle
+        assertEquals(262, HintedHandOffManager.targetThroughput(1024, 4));
+    }
+
+    /**
+     * Stands in for the endpoint hints are delivered to, acknowledging at most a given number of the mutations
+     * sent to it.  Acknowledgements are held back a little, so that we see how many are left unanswered at once.
+     */
+    private static class Peer extends Thread implements IMessageSink
+    {
+        final InetAddress address;
+        private final int maxAcks;
+        private final List<Message> replies = new ArrayList<Message>();
+        private final List<String> ids = new ArrayList<String>();
+        volatile int mutations;
+        volatile int maxInFlight;
+
+        Peer(InetAddress address, int maxAcks)
+        {
+            this.address = address;
+            this.maxAcks = maxAcks;
+        }
+
+        public synchronized Message handleMessage(Message message, String id, InetAddress to)
+        {
+            if (!address.equals(to))
+                return message;
+
+            assert message.getVerb() == StorageService.Verb.MUTATION;
+            if (mutations++ < maxAcks)
+            {
+                replies.add(message.getReply(address, new byte[0], message.getVersion()));
+                ids.add(id);
+            }
+            maxInFlight = Math.max(maxInFlight, replies.size());
+            return null;
+        }
+
+        public void run()
+        {
+            while (!isInterrupted())
+            {
+                try
+                {
+                    Thread.sleep(10);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                synchronized (this)
+                {
+                    for (int i = 0; i < replies.size(); i++)
+                        MessagingService.instance().receive(replies.get(i), ids.get(i));
+                    replies.clear();
+                    ids.clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.io.util.FastByteArrayOutputStream;
+import org.apache.cassandra.net.CompactEndpointSerializationHelper;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.net.sink.IMessageSink;
+import org.apache.cassandra.net.sink.SinkManager;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+public class MultiRowMutationTest extends SchemaLoader
+{
+    @After
+    public void tearDown()
+    {
+        SinkManager.clear();
+    }
+
+    @Test
+    public void testSerialization() throws IOException
+    {
+        RowMutation rm1 = new RowMutation("Keyspace1", Util.dk("key1").key);
+        rm1.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("Column1")), ByteBufferUtil.bytes("abcd"), 0);
+        RowMutation rm2 = new RowMutation("Keyspace1", Util.dk("key2").key);
+        rm2.add(new QueryPath("Standard2", null, ByteBufferUtil.bytes("Column2")), ByteBufferUtil.bytes("efgh"), 1);
+        rm2.delete(new QueryPath("Standard1"), 2);
+
+        Message message = new MultiRowMutation(Arrays.asList(rm1, rm2)).getMessage(MessagingService.version_);
+        assertEquals(StorageService.Verb.MULTI_MUTATION, message.getVerb());
+        MultiRowMutation deserialized = MultiRowMutation.fromBytes(message.getMessageBody(), MessagingService.version_);
+        assertEquals(2, deserialized.mutations.size());
+        assertEquals(rm1.toString(true), deserialized.mutations.get(0).toString(true));
+        assertEquals(rm2.toString(true), deserialized.mutations.get(1).toString(true));
+    }
+
+    @Test
+    public void testForward() throws Exception
+    {
+        RowMutation rm1 = new RowMutation("Keyspace1", Util.dk("fwd1").key);
+        rm1.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v1"), 0);
+        RowMutation rm2 = new RowMutation("Keyspace1", Util.dk("fwd2").key);
+        rm2.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v2"), 0);
+        Message message = new MultiRowMutation(Arrays.asList(rm1, rm2)).getMessage(MessagingService.version_);
+
+        // as the coordinator of another datacenter would ask us to pass it on
+        final InetAddress other = InetAddress.getByName("127.0.0.7");
+        FastByteArrayOutputStream bos = new FastByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(1);
+        CompactEndpointSerializationHelper.serialize(other, dos);
+        dos.writeUTF("fwd");
+        message = message.withHeaderAdded(RowMutation.FORWARD_HEADER, bos.toByteArray());
+
+        final List<Message> forwarded = new ArrayList<Message>();
+        SinkManager.add(new IMessageSink()
+        {
+            public Message handleMessage(Message message, String id, InetAddress to)
+            {
+                if (!other.equals(to))
+                    return message;
+                assertEquals("fwd", id);
+                forwarded.add(message);
+                return null;
+            }
+        });
+        new MultiRowMutationVerbHandler().doVerb(message, "id");
+
+        // the others get every row, but aren't asked to forward them again
+        assertEquals(1, forwarded.size());
+        assertEquals(StorageService.Verb.MULTI_MUTATION, forwarded.get(0).getVerb());
+        assertNull(forwarded.get(0).getHeader(RowMutation.FORWARD_HEADER));
+        assertEquals(2, MultiRowMutation.fromBytes(forwarded.get(0).getMessageBody(), MessagingService.version_).mutations.size());
+
+        ColumnFamilyStore cfs = Table.open("Keyspace1").getColumnFamilyStore("Standard1");
+        for (String key : Arrays.asList("fwd1", "fwd2"))
+            assertNotNull(cfs.getColumnFamily(QueryFilter.getIdentityFilter(Util.dk(key), new QueryPath("Standard1"))));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.net.InetAddress;
+import java.util.*;
+
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.RangeSliceResponseResolver;
+import org.apache.cassandra.service.StorageService;
+
+import static org.apache.cassandra.Util.column;
+import static org.apache.cassandra.Util.dk;
+import static org.junit.Assert.*;
+
+public class RangeSliceReplyTest extends SchemaLoader
+{
+    private static List<Row> rows(int count)
+    {
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < count; i++)
+        {
+            ColumnFamily cf = ColumnFamily.create("Keyspace1", "Standard1");
+            cf.addColumn(column("c", "value" + i, 1));
+            rows.add(new Row(dk("key" + i), cf));
+        }
+        Collections.sort(rows, new Comparator<Row>()
+        {
+            public int compare(Row r1, Row r2)
+            {
+                return r1.key.compareTo(r2.key);
+            }
+        });
+        return rows;
+    }
+
+    private static Message request(int version) throws Exception
+    {
+        return new Message(InetAddress.getByName("127.0.0.1"), StorageService.Verb.RANGE_SLICE, new byte[0], version);
+    }
+
+    @Test
+    public void testTruncation() throws Exception
+    {
+        List<Row> rows = rows(10);
+        int rowSize = (int) Row.serializer().serializedSize(rows.get(0), MessagingService.version_);
+
+        // room for about three rows
+        Message response = RangeSliceReply.getReply(request(MessagingService.version_), rows.iterator(), 100, 3 * rowSize);
+        RangeSliceReply reply = RangeSliceReply.read(response.getMessageBody(), MessagingService.version_);
+        assertTrue(reply.truncated);
+        assertEquals(rows.subList(0, reply.rows.size()).toString(), reply.rows.toString());
+        assertTrue(reply.rows.size() >= 3 && reply.rows.size() < 10);
+
+        // the row count, not the size, is the limit
+        response = RangeSliceReply.getReply(request(MessagingService.version_), rows.iterator(), 4, Integer.MAX_VALUE);
+        reply = RangeSliceReply.read(response.getMessageBody(), MessagingService.version_);
+        assertFalse(reply.truncated);
+        assertEquals(4, reply.rows.size());
+
+        // at least one row is always sent
+        response = RangeSliceReply.getReply(request(MessagingService.version_), rows.iterator(), 100, 1);
+        reply = RangeSliceReply.read(response.getMessageBody(), MessagingService.version_);
+        assertTrue(reply.truncated);
+        assertEquals(1, reply.rows.size());
+
+        // older coordinators can't ask for the rest, so they get every row
+        response = RangeSliceReply.getReply(request(MessagingService.VERSION_10), rows.iterator(), 100, 1);
+        reply = RangeSliceReply.read(response.getMessageBody(), MessagingService.VERSION_10);
+        assertFalse(reply.truncated);
+        assertEquals(10, reply.rows.size());
+    }
+
+    @Test
+    public void testResolveTruncated() throws Exception
+    {
+        List<Row> rows = rows(6);
+        InetAddress full = InetAddress.getByName("127.0.0.1");
+        InetAddress cut = InetAddress.getByName("127.0.0.2");
+
+        RangeSliceResponseResolver resolver = new RangeSliceResponseResolver("Keyspace1", Arrays.asList(full, cut));
+        Message fullReply = new RangeSliceReply(rows).getReply(request(MessagingService.version_));
+        resolver.preprocess(new Message(full, StorageService.Verb.REQUEST_RESPONSE, fullReply.getMessageBody(), MessagingService.version_));
+        Message cutReply = new RangeSliceReply(rows.subList(0, 2), true).getReply(request(MessagingService.version_));
+        resolver.preprocess(new Message(cut, StorageService.Verb.REQUEST_RESPONSE, cutReply.getMessageBody(), MessagingService.version_));
+
+        // rows past the truncated reply are left for the next page
+        List<Row> resolved = new ArrayList<Row>();
+        for (Row row : resolver.resolve())
+            resolved.add(row);
+        assertEquals(rows.subList(0, 2).toString(), resolved.toString());
+        assertEquals(rows.get(1).key, resolver.getResumeKey());
+        assertTrue(resolver.repairResults.isEmpty());
+    }
+}
@@ -32,7 +32,9 @@ import org.apache.cassandra.Util;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.Message;
 import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
 
@@ -69,6 +71,22 @@ public class ReadMessageTest extends SchemaLoader
         assertEquals(rm2.toString(), rm.toString());
     }
 
+    @Test
+    public void testMakeMultiReadMessage() throws IOException
+    {
+        ReadCommand rm1 = new SliceByNamesReadCommand("Keyspace1", Util.dk("row1").key, new QueryPath("Standard1"), Arrays.asList(ByteBufferUtil.bytes("col1")));
+        ReadCommand rm2 = new SliceFromReadCommand("Keyspace1", Util.dk("row2").key, new QueryPath("Standard1"), ByteBufferUtil.bytes("a"), ByteBufferUtil.bytes("z"), true, 5);
+        rm2.setDigestQuery(true);
+
+        Message message = new MultiReadCommand(Arrays.asList(rm1, rm2)).getMessage(MessagingService.version_);
+        assertEquals(StorageService.Verb.MULTI_READ, message.getVerb());
+        MultiReadCommand multiRead = MultiReadCommand.read(message.getMessageBody(), MessagingService.version_);
+        assertEquals(2, multiRead.commands.size());
+        assertEquals(rm1.toString(), multiRead.commands.get(0).toString());
+        assertEquals(rm2.toString(), multiRead.commands.get(1).toString());
+        assertTrue(multiRead.commands.get(1).isDigestQuery());
+    }
+
     private ReadCommand serializeAndDeserializeReadMessage(ReadCommand rm) throws IOException
     {
         ReadCommandSerializer rms = ReadCommand.serializer();
@@ -0,0 +1,66 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db.compaction;
+
+import org.junit.Test;
+import static junit.framework.Assert.assertEquals;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+
+public class CompactionThroughputControllerTest
+{
+    @Test
+    public void testAdjustments()
+    {
+        int baseline = DatabaseDescriptor.getCompactionThroughputMbPerSec();
+        assertEquals(16, baseline);
+
+        CompactionThroughputController controller = new CompactionThroughputController();
+        controller.setAdaptive(false);
+        controller.update(0, 1, 0);
+        assertEquals(baseline, controller.getThroughputMbPerSec());
+
+        controller.setAdaptive(true);
+        controller.setMaxThroughputMbPerSec(32);
+        controller.setReadLatencyTargetMillis(10);
+
+        // backlog grows: speed up
+        controller.update(1000, 1, 10);
+        assertEquals(20, controller.getThroughputMbPerSec());
+        // backlog stable: hold
+        controller.update(1000, 1, 10);
+        assertEquals(20, controller.getThroughputMbPerSec());
+        // too many sstables per read: speed up, but no further than the max
+        for (int i = 0; i < 10; i++)
+            controller.update(1000, 8, 10);
+        assertEquals(32, controller.getThroughputMbPerSec());
+
+        // slow reads win over the backlog: back off, but no further than a quarter of the baseline
+        controller.update(20000, 8, 20);
+        assertEquals(24, controller.getThroughputMbPerSec());
+        for (int i = 0; i < 10; i++)
+            controller.update(20000, 8, 20);
+        assertEquals(baseline / 4, controller.getThroughputMbPerSec());
+
+        // no backlog: back to the baseline
+        controller.update(1000, 1, 0);
+        assertEquals(baseline, controller.getThroughputMbPerSec());
+        assertEquals(0, controller.getLastPendingTasks());
+    }
+}
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -126,6 +127,45 @@ public class CompactionsTest extends CleanupHelper
         assertMaxTimestamp(store, maxTimestampExpected);
     }
 
+    @Test
+    public void testSlicedCompaction() throws IOException, ExecutionException, InterruptedException
+    {
+        Table table = Table.open(TABLE1);
+        ColumnFamilyStore store = table.getColumnFamilyStore("Standard3");
+        store.clearUnsafe();
+        store.disableAutoCompaction();
+
+        // enough keys per sstable for several index samples
+        final int ROWS_PER_SSTABLE = DatabaseDescriptor.getIndexInterval() * 4;
+        Set<DecoratedKey> inserted = new HashSet<DecoratedKey>();
+        for (int j = 0; j < 3; j++)
+        {
+            for (int i = 0; i < ROWS_PER_SSTABLE; i++)
+            {
+                DecoratedKey key = Util.dk(String.valueOf(j * ROWS_PER_SSTABLE / 2 + i));
+                RowMutation rm = new RowMutation(TABLE1, key.key);
+                rm.add(new QueryPath("Standard3", null, ByteBufferUtil.bytes(String.valueOf(j))), ByteBufferUtil.EMPTY_BYTE_BUFFER, j);
+                rm.apply();
+                inserted.add(key);
+            }
+            store.forceBlockingFlush();
+        }
+
+        Collection<SSTableReader> sstables = store.getSSTables();
+        assertEquals(3, sstables.size());
+        assertEquals(4, CompactionTask.getSlices(sstables, 4).size());
+
+        new CompactionTask(store, sstables, Integer.MAX_VALUE).slices(4).execute(null);
+
+        // each slice wrote its own sstable, and the slices don't overlap
+        List<SSTableReader> compacted = new ArrayList<SSTableReader>(store.getSSTables());
+        assertEquals(4, compacted.size());
+        Collections.sort(compacted, SSTable.sstableComparator);
+        for (int i = 1; i < compacted.size(); i++)
+            assert compacted.get(i - 1).last.compareTo(compacted.get(i).first) < 0;
+        assertEquals(inserted.size(), Util.getRangeSlice(store).size());
+    }
+
     public void assertMaxTimestamp(ColumnFamilyStore store, long maxTimestampExpected)
     {
         long maxTimestampObserved = Long.MIN_VALUE;
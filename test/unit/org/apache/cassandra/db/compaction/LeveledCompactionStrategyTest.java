@@ -0,0 +1,136 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db.compaction;
+
+import java.util.*;
+
+import org.junit.Test;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.db.Table;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+public class LeveledCompactionStrategyTest extends CleanupHelper
+{
+    public static final String TABLE1 = "Keyspace1";
+    public static final String CF = "Standard4";
+
+    @Test
+    public void testConcurrentCandidates() throws Exception
+    {
+        ColumnFamilyStore cfs = Table.open(TABLE1).getColumnFamilyStore(CF);
+        cfs.clearUnsafe();
+        cfs.disableAutoCompaction();
+
+        SSTableReader a = insert(cfs, "a1", "a2");
+        SSTableReader b = insert(cfs, "b1", "b2");
+        LeveledManifest manifest = LeveledManifest.create(cfs, 5);
+
+        // two non-overlapping L0 sstables can be compacted at the same time
+        Collection<SSTableReader> first = manifest.getCompactionCandidates();
+        Collection<SSTableReader> second = manifest.getCompactionCandidates();
+        assertEquals(1, first.size());
+        assertEquals(1, second.size());
+        Set<SSTableReader> both = new HashSet<SSTableReader>(first);
+        both.addAll(second);
+        assertEquals(new HashSet<SSTableReader>(Arrays.asList(a, b)), both);
+        assertTrue(manifest.getCompactionCandidates().isEmpty());
+        cfs.getDataTracker().unmarkCompacting(both);
+
+        // while a is compacting, nothing overlapping it may be
+        SSTableReader c = insert(cfs, "a0", "c0");
+        manifest.add(c);
+        assertEquals(Collections.singleton(a), cfs.getDataTracker().markCompacting(Collections.singleton(a), 1, 1));
+        try
+        {
+            assertTrue(manifest.getCompactionCandidates().isEmpty());
+        }
+        finally
+        {
+            cfs.getDataTracker().unmarkCompacting(Collections.singleton(a));
+        }
+    }
+
+    @Test
+    public void testSizeTieredL0() throws Exception
+    {
+        ColumnFamilyStore cfs = Table.open(TABLE1).getColumnFamilyStore(CF);
+        cfs.clearUnsafe();
+        cfs.disableAutoCompaction();
+
+        int maxCompactingL0 = LeveledManifest.MAX_COMPACTING_L0;
+        LeveledManifest.MAX_COMPACTING_L0 = 4;
+        try
+        {
+            for (int i = 0; i < 5; i++)
+                insert(cfs, "a" + i, "z" + i);
+            LeveledManifest manifest = LeveledManifest.create(cfs, 5);
+
+            // L0 is behind, so it gets compacted with itself
+            Collection<SSTableReader> candidates = manifest.getCompactionCandidates();
+            assertEquals(4, candidates.size());
+            assertTrue(manifest.isSizeTiered(candidates));
+
+            Set<SSTableReader> before = new HashSet<SSTableReader>(cfs.getSSTables());
+            try
+            {
+                new LeveledCompactionTask(cfs, candidates, Integer.MAX_VALUE, Integer.MAX_VALUE).execute(null);
+            }
+            finally
+            {
+                cfs.getDataTracker().unmarkCompacting(candidates);
+            }
+            Set<SSTableReader> added = new HashSet<SSTableReader>(cfs.getSSTables());
+            added.removeAll(before);
+            assertEquals(1, added.size());
+
+            // and the result overlaps the rest of L0, so it stays there
+            manifest.promote(candidates, added);
+            assertEquals(2, manifest.getLevelSize(0));
+            assertEquals(0, manifest.getLevelSize(1));
+            assertTrue(manifest.getLevel(0).containsAll(added));
+        }
+        finally
+        {
+            LeveledManifest.MAX_COMPACTING_L0 = maxCompactingL0;
+        }
+    }
+
+    private static SSTableReader insert(ColumnFamilyStore cfs, String... keys) throws Exception
+    {
+        for (String key : keys)
+        {
+            RowMutation rm = new RowMutation(TABLE1, ByteBufferUtil.bytes(key));
+            rm.add(new QueryPath(CF, null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v"), 0);
+            rm.apply();
+        }
+        Set<SSTableReader> before = new HashSet<SSTableReader>(cfs.getSSTables());
+        cfs.forceBlockingFlush();
+        Set<SSTableReader> added = new HashSet<SSTableReader>(cfs.getSSTables());
+        added.removeAll(before);
+        assert added.size() == 1;
+        return added.iterator().next();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db.compaction;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.db.Table;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.Pair;
+
+public class TimeWindowCompactionStrategyTest extends CleanupHelper
+{
+    public static final String TABLE1 = "Keyspace1";
+    public static final String CF = "Standard4";
+
+    @Test
+    public void testGetWindows()
+    {
+        long hour = TimeUnit.HOURS.toMillis(1);
+        List<Pair<String, Long>> pairs = new ArrayList<Pair<String, Long>>();
+        // microsecond timestamps: two in the first hour, one in the third, two in the fourth
+        pairs.add(new Pair<String, Long>("a", TimeUnit.MILLISECONDS.toMicros(10)));
+        pairs.add(new Pair<String, Long>("b", TimeUnit.MILLISECONDS.toMicros(hour - 1)));
+        pairs.add(new Pair<String, Long>("c", TimeUnit.MILLISECONDS.toMicros(2 * hour + 5)));
+        pairs.add(new Pair<String, Long>("d", TimeUnit.MILLISECONDS.toMicros(3 * hour)));
+        pairs.add(new Pair<String, Long>("e", TimeUnit.MILLISECONDS.toMicros(4 * hour - 1)));
+
+        NavigableMap<Long, List<String>> windows = TimeWindowCompactionStrategy.getWindows(pairs, hour, TimeUnit.MICROSECONDS);
+        assertEquals(3, windows.size());
+        assertEquals(Arrays.asList(0L, 2 * hour, 3 * hour), new ArrayList<Long>(windows.keySet()));
+        assertEquals(Arrays.asList("a", "b"), windows.get(0L));
+        assertEquals(Arrays.asList("c"), windows.get(2 * hour));
+        assertEquals(Arrays.asList("d", "e"), windows.get(3 * hour));
+
+        assertEquals(-hour, TimeWindowCompactionStrategy.getWindowStart(-1, hour));
+        assertEquals(-hour, TimeWindowCompactionStrategy.getWindowStart(-hour, hour));
+    }
+
+    @Test
+    public void testDropExpiredSSTables() throws Exception
+    {
+        Table table = Table.open(TABLE1);
+        ColumnFamilyStore cfs = table.getColumnFamilyStore(CF);
+        cfs.clearUnsafe();
+
+        // oldest data, all expiring
+        insert(cfs, "expired", 1000, 1);
+        SSTableReader expired = Collections.max(cfs.getSSTables(), SSTable.maxTimestampComparator);
+        // live data
+        insert(cfs, "live", 2000, 0);
+        // expiring data that may shadow the live data, so can't be dropped
+        insert(cfs, "shadowing", 3000, 1);
+        assertEquals(3, cfs.getSSTables().size());
+
+        int gcBefore = (int) (System.currentTimeMillis() / 1000) + 60;
+        assertTrue(expired.getMaxLocalDeletionTime() < gcBefore);
+        assertEquals(1000, expired.getMinTimestamp());
+
+        TimeWindowCompactionStrategy strategy = new TimeWindowCompactionStrategy(cfs, Collections.<String, String>emptyMap());
+        AbstractCompactionTask task = strategy.getNextBackgroundTask(gcBefore);
+        assertEquals(Collections.singletonList(expired), new ArrayList<SSTableReader>(task.getSSTables()));
+        assertTrue(task.markSSTablesForCompaction());
+        try
+        {
+            task.execute(null);
+        }
+        finally
+        {
+            task.unmarkSSTables();
+        }
+        assertEquals(2, cfs.getSSTables().size());
+        assertTrue(!cfs.getSSTables().contains(expired));
+
+        // nothing else is expired, and both sstables left are in the newest window but below the threshold
+        assertEquals(null, strategy.getNextBackgroundTask(gcBefore));
+    }
+
+    private static void insert(ColumnFamilyStore cfs, String key, long timestamp, int ttl) throws Exception
+    {
+        RowMutation rm = new RowMutation(TABLE1, ByteBufferUtil.bytes(key));
+        QueryPath path = new QueryPath(CF, null, ByteBufferUtil.bytes("c"));
+        if (ttl > 0)
+            rm.add(path, ByteBufferUtil.bytes("v"), timestamp, ttl);
+        else
+            rm.add(path, ByteBufferUtil.bytes("v"), timestamp);
+        rm.apply();
+        cfs.forceBlockingFlush();
+    }
+}
@@ -26,7 +26,9 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 import org.apache.cassandra.Util;
@@ -315,6 +317,110 @@ public class CounterContextTest
         assertEquals( 1L,  merged.getLong(merged.position() + hd + 0*stepLength + idLength + clockLength));
     }
 
+    @Test
+    public void testMergeWide()
+    {
+        runMergeWide(HeapAllocator.instance);
+        runMergeWide(bumpedSlab());
+    }
+
+    private void runMergeWide(Allocator allocator)
+    {
+        Random random = new Random(0);
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 300; i++)
+            ids.add(NodeId.generate());
+        // some ids with the high bit set, which must sort after the others
+        for (int i = 0; i < 10; i++)
+        {
+            ByteBuffer id = ByteBuffer.allocate(NodeId.LENGTH);
+            id.put(0, (byte) 0xF0).putLong(8, random.nextLong());
+            ids.add(NodeId.wrap(id));
+        }
+        Collections.sort(ids);
+
+        // for each id: 0 = left only, 1 = right only, 2 = both; with random delta flags and clocks
+        int[] where = new int[ids.size()];
+        boolean[] leftDelta = new boolean[ids.size()], rightDelta = new boolean[ids.size()];
+        long[] leftClock = new long[ids.size()], rightClock = new long[ids.size()];
+        int leftCount = 0, rightCount = 0, leftDeltas = 0, rightDeltas = 0;
+        for (int i = 0; i < ids.size(); i++)
+        {
+            where[i] = random.nextInt(3);
+            leftDelta[i] = random.nextInt(4) == 0;
+            rightDelta[i] = random.nextInt(4) == 0;
+            leftClock[i] = random.nextInt(10) - 2;
+            rightClock[i] = random.nextInt(10) - 2;
+            if (where[i] != 1)
+            {
+                leftCount++;
+                leftDeltas += leftDelta[i] ? 1 : 0;
+            }
+            if (where[i] != 0)
+            {
+                rightCount++;
+                rightDeltas += rightDelta[i] ? 1 : 0;
+            }
+        }
+        ContextState left = ContextState.allocate(leftCount, leftDeltas, allocator);
+        ContextState right = ContextState.allocate(rightCount, rightDeltas, allocator);
+        for (int i = 0; i < ids.size(); i++)
+        {
+            if (where[i] != 1)
+                left.writeElement(ids.get(i), leftClock[i], i, leftDelta[i]);
+            if (where[i] != 0)
+                right.writeElement(ids.get(i), rightClock[i], 1000 + i, rightDelta[i]);
+        }
+
+        ContextState merged = new ContextState(cc.merge(left.context, right.context, allocator));
+        long total = 0;
+        for (int i = 0; i < ids.size(); i++)
+        {
+            assert merged.hasRemaining();
+            assertEquals(ids.get(i), merged.getNodeId());
+            if (where[i] == 0 || where[i] == 1)
+            {
+                // only on one side: copied as is
+                boolean delta = where[i] == 0 ? leftDelta[i] : rightDelta[i];
+                assertEquals(delta, merged.isDelta());
+                assertEquals(where[i] == 0 ? leftClock[i] : rightClock[i], merged.getClock());
+                assertEquals(where[i] == 0 ? i : 1000 + i, merged.getCount());
+            }
+            else if (leftDelta[i] && rightDelta[i])
+            {
+                // delta + delta = sum
+                assert merged.isDelta();
+                assertEquals(leftClock[i] + rightClock[i], merged.getClock());
+                assertEquals(1000 + 2 * i, merged.getCount());
+            }
+            else if (leftDelta[i] || rightDelta[i])
+            {
+                // delta + other = the delta
+                assert merged.isDelta();
+                assertEquals(leftDelta[i] ? i : 1000 + i, merged.getCount());
+            }
+            else
+            {
+                // other + other = highest clock
+                long l = leftClock[i], r = rightClock[i];
+                boolean leftWins = (l >= 0 && r > 0 && l >= r) || (l < 0 && (r > 0 || l < r));
+                assert !merged.isDelta();
+                assertEquals(leftWins ? l : r, merged.getClock());
+                assertEquals(leftWins ? i : 1000 + i, merged.getCount());
+            }
+            total += merged.getCount();
+            merged.moveToNext();
+        }
+        assert !merged.hasRemaining();
+        assertEquals(total, cc.total(merged.context));
+
+        // each side is a subset of the merge of both
+        ByteBuffer mergedContext = cc.merge(left.context, right.context, allocator);
+        assertEquals(ContextRelationship.EQUAL, cc.diff(mergedContext, mergedContext));
+        assert cc.diff(mergedContext, left.context) != ContextRelationship.LESS_THAN;
+        assert cc.diff(right.context, mergedContext) != ContextRelationship.GREATER_THAN;
+    }
+
     @Test
     public void testTotal()
     {
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.index;
+
+import org.junit.Test;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+public class IndexStatisticsTest
+{
+    @Test
+    public void testEstimateEntries()
+    {
+        IndexStatistics statistics = new IndexStatistics();
+        for (int i = 0; i < 10000; i++)
+            statistics.add(ByteBufferUtil.bytes("rare" + i), 1);
+        statistics.add(ByteBufferUtil.bytes("heavy"), 5000);
+
+        // a heavy hitter is counted (nearly) right...
+        long heavy = statistics.estimateEntries(ByteBufferUtil.bytes("heavy"));
+        assert heavy >= 5000 && heavy <= 5020 : heavy;
+
+        // ...while a rare value, or one never seen, is no more than the mean of about 1.5 entries per
+        // distinct value, rather than whatever its count-min counters collided with
+        for (int i = 0; i < 100; i++)
+        {
+            long rare = statistics.estimateEntries(ByteBufferUtil.bytes("rare" + i));
+            assert rare >= 1 && rare <= 2 : rare;
+        }
+        assert statistics.estimateEntries(ByteBufferUtil.bytes("unseen")) <= 2;
+    }
+}
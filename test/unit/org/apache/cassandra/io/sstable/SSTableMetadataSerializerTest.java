@@ -44,12 +44,16 @@ public class SSTableMetadataSerializerTest
             new long[] { 8L, 9L, 10L });
         ReplayPosition rp = new ReplayPosition(11L, 12);
         long maxTimestamp = 4162517136L;
+        long minTimestamp = 4162517000L;
+        int maxLocalDeletionTime = 1324000000;
 
         SSTableMetadata.Collector collector = SSTableMetadata.createCollector()
                                                              .estimatedRowSize(rowSizes)
                                                              .estimatedColumnCount(columnCounts)
                                                              .replayPosition(rp);
         collector.updateMaxTimestamp(maxTimestamp);
+        collector.updateMinTimestamp(minTimestamp);
+        collector.updateMaxLocalDeletionTime(maxLocalDeletionTime);
         SSTableMetadata originalMetadata = collector.finalizeMetadata(RandomPartitioner.class.getCanonicalName());
 
         ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
@@ -70,6 +74,8 @@ public class SSTableMetadataSerializerTest
         assert stats.replayPosition.equals(rp);
         assert stats.maxTimestamp == maxTimestamp;
         assert stats.maxTimestamp == originalMetadata.maxTimestamp;
+        assert stats.minTimestamp == minTimestamp;
+        assert stats.maxLocalDeletionTime == maxLocalDeletionTime;
         assert RandomPartitioner.class.getCanonicalName().equals(stats.partitioner);
     }
 }
@@ -36,6 +36,7 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
 import org.apache.cassandra.db.compaction.CompactionManager;
+import org.apache.cassandra.db.compaction.CompactionTask;
 import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
@@ -142,6 +143,49 @@ public class SSTableReaderTest extends CleanupHelper
         }
     }
 
+    @Test
+    public void testKeyIteratorSlices() throws IOException, ExecutionException, InterruptedException
+    {
+        Table table = Table.open("Keyspace1");
+        ColumnFamilyStore store = table.getColumnFamilyStore("Standard3");
+
+        // two overlapping sstables
+        CompactionManager.instance.disableAutoCompaction();
+        for (int j = 0; j < 1000; j++)
+        {
+            if (j == 700)
+                store.forceBlockingFlush();
+            for (int k : new int[]{ j, j - 400 })
+            {
+                if (k < 0)
+                    continue;
+                RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes(String.valueOf(k)));
+                rm.add(new QueryPath("Standard3", null, ByteBufferUtil.bytes("0")), ByteBufferUtil.EMPTY_BYTE_BUFFER, j);
+                rm.apply();
+            }
+        }
+        store.forceBlockingFlush();
+
+        // the slices together must return every key exactly once, in order
+        List<Range<Token>> slices = CompactionTask.getSlices(store.getSSTables(), 4);
+        assert slices.size() > 1 : slices;
+        List<DecoratedKey> keys = new ArrayList<DecoratedKey>();
+        for (Range<Token> slice : slices)
+        {
+            ReducingKeyIterator iter = new ReducingKeyIterator(store.getSSTables(), slice);
+            while (iter.hasNext())
+            {
+                DecoratedKey key = iter.next();
+                assert slice.contains(key.token);
+                assert keys.isEmpty() || keys.get(keys.size() - 1).compareTo(key) < 0;
+                keys.add(key);
+            }
+            assert iter.getBytesRead() <= iter.getTotalBytes();
+            iter.close();
+        }
+        assertEquals(1000, keys.size());
+    }
+
     @Test
     public void testPersistentStatistics() throws IOException, ExecutionException, InterruptedException
     {
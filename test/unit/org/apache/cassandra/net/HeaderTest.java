@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HeaderTest
+{
+    private static Header roundTrip(Header header, int version) throws IOException
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        Header.serializer().serialize(header, out, version);
+        assertEquals(header.serializedSize(version), out.getLength());
+
+        DataInputStream in = new DataInputStream(new FastByteArrayInputStream(out.getData(), 0, out.getLength()));
+        Header deserialized = Header.serializer().deserialize(in, version);
+        assertEquals(0, in.available());
+        return deserialized;
+    }
+
+    @Test
+    public void testTimestamp() throws IOException
+    {
+        byte[] value = ByteBufferUtil.bytes("value").array();
+        Header header = new Header(InetAddress.getByName("127.0.0.1"), StorageService.Verb.MUTATION, Collections.singletonMap("key", value));
+        assertEquals(0, header.getTimestamp());
+
+        long before = System.currentTimeMillis();
+        Header deserialized = roundTrip(header, MessagingService.VERSION_11);
+        long after = System.currentTimeMillis();
+
+        // the time it was sent at, which isn't one of its details
+        assertTrue(deserialized.getTimestamp() >= before && deserialized.getTimestamp() <= after);
+        assertNull(deserialized.getDetail(HeaderSerializer.TIMESTAMP_KEY));
+        assertArrayEquals(value, deserialized.getDetail("key"));
+        assertEquals(header.getFrom(), deserialized.getFrom());
+        assertEquals(header.getVerb(), deserialized.getVerb());
+    }
+
+    @Test
+    public void testTimestampOlderVersion() throws IOException
+    {
+        byte[] value = ByteBufferUtil.bytes("value").array();
+        Header header = new Header(InetAddress.getByName("127.0.0.1"), StorageService.Verb.MUTATION, Collections.singletonMap("key", value));
+
+        // older nodes don't know it, so it isn't sent to them
+        Header deserialized = roundTrip(header, MessagingService.VERSION_10);
+        assertEquals(0, deserialized.getTimestamp());
+        assertArrayEquals(value, deserialized.getDetail("key"));
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+import org.apache.cassandra.service.StorageService;
+
+import static org.junit.Assert.assertEquals;
+
+public class VerbMetricsTest
+{
+    private static long count(long[] buckets)
+    {
+        long count = 0;
+        for (long bucket : buckets)
+            count += bucket;
+        return count;
+    }
+
+    @Test
+    public void testRecording()
+    {
+        VerbMetrics metrics = new VerbMetrics();
+        metrics.addOutboundQueueNanos(5000);
+        metrics.addStageWaitNanos(5000);
+        metrics.addProcessingNanos(5000);
+        metrics.addSize(100);
+        metrics.addCrossNodeMillis(5);
+        // clock skew between the nodes
+        metrics.addCrossNodeMillis(-5);
+
+        assertEquals(1, count(metrics.getRecentOutboundQueueHistogramMicros()));
+        assertEquals(1, count(metrics.getRecentStageWaitHistogramMicros()));
+        assertEquals(1, count(metrics.getRecentProcessingHistogramMicros()));
+        assertEquals(1, count(metrics.getRecentSizeHistogram()));
+        assertEquals(1, count(metrics.getRecentCrossNodeHistogramMicros()));
+
+        // recent histograms start over once read
+        assertEquals(0, count(metrics.getRecentProcessingHistogramMicros()));
+    }
+
+    @Test
+    public void testDelivery() throws Exception
+    {
+        StorageService.Verb verb = StorageService.Verb.UNUSED_1;
+        VerbMetrics metrics = VerbMetrics.get(verb);
+        metrics.getRecentStageWaitHistogramMicros();
+        metrics.getRecentProcessingHistogramMicros();
+
+        MessagingService.instance().registerVerbHandlers(verb, new IVerbHandler()
+        {
+            public void doVerb(Message message, String id)
+            {
+            }
+        });
+        Message message = new Message(InetAddress.getByName("127.0.0.1"), verb, new byte[0], MessagingService.version_);
+        new MessageDeliveryTask(message, "id").run();
+
+        // the time waiting for a stage thread and the time in the handler of the message's verb
+        assertEquals(1, count(metrics.getRecentStageWaitHistogramMicros()));
+        assertEquals(1, count(metrics.getRecentProcessingHistogramMicros()));
+    }
+}
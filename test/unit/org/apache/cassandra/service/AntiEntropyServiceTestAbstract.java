@@ -22,6 +22,7 @@ import java.net.InetAddress;
 import java.util.*;
 import java.util.concurrent.*;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.junit.After;
 import org.junit.Before;
@@ -131,6 +132,23 @@ public abstract class AntiEntropyServiceTestAbstract extends CleanupHelper
         assertTrue(validator.tree.size() > 1);
     }
     
+    @Test
+    public void testValidatorTreeSize() throws Throwable
+    {
+        assertEquals(Validator.MIN_TREE_SIZE, Validator.treeSize(0, 1000));
+        assertEquals(100000, Validator.treeSize(100000, 1000));
+        assertEquals(Validator.MAX_TREE_SIZE, Validator.treeSize(Long.MAX_VALUE, 1000));
+        assertTrue(Validator.MAX_TREE_SIZE <= ValidationCache.MAX_LEAVES);
+        // without row-level repair, trees stay the size they always were
+        assertEquals(Validator.MIN_TREE_SIZE, Validator.treeSize(100000, 0));
+        assertEquals(Validator.MIN_TREE_SIZE, Validator.treeSize(Long.MAX_VALUE, 0));
+
+        assertEquals(0, DatabaseDescriptor.getRepairRowLevelMaxRows());
+        Validator validator = new Validator(request);
+        validator.prepare(store);
+        assertEquals(Validator.MIN_TREE_SIZE, validator.tree.maxsize());
+    }
+
     @Test
     public void testValidatorComplete() throws Throwable
     {
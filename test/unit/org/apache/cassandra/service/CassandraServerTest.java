@@ -18,9 +18,34 @@
 */
 package org.apache.cassandra.service;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 
 import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.cql.CQLStatement;
+import org.apache.cassandra.cql.QueryProcessor;
+import org.apache.cassandra.cql.SelectStatement;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.db.Table;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.thrift.*;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
 
 public class CassandraServerTest extends CleanupHelper
 {
@@ -57,4 +82,299 @@ public class CassandraServerTest extends CleanupHelper
         }
         */
     }
+
+    @Test
+    public void testRangeSliceCursor() throws Throwable
+    {
+        StorageService.instance.getTokenMetadata().updateNormalToken(StorageService.getPartitioner().getRandomToken(), FBUtilities.getBroadcastAddress());
+        DatabaseDescriptor.setThriftCursorTimeout(60000);
+        try
+        {
+            ColumnFamilyStore cfs = Table.open("Keyspace1").getColumnFamilyStore("Standard1");
+            for (int i = 0; i < 10; i++)
+                insert(cfs, "key" + i);
+            cfs.forceBlockingFlush();
+
+            CassandraServer server = new CassandraServer();
+            server.set_keyspace("Keyspace1");
+            ColumnParent parent = new ColumnParent("Standard1");
+            SlicePredicate predicate = new SlicePredicate().setSlice_range(new SliceRange(ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, 100));
+            KeyRange range = new KeyRange(4).setStart_key(bytes("key0")).setEnd_key(ByteBufferUtil.EMPTY_BYTE_BUFFER);
+            List<String> keys = keys(server.get_range_slices(parent, predicate, range, ConsistencyLevel.ONE));
+            assert keys.size() == 4 : keys;
+
+            // the following pages continue the cursor of the first, which doesn't see a row written after it was opened...
+            insert(cfs, "key15");
+            range.setStart_key(bytes(keys.get(keys.size() - 1)));
+            List<String> page = keys(server.get_range_slices(parent, predicate, range, ConsistencyLevel.ONE));
+            assert page.equals(keys("key3", "key4", "key5", "key6")) : page;
+            keys.addAll(page.subList(1, page.size()));
+
+            // ...until it is flushed: the cursor is then closed, and the next page seeks to its start in the new data
+            insert(cfs, "key65");
+            cfs.forceBlockingFlush();
+            while (true)
+            {
+                range.setStart_key(bytes(keys.get(keys.size() - 1)));
+                page = keys(server.get_range_slices(parent, predicate, range, ConsistencyLevel.ONE));
+                assert page.get(0).equals(keys.get(keys.size() - 1)) : page;
+                keys.addAll(page.subList(1, page.size()));
+                if (page.size() < range.count)
+                    break;
+            }
+            assert keys.equals(keys("key0", "key1", "key2", "key3", "key4", "key5", "key6", "key65", "key7", "key8", "key9")) : keys;
+
+            // a new query sees both
+            range.setStart_key(bytes("key1")).setCount(3);
+            keys = keys(server.get_range_slices(parent, predicate, range, ConsistencyLevel.ONE));
+            assert keys.equals(keys("key1", "key15", "key2")) : keys;
+        }
+        finally
+        {
+            DatabaseDescriptor.setThriftCursorTimeout(0);
+            StorageService.instance.getTokenMetadata().clearUnsafe();
+        }
+    }
+
+    @Test
+    public void testSharedPreparedStatements() throws Throwable
+    {
+        CassandraServer server = new CassandraServer();
+        server.set_keyspace("Keyspace1");
+
+        // clients preparing the same query share one statement
+        String update = "UPDATE Standard1 SET 'cc' = ? WHERE KEY = ?";
+        int id = server.prepare_cql_query(bytes(update), Compression.NONE).itemId;
+        CQLStatement statement = QueryProcessor.getPrepared(id);
+        assert QueryProcessor.prepare(update).itemId == id;
+        assert QueryProcessor.getPrepared(id) == statement;
+
+        // queries whose hashes collide ("Aa" and "BB") get ids of their own, as ids aren't hashes
+        String select1 = "SELECT 'cc' FROM Standard1 WHERE KEY = 'Aa'";
+        String select2 = "SELECT 'cc' FROM Standard1 WHERE KEY = 'BB'";
+        assert select1.hashCode() == select2.hashCode();
+        int id1 = QueryProcessor.prepare(select1).itemId;
+        int id2 = QueryProcessor.prepare(select2).itemId;
+        assert id1 != id2;
+        assert QueryProcessor.getPrepared(id1).queryString.equals(select1);
+        assert QueryProcessor.getPrepared(id2).queryString.equals(select2);
+
+        StorageService.instance.getTokenMetadata().updateNormalToken(StorageService.getPartitioner().getRandomToken(), FBUtilities.getBroadcastAddress());
+        try
+        {
+            // keys are hex: "k1" and "k2"
+            server.execute_prepared_cql_query(id, Arrays.asList("01", "6b31"));
+            server.execute_prepared_cql_query(id, Arrays.asList("02", "6b32"));
+            int select = QueryProcessor.prepare("SELECT 'cc' FROM Standard1 WHERE KEY = ?").itemId;
+            for (String[] row : new String[][]{ { "6b31", "01" }, { "6b32", "02" } })
+            {
+                CqlResult result = server.execute_prepared_cql_query(select, Arrays.asList(row[0]));
+                assert result.rows.size() == 1 : result;
+                assert result.rows.get(0).columns.get(0).value.equals(ByteBufferUtil.hexToBytes(row[1])) : result;
+            }
+        }
+        finally
+        {
+            StorageService.instance.getTokenMetadata().clearUnsafe();
+        }
+    }
+
+    @Test
+    public void testPreparedKeyAliasPerKeyspace() throws Throwable
+    {
+        // a column family of the same name in another keyspace, where userid is the key alias
+        CFMetaData plain = Schema.instance.getCFMetaData("Keyspace1", "Standard1");
+        CFMetaData aliased = CFMetaData.renameTable(plain, "Keyspace2").keyAlias(bytes("userid"));
+
+        int id = QueryProcessor.prepare("SELECT 'cc' FROM Standard1 WHERE userid = 'k1'").itemId;
+        SelectStatement select = (SelectStatement) QueryProcessor.getPrepared(id).statement;
+
+        // the relation is a key for one keyspace...
+        SelectStatement extracted = select.extractKeyAliasFromColumns(aliased);
+        assert extracted != select;
+        assert extracted.getKeys().size() == 1 && extracted.getColumnRelations().isEmpty();
+        assert extracted.getKeyAlias().equals("USERID");
+
+        // ...but stays a column for the other, whichever was executed first
+        assert select.getKeys().isEmpty() && select.getColumnRelations().size() == 1;
+        assert select.extractKeyAliasFromColumns(plain) == select;
+    }
+
+    @Test
+    public void testPackedResults() throws Throwable
+    {
+        for (String key : new String[]{ "7031", "7032" })
+        {
+            RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.hexToBytes(key));
+            rm.add(new QueryPath("Standard1", null, ByteBufferUtil.hexToBytes("aa")), bytes("a" + key), 1);
+            rm.add(new QueryPath("Standard1", null, ByteBufferUtil.hexToBytes("bb")), bytes("b" + key), 2);
+            rm.apply();
+        }
+
+        CassandraServer server = new CassandraServer();
+        server.set_keyspace("Keyspace1");
+        StorageService.instance.getTokenMetadata().updateNormalToken(StorageService.getPartitioner().getRandomToken(), FBUtilities.getBroadcastAddress());
+        try
+        {
+            // named columns, one of them missing; a wildcard, which includes the key; a reversed range; and a count
+            for (String query : new String[]{ "SELECT 'bb', 'cc', 'aa' FROM Standard1 WHERE KEY IN ('7031', '7032')",
+                                              "SELECT * FROM Standard1 WHERE KEY = '7032'",
+                                              "SELECT FIRST 10 REVERSED ''..'' FROM Standard1 WHERE KEY IN ('7031', '7032')",
+                                              "SELECT COUNT(*) FROM Standard1 WHERE KEY IN ('7031', '7032')" })
+            {
+                server.set_cql_result_format("rows");
+                CqlResult rows = server.execute_cql_query(bytes(query), Compression.NONE);
+                server.set_cql_result_format("packed");
+                CqlResult packed = server.execute_cql_query(bytes(query), Compression.NONE);
+
+                assert !rows.isSetPacked_rows() && !packed.isSetRows();
+                assert packed.schema.equals(rows.schema);
+                List<CqlRow> unpacked = unpack(packed.packed_rows);
+                if (query.contains("COUNT"))
+                {
+                    // a count has no timestamp, which the packed format gives as -1
+                    assert !rows.rows.get(0).columns.get(0).isSetTimestamp();
+                    assert unpacked.get(0).columns.get(0).timestamp == -1;
+                    unpacked.get(0).columns.get(0).unsetTimestamp();
+                }
+                assert unpacked.equals(rows.rows) : rows + " " + packed;
+            }
+        }
+        finally
+        {
+            StorageService.instance.getTokenMetadata().clearUnsafe();
+        }
+
+        try
+        {
+            server.set_cql_result_format("columns");
+            assert false;
+        }
+        catch (InvalidRequestException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAsyncWrites() throws Throwable
+    {
+        StorageService.instance.getTokenMetadata().updateNormalToken(StorageService.getPartitioner().getRandomToken(), FBUtilities.getBroadcastAddress());
+        try
+        {
+            CassandraServer server = new CassandraServer();
+            server.set_keyspace("Keyspace1");
+            ColumnParent parent = new ColumnParent("Standard1");
+            ColumnPath path = new ColumnPath("Standard1").setColumn(bytes("c1"));
+
+            AsyncWrite write = new AsyncWrite();
+            server.insert(bytes("asynckey"), parent, new Column(bytes("c1")).setValue(bytes("v1")).setTimestamp(1), ConsistencyLevel.ONE, write);
+            write.await();
+            assert server.get(bytes("asynckey"), path, ConsistencyLevel.ONE).column.value.equals(bytes("v1"));
+
+            write = new AsyncWrite();
+            server.remove(bytes("asynckey"), path, 2, ConsistencyLevel.ONE, write);
+            write.await();
+            try
+            {
+                server.get(bytes("asynckey"), path, ConsistencyLevel.ONE);
+                assert false;
+            }
+            catch (NotFoundException e)
+            {
+                // expected
+            }
+
+            // an empty batch completes too, since the client is waiting for its response
+            write = new AsyncWrite();
+            server.batch_mutate(new HashMap<ByteBuffer, Map<String, List<Mutation>>>(), ConsistencyLevel.ONE, write);
+            write.await();
+        }
+        finally
+        {
+            StorageService.instance.getTokenMetadata().clearUnsafe();
+        }
+    }
+
+    private static class AsyncWrite extends StorageProxy.AsyncWrite
+    {
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        protected void onComplete()
+        {
+            completed.countDown();
+        }
+
+        public void await() throws Exception
+        {
+            assert completed.await(DatabaseDescriptor.getRpcTimeout() * 2, TimeUnit.MILLISECONDS);
+            get();
+        }
+    }
+
+    private static List<CqlRow> unpack(ByteBuffer block)
+    {
+        ByteBuffer in = block.duplicate();
+        // the names come last, so remember the index of each column until then
+        List<Integer> indexes = new ArrayList<Integer>();
+        List<CqlRow> rows = new ArrayList<CqlRow>();
+        for (int i = in.getInt(); i > 0; i--)
+        {
+            CqlRow row = new CqlRow(read(in, in.getInt()), new ArrayList<Column>());
+            for (int j = in.getInt(); j > 0; j--)
+            {
+                Column column = new Column();
+                indexes.add(in.getInt());
+                long timestamp = in.getLong();
+                int length = in.getInt();
+                if (length >= 0)
+                    column.setValue(read(in, length)).setTimestamp(timestamp);
+                row.columns.add(column);
+            }
+            rows.add(row);
+        }
+        List<ByteBuffer> names = new ArrayList<ByteBuffer>();
+        for (int i = in.getInt(); i > 0; i--)
+            names.add(read(in, in.getInt()));
+        assert !in.hasRemaining();
+
+        Iterator<Integer> index = indexes.iterator();
+        for (CqlRow row : rows)
+        {
+            for (Column column : row.columns)
+                column.setName(names.get(index.next()));
+        }
+        return rows;
+    }
+
+    private static ByteBuffer read(ByteBuffer in, int length)
+    {
+        ByteBuffer bytes = in.duplicate();
+        bytes.limit(bytes.position() + length);
+        in.position(in.position() + length);
+        return bytes;
+    }
+
+    private static void insert(ColumnFamilyStore cfs, String key) throws Exception
+    {
+        RowMutation rm = new RowMutation("Keyspace1", bytes(key));
+        rm.add(new QueryPath("Standard1", null, bytes("c")), bytes(key), 0);
+        rm.apply();
+    }
+
+    private static List<String> keys(List<KeySlice> slices) throws Exception
+    {
+        List<String> keys = new ArrayList<String>();
+        for (KeySlice slice : slices)
+            keys.add(ByteBufferUtil.string(slice.key));
+        return keys;
+    }
+
+    private static List<String> keys(String... keys)
+    {
+        List<String> list = new ArrayList<String>();
+        for (String key : keys)
+            list.add(key);
+        return list;
+    }
 }
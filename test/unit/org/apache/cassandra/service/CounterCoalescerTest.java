@@ -0,0 +1,164 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.concurrent.CreationTimeAwareFuture;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.context.CounterContext.ContextState;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CounterCoalescerTest extends CleanupHelper
+{
+    @Test
+    public void testCoalescing() throws Throwable
+    {
+        // make this node the only replica of everything
+        StorageService.instance.getTokenMetadata().updateNormalToken(StorageService.getPartitioner().getRandomToken(), FBUtilities.getBroadcastAddress());
+        StorageProxy.instance.setCounterCoalescingWindow(500);
+        try
+        {
+            final ByteBuffer key = bytes("coalesced");
+            final int increments = 10;
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < increments; i++)
+            {
+                final int value = i + 1;
+                Thread thread = new Thread()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            RowMutation rm = new RowMutation("Keyspace1", key);
+                            rm.addCounter(new QueryPath("Counter1", null, bytes("c")), value);
+                            start.await();
+                            StorageProxy.mutate(Collections.singletonList(new CounterMutation(rm, ConsistencyLevel.ONE)), ConsistencyLevel.ONE);
+                        }
+                        catch (Throwable t)
+                        {
+                            errors.add(t);
+                        }
+                    }
+                };
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads)
+                thread.join();
+            if (!errors.isEmpty())
+                throw errors.get(0);
+
+            ColumnFamily cf = Util.getColumnFamily(Table.open("Keyspace1"), Util.dk("coalesced"), "Counter1");
+            CounterColumn column = (CounterColumn) cf.getColumn(bytes("c"));
+            assertEquals(increments * (increments + 1) / 2, column.total());
+            // each update of the counter bumps the clock of our shard: the increments were applied together
+            ContextState state = new ContextState(column.value());
+            assert state.getClock() < increments : state.getClock();
+        }
+        finally
+        {
+            StorageProxy.instance.setCounterCoalescingWindow(0);
+            StorageService.instance.getTokenMetadata().clearUnsafe();
+        }
+    }
+
+    @Test
+    public void testHandlerDelegatesToBatch() throws Throwable
+    {
+        StorageService.instance.getTokenMetadata().updateNormalToken(StorageService.getPartitioner().getRandomToken(), FBUtilities.getBroadcastAddress());
+        int window = 100;
+        StorageProxy.instance.setCounterCoalescingWindow(window);
+        try
+        {
+            RowMutation rm = new RowMutation("Keyspace1", bytes("delegated"));
+            rm.addCounter(new QueryPath("Counter1", null, bytes("c")), 1);
+            IWriteResponseHandler handler = CounterCoalescer.instance.add(new CounterMutation(rm, ConsistencyLevel.ONE), DatabaseDescriptor.getEndpointSnitch().getDatacenter(FBUtilities.getBroadcastAddress()));
+
+            // used through the interface, the handler hands both on to the handler of the applied batch
+            ListenableFutureTask<Void> hint = new ListenableFutureTask<Void>(new Runnable() { public void run() {} }, null);
+            handler.addFutureForHint(new CreationTimeAwareFuture<Void>(hint));
+            handler.response(null);
+
+            final CountDownLatch done = new CountDownLatch(1);
+            handler.addCallback(new Runnable()
+            {
+                public void run()
+                {
+                    done.countDown();
+                }
+            });
+            // the batch is applied, but its handler waits on our hint
+            assertFalse(done.await(window * 5, TimeUnit.MILLISECONDS));
+            assertFalse(handler.isDone());
+
+            hint.run();
+            assertTrue(done.await(DatabaseDescriptor.getRpcTimeout(), TimeUnit.MILLISECONDS));
+            handler.get();
+            assertTrue(handler.isDone());
+        }
+        finally
+        {
+            StorageProxy.instance.setCounterCoalescingWindow(0);
+            StorageService.instance.getTokenMetadata().clearUnsafe();
+        }
+    }
+
+    @Test
+    public void testWindowValidation()
+    {
+        int rpcTimeout = (int) DatabaseDescriptor.getRpcTimeout();
+        for (int window : new int[]{ -1, rpcTimeout, rpcTimeout + 1 })
+        {
+            try
+            {
+                StorageProxy.instance.setCounterCoalescingWindow(window);
+                assert false : window;
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+        }
+        assertEquals(0, StorageProxy.instance.getCounterCoalescingWindow());
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.db.Table;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.utils.CloseableIterator;
+
+import static org.apache.cassandra.Util.dk;
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+
+public class RowCursorTest extends CleanupHelper
+{
+    private final ColumnFamilyStore cfs = Table.open("Keyspace1").getColumnFamilyStore("Standard1");
+    private int maxLifetime;
+    private int maxCursors;
+
+    @Before
+    public void setUp()
+    {
+        maxLifetime = DatabaseDescriptor.getThriftCursorMaxLifetime();
+        maxCursors = DatabaseDescriptor.getThriftMaxCursors();
+        DatabaseDescriptor.setThriftCursorTimeout(60000);
+    }
+
+    @After
+    public void tearDown()
+    {
+        DatabaseDescriptor.setThriftCursorTimeout(0);
+        DatabaseDescriptor.setThriftCursorMaxLifetime(maxLifetime);
+        DatabaseDescriptor.setThriftMaxCursors(maxCursors);
+    }
+
+    @Test
+    public void testMaxLifetime() throws Exception
+    {
+        DatabaseDescriptor.setThriftCursorMaxLifetime(500);
+        Rows rows = new Rows(10);
+        RowCursor cursor = new RowCursor(rows, cfs);
+
+        // closed once it's been open long enough, although it's in use all along
+        for (int i = 0; i < 500 && !rows.closed; i++)
+        {
+            cursor.next(1, false);
+            Thread.sleep(10);
+        }
+        assert rows.closed;
+        assert cursor.next(1, false) == null;
+    }
+
+    @Test
+    public void testMaxCursors() throws Exception
+    {
+        DatabaseDescriptor.setThriftMaxCursors(2);
+        Rows rows1 = new Rows(10);
+        RowCursor cursor1 = new RowCursor(rows1, cfs);
+        Thread.sleep(10);
+        Rows rows2 = new Rows(10);
+        RowCursor cursor2 = new RowCursor(rows2, cfs);
+        Thread.sleep(10);
+        cursor1.next(1, false);
+
+        // the least recently used cursor makes room
+        Rows rows3 = new Rows(10);
+        RowCursor cursor3 = new RowCursor(rows3, cfs);
+        assert !rows1.closed && rows2.closed && !rows3.closed;
+        assert cursor2.isExhausted();
+
+        cursor1.close();
+        cursor3.close();
+    }
+
+    @Test
+    public void testFlush() throws Exception
+    {
+        Rows rows = new Rows(10);
+        RowCursor cursor = new RowCursor(rows, cfs);
+        assert cursor.next(1, false).size() == 1;
+
+        // a flush closes the cursor, so that it doesn't keep the flushed memtable around
+        RowMutation rm = new RowMutation("Keyspace1", bytes("key0"));
+        rm.add(new QueryPath("Standard1", null, bytes("c")), bytes("v"), 0);
+        rm.apply();
+        cfs.forceBlockingFlush();
+        assert cursor.isExhausted();
+        assert cursor.next(1, false) == null;
+        assert rows.closed;
+    }
+
+    /**
+     * A number of rows, remembering whether they were closed.
+     */
+    private static class Rows implements CloseableIterator<Row>
+    {
+        private final Iterator<Row> rows;
+        volatile boolean closed;
+
+        Rows(int count)
+        {
+            List<Row> rows = new ArrayList<Row>();
+            for (int i = 0; i < count; i++)
+                rows.add(new Row(dk("key" + i), null));
+            this.rows = rows.iterator();
+        }
+
+        public boolean hasNext()
+        {
+            return rows.hasNext();
+        }
+
+        public Row next()
+        {
+            return rows.next();
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close()
+        {
+            closed = true;
+        }
+    }
+}
@@ -20,22 +20,46 @@ package org.apache.cassandra.service;
 
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.common.util.concurrent.ListenableFutureTask;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.apache.cassandra.CleanupHelper;
 import static org.apache.cassandra.Util.token;
 import static org.apache.cassandra.Util.rp;
 
+import org.apache.cassandra.concurrent.CreationTimeAwareFuture;
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.CounterMutation;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.RowMutation;
 import org.apache.cassandra.db.RowPosition;
+import org.apache.cassandra.db.SliceFromReadCommand;
+import org.apache.cassandra.db.Table;
+import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.Bounds;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.gms.Gossiper;
 import org.apache.cassandra.locator.TokenMetadata;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
 import java.util.Arrays;
@@ -213,4 +237,225 @@ public class StorageProxyTest extends CleanupHelper
         // completely empty bounds match everything
         testGRRKeys(bounds(rp(""), rp("")), bounds(rp(""), endOf("1")), range(endOf("1"), endOf("6")), range(endOf("6"), rp("")));
     }
+
+    @Test
+    public void testScanConcurrency()
+    {
+        // nothing found yet: double, up to the cap or the ranges left
+        assertEquals(2, StorageProxy.nextScanConcurrency(1, 0, 1, 100, 1000));
+        assertEquals(16, StorageProxy.nextScanConcurrency(8, 0, 15, 100, 1000));
+        assertEquals(32, StorageProxy.nextScanConcurrency(32, 0, 63, 100, 1000));
+        assertEquals(5, StorageProxy.nextScanConcurrency(8, 0, 15, 100, 5));
+
+        // 10 rows in 2 ranges, 90 to go: 18 more ranges, but at most twice as many as last time
+        assertEquals(4, StorageProxy.nextScanConcurrency(2, 10, 2, 100, 1000));
+        // 90 rows in 6 ranges, 10 to go: one more range is enough
+        assertEquals(1, StorageProxy.nextScanConcurrency(4, 90, 6, 100, 1000));
+    }
+
+    @Test
+    public void testAsyncWriteWaitsForHints() throws Throwable
+    {
+        // with CL.ANY, the hint task answers the handler before its future is done: the write must only
+        // complete after that, rather than wait for it from inside the task
+        final IWriteResponseHandler handler = WriteResponseHandler.create(Arrays.asList(InetAddress.getByName("127.0.0.6")), ConsistencyLevel.ANY, "Keyspace1");
+        ListenableFutureTask<Void> hint = new ListenableFutureTask<Void>(new Runnable()
+        {
+            public void run()
+            {
+                handler.response(null);
+            }
+        }, null);
+        handler.addFutureForHint(new CreationTimeAwareFuture<Void>(hint));
+
+        AsyncWrite write = new AsyncWrite();
+        write.start(Arrays.asList(handler));
+        assert write.completed.getCount() == 1;
+
+        long start = System.currentTimeMillis();
+        hint.run();
+        assert write.completed.getCount() == 0;
+        write.get();
+        assert System.currentTimeMillis() - start < DatabaseDescriptor.getRpcTimeout();
+    }
+
+    @Test
+    public void testAsyncWriteTimeout() throws Throwable
+    {
+        IWriteResponseHandler handler = WriteResponseHandler.create(Arrays.asList(InetAddress.getByName("127.0.0.6")), ConsistencyLevel.ONE, "Keyspace1");
+        AsyncWrite write = new AsyncWrite();
+        long start = System.currentTimeMillis();
+        write.start(Arrays.asList(handler));
+
+        // nobody answers, so the timer completes the write
+        assert write.completed.await(DatabaseDescriptor.getRpcTimeout() * 2, TimeUnit.MILLISECONDS);
+        assert System.currentTimeMillis() - start >= DatabaseDescriptor.getRpcTimeout();
+        try
+        {
+            write.get();
+            fail();
+        }
+        catch (TimeoutException e)
+        {
+            // expected
+        }
+
+        // a late response changes nothing
+        handler.response(null);
+        assert write.completions.get() == 1;
+        try
+        {
+            write.get();
+            fail();
+        }
+        catch (TimeoutException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testInlineLocalWrites() throws Throwable
+    {
+        // keys up to "1" are owned by this node alone
+        ThreadPoolExecutor stage = StageManager.getStage(Stage.MUTATION);
+        boolean inline = StorageProxy.instance.getInlineLocalRequests();
+        StorageProxy.instance.setInlineLocalRequests(true);
+        try
+        {
+            // a single row is applied by the calling thread...
+            long tasks = stage.getTaskCount();
+            StorageProxy.mutate(Arrays.asList(rowMutation("0a")), ConsistencyLevel.ONE);
+            StorageProxy.mutate(Arrays.asList(new CounterMutation(counterMutation("0a"), ConsistencyLevel.ONE)), ConsistencyLevel.ONE);
+            assertEquals(tasks, stage.getTaskCount());
+
+            // ...but each row of a batch goes to the stage, so that applying one doesn't delay sending the others
+            StorageProxy.mutate(Arrays.asList(rowMutation("0b"), rowMutation("0c")), ConsistencyLevel.ONE);
+            assertEquals(tasks + 2, stage.getTaskCount());
+            StorageProxy.mutate(Arrays.asList(new CounterMutation(counterMutation("0b"), ConsistencyLevel.ONE),
+                                              new CounterMutation(counterMutation("0c"), ConsistencyLevel.ONE)),
+                                ConsistencyLevel.ONE);
+            assertEquals(tasks + 4, stage.getTaskCount());
+        }
+        finally
+        {
+            StorageProxy.instance.setInlineLocalRequests(inline);
+        }
+    }
+
+    @Test
+    public void testSpeculativeRetry() throws Throwable
+    {
+        // keys up to "1" are owned by this node, so make it the replica we speculate with
+        InetAddress local = InetAddress.getByName("127.0.0.1");
+        InetAddress slow = InetAddress.getByName("127.0.0.6");
+        ColumnFamilyStore cfs = Table.open("Keyspace1").getColumnFamilyStore("Standard1");
+        rowMutation("0spec").apply();
+        ReadCommand command = new SliceFromReadCommand("Keyspace1", ByteBufferUtil.bytes("0spec"), new QueryPath("Standard1"), ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, 10);
+        List<InetAddress> liveEndpoints = Arrays.asList(slow, local);
+        String retry = cfs.getSpeculativeRetry();
+        try
+        {
+            // never, however long the replica takes
+            cfs.setSpeculativeRetry("NONE");
+            long retries = StorageProxy.instance.getSpeculativeRetries();
+            ReadCallback<Row> handler = readCallback(command, slow);
+            StorageProxy.maybeSpeculate(command, handler, liveEndpoints);
+            assertEquals(Arrays.asList(slow), handler.contactedEndpoints());
+            assertEquals(retries, StorageProxy.instance.getSpeculativeRetries());
+
+            // right away, with the closest replica not asked yet, whose data is used
+            cfs.setSpeculativeRetry("ALWAYS");
+            handler = readCallback(command, slow);
+            StorageProxy.maybeSpeculate(command, handler, liveEndpoints);
+            assertEquals(Arrays.asList(slow, local), handler.contactedEndpoints());
+            assertEquals(retries + 1, StorageProxy.instance.getSpeculativeRetries());
+            assertEquals(ByteBufferUtil.bytes("v"), handler.get().cf.getColumn(ByteBufferUtil.bytes("c")).value());
+
+            // but only once
+            StorageProxy.maybeSpeculate(command, handler, liveEndpoints);
+            assertEquals(retries + 1, StorageProxy.instance.getSpeculativeRetries());
+
+            // and not when there is no replica left to ask
+            handler = readCallback(command, slow);
+            StorageProxy.maybeSpeculate(command, handler, Arrays.asList(slow));
+            assertEquals(Arrays.asList(slow), handler.contactedEndpoints());
+            assertEquals(retries + 1, StorageProxy.instance.getSpeculativeRetries());
+
+            // not until reads have been measured...
+            cfs.setSpeculativeRetry("99PERCENTILE");
+            handler = readCallback(command, slow);
+            StorageProxy.maybeSpeculate(command, handler, liveEndpoints);
+            assertEquals(Arrays.asList(slow), handler.contactedEndpoints());
+
+            // ...and a sub-millisecond percentile is kept as such, rather than speculating right away
+            for (int i = 0; i < 100; i++)
+                cfs.addCoordinatorReadLatency(500);
+            for (int i = 0; i < 500 && cfs.getSpeculationThreshold() == Long.MAX_VALUE; i++)
+                Thread.sleep(10);
+            long threshold = cfs.getSpeculationThreshold();
+            assertTrue(String.valueOf(threshold), threshold > 0 && threshold < 1000);
+            long start = System.nanoTime();
+            handler = readCallback(command, slow);
+            StorageProxy.maybeSpeculate(command, handler, liveEndpoints);
+            assertTrue(System.nanoTime() - start >= threshold * 1000);
+            assertEquals(Arrays.asList(slow, local), handler.contactedEndpoints());
+            assertEquals(retries + 2, StorageProxy.instance.getSpeculativeRetries());
+        }
+        finally
+        {
+            cfs.setSpeculativeRetry(retry);
+        }
+    }
+
+    @Test
+    public void testKnowsBatches() throws Throwable
+    {
+        InetAddress endpoint = InetAddress.getByName("127.0.0.5");
+        // until gossip tells us its version, a node may be older than 1.1
+        assertFalse(StorageProxy.knowsBatches(endpoint));
+        try
+        {
+            Gossiper.instance.setVersion(endpoint, MessagingService.VERSION_10);
+            assertFalse(StorageProxy.knowsBatches(endpoint));
+            Gossiper.instance.setVersion(endpoint, MessagingService.VERSION_11);
+            assertTrue(StorageProxy.knowsBatches(endpoint));
+        }
+        finally
+        {
+            Gossiper.instance.resetVersion(endpoint);
+        }
+    }
+
+    private static ReadCallback<Row> readCallback(ReadCommand command, InetAddress endpoint)
+    {
+        RowDigestResolver resolver = new RowDigestResolver(command.table, command.key);
+        return new ReadCallback<Row>(resolver, ConsistencyLevel.ONE, command, Arrays.asList(endpoint));
+    }
+
+    private static RowMutation rowMutation(String key)
+    {
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes(key));
+        rm.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v"), 0);
+        return rm;
+    }
+
+    private static RowMutation counterMutation(String key)
+    {
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes(key));
+        rm.addCounter(new QueryPath("Counter1", null, ByteBufferUtil.bytes("c")), 1);
+        return rm;
+    }
+
+    private static class AsyncWrite extends StorageProxy.AsyncWrite
+    {
+        final CountDownLatch completed = new CountDownLatch(1);
+        final AtomicInteger completions = new AtomicInteger();
+
+        protected void onComplete()
+        {
+            completions.incrementAndGet();
+            completed.countDown();
+        }
+    }
 }
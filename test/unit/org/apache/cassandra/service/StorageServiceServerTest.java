@@ -21,12 +21,15 @@ package org.apache.cassandra.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
 
 import org.apache.cassandra.config.ConfigurationException;
+import org.apache.cassandra.dht.BigIntegerToken;
+import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.CleanupHelper;
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -62,6 +65,20 @@ public class StorageServiceServerTest
         assertEquals(Collections.emptyList(), StorageService.instance.getAllRanges(toks));
     }
 
+    @Test
+    public void testNonAdjacentOrder()
+    {
+        List<Range<Token>> ranges = new ArrayList<Range<Token>>();
+        for (int i = 4; i >= 0; i--)
+            ranges.add(new Range<Token>(new BigIntegerToken(String.valueOf(i * 10)), new BigIntegerToken(String.valueOf(i * 10 + 10))));
+
+        List<Range<Token>> ordered = StorageService.nonAdjacentOrder(ranges);
+        assertEquals(5, ordered.size());
+        int[] expectedLefts = { 0, 20, 40, 10, 30 };
+        for (int i = 0; i < expectedLefts.length; i++)
+            assertEquals(new BigIntegerToken(String.valueOf(expectedLefts[i])), ordered.get(i).left);
+    }
+
     @Test
     public void testSnapshot() throws IOException
     {
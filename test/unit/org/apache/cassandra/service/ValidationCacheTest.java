@@ -0,0 +1,176 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.db.Table;
+import org.apache.cassandra.db.compaction.CompactionManager;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.MerkleTree;
+
+import static org.apache.cassandra.service.AntiEntropyService.*;
+
+public class ValidationCacheTest extends CleanupHelper
+{
+    public static final String TABLE1 = "Keyspace1";
+    public static final String CF = "Standard1";
+
+    @Test
+    public void testIncrementalValidationMatchesFullValidation() throws Exception
+    {
+        ColumnFamilyStore cfs = Table.open(TABLE1).getColumnFamilyStore(CF);
+        IPartitioner partitioner = StorageService.getPartitioner();
+        Range<Token> range = new Range<Token>(partitioner.getToken(ByteBufferUtil.bytes("a")), partitioner.getToken(ByteBufferUtil.bytes(key(99))));
+
+        // spread the keys over the alphabet, so they fall in many leaves
+        for (int i = 0; i < 100; i++)
+            insert(key(i), "value" + i, 0);
+        cfs.forceBlockingFlush();
+
+        // nothing cached yet
+        Validator first = validate(cfs, range);
+        assertEquals(0, first.getReusedLeaves());
+
+        // nothing changed: every leaf is reused
+        Validator second = validate(cfs, range);
+        assertEquals(first.tree.size(), second.getReusedLeaves());
+        assertSameTree(first.tree, second.tree);
+
+        // a new sstable covering a couple of neighbouring keys only dirties the leaves it overlaps
+        insert(key(50), "changed50", 1);
+        insert(key(51), "changed51", 1);
+        cfs.forceBlockingFlush();
+        Validator incremental = validate(cfs, range);
+        assertTrue(incremental.getReusedLeaves() > 0);
+        assertTrue(incremental.getReusedLeaves() < incremental.tree.size());
+        assertFalse(Arrays.equals(first.tree.hash(range), incremental.tree.hash(range)));
+
+        ValidationCache.invalidate(cfs.metadata.cfId);
+        Validator full = validate(cfs, range);
+        assertEquals(0, full.getReusedLeaves());
+        assertSameTree(full.tree, incremental.tree);
+    }
+
+    @Test
+    public void testLeafReuse()
+    {
+        ValidationCache.Leaf leaf = new ValidationCache.Leaf(Collections.singleton(1), new byte[0], 100, 200);
+        assertTrue(leaf.isReusable(Collections.singleton(1), 100));
+        assertTrue(leaf.isReusable(Collections.singleton(1), 199));
+        // tombstones would be purged
+        assertFalse(leaf.isReusable(Collections.singleton(1), 200));
+        // tombstones purged last time would be kept
+        assertFalse(leaf.isReusable(Collections.singleton(1), 99));
+        // different sstables
+        assertFalse(leaf.isReusable(Collections.singleton(2), 100));
+    }
+
+    @Test
+    public void testBounded()
+    {
+        IPartitioner partitioner = StorageService.getPartitioner();
+        Range<Token>[] ranges = new Range[4];
+        for (int i = 0; i < ranges.length; i++)
+            ranges[i] = new Range<Token>(partitioner.getToken(ByteBufferUtil.bytes("bounded" + i)), partitioner.getToken(ByteBufferUtil.bytes("bounded" + i + "z")));
+
+        // two trees of half the capacity fit...
+        ValidationCache.put(-1, ranges[0], leaves(ValidationCache.MAX_LEAVES / 2));
+        ValidationCache.put(-1, ranges[1], leaves(ValidationCache.MAX_LEAVES / 2));
+        assertTrue(ValidationCache.get(-1, ranges[0]) != null);
+        assertTrue(ValidationCache.get(-1, ranges[1]) != null);
+
+        // ...but a third evicts one of them
+        ValidationCache.put(-1, ranges[2], leaves(ValidationCache.MAX_LEAVES / 2));
+        assertTrue(ValidationCache.get(-1, ranges[2]) != null);
+        assertTrue(ValidationCache.get(-1, ranges[0]) == null ^ ValidationCache.get(-1, ranges[1]) == null);
+
+        // and a tree over the capacity isn't kept at all, nor evicts the others
+        ValidationCache.put(-1, ranges[3], leaves(ValidationCache.MAX_LEAVES + 1));
+        assertTrue(ValidationCache.get(-1, ranges[3]) == null);
+        assertTrue(ValidationCache.get(-1, ranges[2]) != null);
+
+        ValidationCache.invalidate(-1);
+    }
+
+    // leaves are weighed by their number only
+    private static Map<Range<Token>, ValidationCache.Leaf> leaves(final int size)
+    {
+        return new AbstractMap<Range<Token>, ValidationCache.Leaf>()
+        {
+            public Set<Entry<Range<Token>, ValidationCache.Leaf>> entrySet()
+            {
+                return Collections.emptySet();
+            }
+
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    private static String key(int i)
+    {
+        return String.format("%c%02d", (char) ('a' + i / 4), i);
+    }
+
+    private static void insert(String key, String value, long timestamp) throws IOException
+    {
+        RowMutation rm = new RowMutation(TABLE1, ByteBufferUtil.bytes(key));
+        rm.add(new QueryPath(CF, null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes(value), timestamp);
+        rm.apply();
+    }
+
+    private static Validator validate(ColumnFamilyStore cfs, Range<Token> range) throws Exception
+    {
+        // a full tree, so that prepare() does not split it on (random) key samples and every validation gets the same leaves
+        MerkleTree tree = new MerkleTree(StorageService.getPartitioner(), range, MerkleTree.RECOMMENDED_DEPTH, 16);
+        tree.init();
+        TreeRequest request = new TreeRequest(UUID.randomUUID().toString(), InetAddress.getByName("127.0.0.2"), range, new CFPair(TABLE1, CF));
+        Validator validator = new Validator(request, tree);
+        CompactionManager.instance.submitValidation(cfs, validator).get();
+        return validator;
+    }
+
+    private static void assertSameTree(MerkleTree expected, MerkleTree actual)
+    {
+        assertTrue(MerkleTree.difference(expected, actual).isEmpty());
+        assertTrue(Arrays.equals(expected.hash(expected.fullRange), actual.hash(actual.fullRange)));
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.net.sink.IMessageSink;
+import org.apache.cassandra.net.sink.SinkManager;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.apache.cassandra.Util.column;
+import static org.apache.cassandra.Util.dk;
+import static org.apache.cassandra.Util.token;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RowLevelRepairTest extends CleanupHelper
+{
+    private static final String TABLE = "Keyspace1";
+    private static final String CF = "Standard1";
+
+    @After
+    public void tearDown()
+    {
+        SinkManager.clear();
+    }
+
+    @Test
+    public void testSend() throws Exception
+    {
+        ColumnFamilyStore cfs = Table.open(TABLE).getColumnFamilyStore(CF);
+        Set<ByteBuffer> expected = new HashSet<ByteBuffer>();
+        for (int i = 0; i < 300; i++)
+        {
+            RowMutation rm = new RowMutation(TABLE, ByteBufferUtil.bytes("send" + i));
+            rm.add(new QueryPath(CF, null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v" + i), 0);
+            rm.apply();
+            expected.add(rm.key());
+        }
+        // deletions are sent too
+        RowMutation rm = new RowMutation(TABLE, ByteBufferUtil.bytes("senddeleted"));
+        rm.delete(new QueryPath(CF), 1);
+        rm.apply();
+        expected.add(rm.key());
+
+        Peer peer = new Peer(Collections.<Row>emptyList());
+        SinkManager.add(peer);
+        peer.start();
+        try
+        {
+            RowLevelRepair.send(cfs, Peer.ADDRESS, Collections.singleton(new Range<Token>(token(""), token(""))));
+        }
+        finally
+        {
+            peer.interrupt();
+        }
+
+        assertEquals(expected, peer.mutated);
+        assertTrue(peer.maxInFlight <= RowLevelRepair.MAX_IN_FLIGHT);
+    }
+
+    @Test
+    public void testReceive() throws Exception
+    {
+        ColumnFamilyStore cfs = Table.open(TABLE).getColumnFamilyStore(CF);
+
+        // one range per row of the peer, and a last one holding more rows than it puts in a reply
+        List<Row> rows = new ArrayList<Row>();
+        List<Range<Token>> ranges = new ArrayList<Range<Token>>();
+        for (int i = 0; i < 205; i++)
+        {
+            String key = String.format("recv%03d", i);
+            ColumnFamily cf = ColumnFamily.create(TABLE, CF);
+            cf.addColumn(column("c", "v" + i, 1));
+            rows.add(new Row(dk(key), cf));
+            if (i < 200)
+                ranges.add(new Range<Token>(i == 0 ? token("") : rows.get(i - 1).key.token, token(key)));
+        }
+        ranges.add(new Range<Token>(token("recv199"), token("recvz")));
+
+        // a row the peer has deleted since
+        RowMutation rm = new RowMutation(TABLE, ByteBufferUtil.bytes("recvz"));
+        rm.add(new QueryPath(CF, null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v"), 0);
+        rm.apply();
+        ColumnFamily deleted = ColumnFamily.create(TABLE, CF);
+        deleted.delete((int) (System.currentTimeMillis() / 1000), 1);
+        rows.add(new Row(dk("recvz"), deleted));
+
+        Peer peer = new Peer(rows);
+        SinkManager.add(peer);
+        peer.start();
+        try
+        {
+            RowLevelRepair.receive(cfs, Peer.ADDRESS, ranges);
+        }
+        finally
+        {
+            peer.interrupt();
+        }
+
+        for (int i = 0; i < 205; i++)
+        {
+            DecoratedKey key = dk(String.format("recv%03d", i));
+            ColumnFamily cf = cfs.getColumnFamily(QueryFilter.getIdentityFilter(key, new QueryPath(CF)));
+            assertEquals(ByteBufferUtil.bytes("v" + i), cf.getColumn(ByteBufferUtil.bytes("c")).value());
+        }
+        ColumnFamily cf = cfs.getColumnFamily(QueryFilter.getIdentityFilter(dk("recvz"), new QueryPath(CF)));
+        assertNull(cf.getColumn(ByteBufferUtil.bytes("c")));
+        assertTrue(peer.maxInFlight <= RowLevelRepair.MAX_IN_FLIGHT);
+        // the last range took three replies
+        assertEquals(ranges.size() + 2, peer.requests);
+    }
+
+    @Test
+    public void testSendWideRow() throws Exception
+    {
+        ColumnFamilyStore cfs = Table.open(TABLE).getColumnFamilyStore(CF);
+        RowMutation rm = new RowMutation(TABLE, ByteBufferUtil.bytes("sendwide"));
+        for (int i = 0; i < 10; i++)
+            rm.add(new QueryPath(CF, null, ByteBufferUtil.bytes("c" + i)), ByteBufferUtil.bytes("v" + i), 0);
+        rm.apply();
+
+        Peer peer = new Peer(Collections.<Row>emptyList());
+        SinkManager.add(peer);
+        peer.start();
+        try
+        {
+            RowLevelRepair.send(cfs, Peer.ADDRESS, Collections.singleton(new Range<Token>(token("sendwid"), token("sendwide"))), 3);
+        }
+        finally
+        {
+            peer.interrupt();
+        }
+
+        // the row was sent a page at a time, each column once, although each page read after the first
+        // starts with the column the previous one ended with
+        assertEquals(5, peer.pages.size());
+        Set<ByteBuffer> names = new HashSet<ByteBuffer>();
+        int columns = 0;
+        for (ColumnFamily page : peer.pages)
+        {
+            assertTrue(page.getColumnCount() <= 3);
+            names.addAll(page.getColumnNames());
+            columns += page.getColumnCount();
+        }
+        assertEquals(10, names.size());
+        assertEquals(10, columns);
+    }
+
+    @Test
+    public void testReceiveWideRow() throws Exception
+    {
+        ColumnFamilyStore cfs = Table.open(TABLE).getColumnFamilyStore(CF);
+        ColumnFamily cf = ColumnFamily.create(TABLE, CF);
+        for (int i = 0; i < 10; i++)
+            cf.addColumn(column("c" + i, "v" + i, 1));
+        Peer peer = new Peer(Collections.singletonList(new Row(dk("recvwide"), cf)));
+        SinkManager.add(peer);
+        peer.start();
+        try
+        {
+            RowLevelRepair.receive(cfs, Peer.ADDRESS, Collections.singleton(new Range<Token>(token("recvwid"), token("recvwide"))), 3);
+        }
+        finally
+        {
+            peer.interrupt();
+        }
+
+        ColumnFamily received = cfs.getColumnFamily(QueryFilter.getIdentityFilter(dk("recvwide"), new QueryPath(CF)));
+        assertEquals(10, received.getColumnCount());
+        // the rest of the row was read a page at a time, past the first one
+        assertEquals(5, peer.requests);
+    }
+
+    /**
+     * Stands in for another replica, holding the given rows: it records the mutations sent to it, answers
+     * range requests with at most two rows at a time, and pages the columns of rows as asked.  Replies are held back a little, so that we see how many
+     * requests are left unanswered at once.
+     */
+    private static class Peer extends Thread implements IMessageSink
+    {
+        static final InetAddress ADDRESS;
+        static
+        {
+            try
+            {
+                ADDRESS = InetAddress.getByName("127.0.0.2");
+            }
+            catch (IOException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+
+        private final List<Row> rows;
+        private final List<Message> replies = new ArrayList<Message>();
+        private final List<String> ids = new ArrayList<String>();
+        final Set<ByteBuffer> mutated = Collections.synchronizedSet(new HashSet<ByteBuffer>());
+        final List<ColumnFamily> pages = Collections.synchronizedList(new ArrayList<ColumnFamily>());
+        volatile int maxInFlight;
+        volatile int requests;
+
+        Peer(List<Row> rows)
+        {
+            this.rows = rows;
+        }
+
+        public Message handleMessage(Message message, String id, InetAddress to)
+        {
+            if (!ADDRESS.equals(to))
+                return message;
+
+            try
+            {
+                Message reply;
+                if (message.getVerb() == StorageService.Verb.MUTATION)
+                {
+                    RowMutation rm = RowMutation.fromBytes(message.getMessageBody(), message.getVersion());
+                    mutated.add(rm.key());
+                    pages.addAll(rm.getColumnFamilies());
+                    reply = message.getReply(ADDRESS, new byte[0], message.getVersion());
+                }
+                else if (message.getVerb() == StorageService.Verb.READ)
+                {
+                    DataInputStream in = new DataInputStream(new FastByteArrayInputStream(message.getMessageBody()));
+                    IVersionedSerializer<ReadCommand> serializer = ReadCommand.serializer();
+                    SliceFromReadCommand command = (SliceFromReadCommand) serializer.deserialize(in, message.getVersion());
+                    Row page = null;
+                    for (Row row : rows)
+                    {
+                        if (row.key.key.equals(command.key))
+                            page = new Row(row.key, page(row.cf, command.start, command.count));
+                    }
+                    byte[] body = FBUtilities.serialize(new ReadResponse(page), ReadResponse.serializer(), message.getVersion());
+                    reply = message.getReply(ADDRESS, body, message.getVersion());
+                }
+                else
+                {
+                    assert message.getVerb() == StorageService.Verb.RANGE_SLICE;
+                    RangeSliceCommand command = RangeSliceCommand.read(message);
+                    List<Row> matching = new ArrayList<Row>();
+                    for (Row row : rows)
+                    {
+                        if (command.range.contains(row.key))
+                            matching.add(new Row(row.key, page(row.cf, ByteBufferUtil.EMPTY_BYTE_BUFFER, command.predicate.slice_range.count)));
+                    }
+                    boolean truncated = matching.size() > 2;
+                    reply = new RangeSliceReply(matching.subList(0, Math.min(2, matching.size())), truncated).getReply(message);
+                }
+
+                synchronized (this)
+                {
+                    requests++;
+                    replies.add(reply);
+                    ids.add(id);
+                    maxInFlight = Math.max(maxInFlight, replies.size());
+                }
+            }
+            catch (IOException e)
+            {
+                throw new AssertionError(e);
+            }
+            return null;
+        }
+
+        // the first @param count columns of @param cf from @param start on
+        private static ColumnFamily page(ColumnFamily cf, ByteBuffer start, int count)
+        {
+            ColumnFamily page = cf.cloneMeShallow();
+            for (IColumn column : cf.getSortedColumns())
+            {
+                if (page.getColumnCount() < count && cf.getComparator().compare(column.name(), start) >= 0)
+                    page.addColumn(column);
+            }
+            return page;
+        }
+
+        public void run()
+        {
+            while (!isInterrupted())
+            {
+                try
+                {
+                    Thread.sleep(10);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                synchronized (this)
+                {
+                    for (int i = 0; i < replies.size(); i++)
+                        MessagingService.instance().receive(replies.get(i), ids.get(i));
+                    replies.clear();
+                    ids.clear();
+                }
+            }
+        }
+    }
+}
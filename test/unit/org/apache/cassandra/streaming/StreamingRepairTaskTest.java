@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.net.sink.IMessageSink;
+import org.apache.cassandra.net.sink.SinkManager;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.apache.cassandra.Util.token;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingRepairTaskTest extends CleanupHelper
+{
+    private static final InetAddress LOCAL = FBUtilities.getBroadcastAddress();
+    private static final Collection<Range<Token>> RING = Collections.singleton(new Range<Token>(token(""), token("")));
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        MessagingService.instance().listen(LOCAL);
+    }
+
+    @After
+    public void tearDown()
+    {
+        SinkManager.clear();
+        DatabaseDescriptor.setRepairRowLevelMaxRows(0);
+    }
+
+    private static void insert(String cfName, String key) throws IOException
+    {
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes(key));
+        rm.add(new QueryPath(cfName, null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v"), 0);
+        rm.apply();
+    }
+
+    @Test
+    public void testSplitRanges() throws Exception
+    {
+        ColumnFamilyStore cfs = Table.open("Keyspace1").getColumnFamilyStore("Standard1");
+        for (int i = 0; i < 10; i++)
+            insert("Standard1", "split" + i);
+        cfs.forceBlockingFlush();
+
+        List<Range<Token>> rowRanges = new ArrayList<Range<Token>>();
+        List<Range<Token>> streamRanges = new ArrayList<Range<Token>>();
+        StreamingRepairTask.splitRanges(cfs, RING, 1000, rowRanges, streamRanges);
+        assertEquals(RING, new HashSet<Range<Token>>(rowRanges));
+        assertTrue(streamRanges.isEmpty());
+
+        // too many rows
+        rowRanges.clear();
+        StreamingRepairTask.splitRanges(cfs, RING, cfs.estimatedKeysForRange(RING.iterator().next()) - 1, rowRanges, streamRanges);
+        assertTrue(rowRanges.isEmpty());
+        assertEquals(RING, new HashSet<Range<Token>>(streamRanges));
+
+        // disabled
+        streamRanges.clear();
+        StreamingRepairTask.splitRanges(cfs, RING, 0, rowRanges, streamRanges);
+        assertTrue(rowRanges.isEmpty());
+        assertEquals(RING, new HashSet<Range<Token>>(streamRanges));
+
+        // counters are always streamed
+        streamRanges.clear();
+        StreamingRepairTask.splitRanges(Table.open("Keyspace1").getColumnFamilyStore("Counter1"), RING, 1000, rowRanges, streamRanges);
+        assertTrue(rowRanges.isEmpty());
+        assertEquals(RING, new HashSet<Range<Token>>(streamRanges));
+    }
+
+    @Test
+    public void testRowLevelRepair() throws Exception
+    {
+        DatabaseDescriptor.setRepairRowLevelMaxRows(1000);
+        insert("Standard2", "rows");
+        VerbCounter counter = new VerbCounter(false);
+        SinkManager.add(counter);
+
+        repair("Standard2");
+        assertEquals(1, counter.count(StorageService.Verb.MUTATION));
+        assertEquals(0, counter.count(StorageService.Verb.STREAM_REQUEST));
+    }
+
+    @Test
+    public void testFallbackToStreaming() throws Exception
+    {
+        DatabaseDescriptor.setRepairRowLevelMaxRows(1000);
+        insert("Standard3", "fallback");
+        VerbCounter counter = new VerbCounter(true);
+        SinkManager.add(counter);
+
+        // the mutation can't be sent, so the range is streamed both ways instead
+        repair("Standard3");
+        assertEquals(1, counter.count(StorageService.Verb.MUTATION));
+        assertEquals(1, counter.count(StorageService.Verb.STREAM_REQUEST));
+    }
+
+    // repairs the whole ring of @param cfName with ourselves, waiting for the task to be done
+    private static void repair(String cfName) throws Exception
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        StreamingRepairTask task = StreamingRepairTask.create(LOCAL, LOCAL, "Keyspace1", cfName, RING, new Runnable()
+        {
+            public void run()
+            {
+                done.countDown();
+            }
+        });
+        task.run();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Counts the messages we receive per verb, optionally failing to deliver mutations.
+     */
+    private static class VerbCounter implements IMessageSink
+    {
+        private final boolean failMutations;
+        private final Map<StorageService.Verb, AtomicInteger> counts = new EnumMap<StorageService.Verb, AtomicInteger>(StorageService.Verb.class);
+
+        VerbCounter(boolean failMutations)
+        {
+            this.failMutations = failMutations;
+        }
+
+        public synchronized Message handleMessage(Message message, String id, InetAddress to)
+        {
+            if (to != null)
+                return message;
+
+            AtomicInteger count = counts.get(message.getVerb());
+            if (count == null)
+                counts.put(message.getVerb(), count = new AtomicInteger());
+            count.incrementAndGet();
+            if (failMutations && message.getVerb() == StorageService.Verb.MUTATION)
+                throw new RuntimeException("Mutations can't be delivered");
+            return message;
+        }
+
+        synchronized int count(StorageService.Verb verb)
+        {
+            AtomicInteger count = counts.get(verb);
+            return count == null ? 0 : count.get();
+        }
+    }
+}
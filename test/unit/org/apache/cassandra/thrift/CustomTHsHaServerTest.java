@@ -0,0 +1,247 @@
+package org.apache.cassandra.thrift;
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.server.TNonblockingServer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+
+public class CustomTHsHaServerTest extends CleanupHelper
+{
+    @Test
+    public void testDeferredResponses() throws Throwable
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService responder = Executors.newSingleThreadExecutor();
+        DeferringProcessor processor = new DeferringProcessor(release, responder);
+
+        // a single invoker thread, so that a request holding it would block the other connection
+        CustomTHsHaServer server = start(processor, DatabaseDescriptor.getRpcPort());
+        TTransport transport1 = open(DatabaseDescriptor.getRpcPort());
+        TTransport transport2 = open(DatabaseDescriptor.getRpcPort());
+        try
+        {
+            final Cassandra.Client client1 = new Cassandra.Client(new TBinaryProtocol(transport1));
+            Cassandra.Client client2 = new Cassandra.Client(new TBinaryProtocol(transport2));
+
+            // resumed before the processor returns
+            assert client1.describe_cluster_name().equals("immediate");
+
+            // resumed after it returns, by another thread
+            Future<String> deferred = Executors.newSingleThreadExecutor().submit(new Callable<String>()
+            {
+                public String call() throws TException
+                {
+                    return client1.describe_version();
+                }
+            });
+            while (processor.suspended.get() == 0)
+                Thread.sleep(10);
+
+            // the invoker thread is free for other requests meanwhile
+            assert client2.describe_cluster_name().equals("immediate");
+            assert client2.describe_partitioner().equals(StorageService.getPartitioner().getClass().getName());
+            assert !deferred.isDone();
+
+            release.countDown();
+            assert deferred.get(10, TimeUnit.SECONDS).equals("deferred");
+
+            // the connection goes on as usual, deferred or not
+            assert client1.describe_partitioner().equals(StorageService.getPartitioner().getClass().getName());
+            assert client1.describe_version().equals("deferred");
+            assert client1.describe_cluster_name().equals("immediate");
+        }
+        finally
+        {
+            transport1.close();
+            transport2.close();
+            server.stop();
+            responder.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncWrites() throws Throwable
+    {
+        StorageService.instance.getTokenMetadata().updateNormalToken(StorageService.getPartitioner().getRandomToken(), FBUtilities.getBroadcastAddress());
+        CustomTHsHaServer server = start(new AsyncCassandraProcessor(new CassandraServer()), DatabaseDescriptor.getRpcPort() + 1);
+        TTransport transport = open(DatabaseDescriptor.getRpcPort() + 1);
+        try
+        {
+            Cassandra.Client client = new Cassandra.Client(new TBinaryProtocol(transport));
+            client.set_keyspace("Keyspace1");
+            ColumnPath path = new ColumnPath("Standard1").setColumn(bytes("c1"));
+
+            for (int i = 0; i < 10; i++)
+            {
+                client.insert(bytes("hshakey" + i), new ColumnParent("Standard1"), new Column(bytes("c1")).setValue(bytes("v" + i)).setTimestamp(1), ConsistencyLevel.ONE);
+                assert client.get(bytes("hshakey" + i), path, ConsistencyLevel.ONE).column.value.equals(bytes("v" + i));
+            }
+
+            client.remove(bytes("hshakey0"), path, 2, ConsistencyLevel.ONE);
+            try
+            {
+                client.get(bytes("hshakey0"), path, ConsistencyLevel.ONE);
+                assert false;
+            }
+            catch (NotFoundException e)
+            {
+                // expected
+            }
+
+            client.batch_mutate(new HashMap<java.nio.ByteBuffer, Map<String, List<Mutation>>>(), ConsistencyLevel.ONE);
+
+            // failing before anything is sent answers right away
+            try
+            {
+                client.insert(bytes("hshakey0"), new ColumnParent("NoSuchCF"), new Column(bytes("c1")).setValue(bytes("v")).setTimestamp(3), ConsistencyLevel.ONE);
+                assert false;
+            }
+            catch (InvalidRequestException e)
+            {
+                // expected
+            }
+            client.insert(bytes("hshakey0"), new ColumnParent("Standard1"), new Column(bytes("c1")).setValue(bytes("v")).setTimestamp(3), ConsistencyLevel.ONE);
+            assert client.get(bytes("hshakey0"), path, ConsistencyLevel.ONE).column.value.equals(bytes("v"));
+        }
+        finally
+        {
+            transport.close();
+            server.stop();
+            StorageService.instance.getTokenMetadata().clearUnsafe();
+        }
+    }
+
+    private static CustomTHsHaServer start(TProcessor processor, int port) throws Exception
+    {
+        TNonblockingServer.Args args = new TNonblockingServer.Args(new TNonblockingServerSocket(new InetSocketAddress(FBUtilities.getLocalAddress(), port)))
+                                       .inputTransportFactory(new TFramedTransport.Factory())
+                                       .outputTransportFactory(new TFramedTransport.Factory())
+                                       .inputProtocolFactory(new TBinaryProtocol.Factory(true, true))
+                                       .outputProtocolFactory(new TBinaryProtocol.Factory(true, true))
+                                       .processor(processor);
+        ExecutorService invoker = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        final CustomTHsHaServer server = new CustomTHsHaServer(args, invoker, 2);
+        new Thread("HsHa-Test-Server")
+        {
+            public void run()
+            {
+                server.serve();
+            }
+        }.start();
+        while (!server.isServing())
+            Thread.sleep(10);
+        return server;
+    }
+
+    private static TTransport open(int port) throws Exception
+    {
+        TTransport transport = new TFramedTransport(new TSocket(FBUtilities.getLocalAddress().getHostAddress(), port));
+        transport.open();
+        return transport;
+    }
+
+    /**
+     * Answers describe_version once released, from another thread, and describe_cluster_name by suspending
+     * and resuming before returning.  Everything else is processed as usual.
+     */
+    private static class DeferringProcessor extends Cassandra.Processor
+    {
+        final AtomicInteger suspended = new AtomicInteger();
+
+        DeferringProcessor(final CountDownLatch release, final ExecutorService responder)
+        {
+            super(new CassandraServer());
+            processMap_.put("describe_version", new ProcessFunction()
+            {
+                public void process(final int seqid, TProtocol iprot, final TProtocol oprot) throws TException
+                {
+                    new Cassandra.describe_version_args().read(iprot);
+                    iprot.readMessageEnd();
+                    final CustomTHsHaServer.AsyncFrameBuffer request = CustomTHsHaServer.currentRequest();
+                    request.suspend();
+                    suspended.incrementAndGet();
+                    responder.execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                release.await();
+                                reply("describe_version", seqid, oprot, new Cassandra.describe_version_result().setSuccess("deferred"));
+                            }
+                            catch (Exception e)
+                            {
+                                throw new RuntimeException(e);
+                            }
+                            request.resume();
+                        }
+                    });
+                }
+            });
+            processMap_.put("describe_cluster_name", new ProcessFunction()
+            {
+                public void process(int seqid, TProtocol iprot, TProtocol oprot) throws TException
+                {
+                    new Cassandra.describe_cluster_name_args().read(iprot);
+                    iprot.readMessageEnd();
+                    CustomTHsHaServer.AsyncFrameBuffer request = CustomTHsHaServer.currentRequest();
+                    request.suspend();
+                    reply("describe_cluster_name", seqid, oprot, new Cassandra.describe_cluster_name_result().setSuccess("immediate"));
+                    request.resume();
+                }
+            });
+        }
+
+        private static void reply(String name, int seqid, TProtocol oprot, TBase result) throws TException
+        {
+            oprot.writeMessageBegin(new TMessage(name, TMessageType.REPLY, seqid));
+            result.write(oprot);
+            oprot.writeMessageEnd();
+            oprot.getTransport().flush();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import org.junit.Test;
+
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+
+public class CountMinSketchTest
+{
+    @Test
+    public void testEstimate()
+    {
+        CountMinSketch sketch = new CountMinSketch(4, 2048);
+        assert sketch.estimate(bytes("a")) == 0;
+
+        // a heavy hitter among many rare values
+        sketch.add(bytes("a"), 10000);
+        for (int i = 0; i < 10000; i++)
+            sketch.add(bytes(i), 1);
+
+        long a = sketch.estimate(bytes("a"));
+        assert a >= 10000 && a <= 10000 + 2 * 20000 / 2048 : a;
+        for (int i = 0; i < 100; i++)
+        {
+            long estimate = sketch.estimate(bytes(i));
+            assert estimate >= 1 && estimate <= 1 + 2 * 20000 / 2048 : estimate;
+        }
+
+        // removals
+        sketch.add(bytes("a"), -5000);
+        a = sketch.estimate(bytes("a"));
+        assert a >= 5000 && a <= 5000 + 2 * 15000 / 2048 : a;
+    }
+}
@@ -71,4 +71,24 @@ public class EstimatedHistogramTest
         assertEquals(2, histogram.getBuckets(false)[13]);
         assertEquals(5021848, histogram.mean());
     }
+
+    @Test
+    public void testPercentile()
+    {
+        EstimatedHistogram histogram = new EstimatedHistogram();
+        assertEquals(0, histogram.percentile(0.99));
+
+        for (int i = 1; i <= 8; i++)
+            histogram.add(i);
+        histogram.add(100);
+        histogram.add(100);
+        assertEquals(5, histogram.percentile(0.5));
+        assertEquals(8, histogram.percentile(0.8));
+        // 100 falls in the (86, 103] bucket
+        assertEquals(103, histogram.percentile(0.99));
+
+        histogram = new EstimatedHistogram(1);
+        histogram.add(100);
+        assertEquals(Long.MAX_VALUE, histogram.percentile(0.5));
+    }
 }
@@ -0,0 +1,45 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import org.junit.Test;
+
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+
+public class HyperLogLogTest
+{
+    @Test
+    public void testCardinality()
+    {
+        HyperLogLog hll = new HyperLogLog(12);
+        assert hll.cardinality() == 0;
+
+        for (int i = 0; i < 100; i++)
+            hll.add(bytes(i));
+        // repeats don't count
+        for (int i = 0; i < 100; i++)
+            hll.add(bytes(i));
+        assert Math.abs(hll.cardinality() - 100) <= 5 : hll.cardinality();
+
+        for (int i = 100; i < 100000; i++)
+            hll.add(bytes(i));
+        // about 1.6% standard error at this precision
+        assert Math.abs(hll.cardinality() - 100000) <= 6000 : hll.cardinality();
+    }
+}